@@ -0,0 +1,66 @@
+package com.llm.passthrough.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.dto.ChatRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding a {@link ChatRequest} from the client body and writing it to the
+ * upstream, as the typed endpoints do, with text-only content and with a
+ * base64 {@code inline_data} part below and above the spooling threshold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatRequestJsonBenchmark {
+
+    @Param({"0", "65536", "4194304"})
+    private int inlineDataBytes;
+
+    @Param({"true", "false"})
+    private boolean spool;
+
+    private ObjectMapper objectMapper;
+    private byte[] body;
+    private ChatRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Payloads.objectMapper(Payloads.spoolManager(spool));
+        body = Payloads.chatRequest(inlineDataBytes);
+        request = objectMapper.readValue(body, ChatRequest.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Payloads.release(request);
+    }
+
+    @Benchmark
+    public ChatRequest deserialize() throws IOException {
+        ChatRequest request = objectMapper.readValue(body, ChatRequest.class);
+        Payloads.release(request);
+        return request;
+    }
+
+    /**
+     * Writes to a discarding stream, as the request body is streamed upstream
+     * rather than built as a byte array.
+     */
+    @Benchmark
+    public void serialize() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), request);
+    }
+}
@@ -0,0 +1,158 @@
+package com.llm.passthrough.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.llm.passthrough.dto.ChatRequest;
+import com.llm.passthrough.dto.ContentPart;
+import com.llm.passthrough.dto.Message;
+import com.llm.passthrough.dto.MessageContentDeserializer;
+import com.llm.passthrough.spool.SpoolManager;
+import com.llm.passthrough.spool.SpooledText;
+import com.llm.passthrough.spool.SpooledTextDeserializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Request, response and stream bodies shaped like the upstream's, and an
+ * {@link ObjectMapper} configured like the application's.
+ */
+final class Payloads {
+
+    /**
+     * Spooling threshold of the default configuration.
+     */
+    static final int SPOOL_THRESHOLD = 256 * 1024;
+
+    private static final String WORDS = "the quick brown fox jumps over a lazy dog while tokens stream in ";
+
+    private Payloads() {
+    }
+
+    static ObjectMapper objectMapper(SpoolManager spoolManager) {
+        SimpleModule module = new SimpleModule("SpooledTextModule");
+        module.addDeserializer(SpooledText.class, new SpooledTextDeserializer(spoolManager));
+        if (spoolManager.isEnabled()) {
+            module.setMixInAnnotation(Message.class, MessageContentDeserializer.MessageMixin.class);
+        }
+        return Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .modulesToInstall(module)
+                .build();
+    }
+
+    static SpoolManager spoolManager(boolean enabled) {
+        return new SpoolManager(enabled, SPOOL_THRESHOLD, true, 1L << 30,
+                Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * A short conversation, with an image part of {@code inlineDataBytes} of
+     * base64 in the last message unless zero.
+     */
+    static byte[] chatRequest(int inlineDataBytes) {
+        StringBuilder json = new StringBuilder(inlineDataBytes + 1024)
+                .append("{\"model\":\"gemini-2.5-pro\",\"temperature\":0.2,\"max_tokens\":1024,\"messages\":[")
+                .append("{\"role\":\"system\",\"content\":\"You are a helpful assistant.\"},")
+                .append("{\"role\":\"user\",\"content\":\"").append(text(400)).append("\"},")
+                .append("{\"role\":\"assistant\",\"content\":\"").append(text(800)).append("\"},");
+        if (inlineDataBytes == 0) {
+            json.append("{\"role\":\"user\",\"content\":\"").append(text(200)).append("\"}");
+        } else {
+            json.append("{\"role\":\"user\",\"content\":[{\"type\":\"text\",\"text\":\"Describe this image.\"},")
+                    .append("{\"type\":\"inline_data\",\"inline_data\":{\"data\":\"")
+                    .append(base64(inlineDataBytes)).append("\"}}]}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] chatResponse(int contentChars) {
+        return ("{\"id\":\"chatcmpl-8f2a\",\"object\":\"chat.completion\",\"created\":1718000000,"
+                + "\"model\":\"gemini-2.5-pro\",\"system_fingerprint\":\"fp_1\",\"choices\":[{\"index\":0,"
+                + "\"message\":{\"role\":\"assistant\",\"content\":\"" + text(contentChars) + "\"},"
+                + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":412,\"completion_tokens\":"
+                + contentChars / 4 + ",\"total_tokens\":" + (412 + contentChars / 4)
+                + ",\"prompt_tokens_details\":{\"cached_tokens\":128},\"cache_read_input_tokens\":128}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An OCR result of {@code pages} pages, each with markdown and one
+     * embedded image.
+     */
+    static byte[] ocrResponse(int pages) {
+        StringBuilder json = new StringBuilder(pages * 40_000).append("{\"pages\":[");
+        for (int i = 0; i < pages; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":").append(i)
+                    .append(",\"markdown\":\"# Page ").append(i).append("\\n\\n").append(text(3000))
+                    .append("\",\"images\":[{\"id\":\"img-").append(i).append(".jpeg\",\"top_left_x\":10,")
+                    .append("\"top_left_y\":20,\"bottom_right_x\":300,\"bottom_right_y\":400,")
+                    .append("\"image_base64\":\"data:image/jpeg;base64,").append(base64(32 * 1024)).append("\"}],")
+                    .append("\"dimensions\":{\"dpi\":200,\"height\":2200,\"width\":1700}}");
+        }
+        return json.append("],\"model\":\"mistral-ocr-latest\",\"usage_info\":{\"pages_processed\":")
+                .append(pages).append(",\"doc_size_bytes\":").append(pages * 120_000L).append("}}")
+                .toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An upstream SSE body of {@code events} content deltas, a usage event and
+     * the terminating {@code [DONE]}.
+     */
+    static byte[] sseStream(int events) {
+        StringBuilder sse = new StringBuilder(events * 160);
+        for (int i = 0; i < events; i++) {
+            sse.append("data: {\"id\":\"chatcmpl-8f2a\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,")
+                    .append("\"model\":\"gemini-2.5-pro\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"")
+                    .append(WORDS, 0, 4 + i % 12).append("\"}}]}\n\n");
+        }
+        sse.append("data: {\"id\":\"chatcmpl-8f2a\",\"choices\":[],\"usage\":{\"prompt_tokens\":412,")
+                .append("\"completion_tokens\":").append(events).append("}}\n\n")
+                .append("data: [DONE]\n\n");
+        return sse.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes values spooled while reading {@code request}, which is done by a
+     * request filter in the application.
+     */
+    static void release(ChatRequest request) {
+        for (Message message : request.getMessages()) {
+            if (message.getContent() instanceof List<?> parts) {
+                for (Object part : parts) {
+                    if (part instanceof ContentPart contentPart && contentPart.getInlineData() != null
+                            && contentPart.getInlineData().getData() != null) {
+                        contentPart.getInlineData().getData().close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static String text(int chars) {
+        StringBuilder text = new StringBuilder(chars);
+        while (text.length() < chars) {
+            text.append(WORDS, 0, Math.min(WORDS.length(), chars - text.length()));
+        }
+        return text.toString();
+    }
+
+    private static String base64(int chars) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        Random random = new Random(42);
+        char[] data = new char[chars];
+        for (int i = 0; i < chars; i++) {
+            data[i] = alphabet.charAt(random.nextInt(64));
+        }
+        return new String(data);
+    }
+}
@@ -0,0 +1,66 @@
+package com.llm.passthrough.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.OcrResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding upstream chat completion and OCR bodies to their DTOs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseJsonBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Chat {
+
+        @Param({"512", "32768"})
+        private int contentChars;
+
+        private ObjectMapper objectMapper;
+        private byte[] body;
+
+        @Setup
+        public void setUp() {
+            objectMapper = Payloads.objectMapper(Payloads.spoolManager(false));
+            body = Payloads.chatResponse(contentChars);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Ocr {
+
+        @Param({"1", "20"})
+        private int pages;
+
+        private ObjectMapper objectMapper;
+        private byte[] body;
+
+        @Setup
+        public void setUp() {
+            objectMapper = Payloads.objectMapper(Payloads.spoolManager(false));
+            body = Payloads.ocrResponse(pages);
+        }
+    }
+
+    @Benchmark
+    public ChatResponse chatResponse(Chat chat) throws IOException {
+        return chat.objectMapper.readValue(chat.body, ChatResponse.class);
+    }
+
+    @Benchmark
+    public OcrResponse ocrResponse(Ocr ocr) throws IOException {
+        return ocr.objectMapper.readValue(ocr.body, OcrResponse.class);
+    }
+}
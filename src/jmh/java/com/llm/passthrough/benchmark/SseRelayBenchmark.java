@@ -0,0 +1,147 @@
+package com.llm.passthrough.benchmark;
+
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.stream.RelayBufferPool;
+import com.llm.passthrough.stream.RelayChunkHttpMessageConverter;
+import com.llm.passthrough.stream.SseRelayEmitter;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.MethodParameter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The blocking relay loop of {@code chatStream}: an upstream SSE body read from
+ * memory in network-sized reads, relayed through {@link SseRelayEmitter}, the
+ * chunk converter and Spring MVC's emitter handling to a discarding servlet
+ * response. Each invocation is one complete stream of {@code events} events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SseRelayBenchmark {
+
+    private static final MethodParameter RETURN_TYPE;
+
+    static {
+        try {
+            RETURN_TYPE = new MethodParameter(SseRelayBenchmark.class.getDeclaredMethod("handlerMethod"), -1);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"EVENTS", "RAW"})
+    private ApigeeProperties.StreamMode mode;
+
+    /**
+     * Largest upstream read; small reads split events across reads as a slow
+     * network would.
+     */
+    @Param({"64", "8192"})
+    private int readSize;
+
+    @Param({"500"})
+    private int events;
+
+    private byte[] upstream;
+    private RelayBufferPool bufferPool;
+    private ResponseBodyEmitterReturnValueHandler returnValueHandler;
+
+    @Setup
+    public void setUp() {
+        upstream = Payloads.sseStream(events);
+        bufferPool = new RelayBufferPool(8192, 256);
+        returnValueHandler = new ResponseBodyEmitterReturnValueHandler(
+                List.of(new RelayChunkHttpMessageConverter()));
+    }
+
+    @Benchmark
+    public long relay() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/chat/completions/stream");
+        request.setAsyncSupported(true);
+        DiscardingResponse response = new DiscardingResponse();
+        WebAsyncUtils.getAsyncManager(request)
+                .setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+
+        SseRelayEmitter emitter = new SseRelayEmitter(60_000L, bufferPool, mode);
+        returnValueHandler.handleReturnValue(emitter, RETURN_TYPE, new ModelAndViewContainer(),
+                new ServletWebRequest(request, response));
+
+        emitter.relay(new NetworkInputStream(upstream, readSize));
+        emitter.complete();
+        return response.written;
+    }
+
+    @SuppressWarnings("unused")
+    private static ResponseBodyEmitter handlerMethod() {
+        return null;
+    }
+
+    /**
+     * Returns at most {@code readSize} bytes per read.
+     */
+    private static final class NetworkInputStream extends ByteArrayInputStream {
+
+        private final int readSize;
+
+        NetworkInputStream(byte[] buf, int readSize) {
+            super(buf);
+            this.readSize = readSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, readSize));
+        }
+    }
+
+    private static final class DiscardingResponse extends MockHttpServletResponse {
+
+        private long written;
+
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                written++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written += len;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+}
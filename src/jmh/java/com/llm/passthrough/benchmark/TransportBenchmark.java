@@ -0,0 +1,283 @@
+package com.llm.passthrough.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.config.SslConfig;
+import com.llm.passthrough.transport.ReloadableSslContext;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AbstractServerExchangeHandler;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.client.RestClient;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upstream calls over the HTTP/1.1 connection pool and the multiplexed HTTP/2
+ * transport, against a local TLS stub that answers every request after
+ * {@code latencyMs}. The HTTP/2 transport is also run against an HTTP/1.1-only
+ * stub, which does not offer h2 through ALPN, to exercise the fallback. Each
+ * invocation is one request; {@code @Threads} callers share the transport, so
+ * the score shows how well it multiplexes. The connections each stub accepted
+ * are printed at the end of a trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+public class TransportBenchmark {
+
+    private static final String REQUEST = "{\"model\":\"gemini-pro\",\"messages\":[{\"role\":\"user\",\"content\":\"Hello\"}]}";
+    private static final String RESPONSE = "{\"id\":\"chatcmpl-1\",\"model\":\"gemini-pro\",\"choices\":[{\"index\":0,"
+            + "\"message\":{\"role\":\"assistant\",\"content\":\"Hi\"},\"finish_reason\":\"stop\"}]}";
+
+    public enum Transport {
+        HTTP1_POOL, HTTP2, HTTP2_FALLBACK
+    }
+
+    @Param({"HTTP1_POOL", "HTTP2", "HTTP2_FALLBACK"})
+    private Transport transport;
+
+    @Param({"50"})
+    private int latencyMs;
+
+    @Param({"4"})
+    private int connections;
+
+    private Path certs;
+    private Stub stub;
+    private ScheduledExecutorService delays;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private RestClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Per-request client logging would dominate the measurement
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.INFO);
+        certs = Files.createTempDirectory("transport-benchmark");
+        delays = Executors.newScheduledThreadPool(2);
+        stub = new Stub(selfSignedServerContext(), transport == Transport.HTTP2_FALLBACK
+                ? HttpVersionPolicy.FORCE_HTTP_1 : HttpVersionPolicy.NEGOTIATE);
+
+        SslConfig sslConfig = new SslConfig(properties(), new DefaultResourceLoader());
+        ObjectProvider<ReloadableSslContext> sslContext = new StaticListableBeanFactory(
+                Map.of("apigeeSslContext", sslConfig.apigeeSslContext())).getBeanProvider(ReloadableSslContext.class);
+        ClientHttpRequestFactory requestFactory;
+        if (transport == Transport.HTTP1_POOL) {
+            connectionManager = sslConfig.apigeeConnectionManager(sslContext);
+            httpClient = sslConfig.apigeeHttpClient(connectionManager);
+            requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        } else {
+            requestFactory = sslConfig.http2RequestFactory(sslContext);
+        }
+        client = RestClient.builder()
+                .baseUrl("https://localhost:" + stub.port() + "/v1/chat/completions")
+                .defaultHeader("Content-Type", "application/json")
+                .requestFactory(requestFactory)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.printf("%n%s: %d upstream connections%n", transport, stub.connections.get());
+        if (httpClient != null) {
+            httpClient.close();
+            connectionManager.close();
+        }
+        stub.close();
+        delays.shutdownNow();
+        FileSystemUtils.deleteRecursively(certs);
+    }
+
+    @Benchmark
+    public String call() {
+        return client.post().body(REQUEST).retrieve().body(String.class);
+    }
+
+    private ApigeeProperties properties() {
+        ApigeeProperties properties = new ApigeeProperties();
+        properties.getSsl().setCaCertPath(certs.resolve("ca.crt").toUri().toString());
+        properties.getSsl().setWatch(false);
+        properties.getHttp2().setEnabled(true);
+        properties.getHttp2().setConnections(connections);
+        // One connection per caller, as the pool would open under this load
+        properties.getPool().setMaxPerRoute(64);
+        return properties;
+    }
+
+    private SSLContext selfSignedServerContext() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X500Name subject = new X500Name("CN=localhost");
+        X509CertificateHolder holder = new JcaX509v3CertificateBuilder(subject, BigInteger.ONE,
+                new Date(System.currentTimeMillis() - 60_000), new Date(System.currentTimeMillis() + 86_400_000),
+                subject, keyPair.getPublic())
+                .addExtension(Extension.subjectAlternativeName, false,
+                        new GeneralNames(new GeneralName(GeneralName.dNSName, "localhost")))
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate()));
+        X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(holder);
+
+        try (Writer writer = Files.newBufferedWriter(certs.resolve("ca.crt"));
+             JcaPEMWriter pem = new JcaPEMWriter(writer)) {
+            pem.writeObject(certificate);
+        }
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("stub", keyPair.getPrivate(), new char[0], new X509Certificate[]{certificate});
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, new char[0]);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /**
+     * Apigee stand-in: answers every POST with a fixed completion after
+     * {@code latencyMs}, and counts the TLS connections it accepts.
+     */
+    private final class Stub implements AutoCloseable {
+
+        private final HttpAsyncServer server;
+        private final int port;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        Stub(SSLContext sslContext, HttpVersionPolicy versionPolicy) throws Exception {
+            server = H2ServerBootstrap.bootstrap()
+                    .setVersionPolicy(versionPolicy)
+                    .setTlsStrategy(new H2ServerTlsStrategy(sslContext))
+                    .setH2Config(H2Config.custom().setMaxConcurrentStreams(100).build())
+                    .setIOReactorConfig(IOReactorConfig.custom().setSoTimeout(30, TimeUnit.SECONDS).setBacklogSize(1024).build())
+                    .setIOSessionListener(new ConnectionCounter())
+                    .register("*", () -> new AbstractServerExchangeHandler<Message<HttpRequest, String>>() {
+                        @Override
+                        protected AsyncRequestConsumer<Message<HttpRequest, String>> supplyConsumer(
+                                HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+                            return new BasicRequestConsumer<>(entityDetails != null ? new StringAsyncEntityConsumer() : null);
+                        }
+
+                        @Override
+                        protected void handle(Message<HttpRequest, String> request,
+                                              AsyncServerRequestHandler.ResponseTrigger responseTrigger,
+                                              HttpContext context) {
+                            delays.schedule(() -> {
+                                responseTrigger.submitResponse(
+                                        new BasicResponseProducer(200, RESPONSE, ContentType.APPLICATION_JSON), context);
+                                return null;
+                            }, latencyMs, TimeUnit.MILLISECONDS);
+                        }
+                    })
+                    .create();
+            server.start();
+            ListenerEndpoint endpoint = server.listen(new InetSocketAddress("localhost", 0), URIScheme.HTTPS, versionPolicy, null).get();
+            port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+        }
+
+        int port() {
+            return port;
+        }
+
+        @Override
+        public void close() {
+            server.close(CloseMode.IMMEDIATE);
+        }
+
+        private final class ConnectionCounter implements IOSessionListener {
+            @Override
+            public void connected(IOSession session) {
+                connections.incrementAndGet();
+            }
+
+            @Override
+            public void startTls(IOSession session) {
+            }
+
+            @Override
+            public void inputReady(IOSession session) {
+            }
+
+            @Override
+            public void outputReady(IOSession session) {
+            }
+
+            @Override
+            public void timeout(IOSession session) {
+            }
+
+            @Override
+            public void exception(IOSession session, Exception ex) {
+            }
+
+            @Override
+            public void disconnected(IOSession session) {
+            }
+        }
+    }
+}
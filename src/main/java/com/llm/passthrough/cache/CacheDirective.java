@@ -0,0 +1,52 @@
+package com.llm.passthrough.cache;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Per-request cache behaviour, taken from the client's {@code Cache-Control}
+ * header.
+ */
+public enum CacheDirective {
+
+    /** Serve from the cache when possible and store fresh responses. */
+    DEFAULT(true, true),
+
+    /** {@code no-cache}: always go upstream, but refresh the cached entry. */
+    NO_CACHE(false, true),
+
+    /** {@code no-store}: bypass the cache entirely. */
+    NO_STORE(false, false);
+
+    private final boolean lookup;
+    private final boolean store;
+
+    CacheDirective(boolean lookup, boolean store) {
+        this.lookup = lookup;
+        this.store = store;
+    }
+
+    public boolean isLookup() {
+        return lookup;
+    }
+
+    public boolean isStore() {
+        return store;
+    }
+
+    public static CacheDirective fromCacheControl(String cacheControl) {
+        if (!StringUtils.hasText(cacheControl)) {
+            return DEFAULT;
+        }
+        CacheDirective directive = DEFAULT;
+        for (String token : cacheControl.split(",")) {
+            String value = token.trim().toLowerCase();
+            if (value.equals("no-store")) {
+                return NO_STORE;
+            }
+            if (value.equals("no-cache")) {
+                directive = NO_CACHE;
+            }
+        }
+        return directive;
+    }
+}
@@ -0,0 +1,120 @@
+package com.llm.passthrough.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.llm.passthrough.dto.ChatRequest;
+import com.llm.passthrough.dto.ChatResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exact-match cache of non-streaming chat responses.
+ *
+ * <p>Entries are keyed by the {@link RequestFingerprint} of model, messages,
+ * temperature, max_tokens and candidate_count, and stored as serialized bytes
+ * so every hit returns a fresh object and the cache can be bounded by size. Eviction is Caffeine's
+ * W-TinyLFU, with entries expiring {@code ttl} after they were written.
+ */
+@Slf4j
+public class ChatResponseCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "llm.chat";
+
+    // Key and entry bookkeeping, counted towards the size bound
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final boolean enabled;
+    private final boolean deterministicOnly;
+    private final ObjectMapper objectMapper;
+    private final RequestFingerprint fingerprint;
+    private final Cache<String, byte[]> cache;
+
+    public ChatResponseCache(boolean enabled, long maxBytes, Duration ttl, boolean deterministicOnly,
+                             ObjectMapper objectMapper, RequestFingerprint fingerprint) {
+        this.enabled = enabled;
+        this.deterministicOnly = deterministicOnly;
+        this.objectMapper = objectMapper;
+        this.fingerprint = fingerprint;
+        this.cache = enabled
+                ? Caffeine.newBuilder()
+                        .maximumWeight(maxBytes)
+                        .weigher((String key, byte[] value) -> value.length + ENTRY_OVERHEAD)
+                        .expireAfterWrite(ttl)
+                        .recordStats()
+                        .build()
+                : null;
+        if (enabled) {
+            log.info("Chat response cache enabled - Max size: {} bytes, TTL: {}", maxBytes, ttl);
+        }
+    }
+
+    /**
+     * Whether the request may be served from, or stored in, the cache at all.
+     */
+    public boolean isCacheable(ChatRequest request, CacheDirective directive) {
+        if (!enabled || directive == CacheDirective.NO_STORE) {
+            return false;
+        }
+        Double temperature = request.getTemperature();
+        return !deterministicOnly || (temperature != null && temperature == 0.0);
+    }
+
+    public String key(ChatRequest request) {
+        Map<String, Object> canonical = new LinkedHashMap<>();
+        canonical.put("model", request.getModel());
+        canonical.put("messages", request.getMessages());
+        canonical.put("temperature", request.getTemperature());
+        canonical.put("max_tokens", request.getMaxTokens());
+        canonical.put("candidate_count", request.getCandidateCount());
+        return fingerprint.of(canonical);
+    }
+
+    public ChatResponse get(String key) {
+        byte[] cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(cached, ChatResponse.class);
+        } catch (IOException e) {
+            log.warn("Dropping unreadable cache entry {}", key, e);
+            cache.invalidate(key);
+            return null;
+        }
+    }
+
+    public void put(String key, ChatResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            cache.put(key, objectMapper.writeValueAsBytes(response));
+        } catch (IOException e) {
+            log.warn("Failed to cache chat response {}", key, e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+        Gauge.builder("cache.weight", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .tag("cache", CACHE_NAME)
+                .description("Bytes held by the cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -0,0 +1,51 @@
+package com.llm.passthrough.cache;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of a value's canonical JSON (sorted keys, no whitespace), used to
+ * recognise identical requests regardless of how the client ordered them.
+ * The JSON is streamed into the digest, so spooled payloads are hashed
+ * without being materialized. The canonical mapper is rebuilt from the
+ * given one, so it keeps its modules and inclusion settings.
+ */
+public class RequestFingerprint {
+
+    private final ObjectMapper canonicalMapper;
+
+    public RequestFingerprint(JsonMapper jsonMapper) {
+        this.canonicalMapper = jsonMapper.rebuild()
+                .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                .disable(SerializationFeature.INDENT_OUTPUT)
+                .build();
+    }
+
+    public String of(Object value) {
+        MessageDigest digest = sha256();
+        try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            canonicalMapper.writeValue(out, value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to fingerprint request", e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
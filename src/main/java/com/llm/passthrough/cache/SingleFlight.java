@@ -0,0 +1,93 @@
+package com.llm.passthrough.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one.
+ *
+ * <p>The first caller for a key runs the call on its own thread; callers that
+ * arrive while it is in flight wait for it and receive the same result, or the
+ * same exception. Nothing is kept once the call completes, so this only
+ * deduplicates overlapping requests; see {@link ChatResponseCache} for reuse
+ * over time.
+ */
+public class SingleFlight<K, V> implements MeterBinder {
+
+    private final String endpoint;
+    private final boolean enabled;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SingleFlight(String endpoint, boolean enabled) {
+        this.endpoint = endpoint;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public V execute(K key, Supplier<V> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            return await(leader);
+        }
+
+        try {
+            V result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("llm.coalesced", coalesced, AtomicLong::get)
+                .tag("endpoint", endpoint)
+                .description("Requests served by joining an identical in-flight upstream call")
+                .register(registry);
+        Gauge.builder("llm.inflight.distinct", inFlight, ConcurrentMap::size)
+                .tag("endpoint", endpoint)
+                .description("Distinct upstream calls currently in flight")
+                .register(registry);
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
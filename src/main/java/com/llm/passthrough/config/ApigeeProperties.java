@@ -4,8 +4,15 @@ import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Data
 @Component
 @Validated
@@ -26,6 +33,24 @@ public class ApigeeProperties {
 
     private Ssl ssl = new Ssl();
 
+    private Pool pool = new Pool();
+
+    private Http2 http2 = new Http2();
+
+    private Streaming streaming = new Streaming();
+
+    private Chat chat = new Chat();
+
+    private Ocr ocr = new Ocr();
+
+    private Metrics metrics = new Metrics();
+
+    private Limiter limiter = new Limiter();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private RateLimit rateLimit = new RateLimit();
+
     @Data
     public static class Ssl {
         private boolean enabled = true;
@@ -36,5 +61,525 @@ public class ApigeeProperties {
         private String tlsKeyPath;
         private String tlsCertPath;
         private String caCertPath;
+
+        /**
+         * Rebuild the SSL context when the key, certificate, CA or keystore files
+         * change on disk, without a restart. Off by default: enabling it starts a
+         * file watcher thread.
+         */
+        private boolean watch = false;
+
+        /**
+         * Quiet period after the last file change before the context is rebuilt.
+         */
+        private Duration watchDelay = Duration.ofSeconds(2);
+
+        /**
+         * TLS sessions cached for resumption, so new connections can skip the
+         * full handshake; 0 means no limit.
+         */
+        private int sessionCacheSize = 1000;
+
+        private Duration sessionTimeout = Duration.ofHours(1);
+    }
+
+    /**
+     * Upstream connection pool shared by the chat and OCR clients.
+     */
+    @Data
+    public static class Pool {
+        private int maxTotal = 200;
+        private int maxPerRoute = 20;
+        private Duration connectTimeout = Duration.ofSeconds(30);
+
+        /**
+         * How long a request waits for a pooled connection before failing.
+         */
+        private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Maximum inactivity between two reads, including gaps between SSE events.
+         */
+        private Duration socketTimeout = Duration.ofMinutes(5);
+
+        /**
+         * Keep-alive for idle connections when the upstream does not send one.
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+
+        /**
+         * Close connections older than this, whether or not they are idle.
+         */
+        private Duration timeToLive = Duration.ofMinutes(10);
+
+        /**
+         * Close pooled connections idle for longer than this, checked in the background.
+         */
+        private Duration evictIdleAfter = Duration.ofMinutes(1);
+
+        /**
+         * Check a pooled connection is still open before reuse if idle this long.
+         */
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+        private Warmup warmup = new Warmup();
+    }
+
+    @Data
+    public static class Warmup {
+        /**
+         * Open and handshake connections to the chat and OCR hosts at startup,
+         * before the application reports ready.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Connections opened per upstream route at startup.
+         */
+        private int connections = 4;
+
+        /**
+         * Report ready once this has passed even if warming has not finished.
+         */
+        private Duration deadline = Duration.ofSeconds(30);
+
+        /**
+         * Connections kept open per route while no requests are in flight; 0 disables.
+         */
+        private int minIdle = 2;
+
+        /**
+         * How often idle routes are topped back up to min-idle.
+         */
+        private Duration interval = Duration.ofSeconds(20);
+    }
+
+    /**
+     * HTTP/2 transport for the chat and OCR clients, used instead of the pool.
+     */
+    @Data
+    public static class Http2 {
+        /**
+         * Multiplex requests over a few HTTP/2 connections; a host that does not
+         * select h2 through ALPN is served over HTTP/1.1 instead.
+         */
+        private boolean enabled = false;
+
+        /**
+         * HTTP/2 connections opened to each upstream host.
+         */
+        private int connections = 4;
+
+        /**
+         * Requests in flight on one connection; keep at or below the upstream's
+         * SETTINGS_MAX_CONCURRENT_STREAMS.
+         */
+        private int maxConcurrentStreams = 100;
+    }
+
+    @Data
+    public static class Chat {
+        /**
+         * Relay the upstream completion body, status and content type unchanged
+         * instead of binding it to ChatResponse and serializing it again.
+         */
+        private boolean passthrough = false;
+
+        /**
+         * Bytes of a raw request body read ahead, and validated, before anything
+         * is sent upstream; the remainder is piped through without buffering.
+         */
+        private int rawRequestBufferSize = 65536;
+
+        private Spool spool = new Spool();
+
+        private Cache cache = new Cache();
+
+        /**
+         * Let concurrent identical non-streaming requests share one upstream call.
+         */
+        private boolean coalesce = false;
+
+        private Hedge hedge = new Hedge();
+
+        private Batch batch = new Batch();
+    }
+
+    /**
+     * Batch chat endpoint: items are sent through the regular chat path,
+     * at most {@code parallelism} at a time per batch.
+     */
+    @Data
+    public static class Batch {
+        private int parallelism = 8;
+        private int maxItems = 1000;
+
+        /**
+         * Threads shared by all batches in flight.
+         */
+        private int maxThreads = 64;
+
+        /**
+         * Items not done by then are reported as timed out.
+         */
+        private Duration timeout = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Hedge {
+        /**
+         * Send a second identical non-streaming chat request when the first has
+         * not answered within the model's hedge delay; the first success wins
+         * and the other is cancelled. Raw request bodies are never hedged.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Percentile of the model's recent latencies used as its hedge delay.
+         */
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(50);
+        private Duration maxDelay = Duration.ofSeconds(30);
+
+        /**
+         * Successful requests seen for a model before it is hedged.
+         */
+        private int minSamples = 20;
+
+        /**
+         * Recent latencies kept per model.
+         */
+        private int window = 256;
+
+        /**
+         * Hedges allowed per request, e.g. 0.05 for at most 5% extra upstream load.
+         */
+        private double budget = 0.05;
+    }
+
+    @Data
+    public static class Ocr {
+        /**
+         * Let concurrent requests for the same model, document and pages share
+         * one upstream call.
+         */
+        private boolean coalesce = false;
+
+        private OcrStore store = new OcrStore();
+
+        private OcrSplit split = new OcrSplit();
+
+        private OcrJobs jobs = new OcrJobs();
+
+        private OcrBlobs blobs = new OcrBlobs();
+    }
+
+    /**
+     * Moves OCR page images out of responses into a local content-addressed
+     * blob store, leaving a URL to fetch each from.
+     */
+    @Data
+    public static class OcrBlobs {
+        private boolean enabled = false;
+        private String directory = "./data/ocr-blobs";
+
+        /**
+         * How long a blob is kept after it was last written; must be at least
+         * the ttl of the OCR result store and jobs when those are enabled.
+         */
+        private Duration ttl = Duration.ofDays(30);
+        private Duration sweepInterval = Duration.ofHours(1);
+
+        /**
+         * Images smaller than this stay inline.
+         */
+        private DataSize minSize = DataSize.ofKilobytes(4);
+    }
+
+    /**
+     * Asynchronous OCR jobs: submitted, run on a worker pool and polled for,
+     * so that no request is held open for the whole OCR call.
+     */
+    @Data
+    public static class OcrJobs {
+        private boolean enabled = false;
+        private String directory = "./data/ocr-jobs";
+
+        /**
+         * Jobs run at once.
+         */
+        private int workers = 4;
+
+        /**
+         * Jobs waiting for a worker before submissions are refused with 503.
+         */
+        private int maxQueued = 1000;
+
+        /**
+         * How long finished jobs and their results are kept.
+         */
+        private Duration ttl = Duration.ofDays(7);
+
+        private Duration callbackTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Attempts to deliver a callback, backing off from one second.
+         */
+        private int callbackAttempts = 3;
+
+        /**
+         * Hosts callbacks may be posted to; an entry starting with a dot allows
+         * every subdomain. Empty refuses callbacks. Hosts resolving to loopback,
+         * link-local or private addresses are refused regardless.
+         */
+        private List<String> callbackHosts = new ArrayList<>();
+    }
+
+    /**
+     * Splits large OCR requests into page ranges sent in parallel, so that no
+     * single upstream call covers the whole document.
+     */
+    @Data
+    public static class OcrSplit {
+        private boolean enabled = false;
+        private int pagesPerChunk = 20;
+
+        /**
+         * Chunks of one request in flight at once.
+         */
+        private int concurrency = 4;
+
+        /**
+         * Threads shared by all split requests.
+         */
+        private int maxThreads = 32;
+
+        /**
+         * Attempts per chunk on a 5xx, 429 or no response; client errors are not retried.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Wait before the first retry of a chunk, doubled for each further one.
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+    }
+
+    @Data
+    public static class OcrStore {
+        /**
+         * Keep OCR results on local disk, keyed by model, document URL, optional
+         * X-Document-Hash and pages, so they survive restarts.
+         */
+        private boolean enabled = false;
+        private String directory = "./data/ocr-store";
+        private Duration ttl = Duration.ofDays(30);
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+
+        /**
+         * Initial index capacity; the index grows on compaction as needed.
+         */
+        private int indexSlots = 65536;
+        private Duration compactionInterval = Duration.ofMinutes(10);
+
+        /**
+         * Compact once this fraction of the segment is expired or overwritten.
+         */
+        private double compactionDeadRatio = 0.5;
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * Serve repeated non-streaming chat requests from memory. Keyed by a hash
+         * of model, messages, temperature, max_tokens and candidate_count.
+         */
+        private boolean enabled = false;
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * Only cache requests with temperature 0.
+         */
+        private boolean deterministicOnly = true;
+    }
+
+    @Data
+    public static class Spool {
+        /**
+         * Keep inline_data payloads of at least {@code threshold} outside the
+         * heap while a typed ChatRequest is in flight. Multimodal content is
+         * then bound to ContentPart, which forwards only the fields it models.
+         */
+        private boolean enabled = false;
+        private DataSize threshold = DataSize.ofKilobytes(256);
+        private SpoolStore store = SpoolStore.OFF_HEAP;
+
+        /**
+         * Direct memory shared by all in-flight payloads; overflow goes to temp files.
+         */
+        private DataSize maxOffHeap = DataSize.ofMegabytes(256);
+
+        /**
+         * Temp file directory, defaults to java.io.tmpdir.
+         */
+        private String directory;
+    }
+
+    @Data
+    public static class Streaming {
+        /**
+         * RAW relays upstream SSE frames unchanged; EVENTS re-wraps every upstream
+         * line in its own {@code data:} event (the original behaviour).
+         */
+        private StreamMode mode = StreamMode.EVENTS;
+        /**
+         * BLOCKING relays on the classic RestClient, one executor thread per
+         * stream; ASYNC uses the non-blocking HttpClient5 async API.
+         */
+        private StreamEngine engine = StreamEngine.BLOCKING;
+        private int asyncIoThreads = Runtime.getRuntime().availableProcessors();
+        private Duration timeout = Duration.ofMinutes(5);
+        private int relayBufferSize = 8192;
+        private int relayBufferPoolSize = 256;
+        private int maxConcurrentStreams = 200;
+        private int maxQueuedStreams = 100;
+        /**
+         * Run relay tasks on virtual threads; requires Java 21, otherwise a
+         * platform thread pool of max-concurrent-streams threads is used.
+         */
+        private boolean virtualThreads = false;
+        /**
+         * Status returned when both running and waiting slots are taken (429 or 503).
+         */
+        private int rejectionStatus = 503;
+    }
+
+    /**
+     * Latency and token metrics recorded per model and endpoint.
+     */
+    @Data
+    public static class Metrics {
+        /**
+         * Publish histogram buckets for the latency and size meters so that
+         * percentiles can be aggregated across instances.
+         */
+        private boolean percentileHistogram = true;
+
+        /**
+         * Distinct model tag values kept; meters for further models are dropped,
+         * as the model name comes from the client.
+         */
+        private int maxModels = 50;
+    }
+
+    /**
+     * Adaptive concurrency limit on non-streaming chat and OCR calls, learned
+     * from upstream latency; calls over the limit are refused with 503.
+     */
+    @Data
+    public static class Limiter {
+        private boolean enabled = false;
+
+        /**
+         * Keep a separate limit per model instead of one per route.
+         */
+        private boolean perModel = false;
+        private int initialLimit = 20;
+        private int minLimit = 4;
+        private int maxLimit = 200;
+
+        /**
+         * Latency growth over the long-term average tolerated before the limit
+         * shrinks; LLM latency varies with output length, so keep this generous.
+         */
+        private double tolerance = 2.0;
+
+        /**
+         * Factor the limit is multiplied by when a call gets a 5xx, 429 or no response.
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Weight of each new estimate; lower values move the limit more slowly.
+         */
+        private double smoothing = 0.2;
+    }
+
+    /**
+     * Fails chat and OCR calls fast with 503 while their upstream keeps
+     * failing, probing for recovery after open-duration.
+     */
+    @Data
+    public static class CircuitBreaker {
+        private boolean enabled = false;
+
+        /**
+         * Fraction of recent calls with a 5xx, 429 or no response that opens the breaker.
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Recent calls the failure rate is computed over.
+         */
+        private int window = 100;
+        private int minimumCalls = 20;
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Probe calls let through after open-duration; all must succeed to close.
+         */
+        private int halfOpenCalls = 3;
+    }
+
+    /**
+     * Token budget per caller and model on chat calls; callers over budget
+     * are refused with 429 before the upstream is called.
+     */
+    @Data
+    public static class RateLimit {
+        private boolean enabled = false;
+
+        /**
+         * Request header naming the caller when there is no client certificate or
+         * principal. Only set it when a gateway in front sets or strips it, as its
+         * value is trusted; unset, the remote address is used.
+         */
+        private String clientHeader;
+
+        /**
+         * Tokens each caller may spend per minute on a model.
+         */
+        private long tokensPerMinute = 100_000;
+
+        /**
+         * Tokens a caller may spend at once after being idle; 0 means tokens-per-minute.
+         */
+        private long burst = 0;
+
+        /**
+         * Tokens-per-minute overrides by model name.
+         */
+        private Map<String, Long> models = new HashMap<>();
+
+        /**
+         * Buckets kept before full (idle) ones are swept.
+         */
+        private int maxBuckets = 10_000;
+    }
+
+    public enum StreamMode {
+        RAW,
+        EVENTS
+    }
+
+    public enum StreamEngine {
+        BLOCKING,
+        ASYNC
+    }
+
+    public enum SpoolStore {
+        OFF_HEAP,
+        FILE
     }
 }
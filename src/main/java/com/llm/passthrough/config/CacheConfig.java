@@ -0,0 +1,90 @@
+package com.llm.passthrough.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.cache.ChatResponseCache;
+import com.llm.passthrough.cache.RequestFingerprint;
+import com.llm.passthrough.cache.SingleFlight;
+import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.store.BlobStore;
+import com.llm.passthrough.store.OcrJobStore;
+import com.llm.passthrough.store.OcrResultStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Wiring for reusing upstream results: the opt-in chat response cache,
+ * per-endpoint coalescing of identical in-flight requests, the persistent
+ * OCR result store, the OCR job store and the blob store for OCR images.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class CacheConfig {
+
+    private final ApigeeProperties apigeeProperties;
+
+    @Bean
+    public RequestFingerprint requestFingerprint(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        // Same customizations as the application's ObjectMapper, on a JsonMapper that can be rebuilt
+        JsonMapper jsonMapper = JsonMapper.builder().build();
+        objectMapperBuilder.configure(jsonMapper);
+        return new RequestFingerprint(jsonMapper);
+    }
+
+    @Bean
+    public ChatResponseCache chatResponseCache(ObjectMapper objectMapper, RequestFingerprint requestFingerprint) {
+        ApigeeProperties.Cache cache = apigeeProperties.getChat().getCache();
+        return new ChatResponseCache(cache.isEnabled(), cache.getMaxSize().toBytes(), cache.getTtl(),
+                cache.isDeterministicOnly(), objectMapper, requestFingerprint);
+    }
+
+    @Bean
+    public SingleFlight<String, ChatResponse> chatSingleFlight() {
+        return new SingleFlight<>("chat", apigeeProperties.getChat().isCoalesce());
+    }
+
+    @Bean
+    public SingleFlight<String, OcrResponse> ocrSingleFlight() {
+        return new SingleFlight<>("ocr", apigeeProperties.getOcr().isCoalesce());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.ocr.store", name = "enabled", havingValue = "true")
+    public OcrResultStore ocrResultStore() throws IOException {
+        ApigeeProperties.OcrStore store = apigeeProperties.getOcr().getStore();
+        return new OcrResultStore(Path.of(store.getDirectory()), store.getTtl(), store.getMaxSize().toBytes(),
+                store.getIndexSlots(), store.getCompactionInterval(), store.getCompactionDeadRatio());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.ocr.jobs", name = "enabled", havingValue = "true")
+    public OcrJobStore ocrJobStore(ObjectMapper objectMapper) throws IOException {
+        ApigeeProperties.OcrJobs jobs = apigeeProperties.getOcr().getJobs();
+        return new OcrJobStore(Path.of(jobs.getDirectory()), jobs.getTtl(), objectMapper);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.ocr.blobs", name = "enabled", havingValue = "true")
+    public BlobStore ocrBlobStore() throws IOException {
+        ApigeeProperties.OcrBlobs blobs = apigeeProperties.getOcr().getBlobs();
+        // Stored results and job results point at blobs, which must not be deleted before them
+        ApigeeProperties.OcrStore store = apigeeProperties.getOcr().getStore();
+        if (store.isEnabled() && store.getTtl().compareTo(blobs.getTtl()) > 0) {
+            throw new IllegalStateException("apigee.ocr.blobs.ttl (" + blobs.getTtl()
+                    + ") must be at least apigee.ocr.store.ttl (" + store.getTtl() + ")");
+        }
+        ApigeeProperties.OcrJobs jobs = apigeeProperties.getOcr().getJobs();
+        if (jobs.isEnabled() && jobs.getTtl().compareTo(blobs.getTtl()) > 0) {
+            throw new IllegalStateException("apigee.ocr.blobs.ttl (" + blobs.getTtl()
+                    + ") must be at least apigee.ocr.jobs.ttl (" + jobs.getTtl() + ")");
+        }
+        return new BlobStore(Path.of(blobs.getDirectory()), blobs.getTtl(), blobs.getSweepInterval());
+    }
+}
@@ -0,0 +1,32 @@
+package com.llm.passthrough.config;
+
+import com.llm.passthrough.metrics.LlmMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Wiring for the per-model latency and token meters.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class MetricsConfig {
+
+    private final ApigeeProperties apigeeProperties;
+
+    @Bean
+    public LlmMetrics llmMetrics(MeterRegistry meterRegistry) {
+        return new LlmMetrics(meterRegistry, apigeeProperties.getMetrics().isPercentileHistogram());
+    }
+
+    /**
+     * Caps the model tag, which is taken from client requests.
+     */
+    @Bean
+    public MeterFilter llmModelTagLimit() {
+        return MeterFilter.maximumAllowableTags("llm.", "model",
+                apigeeProperties.getMetrics().getMaxModels(), MeterFilter.deny());
+    }
+}
@@ -0,0 +1,68 @@
+package com.llm.passthrough.config;
+
+import com.llm.passthrough.metrics.LlmMetrics;
+import com.llm.passthrough.resilience.AdaptiveLimit;
+import com.llm.passthrough.resilience.CircuitBreaker;
+import com.llm.passthrough.resilience.RequestHedger;
+import com.llm.passthrough.resilience.TokenRateLimiter;
+import com.llm.passthrough.resilience.UpstreamGuard;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Supplier;
+
+/**
+ * Wiring for protecting callers from slow or overloaded upstreams: request
+ * hedging for non-streaming chat, an adaptive concurrency limit and
+ * circuit breaker per upstream route, and a token budget per chat caller.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ResilienceConfig {
+
+    private final ApigeeProperties apigeeProperties;
+
+    @Bean
+    public RequestHedger chatRequestHedger(MeterRegistry meterRegistry) {
+        ApigeeProperties.Hedge hedge = apigeeProperties.getChat().getHedge();
+        return new RequestHedger(hedge.isEnabled(), hedge.getPercentile(), hedge.getMinDelay(),
+                hedge.getMaxDelay(), hedge.getMinSamples(), hedge.getWindow(), hedge.getBudget(),
+                apigeeProperties.getMetrics().getMaxModels(), meterRegistry);
+    }
+
+    @Bean
+    public UpstreamGuard chatUpstreamGuard(MeterRegistry meterRegistry) {
+        return upstreamGuard(LlmMetrics.CHAT, meterRegistry);
+    }
+
+    @Bean
+    public UpstreamGuard ocrUpstreamGuard(MeterRegistry meterRegistry) {
+        return upstreamGuard(LlmMetrics.OCR, meterRegistry);
+    }
+
+    @Bean
+    public TokenRateLimiter chatRateLimiter(MeterRegistry meterRegistry) {
+        ApigeeProperties.RateLimit rateLimit = apigeeProperties.getRateLimit();
+        return new TokenRateLimiter(rateLimit.isEnabled(), LlmMetrics.CHAT, rateLimit.getTokensPerMinute(),
+                rateLimit.getBurst(), rateLimit.getModels(), rateLimit.getMaxBuckets(), meterRegistry);
+    }
+
+    private UpstreamGuard upstreamGuard(String route, MeterRegistry meterRegistry) {
+        ApigeeProperties.Limiter limiter = apigeeProperties.getLimiter();
+        Supplier<AdaptiveLimit> limits = limiter.isEnabled()
+                ? () -> new AdaptiveLimit(limiter.getInitialLimit(), limiter.getMinLimit(), limiter.getMaxLimit(),
+                        limiter.getTolerance(), limiter.getBackoffRatio(), limiter.getSmoothing())
+                : null;
+
+        ApigeeProperties.CircuitBreaker breaker = apigeeProperties.getCircuitBreaker();
+        CircuitBreaker circuitBreaker = breaker.isEnabled()
+                ? new CircuitBreaker(route, breaker.getFailureRateThreshold(), breaker.getWindow(),
+                        breaker.getMinimumCalls(), breaker.getOpenDuration(), breaker.getHalfOpenCalls())
+                : null;
+
+        return new UpstreamGuard(route, limits, limiter.isPerModel(), apigeeProperties.getMetrics().getMaxModels(),
+                circuitBreaker, meterRegistry);
+    }
+}
@@ -0,0 +1,54 @@
+package com.llm.passthrough.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.llm.passthrough.dto.Message;
+import com.llm.passthrough.dto.MessageContentDeserializer;
+import com.llm.passthrough.spool.SpoolCleanupFilter;
+import com.llm.passthrough.spool.SpoolManager;
+import com.llm.passthrough.spool.SpooledText;
+import com.llm.passthrough.spool.SpooledTextDeserializer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+
+/**
+ * Wiring for spooling large {@code inline_data} payloads out of the heap: the
+ * spool manager, the Jackson module that routes {@link SpooledText} values
+ * through it, and the filter that releases them per request.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class SpoolConfig {
+
+    private final ApigeeProperties apigeeProperties;
+
+    @Bean
+    public SpoolManager spoolManager() {
+        ApigeeProperties.Spool spool = apigeeProperties.getChat().getSpool();
+        Path directory = Path.of(StringUtils.hasText(spool.getDirectory())
+                ? spool.getDirectory() : System.getProperty("java.io.tmpdir"));
+        return new SpoolManager(spool.isEnabled(), (int) spool.getThreshold().toBytes(),
+                spool.getStore() == ApigeeProperties.SpoolStore.OFF_HEAP,
+                spool.getMaxOffHeap().toBytes(), directory);
+    }
+
+    @Bean
+    public Module spooledTextModule(SpoolManager spoolManager) {
+        SimpleModule module = new SimpleModule("SpooledTextModule");
+        module.addDeserializer(SpooledText.class, new SpooledTextDeserializer(spoolManager));
+        if (spoolManager.isEnabled()) {
+            // Content stays plain maps and lists, forwarded as sent, unless spooling
+            module.setMixInAnnotation(Message.class, MessageContentDeserializer.MessageMixin.class);
+        }
+        return module;
+    }
+
+    @Bean
+    public SpoolCleanupFilter spoolCleanupFilter() {
+        return new SpoolCleanupFilter();
+    }
+}
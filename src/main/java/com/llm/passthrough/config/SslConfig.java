@@ -1,33 +1,60 @@
 package com.llm.passthrough.config;
 
+import com.llm.passthrough.transport.CallTimingExecHandler;
+import com.llm.passthrough.transport.ConnectionWarmer;
+import com.llm.passthrough.transport.HedgeCancellationExecHandler;
+import com.llm.passthrough.transport.MultiplexedClientHttpRequestFactory;
+import com.llm.passthrough.transport.ReloadableSslContext;
+import com.llm.passthrough.transport.ReloadingSslSocketFactory;
+import com.llm.passthrough.transport.ReloadingTlsStrategy;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
-import org.apache.hc.client5.http.io.HttpClientConnectionManager;
-import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
-import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClient;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Security;
@@ -36,6 +63,7 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SSL Configuration that supports loading PEM certificates directly.
@@ -57,64 +85,220 @@ public class SslConfig {
     private final ApigeeProperties apigeeProperties;
     private final ResourceLoader resourceLoader;
 
+    /**
+     * mTLS material shared by all upstream clients, reloaded when the files
+     * change if {@code apigee.ssl.watch} is enabled.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "apigee.ssl", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ReloadableSslContext apigeeSslContext() throws Exception {
+        ApigeeProperties.Ssl ssl = apigeeProperties.getSsl();
+        ReloadableSslContext sslContext = new ReloadableSslContext(this::buildSslContext, watchedFiles(ssl));
+        if (ssl.isWatch()) {
+            sslContext.watch(ssl.getWatchDelay());
+        }
+        return sslContext;
+    }
+
+    /**
+     * Connection pool shared by the chat and OCR clients, configured the same
+     * way whether or not SSL is enabled.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "apigee.http2", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public PoolingHttpClientConnectionManager apigeeConnectionManager(
+            ObjectProvider<ReloadableSslContext> apigeeSslContext) {
+        ApigeeProperties.Pool pool = apigeeProperties.getPool();
+
+        PoolingHttpClientConnectionManagerBuilder connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(pool.getMaxTotal())
+                .setMaxConnPerRoute(pool.getMaxPerRoute())
+                .setDefaultConnectionConfig(connectionConfig(pool))
+                .setDefaultSocketConfig(SocketConfig.custom()
+                        .setSoTimeout(Timeout.ofMilliseconds(pool.getSocketTimeout().toMillis()))
+                        .build());
+
+        ReloadableSslContext sslContext = apigeeSslContext.getIfAvailable();
+        if (sslContext != null) {
+            connectionManager.setSSLSocketFactory(new ReloadingSslSocketFactory(sslContext));
+        } else {
+            log.info("SSL is disabled, using plain HTTP connections");
+        }
+
+        log.info("Upstream connection pool - Max total: {}, Max per route: {}",
+                pool.getMaxTotal(), pool.getMaxPerRoute());
+        return connectionManager.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "apigee.http2", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public CloseableHttpClient apigeeHttpClient(PoolingHttpClientConnectionManager apigeeConnectionManager) {
+        ApigeeProperties.Pool pool = apigeeProperties.getPool();
+        return HttpClients.custom()
+                .setConnectionManager(apigeeConnectionManager)
+                .setDefaultRequestConfig(requestConfig(pool))
+                // Every request uses the same client certificate; without this, connections
+                // tagged with the TLS principal are not reused by the next request
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(pool.getEvictIdleAfter().toMillis()))
+                .addExecInterceptorFirst("hedge-cancellation", new HedgeCancellationExecHandler())
+                .addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "call-timing",
+                        new CallTimingExecHandler())
+                .build();
+    }
+
+    /**
+     * Pre-warms the shared pool before the application reports ready. There is
+     * no pool to warm when HTTP/2 is enabled.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("${apigee.pool.warmup.enabled:false} and !${apigee.http2.enabled:false}")
+    public ConnectionWarmer connectionWarmer(PoolingHttpClientConnectionManager apigeeConnectionManager) {
+        ApigeeProperties.Pool pool = apigeeProperties.getPool();
+        ApigeeProperties.Warmup warmup = pool.getWarmup();
+        return new ConnectionWarmer(apigeeConnectionManager,
+                List.of(apigeeProperties.getUrl(), apigeeProperties.getOcrUrl()),
+                warmup.getConnections(), warmup.getMinIdle(), warmup.getDeadline(), warmup.getInterval(),
+                pool.getConnectionRequestTimeout(), pool.getKeepAlive());
+    }
+
+    /**
+     * Leased, available and pending connections, exported as
+     * {@code httpcomponents.httpclient.pool.*} with tag {@code httpclient=apigee}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.http2", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public MeterBinder apigeeConnectionPoolMetrics(PoolingHttpClientConnectionManager apigeeConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(apigeeConnectionManager, "apigee");
+    }
+
+    /**
+     * HTTP/2 transport for the chat and OCR clients, replacing the pool above.
+     */
     @Bean
-    public RestClient restClient() throws Exception {
-        HttpClient httpClient = createHttpClient();
-        HttpComponentsClientHttpRequestFactory requestFactory =
-                new HttpComponentsClientHttpRequestFactory(httpClient);
-        requestFactory.setConnectTimeout(30000);
-        requestFactory.setConnectionRequestTimeout(30000);
+    @ConditionalOnProperty(prefix = "apigee.http2", name = "enabled", havingValue = "true")
+    public MultiplexedClientHttpRequestFactory http2RequestFactory(
+            ObjectProvider<ReloadableSslContext> apigeeSslContext) {
+        ApigeeProperties.Http2 http2 = apigeeProperties.getHttp2();
+        ApigeeProperties.Pool pool = apigeeProperties.getPool();
+
+        ReloadableSslContext sslContext = apigeeSslContext.getIfAvailable();
+        log.info("Upstream HTTP/2 transport - Connections: {}, Max concurrent streams: {}",
+                http2.getConnections(), http2.getMaxConcurrentStreams());
+        MultiplexedClientHttpRequestFactory requestFactory = new MultiplexedClientHttpRequestFactory(
+                sslContext != null ? sslContext.get() : null, http2.getConnections(),
+                http2.getMaxConcurrentStreams(), pool.getConnectTimeout(), pool.getSocketTimeout(),
+                pool.getConnectionRequestTimeout());
+        if (sslContext != null) {
+            sslContext.onReload(requestFactory::setSslContext);
+        }
+        return requestFactory;
+    }
 
+    @Bean
+    public RestClient restClient(ObjectProvider<CloseableHttpClient> apigeeHttpClient,
+                                 ObjectProvider<MultiplexedClientHttpRequestFactory> http2RequestFactory) {
         return RestClient.builder()
                 .baseUrl(apigeeProperties.getUrl())
                 .defaultHeader("x-lbg-client-id", apigeeProperties.getClientId())
                 .defaultHeader("x-lbg-client-secret", apigeeProperties.getClientSecret())
                 .defaultHeader("Content-Type", "application/json")
                 .defaultHeader("Accept", "application/json")
-                .requestFactory(requestFactory)
+                .requestFactory(requestFactory(apigeeHttpClient, http2RequestFactory))
                 .build();
     }
 
     @Bean
-    public RestClient ocrRestClient() throws Exception {
-        HttpClient httpClient = createHttpClient();
-        HttpComponentsClientHttpRequestFactory requestFactory =
-                new HttpComponentsClientHttpRequestFactory(httpClient);
-        requestFactory.setConnectTimeout(60000);
-        requestFactory.setConnectionRequestTimeout(60000);
-
+    public RestClient ocrRestClient(ObjectProvider<CloseableHttpClient> apigeeHttpClient,
+                                    ObjectProvider<MultiplexedClientHttpRequestFactory> http2RequestFactory) {
         return RestClient.builder()
                 .baseUrl(apigeeProperties.getOcrUrl())
                 .defaultHeader("x-lbg-client-id", apigeeProperties.getClientId())
                 .defaultHeader("x-lbg-client-secret", apigeeProperties.getClientSecret())
                 .defaultHeader("Content-Type", "application/json")
                 .defaultHeader("Accept", "application/json")
-                .requestFactory(requestFactory)
+                .requestFactory(requestFactory(apigeeHttpClient, http2RequestFactory))
                 .build();
     }
 
-    private HttpClient createHttpClient() throws Exception {
-        ApigeeProperties.Ssl ssl = apigeeProperties.getSsl();
-
-        if (!ssl.isEnabled()) {
-            log.info("SSL is disabled, using default HTTP client");
-            return HttpClients.createDefault();
+    /**
+     * Connection pool of the ASYNC streaming engine, sized to the stream limit
+     * and otherwise configured like the shared pool.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "apigee.streaming", name = "engine", havingValue = "async")
+    public PoolingAsyncClientConnectionManager streamingConnectionManager(
+            ObjectProvider<ReloadableSslContext> apigeeSslContext) {
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+
+        PoolingAsyncClientConnectionManagerBuilder connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(streaming.getMaxConcurrentStreams())
+                .setMaxConnPerRoute(streaming.getMaxConcurrentStreams())
+                .setDefaultConnectionConfig(connectionConfig(apigeeProperties.getPool()))
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                        .build());
+
+        ReloadableSslContext sslContext = apigeeSslContext.getIfAvailable();
+        if (sslContext != null) {
+            connectionManager.setTlsStrategy(new ReloadingTlsStrategy(sslContext));
+        } else {
+            log.info("SSL is disabled, using plain async HTTP client");
         }
+        return connectionManager.build();
+    }
 
-        SSLContext sslContext = buildSslContext();
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.streaming", name = "engine", havingValue = "async")
+    public MeterBinder streamingConnectionPoolMetrics(PoolingAsyncClientConnectionManager streamingConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(streamingConnectionManager, "apigee-streaming");
+    }
 
-        SSLConnectionSocketFactory sslSocketFactory = SSLConnectionSocketFactoryBuilder.create()
-                .setSslContext(sslContext)
+    /**
+     * Non-blocking client for the ASYNC streaming engine. Streams hold a pooled
+     * connection but no thread while waiting for upstream tokens.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "apigee.streaming", name = "engine", havingValue = "async")
+    public CloseableHttpAsyncClient streamingAsyncClient(PoolingAsyncClientConnectionManager streamingConnectionManager) {
+        ApigeeProperties.Pool pool = apigeeProperties.getPool();
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(streamingConnectionManager)
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(apigeeProperties.getStreaming().getAsyncIoThreads())
+                        .build())
+                .setDefaultRequestConfig(requestConfig(pool))
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(pool.getEvictIdleAfter().toMillis()))
                 .build();
+        client.start();
+        return client;
+    }
 
-        HttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
-                .setSSLSocketFactory(sslSocketFactory)
-                .setMaxConnTotal(100)
-                .setMaxConnPerRoute(20)
+    private static ClientHttpRequestFactory requestFactory(ObjectProvider<CloseableHttpClient> httpClient,
+                                                           ObjectProvider<MultiplexedClientHttpRequestFactory> http2) {
+        ClientHttpRequestFactory multiplexed = http2.getIfAvailable();
+        return multiplexed != null ? multiplexed : new HttpComponentsClientHttpRequestFactory(httpClient.getObject());
+    }
+
+    private static ConnectionConfig connectionConfig(ApigeeProperties.Pool pool) {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(pool.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .setSocketTimeout((int) pool.getSocketTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .setTimeToLive(pool.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS)
+                .setValidateAfterInactivity(pool.getValidateAfterInactivity().toMillis(), TimeUnit.MILLISECONDS)
                 .build();
+    }
 
-        return HttpClients.custom()
-                .setConnectionManager(connectionManager)
+    private static RequestConfig requestConfig(ApigeeProperties.Pool pool) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(pool.getConnectionRequestTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .setResponseTimeout(pool.getSocketTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                // Used when the upstream response carries no Keep-Alive header
+                .setDefaultKeepAlive(pool.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS)
                 .build();
     }
 
@@ -149,7 +333,27 @@ public class SslConfig {
             sslContextBuilder.loadTrustMaterial(trustStore, null);
         }
 
-        return sslContextBuilder.build();
+        SSLContext sslContext = sslContextBuilder.build();
+
+        // Cached sessions let new connections resume instead of running a full handshake
+        SSLSessionContext sessions = sslContext.getClientSessionContext();
+        sessions.setSessionCacheSize(ssl.getSessionCacheSize());
+        sessions.setSessionTimeout((int) ssl.getSessionTimeout().toSeconds());
+        return sslContext;
+    }
+
+    private List<Path> watchedFiles(ApigeeProperties.Ssl ssl) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String location : new String[]{ssl.getTlsKeyPath(), ssl.getTlsCertPath(), ssl.getCaCertPath(),
+                ssl.getKeyStorePath(), ssl.getTrustStorePath()}) {
+            if (StringUtils.hasText(location)) {
+                Resource resource = resourceLoader.getResource(location);
+                if (resource.isFile()) {
+                    files.add(resource.getFile().toPath());
+                }
+            }
+        }
+        return files;
     }
 
     /**
@@ -0,0 +1,42 @@
+package com.llm.passthrough.config;
+
+import com.llm.passthrough.stream.RelayBufferPool;
+import com.llm.passthrough.stream.RelayChunkHttpMessageConverter;
+import com.llm.passthrough.stream.StreamExecutor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Wiring for the byte-level SSE relay: the shared buffer pool, the bounded
+ * executor relay tasks run on, and the converter that writes pooled chunks
+ * to the response unchanged.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class StreamingConfig implements WebMvcConfigurer {
+
+    private final ApigeeProperties apigeeProperties;
+
+    @Bean
+    public RelayBufferPool relayBufferPool() {
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+        return new RelayBufferPool(streaming.getRelayBufferSize(), streaming.getRelayBufferPoolSize());
+    }
+
+    @Bean
+    public StreamExecutor streamExecutor() {
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+        return new StreamExecutor(streaming.getMaxConcurrentStreams(), streaming.getMaxQueuedStreams(),
+                streaming.isVirtualThreads());
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new RelayChunkHttpMessageConverter());
+    }
+}
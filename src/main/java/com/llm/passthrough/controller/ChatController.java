@@ -1,15 +1,27 @@
 package com.llm.passthrough.controller;
 
+import com.llm.passthrough.cache.CacheDirective;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.ChatBatchResult;
 import com.llm.passthrough.dto.ChatRequest;
 import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.service.ChatBatchService;
 import com.llm.passthrough.service.LlmService;
+import com.llm.passthrough.stream.RawChatRequest;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -18,32 +30,101 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 public class ChatController {
 
     private final LlmService llmService;
+    private final ChatBatchService chatBatchService;
+    private final ApigeeProperties apigeeProperties;
 
     /**
      * Non-streaming chat completions endpoint.
      * Use this when stream=false or stream is not specified in the request body.
+     * With {@code apigee.chat.passthrough} the upstream body is relayed as-is.
+     * Otherwise the response cache applies; {@code Cache-Control: no-cache} or
+     * {@code no-store} bypasses it.
      */
     @PostMapping(value = "/completions", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ChatResponse> chatCompletions(@Valid @RequestBody ChatRequest request) {
+    public ResponseEntity<?> chatCompletions(@Valid @RequestBody ChatRequest request,
+                                             @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false)
+                                             String cacheControl) {
         log.info("Received chat completion request - Stream: {}", request.getStream());
 
         // Force non-streaming for this endpoint
         request.setStream(false);
 
-        ChatResponse response = llmService.chat(request);
+        if (apigeeProperties.getChat().isPassthrough()) {
+            return llmService.chatPassthrough(request);
+        }
+
+        ChatResponse response = llmService.chat(request, CacheDirective.fromCacheControl(cacheControl));
         return ResponseEntity.ok(response);
     }
 
     /**
      * Streaming chat completions endpoint.
-     * Use this endpoint for SSE streaming responses.
+     * Use this endpoint for SSE streaming responses. The upstream event stream is
+     * relayed byte-for-byte, see {@code apigee.streaming.mode}.
      */
     @PostMapping(value = "/completions/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatCompletionsStream(@Valid @RequestBody ChatRequest request) {
+    public ResponseBodyEmitter chatCompletionsStream(@Valid @RequestBody ChatRequest request) {
         log.info("Received streaming chat completion request");
         return llmService.chatStream(request);
     }
 
+    /**
+     * Non-streaming chat completions endpoint that forwards the request body as
+     * received. Only model and messages are validated; the body is never bound
+     * to ChatRequest, so large inline_data parts are not copied on the heap.
+     */
+    @PostMapping(value = "/completions/raw", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> chatCompletionsRaw(InputStream body) throws IOException {
+        RawChatRequest request = llmService.readRawRequest(body, false);
+        log.info("Received raw chat completion request - Model: {}", request.getModel());
+
+        if (apigeeProperties.getChat().isPassthrough()) {
+            return llmService.chatPassthrough(request);
+        }
+
+        ChatResponse response = llmService.chat(request);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Streaming counterpart of {@code /completions/raw}.
+     */
+    @PostMapping(value = "/completions/stream/raw", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseBodyEmitter chatCompletionsStreamRaw(InputStream body) throws IOException {
+        RawChatRequest request = llmService.readRawRequest(body, true);
+        log.info("Received raw streaming chat completion request - Model: {}", request.getModel());
+        return llmService.chatStream(request);
+    }
+
+    /**
+     * Batch of non-streaming chat completions, answered as one array in
+     * request order. Items are validated and sent one by one, so an invalid or
+     * failed item only fails its own result.
+     */
+    @PostMapping(value = "/completions/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<List<ChatBatchResult>> chatCompletionsBatch(@RequestBody List<ChatRequest> requests,
+                                                                      HttpServletRequest servletRequest) {
+        log.info("Received batch chat completion request - Items: {}", requests.size());
+        return chatBatchService.batch(requests, servletRequest.getRequestURI());
+    }
+
+    /**
+     * The same batch answered as NDJSON, one result per line in completion
+     * order; selected with {@code Accept: application/x-ndjson}.
+     */
+    @PostMapping(value = "/completions/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> chatCompletionsBatchStream(@RequestBody List<ChatRequest> requests,
+                                                                          HttpServletRequest servletRequest) {
+        log.info("Received streaming batch chat completion request - Items: {}", requests.size());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(chatBatchService.batchStream(requests, servletRequest.getRequestURI()));
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("OK");
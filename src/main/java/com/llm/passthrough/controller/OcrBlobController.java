@@ -0,0 +1,63 @@
+package com.llm.passthrough.controller;
+
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.service.OcrService;
+import com.llm.passthrough.store.BlobStore;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Serves OCR page images offloaded to the blob store. Blobs are named by
+ * content hash and never change, so they can be cached for good.
+ */
+@RestController
+@RequestMapping(OcrService.BLOBS_PATH)
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "apigee.ocr.blobs", name = "enabled", havingValue = "true")
+public class OcrBlobController {
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    private final BlobStore ocrBlobStore;
+
+    /**
+     * The blob with this SHA-256, typed by the extension of {@code name} if
+     * any. Single {@code Range} requests are answered with 206 and the
+     * requested bytes, read from the file through its channel.
+     */
+    @GetMapping("/{name}")
+    public ResponseEntity<?> blob(@PathVariable String name, HttpServletRequest servletRequest) {
+        int dot = name.indexOf('.');
+        String hash = dot < 0 ? name : name.substring(0, dot);
+        Path blob = ocrBlobStore.get(hash);
+        if (blob == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .status(HttpStatus.NOT_FOUND.value())
+                    .error(HttpStatus.NOT_FOUND.getReasonPhrase())
+                    .message("Blob not found")
+                    .path(servletRequest.getRequestURI())
+                    .build());
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                .eTag(hash)
+                .cacheControl(IMMUTABLE)
+                .body(new FileSystemResource(blob));
+    }
+}
@@ -9,6 +9,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Slf4j
 @RestController
@@ -18,15 +19,46 @@ public class OcrController {
 
     private final OcrService ocrService;
 
+    /**
+     * OCR endpoint. With {@code apigee.ocr.store} enabled, stored results are
+     * returned as-is; send {@code X-Document-Hash} to key them by document
+     * content as well as URL. {@code X-Document-Pages} gives the page count
+     * of the document, so that a request without {@code pages} can be split.
+     */
     @PostMapping(value = "/ocr", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<OcrResponse> processOcr(@Valid @RequestBody OcrRequest request) {
+    public ResponseEntity<?> processOcr(@Valid @RequestBody OcrRequest request,
+                                        @RequestHeader(value = "X-Document-Hash", required = false)
+                                        String documentHash,
+                                        @RequestHeader(value = "X-Document-Pages", required = false)
+                                        Integer pageCount) {
         log.info("Received OCR request - Model: {}, Document Type: {}",
                 request.getModel(), request.getDocument().getType());
 
-        OcrResponse response = ocrService.processOcr(request);
+        byte[] stored = ocrService.findStored(request, documentHash);
+        if (stored != null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(stored);
+        }
+
+        OcrResponse response = ocrService.processOcr(request, documentHash, pageCount);
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * The same OCR call answered as NDJSON, selected with
+     * {@code Accept: application/x-ndjson}: one line per page as soon as it
+     * has been read from the upstream, then a line with the other fields.
+     */
+    @PostMapping(value = "/ocr", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamOcr(@Valid @RequestBody OcrRequest request,
+                                                           @RequestHeader(value = "X-Document-Hash", required = false)
+                                                           String documentHash) {
+        log.info("Received streaming OCR request - Model: {}, Document Type: {}",
+                request.getModel(), request.getDocument().getType());
+
+        StreamingResponseBody body = ocrService.streamOcr(request, documentHash);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/ocr/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("OK");
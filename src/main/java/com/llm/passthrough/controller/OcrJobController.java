@@ -0,0 +1,100 @@
+package com.llm.passthrough.controller;
+
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrJob;
+import com.llm.passthrough.dto.OcrRequest;
+import com.llm.passthrough.service.OcrJobService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Submit/poll API for OCR, for documents that take longer than a client or
+ * load balancer will hold a request open.
+ */
+@Slf4j
+@RestController
+@RequestMapping(OcrJobService.PATH)
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "apigee.ocr.jobs", name = "enabled", havingValue = "true")
+public class OcrJobController {
+
+    private final OcrJobService ocrJobService;
+
+    /**
+     * Queues the OCR request and answers 202 at once, with the job's location.
+     * Takes the same headers as {@code /ocr}, and {@code X-Callback-Url} to
+     * have the job posted there when it ends.
+     */
+    @PostMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<OcrJob> submit(@Valid @RequestBody OcrRequest request,
+                                         @RequestHeader(value = "X-Document-Hash", required = false)
+                                         String documentHash,
+                                         @RequestHeader(value = "X-Document-Pages", required = false)
+                                         Integer pageCount,
+                                         @RequestHeader(value = "X-Callback-Url", required = false)
+                                         String callbackUrl) {
+        log.info("Received OCR job - Model: {}, Document Type: {}",
+                request.getModel(), request.getDocument().getType());
+
+        OcrJob job = ocrJobService.submit(request, documentHash, pageCount, callbackUrl);
+        return ResponseEntity.accepted()
+                .location(URI.create(OcrJobService.PATH + "/" + job.getId()))
+                .body(job);
+    }
+
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> status(@PathVariable String id, HttpServletRequest servletRequest) {
+        OcrJob job = ocrJobService.find(id);
+        if (job == null) {
+            return notFound(servletRequest);
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * The OCR response of a succeeded job; the job's error if it failed, and
+     * 409 while it has not ended.
+     */
+    @GetMapping(value = "/{id}/result", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> result(@PathVariable String id, HttpServletRequest servletRequest) {
+        OcrJob job = ocrJobService.find(id);
+        if (job == null) {
+            return notFound(servletRequest);
+        }
+        if (job.getStatus() == OcrJob.Status.FAILED) {
+            return ResponseEntity.status(job.getError().getStatus()).body(job.getError());
+        }
+        Path result = job.getStatus() == OcrJob.Status.SUCCEEDED ? ocrJobService.result(id) : null;
+        if (result == null) {
+            return error(HttpStatus.CONFLICT, "OCR job " + id + " has not finished", servletRequest);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(new FileSystemResource(result));
+    }
+
+    private static ResponseEntity<ErrorResponse> notFound(HttpServletRequest servletRequest) {
+        return error(HttpStatus.NOT_FOUND, "OCR job not found", servletRequest);
+    }
+
+    private static ResponseEntity<ErrorResponse> error(HttpStatus status, String message,
+                                                       HttpServletRequest servletRequest) {
+        return ResponseEntity.status(status).body(ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(message)
+                .path(servletRequest.getRequestURI())
+                .build());
+    }
+}
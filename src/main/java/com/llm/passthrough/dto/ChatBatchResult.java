@@ -0,0 +1,23 @@
+package com.llm.passthrough.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one item of a batch: its position in the request array and
+ * either the completion or the error it would have got on its own.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatBatchResult {
+    private int index;
+    private int status;
+    private ChatResponse response;
+    private ErrorResponse error;
+}
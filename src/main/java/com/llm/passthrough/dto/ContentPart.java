@@ -2,6 +2,7 @@ package com.llm.passthrough.dto;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.llm.passthrough.spool.SpooledText;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -30,6 +31,7 @@ public class ContentPart {
     @AllArgsConstructor
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class InlineData {
-        private String data;
+        // Large payloads are kept off-heap, see SpoolManager
+        private SpooledText data;
     }
 }
@@ -0,0 +1,43 @@
+package com.llm.passthrough.dto;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Binds multimodal message content to {@code List<ContentPart>} rather than
+ * maps, so that inline_data payloads go through the spooling deserializer.
+ * Plain text content stays a String. Only applied, through {@link MessageMixin},
+ * while spooling is enabled: part fields that {@link ContentPart} does not
+ * model are dropped on this path.
+ */
+public class MessageContentDeserializer extends StdDeserializer<Object> {
+
+    public MessageContentDeserializer() {
+        super(Object.class);
+    }
+
+    @Override
+    public Object deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.START_ARRAY) {
+            JavaType parts = ctxt.getTypeFactory().constructCollectionType(List.class, ContentPart.class);
+            return ctxt.readValue(p, parts);
+        }
+        return ctxt.readValue(p, Object.class);
+    }
+
+    /**
+     * Mix-in for {@link Message} that routes its content through this deserializer.
+     */
+    public abstract static class MessageMixin {
+
+        @JsonDeserialize(using = MessageContentDeserializer.class)
+        private Object content;
+    }
+}
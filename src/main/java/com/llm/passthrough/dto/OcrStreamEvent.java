@@ -0,0 +1,23 @@
+package com.llm.passthrough.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a streamed OCR response: a page, then the response's other
+ * fields once all pages have been sent, or an error if the upstream response
+ * broke off.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OcrStreamEvent {
+    private OcrPage page;
+    private OcrResponse response;
+    private ErrorResponse error;
+}
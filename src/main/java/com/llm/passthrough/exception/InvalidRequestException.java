@@ -0,0 +1,12 @@
+package com.llm.passthrough.exception;
+
+/**
+ * Thrown when a request body fails validation outside of Spring's
+ * {@code @Valid} binding, e.g. while it is being scanned as a stream.
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.llm.passthrough.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a request is refused locally, before any upstream call is made,
+ * e.g. because the service is at capacity.
+ */
+@Getter
+public class RequestRejectedException extends RuntimeException {
+
+    private final int statusCode;
+    private final Long retryAfterSeconds;
+
+    public RequestRejectedException(String message, int statusCode) {
+        this(message, statusCode, null);
+    }
+
+    public RequestRejectedException(String message, int statusCode, Long retryAfterSeconds) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
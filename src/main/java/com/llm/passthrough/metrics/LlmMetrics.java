@@ -0,0 +1,295 @@
+package com.llm.passthrough.metrics;
+
+import com.llm.passthrough.dto.OcrUsageInfo;
+import com.llm.passthrough.dto.Usage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Upstream latency and token meters, tagged by endpoint and model.
+ *
+ * <ul>
+ *   <li>{@code llm.upstream.latency} - from sending the request until the
+ *       response has been fully read (relayed, for streams and passthrough)</li>
+ *   <li>{@code llm.stream.ttft} - from accepting a streaming request until the
+ *       first upstream bytes arrive, including any wait for a stream slot</li>
+ *   <li>{@code llm.stream.inter.chunk} - gap between successive upstream reads
+ *       of a stream</li>
+ *   <li>{@code llm.tokens} - prompt, completion and cache-read tokens reported
+ *       in {@code usage}</li>
+ *   <li>{@code llm.tokens.throughput} - completion tokens per second of
+ *       upstream latency, per request</li>
+ *   <li>{@code llm.ocr.pages} and {@code llm.ocr.document.size} - from the OCR
+ *       {@code usage_info}</li>
+ * </ul>
+ *
+ * <p>Each call is also recorded as an {@link UpstreamCallEvent} when Flight
+ * Recorder is running.
+ */
+public class LlmMetrics {
+
+    public static final String CHAT = "chat";
+    public static final String CHAT_STREAM = "chat_stream";
+    public static final String OCR = "ocr";
+
+    public static final String SUCCESS = "success";
+    public static final String UPSTREAM_ERROR = "upstream_error";
+    public static final String FAILURE = "failure";
+    public static final String CANCELLED = "cancelled";
+    public static final String INVALID_REQUEST = "invalid_request";
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+    private final boolean percentileHistogram;
+
+    public LlmMetrics(MeterRegistry registry, boolean percentileHistogram) {
+        this.registry = registry;
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    /**
+     * Starts timing a call; for streams, call once the request is accepted.
+     */
+    public Call start(String endpoint, String model) {
+        return new Call(endpoint, tag(model));
+    }
+
+    /**
+     * The call bound to this thread by {@link Call#bind()}, for the transport
+     * to report connection and first byte timings, or {@code null}.
+     */
+    public static Call current() {
+        return CURRENT.get();
+    }
+
+    private static String tag(String model) {
+        return model != null && !model.isBlank() ? model : UNKNOWN;
+    }
+
+    /**
+     * Ends a thread binding made by {@link Call#bind()}.
+     */
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * One upstream call. {@link #chunk(int)} is called from a single relay
+     * thread at a time; {@link #stop(String)} may race with it and only the
+     * first call counts.
+     */
+    public class Call {
+
+        private final String endpoint;
+        private final String model;
+        private final long started = System.nanoTime();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private final UpstreamCallEvent event = new UpstreamCallEvent();
+
+        private volatile long dispatched;
+        private volatile long connected;
+        private volatile long written;
+        private volatile long firstByte;
+        private volatile int status;
+        private long lastChunk;
+        private long bytes;
+        private int chunks;
+        private Timer interChunk;
+
+        private Call(String endpoint, String model) {
+            this.endpoint = endpoint;
+            this.model = model;
+            event.begin();
+        }
+
+        /**
+         * Marks the request as handed to the transport, after any wait for a
+         * stream slot.
+         */
+        public void dispatch() {
+            if (dispatched == 0) {
+                dispatched = System.nanoTime();
+            }
+        }
+
+        /**
+         * Dispatches the call and makes it {@link #current()} on this thread
+         * until the scope is closed.
+         */
+        public Scope bind() {
+            dispatch();
+            CURRENT.set(this);
+            return CURRENT::remove;
+        }
+
+        /**
+         * A connection, or HTTP/2 stream, has been obtained for the request.
+         */
+        public void connected() {
+            connected = System.nanoTime();
+        }
+
+        /**
+         * The request has been written to the connection.
+         */
+        public void written() {
+            written = System.nanoTime();
+        }
+
+        /**
+         * The response headers have arrived.
+         */
+        public void firstByte(int status) {
+            this.status = status;
+            if (firstByte == 0) {
+                firstByte = System.nanoTime();
+            }
+        }
+
+        public void status(int status) {
+            this.status = status;
+        }
+
+        /**
+         * Records one upstream read of a stream: the time to first chunk, or the
+         * gap since the previous one.
+         */
+        public void chunk(int length) {
+            long now = System.nanoTime();
+            if (lastChunk == 0) {
+                if (firstByte == 0) {
+                    firstByte = now;
+                }
+                Timer.builder("llm.stream.ttft")
+                        .description("Time from accepting a stream to its first upstream chunk")
+                        .tag("model", model)
+                        .publishPercentileHistogram(percentileHistogram)
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofMinutes(2))
+                        .register(registry)
+                        .record(now - started, TimeUnit.NANOSECONDS);
+                interChunk = Timer.builder("llm.stream.inter.chunk")
+                        .description("Gap between successive upstream chunks of a stream")
+                        .tag("model", model)
+                        .publishPercentileHistogram(percentileHistogram)
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry);
+            } else {
+                interChunk.record(now - lastChunk, TimeUnit.NANOSECONDS);
+            }
+            lastChunk = now;
+            bytes += length;
+            chunks++;
+        }
+
+        /**
+         * Bytes of a response relayed without going through {@link #chunk(int)}.
+         */
+        public void bytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Counts the tokens of one completion and its completion token rate.
+         */
+        public void usage(Usage usage) {
+            if (usage == null) {
+                return;
+            }
+            count("prompt", usage.getPromptTokens());
+            count("completion", usage.getCompletionTokens());
+            count("cache_read", usage.getCacheReadInputTokens());
+
+            Integer completionTokens = usage.getCompletionTokens();
+            long elapsed = System.nanoTime() - started;
+            if (completionTokens != null && completionTokens > 0 && elapsed > 0) {
+                DistributionSummary.builder("llm.tokens.throughput")
+                        .description("Completion tokens per second of upstream latency")
+                        .baseUnit("tokens/s")
+                        .tags("endpoint", endpoint, "model", model)
+                        .publishPercentileHistogram(percentileHistogram)
+                        .register(registry)
+                        .record(completionTokens * 1e9 / elapsed);
+            }
+        }
+
+        public void ocrUsage(OcrUsageInfo usageInfo) {
+            if (usageInfo == null) {
+                return;
+            }
+            if (usageInfo.getPagesProcessed() != null) {
+                Counter.builder("llm.ocr.pages")
+                        .description("Pages processed by upstream OCR")
+                        .tag("model", model)
+                        .register(registry)
+                        .increment(usageInfo.getPagesProcessed());
+            }
+            if (usageInfo.getDocSizeBytes() != null) {
+                DistributionSummary.builder("llm.ocr.document.size")
+                        .description("Size of documents sent to upstream OCR")
+                        .baseUnit("bytes")
+                        .tag("model", model)
+                        .publishPercentileHistogram(percentileHistogram)
+                        .register(registry)
+                        .record(usageInfo.getDocSizeBytes());
+            }
+        }
+
+        public void stop(String outcome) {
+            if (!stopped.compareAndSet(false, true)) {
+                return;
+            }
+            Timer.builder("llm.upstream.latency")
+                    .description("Upstream call duration until the response is fully read")
+                    .tags("endpoint", endpoint, "model", model, "outcome", outcome)
+                    .publishPercentileHistogram(percentileHistogram)
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+            event.end();
+            if (event.shouldCommit()) {
+                long dispatched = this.dispatched != 0 ? this.dispatched : started;
+                event.endpoint = endpoint;
+                event.model = model;
+                event.status = status;
+                event.outcome = outcome;
+                event.queueWait = dispatched - started;
+                event.connectionWait = since(dispatched, connected);
+                event.requestWrite = since(connected, written);
+                event.timeToFirstByte = since(dispatched, firstByte);
+                event.bytes = bytes;
+                event.chunks = chunks;
+                event.commit();
+            }
+        }
+
+        private void count(String type, Integer tokens) {
+            if (tokens == null || tokens <= 0) {
+                return;
+            }
+            Counter.builder("llm.tokens")
+                    .description("Tokens reported by the upstream")
+                    .tags("endpoint", endpoint, "model", model, "type", type)
+                    .register(registry)
+                    .increment(tokens);
+        }
+
+        private static long since(long from, long to) {
+            return from != 0 && to != 0 ? Math.max(0, to - from) : 0;
+        }
+    }
+}
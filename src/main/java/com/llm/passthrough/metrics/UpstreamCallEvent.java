@@ -0,0 +1,67 @@
+package com.llm.passthrough.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning one upstream call, from acceptance until the
+ * response has been read or, for streams and passthrough, relayed to the client.
+ *
+ * <p>Phases the transport could not observe are left at zero: the request write
+ * is only seen on the HTTP/1.1 pool, and the async streaming engine reports the
+ * first body chunk as its first byte.
+ */
+@Name("llm.UpstreamCall")
+@Label("Upstream Call")
+@Category({"LLM Passthrough", "Upstream"})
+@Description("A chat, chat stream or OCR call to the upstream")
+@StackTrace(false)
+class UpstreamCallEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Model")
+    String model;
+
+    @Label("Status")
+    @Description("Upstream HTTP status, 0 if no response was received")
+    int status;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Queue Wait")
+    @Description("Wait for a stream slot before the call was dispatched")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueWait;
+
+    @Label("Connection Wait")
+    @Description("Pooled connection lease, including connect and TLS handshake, or wait for an HTTP/2 stream")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectionWait;
+
+    @Label("Request Write")
+    @Description("Writing the request headers and body to the connection")
+    @Timespan(Timespan.NANOSECONDS)
+    long requestWrite;
+
+    @Label("Time To First Byte")
+    @Description("From dispatch until the response headers, or the first stream chunk")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstByte;
+
+    @Label("Bytes Relayed")
+    @DataAmount
+    long bytes;
+
+    @Label("Chunks")
+    @Description("Upstream reads relayed to the client")
+    int chunks;
+}
@@ -0,0 +1,114 @@
+package com.llm.passthrough.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit learned from latency, in the style of a gradient
+ * limiter.
+ *
+ * <p>Two moving averages of request latency are kept: a short one over about
+ * {@value #SHORT_WINDOW} requests and a long one over about
+ * {@value #LONG_WINDOW}. While the short average stays within
+ * {@code tolerance} of the long one the limit grows by roughly its square
+ * root per saturated request; as latency rises above that, the limit shrinks
+ * in proportion, down to half per request. A dropped request (5xx, 429 or
+ * timeout) multiplies the limit by {@code backoffRatio}. Requests that find
+ * the limit reached are refused rather than queued.
+ *
+ * <p>The limit only moves while at least half of it is in use, so an idle
+ * route does not grow a limit it has never tested.
+ */
+public class AdaptiveLimit {
+
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final double smoothing;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double shortLatency;
+    private double longLatency;
+
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio,
+                         double smoothing) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limit bounds: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = Math.max(1, tolerance);
+        this.backoffRatio = backoffRatio;
+        this.smoothing = smoothing;
+        this.limit = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+    }
+
+    /**
+     * Takes a slot, or returns {@code false} if the limit has been reached.
+     */
+    boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Frees a slot without learning from the request.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Frees a slot and adjusts the limit.
+     *
+     * @param latency  nanoseconds the request took
+     * @param inFlight requests in flight when it started, itself included
+     * @param dropped  whether the upstream refused or failed it
+     */
+    void release(long latency, int inFlight, boolean dropped) {
+        release();
+        synchronized (this) {
+            if (dropped) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                return;
+            }
+
+            if (longLatency == 0) {
+                shortLatency = latency;
+                longLatency = latency;
+            } else {
+                shortLatency += (latency - shortLatency) * 2 / (SHORT_WINDOW + 1);
+                longLatency += (latency - longLatency) * 2 / (LONG_WINDOW + 1);
+            }
+            // Let the baseline follow a lasting improvement instead of waiting out the long window
+            if (longLatency > shortLatency * 2) {
+                longLatency *= 0.95;
+            }
+            if (inFlight < limit / 2) {
+                return;
+            }
+
+            double gradient = Math.max(0.5, Math.min(1, tolerance * longLatency / shortLatency));
+            double target = limit * gradient + Math.sqrt(limit);
+            limit = Math.min(maxLimit, Math.max(minLimit, limit * (1 - smoothing) + target * smoothing));
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,156 @@
+package com.llm.passthrough.resilience;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Fails calls fast while an upstream is failing.
+ *
+ * <p>Closed, the outcomes of the last {@code window} calls are kept; once at
+ * least {@code minimumCalls} have been seen and {@code failureRateThreshold}
+ * of them failed, the breaker opens and refuses every call for
+ * {@code openDuration}. It then lets {@code halfOpenCalls} probe calls
+ * through: if they all succeed it closes again, and the first failure opens
+ * it for another {@code openDuration}.
+ *
+ * <p>Each call carries the epoch it was admitted in, so that calls started
+ * before a state change do not count towards the new state.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+    private long epoch;
+    private long openedAt;
+    private int next;
+    private int calls;
+    private int failures;
+    private int probes;
+    private int probeSuccesses;
+
+    public CircuitBreaker(String name, double failureRateThreshold, int window, int minimumCalls,
+                          Duration openDuration, int halfOpenCalls) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Failure rate threshold must be in (0, 1]: " + failureRateThreshold);
+        }
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.outcomes = new boolean[Math.max(1, window)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.openDuration = openDuration.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Admits a call and returns its epoch, or -1 if the breaker refuses it.
+     */
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDuration) {
+                return -1;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probes >= halfOpenCalls) {
+                return -1;
+            }
+            probes++;
+        }
+        return epoch;
+    }
+
+    synchronized void onSuccess(long epoch) {
+        if (epoch != this.epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++probeSuccesses >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(long epoch) {
+        if (epoch != this.epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * A call ended without telling anything about the upstream, e.g. it was
+     * cancelled; its probe slot is given back.
+     */
+    synchronized void onIgnored(long epoch) {
+        if (epoch == this.epoch && state == State.HALF_OPEN && probes > 0) {
+            probes--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Seconds until an open breaker admits probe calls, at least 1.
+     */
+    synchronized long retryAfterSeconds() {
+        long remaining = openDuration - (System.nanoTime() - openedAt);
+        return Math.max(1, (remaining + 999_999_999) / 1_000_000_000);
+    }
+
+    private void record(boolean failure) {
+        if (calls == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void transition(State to) {
+        if (to == State.OPEN) {
+            log.warn("Circuit breaker {} opened - Failures: {}/{}, State was: {}", name, failures, calls, state);
+            openedAt = System.nanoTime();
+        } else {
+            log.info("Circuit breaker {} {}", name, to == State.CLOSED ? "closed" : "half-open, probing upstream");
+        }
+        state = to;
+        epoch++;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        probes = 0;
+        probeSuccesses = 0;
+    }
+}
@@ -0,0 +1,398 @@
+package com.llm.passthrough.resilience;
+
+import com.llm.passthrough.util.Threads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second, identical request when the first has not answered within
+ * a recent latency percentile of its model, and returns whichever succeeds
+ * first.
+ *
+ * <p>The original attempt runs on the calling thread; a hedge, if one is sent,
+ * runs on a pool thread. Once either succeeds the other is cancelled through
+ * the hook it registered with {@link Attempt#onCancel(Runnable)}, or else by
+ * interrupting its thread. An attempt that fails defers to the other one while
+ * it is still running.
+ *
+ * <p>The hedge delay of a model is the {@code percentile} of its last
+ * {@code window} successful attempts, clamped to {@code minDelay} and
+ * {@code maxDelay}; models with fewer than {@code minSamples} are not hedged.
+ * Every request earns {@code budget} of a hedge and every hedge spends one,
+ * so hedges add at most that fraction of upstream load, plus a burst of
+ * {@value #MAX_BURST}.
+ */
+@Slf4j
+public class RequestHedger implements AutoCloseable {
+
+    private static final int MAX_BURST = 10;
+    private static final long UNIT = 1_000_000;
+    private static final int RECOMPUTE_EVERY = 16;
+    private static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final int minSamples;
+    private final int window;
+    private final long budget;
+    private final int maxModels;
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong allowance = new AtomicLong();
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService hedges;
+
+    public RequestHedger(boolean enabled, double percentile, Duration minDelay, Duration maxDelay, int minSamples,
+                         int window, double budget, int maxModels, MeterRegistry registry) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 1: " + percentile);
+        }
+        if (budget < 0) {
+            throw new IllegalArgumentException("Hedge budget must not be negative: " + budget);
+        }
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay.toNanos();
+        this.maxDelay = Math.max(this.minDelay, maxDelay.toNanos());
+        this.minSamples = Math.max(1, minSamples);
+        this.window = Math.max(this.minSamples, window);
+        this.budget = Math.round(budget * UNIT);
+        this.maxModels = maxModels;
+        this.registry = registry;
+
+        if (enabled) {
+            log.info("Hedging chat requests - Percentile: {}, Min delay: {}, Budget: {}",
+                    percentile, minDelay, budget);
+            this.timer = new ScheduledThreadPoolExecutor(1, Threads.daemon("llm-hedge-timer"));
+            this.timer.setRemoveOnCancelPolicy(true);
+            this.hedges = Executors.newCachedThreadPool(Threads.daemon("llm-hedge"));
+        } else {
+            this.timer = null;
+            this.hedges = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs {@code call}, hedging it when the model's delay passes. The call must
+     * be safe to run twice at once.
+     */
+    public <T> T execute(String model, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        String key = model != null && !model.isBlank() ? model : UNKNOWN;
+        LatencyWindow latency = latencies.get(key);
+        if (latency == null && latencies.size() < maxModels) {
+            latency = latencies.computeIfAbsent(key, this::newLatencyWindow);
+        }
+        allowance.accumulateAndGet(budget, (current, earned) -> Math.min(current + earned, MAX_BURST * UNIT));
+
+        long delay = latency != null ? latency.delay() : -1;
+        if (delay < 0) {
+            long started = System.nanoTime();
+            T result = call.get();
+            if (latency != null) {
+                latency.record(System.nanoTime() - started);
+            }
+            return result;
+        }
+
+        Race<T> race = new Race<>(key, latency, call);
+        ScheduledFuture<?> trigger;
+        try {
+            trigger = timer.schedule(race::hedge, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return call.get();
+        }
+        try {
+            return race.run();
+        } finally {
+            trigger.cancel(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            hedges.shutdownNow();
+        }
+    }
+
+    private LatencyWindow newLatencyWindow(String model) {
+        LatencyWindow latency = new LatencyWindow();
+        TimeGauge.builder("llm.hedge.delay", latency, TimeUnit.NANOSECONDS, LatencyWindow::currentDelay)
+                .description("Current hedge delay; 0 until enough latencies have been seen")
+                .tag("model", model)
+                .register(registry);
+        return latency;
+    }
+
+    private boolean spend() {
+        long current;
+        do {
+            current = allowance.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!allowance.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    private void count(String name, String description, String model) {
+        Counter.builder(name)
+                .description(description)
+                .tag("model", model)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * One attempt of a hedged call, current on the thread running it. The
+     * transport registers how to abort it from another thread.
+     */
+    public static final class Attempt {
+
+        private Thread thread;
+        private Runnable onCancel;
+        private boolean cancelled;
+        private boolean finished;
+        private boolean interrupted;
+
+        /**
+         * The attempt running on this thread, or {@code null} outside a hedged call.
+         */
+        public static Attempt current() {
+            return CURRENT.get();
+        }
+
+        /**
+         * Sets how to abort the attempt's exchange; runs it at once if the
+         * attempt has already been cancelled.
+         */
+        public synchronized void onCancel(Runnable hook) {
+            if (cancelled) {
+                hook.run();
+            } else {
+                this.onCancel = hook;
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized boolean start(Thread thread) {
+            this.thread = thread;
+            return !cancelled;
+        }
+
+        private synchronized void cancel() {
+            if (cancelled || finished) {
+                return;
+            }
+            cancelled = true;
+            if (onCancel != null) {
+                onCancel.run();
+            } else if (thread != null) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            if (interrupted) {
+                // Leave the thread as it was found
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * The original attempt of one call, and the hedge once sent.
+     */
+    private final class Race<T> {
+
+        private final String model;
+        private final LatencyWindow latency;
+        private final Supplier<T> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Attempt original = new Attempt();
+        private Attempt hedge;
+        private int running = 1;
+        private Throwable failure;
+
+        Race(String model, LatencyWindow latency, Supplier<T> call) {
+            this.model = model;
+            this.latency = latency;
+            this.call = call;
+        }
+
+        T run() {
+            attempt(original);
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Fired by the timer once the delay has passed.
+         */
+        void hedge() {
+            Attempt attempt;
+            synchronized (this) {
+                if (result.isDone()) {
+                    return;
+                }
+                if (!spend()) {
+                    count("llm.hedge.throttled", "Hedges not sent because the budget was spent", model);
+                    return;
+                }
+                attempt = new Attempt();
+                hedge = attempt;
+                running++;
+            }
+            count("llm.hedge.sent", "Hedge requests sent after the hedge delay", model);
+            try {
+                hedges.execute(() -> attempt(attempt));
+            } catch (RejectedExecutionException e) {
+                failed(attempt, e);
+            }
+        }
+
+        private void attempt(Attempt attempt) {
+            if (!attempt.start(Thread.currentThread())) {
+                failed(attempt, new CancellationException("Hedged attempt cancelled before it started"));
+                return;
+            }
+            long started = System.nanoTime();
+            CURRENT.set(attempt);
+            try {
+                T value = call.get();
+                succeeded(attempt, value, System.nanoTime() - started);
+            } catch (RuntimeException | Error e) {
+                failed(attempt, e);
+            } finally {
+                CURRENT.remove();
+                attempt.finish();
+            }
+        }
+
+        private void succeeded(Attempt attempt, T value, long elapsed) {
+            Attempt other;
+            synchronized (this) {
+                running--;
+                if (result.isDone()) {
+                    return;
+                }
+                result.complete(value);
+                other = attempt == original ? hedge : original;
+            }
+            latency.record(elapsed);
+            if (attempt != original) {
+                count("llm.hedge.wins", "Hedge requests that answered before the original", model);
+            }
+            if (other != null) {
+                other.cancel();
+            }
+        }
+
+        private void failed(Attempt attempt, Throwable e) {
+            synchronized (this) {
+                running--;
+                if (result.isDone()) {
+                    return;
+                }
+                if (failure == null) {
+                    failure = e;
+                }
+                if (running > 0) {
+                    log.debug("Hedged attempt failed, waiting for the other - Model: {}", model);
+                    return;
+                }
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Latencies of the last {@code window} successful attempts of one model.
+     */
+    private final class LatencyWindow {
+
+        private final long[] samples = new long[window];
+        private int next;
+        private int count;
+        private int sinceRecompute;
+        private volatile long delay = -1;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+            if (++sinceRecompute >= RECOMPUTE_EVERY || (delay < 0 && count >= minSamples)) {
+                recompute();
+            }
+        }
+
+        /**
+         * Hedge delay in nanoseconds, or -1 while there are too few samples.
+         */
+        long delay() {
+            return delay;
+        }
+
+        double currentDelay() {
+            return Math.max(0, delay);
+        }
+
+        private void recompute() {
+            sinceRecompute = 0;
+            if (count < minSamples) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            long value = sorted[Math.max(0, (int) Math.ceil(percentile * count) - 1)];
+            delay = Math.min(maxDelay, Math.max(minDelay, value));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.llm.passthrough.resilience;
+
+import com.llm.passthrough.dto.Usage;
+import com.llm.passthrough.exception.RequestRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token budget per caller and model, kept in memory.
+ *
+ * <p>Each bucket holds up to {@code burst} tokens and refills at its
+ * tokens-per-minute rate. A call is admitted while the bucket holds its
+ * estimated prompt tokens, or is full for calls larger than the bucket, and
+ * the estimate is debited at once; once the upstream reports the tokens
+ * actually used the difference is debited or credited. Spending more than
+ * the estimate can leave a bucket in debt, refusing the caller until it has
+ * refilled.
+ *
+ * <p>Buckets are kept as the time they will be full again (the generic cell
+ * rate algorithm), so admission and settlement are a compare-and-set on one
+ * {@code long}. Full buckets carry no state and are swept once more than
+ * {@code maxBuckets} exist.
+ */
+public class TokenRateLimiter {
+
+    private static final int REJECTION_STATUS = 429;
+
+    private final boolean enabled;
+    private final long tokensPerMinute;
+    private final long burst;
+    private final Map<String, Long> modelTokensPerMinute;
+    private final int maxBuckets;
+    private final ConcurrentMap<Key, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final Counter rejected;
+
+    /**
+     * @param burst                tokens a bucket holds; 0 for one minute's worth
+     * @param modelTokensPerMinute rate overrides by model
+     */
+    public TokenRateLimiter(boolean enabled, String route, long tokensPerMinute, long burst,
+                            Map<String, Long> modelTokensPerMinute, int maxBuckets, MeterRegistry registry) {
+        if (enabled && tokensPerMinute <= 0) {
+            throw new IllegalArgumentException("Tokens per minute must be positive: " + tokensPerMinute);
+        }
+        this.enabled = enabled;
+        this.tokensPerMinute = tokensPerMinute;
+        this.burst = burst;
+        this.modelTokensPerMinute = Map.copyOf(modelTokensPerMinute);
+        this.maxBuckets = Math.max(1, maxBuckets);
+
+        this.rejected = Counter.builder("llm.ratelimit.rejected")
+                .description("Calls refused as over the caller's token budget")
+                .tag("route", route)
+                .register(registry);
+        Gauge.builder("llm.ratelimit.buckets", buckets, Map::size)
+                .description("Token buckets kept for callers and models")
+                .tag("route", route)
+                .register(registry);
+    }
+
+    /**
+     * Debits {@code tokens} from the bucket of the caller and model.
+     *
+     * @throws RequestRejectedException with status 429 if the caller is over budget
+     */
+    public Debit admit(String client, String model, long tokens) {
+        if (!enabled) {
+            return Debit.NONE;
+        }
+        Bucket bucket = bucket(new Key(client, model != null ? model : ""));
+        long wait = bucket.tryDebit(tokens);
+        if (wait > 0) {
+            rejected.increment();
+            throw new RequestRejectedException("Token budget exceeded for model " + model + ", retry later",
+                    REJECTION_STATUS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)));
+        }
+        return new Debit(bucket, tokens);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private Bucket bucket(Key key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxBuckets) {
+            sweep();
+        }
+        return buckets.computeIfAbsent(key, k -> {
+            long rate = modelTokensPerMinute.getOrDefault(k.model(), tokensPerMinute);
+            return new Bucket(rate, burst > 0 ? burst : rate);
+        });
+    }
+
+    private void sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private record Key(String client, String model) {
+    }
+
+    private static final class Bucket {
+
+        private final double nanosPerToken;
+        private final long capacity;
+        private final long tolerance;
+
+        /**
+         * {@link System#nanoTime()} at which the bucket is full again.
+         */
+        private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+        Bucket(long tokensPerMinute, long capacity) {
+            this.nanosPerToken = (double) TimeUnit.MINUTES.toNanos(1) / tokensPerMinute;
+            this.capacity = capacity;
+            this.tolerance = nanos(capacity);
+        }
+
+        /**
+         * Debits the tokens, or returns the nanoseconds until the bucket
+         * holds them.
+         */
+        long tryDebit(long tokens) {
+            long cost = nanos(tokens);
+            long required = nanos(Math.min(tokens, capacity));
+            while (true) {
+                long now = System.nanoTime();
+                long current = fullAt.get();
+                long base = current - now > 0 ? current : now;
+                long wait = base - now + required - tolerance;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, base + cost)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Debits, or credits when negative, tokens already spent; credits
+         * never fill the bucket beyond full.
+         */
+        void adjust(long tokens) {
+            long delta = nanos(tokens);
+            long now = System.nanoTime();
+            fullAt.updateAndGet(current -> {
+                if (delta >= 0) {
+                    return (current - now > 0 ? current : now) + delta;
+                }
+                long floor = current - now > 0 ? now : current;
+                long credited = current + delta;
+                return credited - floor > 0 ? credited : floor;
+            });
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+
+        private long nanos(long tokens) {
+            return (long) (tokens * nanosPerToken);
+        }
+    }
+
+    /**
+     * The tokens debited for one admitted call. Only the first of its end
+     * methods counts.
+     */
+    public static final class Debit {
+
+        public static final Debit NONE = new Debit(null, 0);
+
+        private final Bucket bucket;
+        private final long tokens;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Debit(Bucket bucket, long tokens) {
+            this.bucket = bucket;
+            this.tokens = tokens;
+        }
+
+        /**
+         * Replaces the estimate with the tokens the upstream reports; without
+         * a usage the estimate stands.
+         */
+        public void settle(Usage usage) {
+            long actual = used(usage);
+            if (bucket == null || actual < 0 || !settled.compareAndSet(false, true)) {
+                return;
+            }
+            bucket.adjust(actual - tokens);
+        }
+
+        /**
+         * Gives the estimate back, for calls that produced no completion.
+         */
+        public void refund() {
+            if (bucket == null || !settled.compareAndSet(false, true)) {
+                return;
+            }
+            bucket.adjust(-tokens);
+        }
+
+        private static long used(Usage usage) {
+            if (usage == null) {
+                return -1;
+            }
+            if (usage.getTotalTokens() != null) {
+                return usage.getTotalTokens();
+            }
+            if (usage.getPromptTokens() == null && usage.getCompletionTokens() == null) {
+                return -1;
+            }
+            return (usage.getPromptTokens() != null ? usage.getPromptTokens() : 0)
+                    + (usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+        }
+    }
+}
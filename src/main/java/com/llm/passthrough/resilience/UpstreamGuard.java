@@ -0,0 +1,247 @@
+package com.llm.passthrough.resilience;
+
+import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for one upstream route: an {@link AdaptiveLimit} on
+ * concurrent calls, for the route or for each model, and a
+ * {@link CircuitBreaker}. Either may be absent.
+ *
+ * <p>Calls over the limit, or made while the breaker is open, are refused at
+ * once with a {@link RequestRejectedException} instead of waiting for a
+ * pooled connection. Every admitted call must end its {@link Permit}.
+ */
+public class UpstreamGuard {
+
+    private static final int REJECTION_STATUS = 503;
+    private static final String OTHER = "other";
+
+    private final String route;
+    private final Supplier<AdaptiveLimit> limits;
+    private final boolean perModel;
+    private final int maxModels;
+    private final CircuitBreaker circuitBreaker;
+    private final MeterRegistry registry;
+    private final AdaptiveLimit routeLimit;
+    private final ConcurrentMap<String, AdaptiveLimit> modelLimits = new ConcurrentHashMap<>();
+
+    /**
+     * @param limits   creates the limit of the route, or of each model; {@code null} for no limit
+     * @param perModel whether each model gets its own limit; models beyond
+     *                 {@code maxModels} share one
+     */
+    public UpstreamGuard(String route, Supplier<AdaptiveLimit> limits, boolean perModel, int maxModels,
+                         CircuitBreaker circuitBreaker, MeterRegistry registry) {
+        this.route = route;
+        this.limits = limits;
+        this.perModel = limits != null && perModel;
+        this.maxModels = maxModels;
+        this.circuitBreaker = circuitBreaker;
+        this.registry = registry;
+        this.routeLimit = limits != null && !perModel ? register(limits.get(), null) : null;
+
+        if (circuitBreaker != null) {
+            Gauge.builder("llm.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                    .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                    .tag("route", route)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Admits a call under the limit and the circuit breaker.
+     */
+    public Permit acquire(String model) {
+        return acquire(model, true);
+    }
+
+    /**
+     * Admits a call under the circuit breaker only, for calls already bounded
+     * elsewhere such as SSE streams.
+     */
+    public Permit acquireUnlimited() {
+        return acquire(null, false);
+    }
+
+    private Permit acquire(String model, boolean limited) {
+        long epoch = -1;
+        if (circuitBreaker != null) {
+            epoch = circuitBreaker.tryAcquire();
+            if (epoch < 0) {
+                reject("circuit_open");
+                throw new RequestRejectedException("Upstream " + route + " is failing, retry later",
+                        REJECTION_STATUS, circuitBreaker.retryAfterSeconds());
+            }
+        }
+
+        AdaptiveLimit limit = limited ? limit(model) : null;
+        if (limit != null && !limit.tryAcquire()) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onIgnored(epoch);
+            }
+            reject("limit");
+            throw new RequestRejectedException("Too many concurrent " + route + " requests, retry later",
+                    REJECTION_STATUS);
+        }
+        return new Permit(limit, limit != null ? limit.getInFlight() : 0, epoch);
+    }
+
+    private AdaptiveLimit limit(String model) {
+        if (!perModel) {
+            return routeLimit;
+        }
+        String key = model != null && !model.isBlank() ? model : OTHER;
+        AdaptiveLimit limit = modelLimits.get(key);
+        if (limit != null) {
+            return limit;
+        }
+        if (modelLimits.size() >= maxModels) {
+            key = OTHER;
+        }
+        return modelLimits.computeIfAbsent(key, name -> register(limits.get(), name));
+    }
+
+    private AdaptiveLimit register(AdaptiveLimit limit, String model) {
+        Tags tags = model != null ? Tags.of("route", route, "model", model) : Tags.of("route", route);
+        Gauge.builder("llm.limit", limit, AdaptiveLimit::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder("llm.limit.inflight", limit, AdaptiveLimit::getInFlight)
+                .description("Calls in flight under the adaptive concurrency limit")
+                .tags(tags)
+                .register(registry);
+        return limit;
+    }
+
+    private void reject(String reason) {
+        Counter.builder("llm.limit.rejected")
+                .description("Calls refused before reaching the upstream")
+                .tags("route", route, "reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Whether a failed call says the upstream is struggling: a 5xx or 429
+     * response, or no response at all.
+     */
+    public static boolean isOverload(Throwable e) {
+        if (e instanceof ApigeeException apigeeException && apigeeException.getResponseBody() != null) {
+            return isOverload(apigeeException.getStatusCode());
+        }
+        return true;
+    }
+
+    public static boolean isOverload(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * One admitted call. Only the first of its end methods counts.
+     */
+    public final class Permit {
+
+        private final AdaptiveLimit limit;
+        private final int inFlight;
+        private final long epoch;
+        private final long started = System.nanoTime();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Permit(AdaptiveLimit limit, int inFlight, long epoch) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.epoch = epoch;
+        }
+
+        /**
+         * The upstream answered successfully.
+         */
+        public void success() {
+            healthy(true);
+        }
+
+        /**
+         * The upstream answered with an error status.
+         */
+        public void upstreamError(int status) {
+            if (isOverload(status)) {
+                dropped();
+            } else {
+                // The upstream is healthy; the request was not
+                healthy(false);
+            }
+        }
+
+        /**
+         * The call failed; see {@link #isOverload(Throwable)}.
+         */
+        public void failed(Throwable e) {
+            if (isOverload(e)) {
+                dropped();
+            } else {
+                healthy(false);
+            }
+        }
+
+        /**
+         * The upstream failed, timed out or refused the call as overloaded.
+         */
+        public void dropped() {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            if (limit != null) {
+                limit.release(System.nanoTime() - started, inFlight, true);
+            }
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure(epoch);
+            }
+        }
+
+        /**
+         * The call ended without an upstream verdict, e.g. it was cancelled.
+         */
+        public void ignore() {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            if (limit != null) {
+                limit.release();
+            }
+            if (circuitBreaker != null) {
+                circuitBreaker.onIgnored(epoch);
+            }
+        }
+
+        /**
+         * @param sample whether the latency tells anything about upstream load;
+         *               client errors are usually answered early and do not
+         */
+        private void healthy(boolean sample) {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            if (limit != null) {
+                if (sample) {
+                    limit.release(System.nanoTime() - started, inFlight, false);
+                } else {
+                    limit.release();
+                }
+            }
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess(epoch);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.llm.passthrough.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.ChatBatchResult;
+import com.llm.passthrough.dto.ChatRequest;
+import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.exception.InvalidRequestException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import com.llm.passthrough.util.Threads;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Fans a batch of chat requests out through {@link LlmService}, so each item
+ * gets the cache, coalescing, hedging, limits and token budget of a single
+ * call. A failed item is reported in its result and does not fail the batch.
+ *
+ * <p>Each batch runs at most {@code parallelism} items at once on a thread
+ * pool shared by all batches; the workers of a batch take the next item as
+ * they finish one, so a slow item does not hold up the others.
+ */
+@Slf4j
+@Service
+public class ChatBatchService {
+
+    private static final byte NEWLINE = '\n';
+    // The response times out this much after the batch, so that unfinished items can still be reported
+    private static final long RESPONSE_GRACE_MILLIS = 10_000;
+
+    private final LlmService llmService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApigeeProperties.Batch properties;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+
+    public ChatBatchService(LlmService llmService, Validator validator, ObjectMapper objectMapper,
+                            ApigeeProperties apigeeProperties) {
+        this.llmService = llmService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.properties = apigeeProperties.getChat().getBatch();
+
+        int maxThreads = Math.max(1, properties.getMaxThreads());
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Threads.daemon("llm-batch"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, Threads.daemon("llm-batch-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the batch and answers with every result, in request order.
+     */
+    public DeferredResult<List<ChatBatchResult>> batch(List<ChatRequest> requests, String path) {
+        DeferredResult<List<ChatBatchResult>> deferred = new DeferredResult<>(responseTimeout());
+        Batch batch = new Batch(requests, path, result -> { }, results -> deferred.setResult(Arrays.asList(results)));
+        deferred.onTimeout(batch::cancel);
+        deferred.onError(e -> batch.cancel());
+        batch.start();
+        return deferred;
+    }
+
+    /**
+     * Runs the batch and writes each result as one line of NDJSON as soon as
+     * it is done, in completion order.
+     */
+    public ResponseBodyEmitter batchStream(List<ChatRequest> requests, String path) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(responseTimeout());
+        Batch batch = new Batch(requests, path, result -> send(emitter, result), results -> emitter.complete());
+        emitter.onTimeout(batch::cancel);
+        emitter.onError(e -> batch.cancel());
+        batch.start();
+        return emitter;
+    }
+
+    private long responseTimeout() {
+        return properties.getTimeout().toMillis() + RESPONSE_GRACE_MILLIS;
+    }
+
+    private void send(ResponseBodyEmitter emitter, ChatBatchResult result) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(result);
+            byte[] line = Arrays.copyOf(json, json.length + 1);
+            line[json.length] = NEWLINE;
+            emitter.send(line);
+        } catch (IOException | IllegalStateException e) {
+            // The client has gone; the emitter's error callback cancels the batch
+            log.debug("Failed to write batch result {}: {}", result.getIndex(), e.getMessage());
+        }
+    }
+
+    private void checkSize(List<ChatRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new InvalidRequestException("requests: Batch cannot be empty");
+        }
+        if (requests.size() > properties.getMaxItems()) {
+            throw new InvalidRequestException("requests: Batch cannot have more than "
+                    + properties.getMaxItems() + " items");
+        }
+    }
+
+    /**
+     * The chat call for one item, or the error response it would have got.
+     */
+    private ChatBatchResult call(int index, ChatRequest request, String path) {
+        try {
+            if (request == null) {
+                throw new InvalidRequestException("Batch item cannot be null");
+            }
+            Set<ConstraintViolation<ChatRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                throw new InvalidRequestException(violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+            }
+            request.setStream(false);
+            ChatResponse response = llmService.chat(request);
+            return ChatBatchResult.builder()
+                    .index(index)
+                    .status(HttpStatus.OK.value())
+                    .response(response)
+                    .build();
+        } catch (InvalidRequestException e) {
+            return error(index, HttpStatus.BAD_REQUEST.value(), "Validation Error", e.getMessage(), path);
+        } catch (RequestRejectedException e) {
+            return error(index, e.getStatusCode(), HttpStatus.valueOf(e.getStatusCode()).getReasonPhrase(),
+                    e.getMessage(), path);
+        } catch (ApigeeException e) {
+            return error(index, e.getStatusCode(), "APIGEE Error", e.getMessage(), path);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error in batch item {}: ", index, e);
+            return error(index, HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error",
+                    "An unexpected error occurred", path);
+        }
+    }
+
+    private static ChatBatchResult error(int index, int status, String error, String message, String path) {
+        return ChatBatchResult.builder()
+                .index(index)
+                .status(status)
+                .error(ErrorResponse.builder()
+                        .timestamp(LocalDateTime.now())
+                        .status(status)
+                        .error(error)
+                        .message(message)
+                        .path(path)
+                        .build())
+                .build();
+    }
+
+    /**
+     * One batch in flight. Each item's result is set exactly once, by its
+     * worker or by {@link #cancel()}, whichever comes first.
+     */
+    private final class Batch {
+
+        private final List<ChatRequest> requests;
+        private final String path;
+        private final Consumer<ChatBatchResult> onResult;
+        private final Consumer<ChatBatchResult[]> onDone;
+        private final AtomicReferenceArray<ChatBatchResult> results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile ScheduledFuture<?> deadline;
+        // The caller's request, for the token budget of each item
+        private final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+        Batch(List<ChatRequest> requests, String path, Consumer<ChatBatchResult> onResult,
+              Consumer<ChatBatchResult[]> onDone) {
+            checkSize(requests);
+            this.requests = requests;
+            this.path = path;
+            this.onResult = onResult;
+            this.onDone = onDone;
+            this.results = new AtomicReferenceArray<>(requests.size());
+            this.remaining = new AtomicInteger(requests.size());
+        }
+
+        void start() {
+            int workers = Math.min(Math.max(1, properties.getParallelism()), requests.size());
+            log.info("Starting chat batch - Items: {}, Parallelism: {}", requests.size(), workers);
+            deadline = timer.schedule(this::cancel, properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            for (int i = 0; i < workers; i++) {
+                executor.execute(this::work);
+            }
+        }
+
+        private void work() {
+            RequestContextHolder.setRequestAttributes(attributes);
+            try {
+                int index;
+                while (!cancelled.get() && (index = next.getAndIncrement()) < requests.size()) {
+                    complete(index, call(index, requests.get(index), path));
+                }
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        }
+
+        private void complete(int index, ChatBatchResult result) {
+            if (!results.compareAndSet(index, null, result)) {
+                return;
+            }
+            onResult.accept(result);
+            if (remaining.decrementAndGet() == 0) {
+                ScheduledFuture<?> current = deadline;
+                if (current != null) {
+                    current.cancel(false);
+                }
+                log.info("Completed chat batch - Items: {}", requests.size());
+                onDone.accept(results());
+            }
+        }
+
+        /**
+         * Stops taking items and completes the batch, reporting the unfinished
+         * items as timed out. Items already sent upstream run to completion,
+         * but their results are dropped.
+         */
+        void cancel() {
+            if (!cancelled.compareAndSet(false, true)) {
+                return;
+            }
+            int unfinished = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                ChatBatchResult result = error(i, HttpStatus.GATEWAY_TIMEOUT.value(),
+                        HttpStatus.GATEWAY_TIMEOUT.getReasonPhrase(), "Batch timed out before this item completed",
+                        path);
+                if (results.compareAndSet(i, null, result)) {
+                    unfinished++;
+                    onResult.accept(result);
+                }
+            }
+            if (unfinished > 0) {
+                log.warn("Chat batch cancelled - Items: {}, Unfinished: {}", requests.size(), unfinished);
+                onDone.accept(results());
+            }
+        }
+
+        ChatBatchResult[] results() {
+            ChatBatchResult[] snapshot = new ChatBatchResult[requests.size()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = results.get(i);
+            }
+            return snapshot;
+        }
+    }
+}
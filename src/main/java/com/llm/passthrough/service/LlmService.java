@@ -1,39 +1,184 @@
 package com.llm.passthrough.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.cache.CacheDirective;
+import com.llm.passthrough.cache.ChatResponseCache;
+import com.llm.passthrough.cache.SingleFlight;
+import com.llm.passthrough.config.ApigeeProperties;
 import com.llm.passthrough.dto.ChatRequest;
 import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.ContentPart;
+import com.llm.passthrough.dto.Message;
 import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.exception.InvalidRequestException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import com.llm.passthrough.metrics.LlmMetrics;
+import com.llm.passthrough.resilience.RequestHedger;
+import com.llm.passthrough.resilience.TokenRateLimiter;
+import com.llm.passthrough.resilience.UpstreamGuard;
+import com.llm.passthrough.stream.CompletionSummaryInputStream;
+import com.llm.passthrough.stream.RawChatRequest;
+import com.llm.passthrough.stream.RelayBufferPool;
+import com.llm.passthrough.stream.SseRelayEmitter;
+import com.llm.passthrough.stream.SseRelayResponseConsumer;
+import com.llm.passthrough.stream.StreamExecutor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.function.ThrowingSupplier;
 import org.springframework.web.client.RestClient;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.security.Principal;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class LlmService {
 
+    // Rough prompt size used for admission; the upstream usage settles it
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MESSAGE_TOKENS = 4;
+    private static final int IMAGE_TOKENS = 258;
+    private static final int USAGE_TAIL_SIZE = 16 * 1024;
+    private static final String UNKNOWN_CALLER = "unknown";
+    private static final String CLIENT_CERTIFICATES = "jakarta.servlet.request.X509Certificate";
+
     private final RestClient restClient;
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ApigeeProperties apigeeProperties;
+    private final RelayBufferPool relayBufferPool;
+    private final StreamExecutor streamExecutor;
+    private final ObjectProvider<CloseableHttpAsyncClient> streamingAsyncClient;
+    private final ObjectMapper objectMapper;
+    private final ChatResponseCache chatResponseCache;
+    private final SingleFlight<String, ChatResponse> chatSingleFlight;
+    private final LlmMetrics llmMetrics;
+    private final RequestHedger chatRequestHedger;
+    private final UpstreamGuard chatUpstreamGuard;
+    private final TokenRateLimiter chatRateLimiter;
 
     public ChatResponse chat(ChatRequest request) {
-        log.info("Sending chat request to APIGEE - Model: {}, Messages: {}",
-                request.getModel(), request.getMessages().size());
+        return chat(request, CacheDirective.DEFAULT);
+    }
+
+    /**
+     * Non-streaming chat, served from the response cache when it is enabled and
+     * the request qualifies, and sharing the upstream call with identical
+     * requests already in flight when coalescing is enabled. The upstream call
+     * is hedged when hedging is enabled. Calls that reach the upstream are
+     * charged to the caller's token budget; cache hits and requests that
+     * joined another caller's upstream call are free.
+     */
+    public ChatResponse chat(ChatRequest request, CacheDirective directive) {
+        boolean cacheable = chatResponseCache.isCacheable(request, directive);
+        if (!cacheable && !chatSingleFlight.isEnabled()) {
+            log.info("Sending chat request to APIGEE - Model: {}, Messages: {}",
+                    request.getModel(), request.getMessages().size());
+            return charged(admit(request), () -> hedgedChat(request));
+        }
+
+        String key = chatResponseCache.key(request);
+        if (cacheable && directive.isLookup()) {
+            ChatResponse cached = chatResponseCache.get(key);
+            if (cached != null) {
+                log.info("Serving chat response from cache - ID: {}, Model: {}", cached.getId(), request.getModel());
+                return cached;
+            }
+        }
 
+        TokenRateLimiter.Debit debit = admit(request);
+        AtomicBoolean led = new AtomicBoolean();
+        return charged(debit, () -> {
+            ChatResponse response = chatSingleFlight.execute(key, () -> {
+                led.set(true);
+                log.info("Sending chat request to APIGEE - Model: {}, Messages: {}",
+                        request.getModel(), request.getMessages().size());
+                ChatResponse upstream = hedgedChat(request);
+                if (cacheable) {
+                    chatResponseCache.put(key, upstream);
+                }
+                return upstream;
+            });
+            if (!led.get()) {
+                // Only the caller whose call went upstream pays for the usage
+                debit.refund();
+            }
+            return response;
+        });
+    }
+
+    private ChatResponse hedgedChat(ChatRequest request) {
+        return chatRequestHedger.execute(request.getModel(),
+                () -> chat(request.getModel(), spec -> spec.body(request)));
+    }
+
+    /**
+     * Forward the client's original bytes; see {@link RawChatRequest}. The body
+     * can only be sent once, so raw requests are not hedged.
+     */
+    public ChatResponse chat(RawChatRequest request) {
+        log.info("Sending raw chat request to APIGEE - Model: {}", request.getModel());
+        return charged(admit(request), () -> chat(request.getModel(), spec -> spec.body(request)));
+    }
+
+    private static ChatResponse charged(TokenRateLimiter.Debit debit, Supplier<ChatResponse> chat) {
+        ChatResponse response;
         try {
-            ChatResponse response = restClient.post()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(request)
+            response = chat.get();
+        } catch (RuntimeException e) {
+            debit.refund();
+            throw e;
+        }
+        debit.settle(response != null ? response.getUsage() : null);
+        return response;
+    }
+
+    /**
+     * Read and validate a raw request body with the configured read-ahead.
+     */
+    public RawChatRequest readRawRequest(InputStream body, boolean stream) throws IOException {
+        return RawChatRequest.read(body, stream, objectMapper.getFactory(), relayBufferPool,
+                apigeeProperties.getChat().getRawRequestBufferSize());
+    }
+
+    private ChatResponse chat(String model, Consumer<RestClient.RequestBodySpec> requestBody) {
+        UpstreamGuard.Permit permit = chatUpstreamGuard.acquire(model);
+        LlmMetrics.Call call = llmMetrics.start(LlmMetrics.CHAT, model);
+        try (LlmMetrics.Scope ignored = call.bind()) {
+            RestClient.RequestBodySpec spec = restClient.post()
+                    .contentType(MediaType.APPLICATION_JSON);
+            requestBody.accept(spec);
+            ChatResponse response = spec
                     .retrieve()
                     .onStatus(HttpStatusCode::isError, (req, res) -> {
                         String body = new String(res.getBody().readAllBytes(), StandardCharsets.UTF_8);
@@ -45,70 +190,468 @@ public class LlmService {
 
             log.info("Received response from APIGEE - ID: {}",
                     response != null ? response.getId() : "null");
+            if (response != null) {
+                call.usage(response.getUsage());
+            }
+            call.stop(LlmMetrics.SUCCESS);
+            permit.success();
             return response;
 
-        } catch (ApigeeException e) {
+        } catch (InvalidRequestException e) {
+            call.stop(LlmMetrics.INVALID_REQUEST);
+            permit.ignore();
             throw e;
         } catch (Exception e) {
+            RequestHedger.Attempt attempt = RequestHedger.Attempt.current();
+            if (attempt != null && attempt.isCancelled()) {
+                // The other attempt of a hedged request has already answered
+                call.stop(LlmMetrics.CANCELLED);
+                permit.ignore();
+                throw new ApigeeException("Hedged attempt cancelled", e);
+            }
+            permit.failed(e);
+            if (e instanceof ApigeeException apigeeException) {
+                call.stop(outcome(apigeeException));
+                throw apigeeException;
+            }
+            call.stop(LlmMetrics.FAILURE);
             log.error("Error calling APIGEE: ", e);
             throw new ApigeeException("Failed to communicate with APIGEE", e);
         }
     }
 
-    public SseEmitter chatStream(ChatRequest request) {
-        log.info("Sending streaming chat request to APIGEE - Model: {}", request.getModel());
+    /**
+     * Forward the request and hand the upstream body back as an unread stream,
+     * with its status and content type. Only id, model and usage are picked out
+     * of the bytes on their way to the client, for logging.
+     */
+    public ResponseEntity<Resource> chatPassthrough(ChatRequest request) {
+        log.info("Sending passthrough chat request to APIGEE - Model: {}, Messages: {}",
+                request.getModel(), request.getMessages().size());
+        return chatPassthrough(request.getModel(), spec -> spec.body(request), admit(request));
+    }
+
+    /**
+     * Passthrough in both directions: neither body is bound to a DTO.
+     */
+    public ResponseEntity<Resource> chatPassthrough(RawChatRequest request) {
+        log.info("Sending raw passthrough chat request to APIGEE - Model: {}", request.getModel());
+        return chatPassthrough(request.getModel(), spec -> spec.body(request), admit(request));
+    }
+
+    private ResponseEntity<Resource> chatPassthrough(String model, Consumer<RestClient.RequestBodySpec> requestBody,
+                                                     TokenRateLimiter.Debit debit) {
+        UpstreamGuard.Permit permit;
+        try {
+            permit = chatUpstreamGuard.acquire(model);
+        } catch (RuntimeException e) {
+            debit.refund();
+            throw e;
+        }
+        LlmMetrics.Call call = llmMetrics.start(LlmMetrics.CHAT, model);
+        try (LlmMetrics.Scope ignored = call.bind()) {
+            RestClient.RequestBodySpec spec = restClient.post()
+                    .contentType(MediaType.APPLICATION_JSON);
+            requestBody.accept(spec);
+            // The response is left open; the body is closed once written to the client
+            return spec
+                    .exchange((req, res) -> {
+                        HttpHeaders headers = new HttpHeaders();
+                        MediaType contentType = res.getHeaders().getContentType();
+                        if (contentType != null) {
+                            headers.setContentType(contentType);
+                        }
+
+                        if (res.getStatusCode().isError()) {
+                            try (res) {
+                                byte[] body = res.getBody().readAllBytes();
+                                log.error("APIGEE error response: {} - {}", res.getStatusCode(),
+                                        new String(body, StandardCharsets.UTF_8));
+                                call.bytes(body.length);
+                                call.stop(LlmMetrics.UPSTREAM_ERROR);
+                                permit.upstreamError(res.getStatusCode().value());
+                                debit.refund();
+                                return ResponseEntity.status(res.getStatusCode())
+                                        .headers(headers)
+                                        .body((Resource) new ByteArrayResource(body));
+                            }
+                        }
+
+                        long contentLength = res.getHeaders().getContentLength();
+                        if (contentLength >= 0) {
+                            headers.setContentLength(contentLength);
+                        }
+                        InputStream body = new CompletionSummaryInputStream(res.getBody(), summary -> {
+                            call.bytes(summary.getBytes());
+                            call.usage(summary.getUsage());
+                            if (summary.isComplete()) {
+                                log.info("Relayed response from APIGEE - ID: {}, Model: {}, Bytes: {}",
+                                        summary.getId(), summary.getModel(), summary.getBytes());
+                                call.stop(LlmMetrics.SUCCESS);
+                                permit.success();
+                            } else if (summary.getFailure() != null) {
+                                log.error("Failed reading response from APIGEE - ID: {}, Bytes: {}",
+                                        summary.getId(), summary.getBytes(), summary.getFailure());
+                                call.stop(LlmMetrics.FAILURE);
+                                permit.failed(summary.getFailure());
+                            } else {
+                                // The client write failed and the body was closed unread
+                                log.info("Client went away before the response was relayed - ID: {}, Bytes: {}",
+                                        summary.getId(), summary.getBytes());
+                                call.stop(LlmMetrics.CANCELLED);
+                                permit.ignore();
+                            }
+                            debit.settle(summary.getUsage());
+                        });
+                        return ResponseEntity.status(res.getStatusCode())
+                                .headers(headers)
+                                .body((Resource) new InputStreamResource(body));
+                    }, false);
+
+        } catch (InvalidRequestException e) {
+            call.stop(LlmMetrics.INVALID_REQUEST);
+            permit.ignore();
+            debit.refund();
+            throw e;
+        } catch (Exception e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.failed(e);
+            debit.refund();
+            log.error("Error calling APIGEE: ", e);
+            throw new ApigeeException("Failed to communicate with APIGEE", e);
+        }
+    }
+
+    public ResponseBodyEmitter chatStream(ChatRequest request) {
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+        log.info("Sending streaming chat request to APIGEE - Model: {}, Mode: {}, Engine: {}",
+                request.getModel(), streaming.getMode(), streaming.getEngine());
 
         // Ensure stream is enabled
         request.setStream(true);
 
-        // Create SSE emitter with 5 minute timeout
-        SseEmitter emitter = new SseEmitter(300000L);
+        return chatStream(request.getModel(), spec -> spec.body(request),
+                () -> objectMapper.writeValueAsBytes(request), admit(request));
+    }
+
+    /**
+     * Stream a raw request; its {@code stream} flag is forced to true on the wire.
+     */
+    public ResponseBodyEmitter chatStream(RawChatRequest request) {
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+        log.info("Sending raw streaming chat request to APIGEE - Model: {}, Mode: {}, Engine: {}",
+                request.getModel(), streaming.getMode(), streaming.getEngine());
+
+        return chatStream(request.getModel(), spec -> spec.body(request), request::readAllBytes, admit(request));
+    }
 
-        executor.execute(() -> {
+    /**
+     * @param requestBody writes the request body for the blocking engine
+     * @param bodyBytes   serializes the request body for the async engine
+     * @param debit       settled from the usage in the final chunk of the stream
+     */
+    private ResponseBodyEmitter chatStream(String model, Consumer<RestClient.RequestBodySpec> requestBody,
+                                           ThrowingSupplier<byte[]> bodyBytes, TokenRateLimiter.Debit debit) {
+        // Streams are bounded by the stream executor; only the circuit breaker applies
+        UpstreamGuard.Permit permit;
+        try {
+            permit = chatUpstreamGuard.acquireUnlimited();
+        } catch (RuntimeException e) {
+            debit.refund();
+            throw e;
+        }
+        ApigeeProperties.Streaming streaming = apigeeProperties.getStreaming();
+        SseRelayEmitter emitter = new SseRelayEmitter(
+                streaming.getTimeout().toMillis(), relayBufferPool, streaming.getMode());
+        if (debit != TokenRateLimiter.Debit.NONE) {
+            emitter.keepTail(USAGE_TAIL_SIZE);
+        }
+        LlmMetrics.Call call = llmMetrics.start(LlmMetrics.CHAT_STREAM, model);
+        emitter.onUpstreamData(call::chunk);
+
+        try {
+            if (streaming.getEngine() == ApigeeProperties.StreamEngine.ASYNC) {
+                byte[] bytes = bodyBytes.getWithException();
+                streamExecutor.executeAsync(done -> relayAsync(bytes, emitter, call, permit, debit, done));
+            } else {
+                streamExecutor.execute(() -> relayBlocking(requestBody, emitter, call, permit, debit));
+            }
+        } catch (RejectedExecutionException e) {
+            call.stop(LlmMetrics.CANCELLED);
+            permit.ignore();
+            debit.refund();
+            log.warn("Rejecting streaming chat request - {}", e.getMessage());
+            throw new RequestRejectedException("Too many concurrent streaming requests, retry later",
+                    streaming.getRejectionStatus());
+        } catch (InvalidRequestException e) {
+            call.stop(LlmMetrics.INVALID_REQUEST);
+            permit.ignore();
+            debit.refund();
+            throw e;
+        } catch (Exception e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.ignore();
+            debit.refund();
+            throw new ApigeeException("Failed to serialize streaming chat request", e);
+        }
+
+        emitter.onCompletion(() -> log.info("SSE connection completed"));
+        emitter.onTimeout(() -> {
+            log.warn("SSE connection timed out");
+            call.stop(LlmMetrics.CANCELLED);
+            permit.ignore();
+            debit.settle(null);
+            emitter.cancelUpstream();
+        });
+        emitter.onError(e -> {
+            log.error("SSE error: ", e);
+            call.stop(LlmMetrics.CANCELLED);
+            permit.ignore();
+            debit.settle(null);
+            emitter.cancelUpstream();
+        });
+
+        return emitter;
+    }
+
+    /**
+     * Relay on the calling thread using the classic RestClient; the thread is
+     * held for the whole generation.
+     */
+    private void relayBlocking(Consumer<RestClient.RequestBodySpec> requestBody, SseRelayEmitter emitter,
+                               LlmMetrics.Call call, UpstreamGuard.Permit permit, TokenRateLimiter.Debit debit) {
+        try (LlmMetrics.Scope ignored = call.bind()) {
+            RestClient.RequestBodySpec spec = restClient.post()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_EVENT_STREAM);
+            requestBody.accept(spec);
+            spec
+                    .exchange((req, res) -> {
+                        if (res.getStatusCode().isError()) {
+                            String body = new String(res.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                            log.error("APIGEE streaming error: {} - {}", res.getStatusCode(), body);
+                            call.stop(LlmMetrics.UPSTREAM_ERROR);
+                            permit.upstreamError(res.getStatusCode().value());
+                            debit.refund();
+                            emitter.sendEvent("{\"error\": \"" + body + "\"}");
+                            emitter.complete();
+                            return null;
+                        }
+
+                        permit.success();
+                        // Relay upstream bytes without decoding them to Strings
+                        try (InputStream is = res.getBody()) {
+                            emitter.relay(is);
+                            call.stop(LlmMetrics.SUCCESS);
+                            debit.settle(emitter.tailUsage(objectMapper));
+                            emitter.complete();
+                        }
+                        return null;
+                    });
+        } catch (InvalidRequestException e) {
+            // Raised past the read-ahead while the body was being forwarded. The
+            // 200 and event-stream headers are already committed, so the
+            // rejection can only be reported as an error event.
+            log.warn("Rejecting raw streaming chat request - {}", e.getMessage());
+            call.stop(LlmMetrics.INVALID_REQUEST);
+            permit.ignore();
+            debit.refund();
             try {
-                restClient.post()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .accept(MediaType.TEXT_EVENT_STREAM)
-                        .body(request)
-                        .exchange((req, res) -> {
-                            if (res.getStatusCode().isError()) {
-                                String body = new String(res.getBody().readAllBytes(), StandardCharsets.UTF_8);
-                                log.error("APIGEE streaming error: {} - {}", res.getStatusCode(), body);
-                                emitter.send(SseEmitter.event().data("{\"error\": \"" + body + "\"}"));
-                                emitter.complete();
-                                return null;
+                emitter.sendEvent(objectMapper.createObjectNode()
+                        .put("error", e.getMessage())
+                        .put("status", HttpStatus.BAD_REQUEST.value())
+                        .toString());
+                emitter.complete();
+            } catch (Exception ex) {
+                log.error("Error sending error event: ", ex);
+                emitter.completeWithError(ex);
+            }
+        } catch (Exception e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.failed(e);
+            debit.settle(emitter.tailUsage(objectMapper));
+            streamFailed(emitter, e);
+        }
+    }
+
+    /**
+     * Relay through the async client; no thread is held while waiting for
+     * upstream tokens. Client writes and the callbacks below run on the
+     * stream executor, never on the I/O reactor. {@code done} frees the
+     * stream slot.
+     */
+    private void relayAsync(byte[] body, SseRelayEmitter emitter, LlmMetrics.Call call, UpstreamGuard.Permit permit,
+                            TokenRateLimiter.Debit debit, Runnable done) {
+        call.dispatch();
+        AsyncRequestProducer producer = AsyncRequestBuilder.post(apigeeProperties.getUrl())
+                .addHeader("x-lbg-client-id", apigeeProperties.getClientId())
+                .addHeader("x-lbg-client-secret", apigeeProperties.getClientSecret())
+                .addHeader("Accept", MediaType.TEXT_EVENT_STREAM_VALUE)
+                .setEntity(AsyncEntityProducers.create(body, ContentType.APPLICATION_JSON))
+                .build();
+        SseRelayResponseConsumer consumer = new SseRelayResponseConsumer(emitter, relayBufferPool,
+                streamExecutor.writeExecutor());
+
+        Future<Integer> exchange = streamingAsyncClient.getObject().execute(producer, consumer,
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(Integer status) {
+                        call.status(status);
+                        try {
+                            if (consumer.isError()) {
+                                String errorBody = consumer.getErrorBody();
+                                log.error("APIGEE streaming error: {} - {}", status, errorBody);
+                                call.stop(LlmMetrics.UPSTREAM_ERROR);
+                                permit.upstreamError(status);
+                                debit.refund();
+                                emitter.sendEvent("{\"error\": \"" + errorBody + "\"}");
+                            } else {
+                                emitter.finish();
+                                call.stop(LlmMetrics.SUCCESS);
+                                permit.success();
+                                debit.settle(emitter.tailUsage(objectMapper));
                             }
+                            emitter.complete();
+                        } catch (Exception e) {
+                            call.stop(LlmMetrics.FAILURE);
+                            permit.failed(e);
+                            debit.settle(emitter.tailUsage(objectMapper));
+                            streamFailed(emitter, e);
+                        } finally {
+                            done.run();
+                        }
+                    }
 
-                            try (InputStream is = res.getBody();
-                                 BufferedReader reader = new BufferedReader(
-                                         new InputStreamReader(is, StandardCharsets.UTF_8))) {
-
-                                String line;
-                                while ((line = reader.readLine()) != null) {
-                                    if (!line.isEmpty()) {
-                                        // Send raw line as SSE data
-                                        emitter.send(SseEmitter.event().data(line));
-                                    }
-                                }
-                                emitter.complete();
+                    @Override
+                    public void failed(Exception e) {
+                        // Behind any writes still queued, off the reactor
+                        consumer.execute(() -> {
+                            try {
+                                call.stop(LlmMetrics.FAILURE);
+                                permit.failed(e);
+                                debit.settle(emitter.tailUsage(objectMapper));
+                                streamFailed(emitter, e);
+                            } finally {
+                                done.run();
                             }
-                            return null;
                         });
-            } catch (Exception e) {
-                log.error("Error during streaming: ", e);
-                try {
-                    emitter.send(SseEmitter.event().data("{\"error\": \"" + e.getMessage() + "\"}"));
-                    emitter.completeWithError(e);
-                } catch (Exception ex) {
-                    log.error("Error sending error event: ", ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        consumer.execute(() -> {
+                            log.info("Upstream stream cancelled");
+                            call.stop(LlmMetrics.CANCELLED);
+                            permit.ignore();
+                            debit.settle(null);
+                            done.run();
+                        });
+                    }
+                });
+        emitter.bindUpstream(exchange);
+    }
+
+    private TokenRateLimiter.Debit admit(ChatRequest request) {
+        if (!chatRateLimiter.isEnabled()) {
+            return TokenRateLimiter.Debit.NONE;
+        }
+        return chatRateLimiter.admit(caller(), request.getModel(), estimatePromptTokens(request.getMessages()));
+    }
+
+    /**
+     * Raw bodies are not bound, so their prompt is estimated from the counts of
+     * the read-ahead scan; text past it is only charged once the upstream
+     * reports usage.
+     */
+    private TokenRateLimiter.Debit admit(RawChatRequest request) {
+        if (!chatRateLimiter.isEnabled()) {
+            return TokenRateLimiter.Debit.NONE;
+        }
+        return chatRateLimiter.admit(caller(), request.getModel(),
+                estimatePromptTokens(request.getMessageCount(), request.getTextLength(), request.getImageParts()));
+    }
+
+    private static long estimatePromptTokens(List<Message> messages) {
+        long textLength = 0;
+        int imageParts = 0;
+        for (Message message : messages) {
+            Object content = message.getContent();
+            if (content instanceof List<?> parts) {
+                for (Object part : parts) {
+                    if (part instanceof ContentPart contentPart) {
+                        if (contentPart.getInlineData() != null) {
+                            imageParts++;
+                        } else {
+                            textLength += length(contentPart.getText());
+                        }
+                    } else if (part instanceof Map<?, ?> map) {
+                        if (map.get("text") instanceof String text) {
+                            textLength += text.length();
+                        } else {
+                            imageParts++;
+                        }
+                    }
                 }
+            } else if (content != null) {
+                textLength += length(content.toString());
             }
-        });
+        }
+        return estimatePromptTokens(messages.size(), textLength, imageParts);
+    }
 
-        emitter.onCompletion(() -> log.info("SSE connection completed"));
-        emitter.onTimeout(() -> log.warn("SSE connection timed out"));
-        emitter.onError(e -> log.error("SSE error: ", e));
+    private static long estimatePromptTokens(int messages, long textLength, int imageParts) {
+        return (long) messages * MESSAGE_TOKENS + (long) imageParts * IMAGE_TOKENS + textLength / CHARS_PER_TOKEN;
+    }
 
-        return emitter;
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+
+    private String caller() {
+        HttpServletRequest request = currentRequest();
+        return request != null ? caller(request, apigeeProperties.getRateLimit().getClientHeader()) : UNKNOWN_CALLER;
+    }
+
+    /**
+     * The authenticated caller: the subject of its TLS client certificate or
+     * its user principal, else the trusted header when one is configured,
+     * else the remote address. The header is only read when configured,
+     * since a client could otherwise pick any bucket it likes.
+     */
+    static String caller(HttpServletRequest request, String trustedHeader) {
+        if (request.getAttribute(CLIENT_CERTIFICATES) instanceof X509Certificate[] certificates
+                && certificates.length > 0) {
+            return "cert:" + certificates[0].getSubjectX500Principal().getName();
+        }
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "user:" + principal.getName();
+        }
+        if (StringUtils.hasText(trustedHeader)) {
+            String client = request.getHeader(trustedHeader);
+            if (StringUtils.hasText(client)) {
+                return "client:" + client;
+            }
+        }
+        return "addr:" + request.getRemoteAddr();
+    }
+
+    private static HttpServletRequest currentRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getRequest() : null;
+    }
+
+    private static String outcome(ApigeeException e) {
+        return e.getResponseBody() != null ? LlmMetrics.UPSTREAM_ERROR : LlmMetrics.FAILURE;
+    }
+
+    private void streamFailed(SseRelayEmitter emitter, Exception e) {
+        log.error("Error during streaming: ", e);
+        try {
+            emitter.sendEvent("{\"error\": \"" + e.getMessage() + "\"}");
+            emitter.completeWithError(e);
+        } catch (Exception ex) {
+            log.error("Error sending error event: ", ex);
+        }
     }
 }
@@ -0,0 +1,103 @@
+package com.llm.passthrough.service;
+
+import com.llm.passthrough.dto.OcrPage;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.store.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Moves the base64 payloads of OCR page images into the {@link BlobStore},
+ * replacing each {@code image_base64} with {@code image_url},
+ * {@code image_sha256} and {@code image_size}. Images under
+ * {@code minSize} bytes, or whose payload is not base64, are left inline.
+ */
+@Slf4j
+class OcrImageOffloader {
+
+    private static final String IMAGE_BASE64 = "image_base64";
+    private static final String DATA_PREFIX = "data:";
+    private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,10}");
+
+    private final BlobStore store;
+    private final String path;
+    private final long minSize;
+
+    /**
+     * @param path URL path the blobs are served under
+     */
+    OcrImageOffloader(BlobStore store, String path, long minSize) {
+        this.store = store;
+        this.path = path;
+        this.minSize = minSize;
+    }
+
+    void offload(OcrResponse response) {
+        if (response.getPages() != null) {
+            response.getPages().forEach(this::offload);
+        }
+    }
+
+    void offload(OcrPage page) {
+        if (page.getImages() == null) {
+            return;
+        }
+        for (Object image : page.getImages()) {
+            if (image instanceof Map<?, ?> fields && fields.get(IMAGE_BASE64) instanceof String data) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> mutable = (Map<String, Object>) fields;
+                offload(mutable, data);
+            }
+        }
+    }
+
+    private void offload(Map<String, Object> image, String data) {
+        // Base64 takes four characters for every three bytes
+        if (data.length() / 4 * 3 < minSize) {
+            return;
+        }
+        String extension = null;
+        int start = 0;
+        if (data.startsWith(DATA_PREFIX)) {
+            start = data.indexOf(',') + 1;
+            extension = extension(data.substring(DATA_PREFIX.length(), Math.max(DATA_PREFIX.length(), start - 1)));
+        }
+
+        byte[] content;
+        try {
+            content = Base64.getDecoder().decode(data.substring(start));
+        } catch (IllegalArgumentException e) {
+            log.debug("Leaving OCR image {} inline, payload is not base64", image.get("id"));
+            return;
+        }
+        String hash;
+        try {
+            hash = store.put(content);
+        } catch (IOException e) {
+            log.warn("Failed to offload OCR image {}, leaving it inline", image.get("id"), e);
+            return;
+        }
+        image.remove(IMAGE_BASE64);
+        image.put("image_url", path + "/" + hash + (extension != null ? "." + extension : ""));
+        image.put("image_sha256", hash);
+        image.put("image_size", content.length);
+    }
+
+    /**
+     * The subtype of a data URI's media type, such as {@code jpeg} for
+     * {@code image/jpeg;base64}, to suffix the blob URL with.
+     */
+    private static String extension(String header) {
+        int slash = header.indexOf('/');
+        int end = header.indexOf(';');
+        if (slash < 0) {
+            return null;
+        }
+        String subtype = header.substring(slash + 1, end > slash ? end : header.length()).toLowerCase();
+        return EXTENSION.matcher(subtype).matches() ? subtype : null;
+    }
+}
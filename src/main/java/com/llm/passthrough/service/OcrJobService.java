@@ -0,0 +1,416 @@
+package com.llm.passthrough.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrJob;
+import com.llm.passthrough.dto.OcrRequest;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.exception.InvalidRequestException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import com.llm.passthrough.store.OcrJobStore;
+import com.llm.passthrough.util.Threads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs OCR jobs in the background through {@link OcrService}, so each job
+ * gets the result store, coalescing, splitting and limits of a direct call.
+ *
+ * <p>A job is written to the {@link OcrJobStore} before it is acknowledged
+ * and again as it starts and ends, so jobs queued or running at shutdown
+ * are run again on the next start. At most {@code workers} jobs run at once
+ * and at most {@code maxQueued} wait. A job refused by the local limits or
+ * circuit breaker is not failed but queued again with backoff. When a job
+ * ends its state is posted to its callback URL, if it has one, retrying with
+ * backoff.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "apigee.ocr.jobs", name = "enabled", havingValue = "true")
+public class OcrJobService {
+
+    public static final String PATH = "/api/v1/mistral/ocr/jobs";
+
+    private static final long SWEEP_INTERVAL_MINUTES = 60;
+    private static final long CALLBACK_BACKOFF_MILLIS = 1000;
+    private static final long REQUEUE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_REQUEUE_BACKOFF_MILLIS = 60_000;
+
+    private final OcrService ocrService;
+    private final OcrJobStore store;
+    private final ObjectMapper objectMapper;
+    private final ApigeeProperties.OcrJobs properties;
+    private final RestClient callbackClient;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Counter succeeded;
+    private final Counter failed;
+    private volatile boolean closing;
+
+    public OcrJobService(OcrService ocrService, OcrJobStore store, ObjectMapper objectMapper,
+                         ApigeeProperties apigeeProperties, MeterRegistry registry) {
+        this.ocrService = ocrService;
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.properties = apigeeProperties.getOcr().getJobs();
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) properties.getCallbackTimeout().toMillis());
+        requestFactory.setReadTimeout((int) properties.getCallbackTimeout().toMillis());
+        this.callbackClient = RestClient.builder().requestFactory(requestFactory).build();
+
+        int threads = Math.max(1, properties.getWorkers());
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Threads.daemon("ocr-job"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.timer = new ScheduledThreadPoolExecutor(1, Threads.daemon("ocr-job-timer"));
+
+        this.succeeded = Counter.builder("llm.ocr.jobs.completed")
+                .description("OCR jobs that ended")
+                .tag("status", "succeeded")
+                .register(registry);
+        this.failed = Counter.builder("llm.ocr.jobs.completed")
+                .description("OCR jobs that ended")
+                .tag("status", "failed")
+                .register(registry);
+        Gauge.builder("llm.ocr.jobs.queued", queued, AtomicInteger::get)
+                .description("OCR jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("llm.ocr.jobs.running", running, AtomicInteger::get)
+                .description("OCR jobs being run")
+                .register(registry);
+    }
+
+    /**
+     * Queues the jobs left unfinished by the last run and starts sweeping
+     * expired ones.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        List<OcrJobStore.Job> unfinished = store.unfinished();
+        if (!unfinished.isEmpty()) {
+            log.info("Resuming unfinished OCR jobs - Count: {}", unfinished.size());
+        }
+        for (OcrJobStore.Job job : unfinished) {
+            // Jobs already accepted are resumed even beyond maxQueued
+            queued.incrementAndGet();
+            enqueue(job.getId(), 1);
+        }
+        timer.scheduleWithFixedDelay(store::sweep, 0, SWEEP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void close() {
+        // Jobs interrupted here stay running on disk and are run again on the next start
+        closing = true;
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Stores the job and queues it.
+     *
+     * @param callbackUrl optional http(s) URL to post the job to when it ends
+     * @throws RequestRejectedException with status 503 if too many jobs are queued or on shutdown
+     */
+    public OcrJob submit(OcrRequest request, String documentHash, Integer pageCount, String callbackUrl) {
+        if (callbackUrl != null) {
+            checkCallbackUrl(callbackUrl, properties.getCallbackHosts());
+        }
+        // Reserve the slot first, so that concurrent submissions cannot overshoot
+        if (queued.incrementAndGet() > properties.getMaxQueued()) {
+            queued.decrementAndGet();
+            throw new RequestRejectedException("Too many OCR jobs queued, retry later",
+                    HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        Instant now = Instant.now();
+        OcrJobStore.Job job = OcrJobStore.Job.builder()
+                .id(OcrJobStore.newId())
+                .status(OcrJob.Status.QUEUED)
+                .request(request)
+                .documentHash(documentHash)
+                .pageCount(pageCount)
+                .callbackUrl(callbackUrl)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        boolean stored = false;
+        try {
+            store.save(job);
+            stored = true;
+        } catch (IOException e) {
+            throw new ApigeeException("Failed to store OCR job", e);
+        } finally {
+            if (!stored) {
+                queued.decrementAndGet();
+            }
+        }
+        enqueue(job.getId(), 1);
+        log.info("Queued OCR job - Id: {}, Model: {}", job.getId(), request.getModel());
+        return view(job);
+    }
+
+    /**
+     * The job, or {@code null} if it is unknown or expired.
+     */
+    public OcrJob find(String id) {
+        OcrJobStore.Job job = store.get(id);
+        return job != null ? view(job) : null;
+    }
+
+    /**
+     * The result file of a succeeded job, or {@code null}.
+     */
+    public Path result(String id) {
+        return store.result(id);
+    }
+
+    /**
+     * Hands the job to the workers; its slot in {@code queued} has already
+     * been taken and is given back if the workers refuse it.
+     *
+     * @throws RequestRejectedException with status 503 once shutting down
+     */
+    private void enqueue(String id, int attempt) {
+        try {
+            workers.execute(() -> {
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    run(id, attempt);
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw new RequestRejectedException("OCR jobs are shutting down", HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+
+    /**
+     * Queues a job refused by the local limits again, keeping it queued on
+     * disk, after a backoff that doubles with each attempt.
+     */
+    private void requeue(String id, int attempt, RequestRejectedException rejection) {
+        long delay = Math.min(MAX_REQUEUE_BACKOFF_MILLIS, REQUEUE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+        if (rejection.getRetryAfterSeconds() != null) {
+            delay = Math.max(delay, TimeUnit.SECONDS.toMillis(rejection.getRetryAfterSeconds()));
+        }
+        queued.incrementAndGet();
+        try {
+            timer.schedule(() -> {
+                try {
+                    enqueue(id, attempt + 1);
+                } catch (RequestRejectedException shutdown) {
+                    log.debug("Not requeueing OCR job {} during shutdown", id);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shutdown) {
+            // Still queued on disk, so run again on the next start
+            queued.decrementAndGet();
+        }
+    }
+
+    private void run(String id, int attempt) {
+        OcrJobStore.Job job = store.get(id);
+        if (job == null || job.getStatus().isDone()) {
+            return;
+        }
+        update(job, OcrJob.Status.RUNNING, null);
+        log.info("Running OCR job - Id: {}, Model: {}", id, job.getRequest().getModel());
+
+        OcrJob.Status status;
+        ErrorResponse error = null;
+        try {
+            byte[] result = ocrService.findStored(job.getRequest(), job.getDocumentHash());
+            if (result == null) {
+                OcrResponse response = ocrService.processOcr(job.getRequest(), job.getDocumentHash(),
+                        job.getPageCount());
+                result = objectMapper.writeValueAsBytes(response);
+            }
+            store.saveResult(id, result);
+            status = OcrJob.Status.SUCCEEDED;
+        } catch (RequestRejectedException e) {
+            if (closing) {
+                return;
+            }
+            update(job, OcrJob.Status.QUEUED, null);
+            log.info("Requeued OCR job - Id: {}, Attempt: {}, Reason: {}", id, attempt, e.getMessage());
+            requeue(id, attempt, e);
+            return;
+        } catch (ApigeeException e) {
+            status = OcrJob.Status.FAILED;
+            error = error(e.getStatusCode(), "APIGEE Error", e.getMessage(), id);
+        } catch (IOException | RuntimeException e) {
+            status = OcrJob.Status.FAILED;
+            log.error("Unexpected error in OCR job {}: ", id, e);
+            error = error(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error",
+                    "An unexpected error occurred", id);
+        }
+        if (closing) {
+            return;
+        }
+        (status == OcrJob.Status.SUCCEEDED ? succeeded : failed).increment();
+        log.info("Finished OCR job - Id: {}, Status: {}", id, status);
+        if (update(job, status, error) && job.getCallbackUrl() != null) {
+            try {
+                callback(job.getId(), objectMapper.writeValueAsBytes(view(job)), job.getCallbackUrl(), 1);
+            } catch (IOException e) {
+                log.warn("Failed to serialize OCR job {} for its callback", id, e);
+            }
+        }
+    }
+
+    private boolean update(OcrJobStore.Job job, OcrJob.Status status, ErrorResponse error) {
+        job.setStatus(status);
+        job.setError(error);
+        job.setUpdatedAt(Instant.now());
+        try {
+            store.save(job);
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to update OCR job {} to {}", job.getId(), status, e);
+            return false;
+        }
+    }
+
+    private void callback(String id, byte[] body, String url, int attempt) {
+        try {
+            // The host may resolve elsewhere by now
+            checkCallbackUrl(url, properties.getCallbackHosts());
+        } catch (InvalidRequestException e) {
+            log.warn("Not posting OCR job callback - Id: {}, Error: {}", id, e.getMessage());
+            return;
+        }
+        try {
+            callbackClient.post()
+                    .uri(url)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body)
+                    .retrieve()
+                    .toBodilessEntity();
+            log.debug("Delivered OCR job callback - Id: {}", id);
+        } catch (RuntimeException e) {
+            if (attempt >= properties.getCallbackAttempts()) {
+                log.warn("Giving up on OCR job callback - Id: {}, Attempts: {}, Error: {}",
+                        id, attempt, e.getMessage());
+                return;
+            }
+            try {
+                timer.schedule(() -> callback(id, body, url, attempt + 1),
+                        CALLBACK_BACKOFF_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException shutdown) {
+                log.debug("Not retrying OCR job callback {} during shutdown", id);
+            }
+        }
+    }
+
+    /**
+     * Checks that the URL is http(s), names an allowed host and resolves only
+     * to public addresses, so that callbacks cannot be pointed at this host or
+     * the internal network.
+     *
+     * @param allowedHosts host names, or domains starting with a dot
+     */
+    static void checkCallbackUrl(String callbackUrl, List<String> allowedHosts) {
+        String host = null;
+        try {
+            URI uri = URI.create(callbackUrl);
+            if ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())) {
+                host = uri.getHost();
+            }
+        } catch (IllegalArgumentException e) {
+            // Reported below
+        }
+        if (host == null) {
+            throw new InvalidRequestException("X-Callback-Url: Must be an absolute http or https URL");
+        }
+        if (!isAllowedHost(host, allowedHosts)) {
+            throw new InvalidRequestException("X-Callback-Url: Host " + host + " is not allowed");
+        }
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw new InvalidRequestException("X-Callback-Url: Host " + host + " does not resolve");
+        }
+        for (InetAddress address : addresses) {
+            if (!isPublic(address)) {
+                throw new InvalidRequestException("X-Callback-Url: Host " + host + " resolves to a private address");
+            }
+        }
+    }
+
+    private static boolean isAllowedHost(String host, List<String> allowedHosts) {
+        String name = host.toLowerCase(Locale.ROOT);
+        for (String allowed : allowedHosts) {
+            String entry = allowed.trim().toLowerCase(Locale.ROOT);
+            if (entry.startsWith(".") ? name.endsWith(entry) : name.equals(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        // Unique local IPv6 addresses (fc00::/7), which isSiteLocalAddress does not cover
+        return !(address instanceof Inet6Address) || (address.getAddress()[0] & 0xfe) != 0xfc;
+    }
+
+    private static OcrJob view(OcrJobStore.Job job) {
+        return OcrJob.builder()
+                .id(job.getId())
+                .status(job.getStatus())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .resultUrl(job.getStatus() == OcrJob.Status.SUCCEEDED ? PATH + "/" + job.getId() + "/result" : null)
+                .error(job.getError())
+                .build();
+    }
+
+    private static ErrorResponse error(int status, String error, String message, String id) {
+        return ErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status)
+                .error(error)
+                .message(message)
+                .path(PATH + "/" + id)
+                .build();
+    }
+}
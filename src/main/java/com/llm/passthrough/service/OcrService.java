@@ -1,33 +1,265 @@
 package com.llm.passthrough.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.cache.RequestFingerprint;
+import com.llm.passthrough.cache.SingleFlight;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrPage;
 import com.llm.passthrough.dto.OcrRequest;
 import com.llm.passthrough.dto.OcrResponse;
 import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.metrics.LlmMetrics;
+import com.llm.passthrough.resilience.UpstreamGuard;
+import com.llm.passthrough.store.BlobStore;
+import com.llm.passthrough.store.OcrResultStore;
+import com.llm.passthrough.stream.OcrPageStreamer;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Service
 public class OcrService {
 
+    public static final String BLOBS_PATH = "/api/v1/mistral/ocr/blobs";
+
     private final RestClient ocrRestClient;
+    private final SingleFlight<String, OcrResponse> ocrSingleFlight;
+    private final RequestFingerprint requestFingerprint;
+    private final ObjectProvider<OcrResultStore> ocrResultStore;
+    private final ObjectMapper objectMapper;
+    private final LlmMetrics llmMetrics;
+    private final UpstreamGuard ocrUpstreamGuard;
+    private final OcrSplitter ocrSplitter;
+    private final OcrImageOffloader imageOffloader;
 
-    public OcrService(@Qualifier("ocrRestClient") RestClient ocrRestClient) {
+    public OcrService(@Qualifier("ocrRestClient") RestClient ocrRestClient,
+                      SingleFlight<String, OcrResponse> ocrSingleFlight,
+                      RequestFingerprint requestFingerprint,
+                      ObjectProvider<OcrResultStore> ocrResultStore,
+                      ObjectMapper objectMapper,
+                      LlmMetrics llmMetrics,
+                      @Qualifier("ocrUpstreamGuard") UpstreamGuard ocrUpstreamGuard,
+                      ObjectProvider<BlobStore> ocrBlobStore,
+                      ApigeeProperties apigeeProperties) {
         this.ocrRestClient = ocrRestClient;
+        this.ocrSingleFlight = ocrSingleFlight;
+        this.requestFingerprint = requestFingerprint;
+        this.ocrResultStore = ocrResultStore;
+        this.objectMapper = objectMapper;
+        this.llmMetrics = llmMetrics;
+        this.ocrUpstreamGuard = ocrUpstreamGuard;
+        this.ocrSplitter = new OcrSplitter(apigeeProperties.getOcr().getSplit());
+        BlobStore blobStore = ocrBlobStore.getIfAvailable();
+        this.imageOffloader = blobStore != null
+                ? new OcrImageOffloader(blobStore, BLOBS_PATH, apigeeProperties.getOcr().getBlobs().getMinSize().toBytes())
+                : null;
+    }
+
+    @PreDestroy
+    public void close() {
+        ocrSplitter.close();
+    }
+
+    /**
+     * The stored result for this document as JSON, or {@code null} if the OCR
+     * result store is disabled or has no entry.
+     *
+     * @param documentHash optional client-supplied hash of the document content
+     */
+    public byte[] findStored(OcrRequest request, String documentHash) {
+        OcrResultStore store = ocrResultStore.getIfAvailable();
+        if (store == null) {
+            return null;
+        }
+        byte[] stored = store.get(storeKey(request, documentHash));
+        if (stored != null) {
+            log.info("Serving OCR result from store - Model: {}, Bytes: {}", request.getModel(), stored.length);
+        }
+        return stored;
     }
 
     public OcrResponse processOcr(OcrRequest request) {
+        return processOcr(request, null, null);
+    }
+
+    /**
+     * Run OCR, sharing the upstream call with an identical request (same model,
+     * document and pages) already in flight when coalescing is enabled. The
+     * result is written to the OCR result store when one is configured. With
+     * {@code apigee.ocr.split} enabled, large page ranges are sent as parallel
+     * chunks. With {@code apigee.ocr.blobs} enabled, page images are replaced
+     * by blob URLs before the result is stored or returned.
+     *
+     * @param pageCount optional page count of the document, which lets a
+     *                  request without {@code pages} be split
+     */
+    public OcrResponse processOcr(OcrRequest request, String documentHash, Integer pageCount) {
+        if (!ocrSingleFlight.isEnabled()) {
+            return callAndStore(request, documentHash, pageCount);
+        }
+        // The hash names the stored result and the page count decides the split
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put("request", request);
+        key.put("document_hash", documentHash);
+        key.put("page_count", pageCount);
+        return ocrSingleFlight.execute(requestFingerprint.of(key),
+                () -> callAndStore(request, documentHash, pageCount));
+    }
+
+    private OcrResponse callAndStore(OcrRequest request, String documentHash, Integer pageCount) {
+        List<String> chunks = ocrSplitter.chunks(request, pageCount);
+        OcrResponse response = chunks != null
+                ? ocrSplitter.execute(request, chunks, this::callOcr)
+                : callOcr(request);
+        if (imageOffloader != null && response != null) {
+            imageOffloader.offload(response);
+        }
+        OcrResultStore store = ocrResultStore.getIfAvailable();
+        if (store != null && response != null) {
+            try {
+                store.put(storeKey(request, documentHash), objectMapper.writeValueAsBytes(response));
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize OCR result for the store", e);
+            }
+        }
+        return response;
+    }
+
+    private static byte[] storeKey(OcrRequest request, String documentHash) {
+        return OcrResultStore.key(request.getModel(), request.getDocument().getDocumentUrl(),
+                documentHash, request.getPages());
+    }
+
+    /**
+     * Run OCR and answer with NDJSON written by {@link OcrPageStreamer}: one
+     * line per page as soon as it has been read from the upstream, then the
+     * remaining fields. Page images are offloaded to blobs line by line when
+     * enabled. A stored result is replayed the same way. Streamed
+     * requests are not split, coalesced or stored, as that would take the
+     * whole response in memory.
+     *
+     * @return the body to write, once the upstream has answered successfully
+     * @throws ApigeeException if the upstream fails, before anything is written
+     */
+    public StreamingResponseBody streamOcr(OcrRequest request, String documentHash) {
+        byte[] stored = findStored(request, documentHash);
+        if (stored != null) {
+            return out -> new OcrPageStreamer(objectMapper, out, this::offloadImages)
+                    .relay(new ByteArrayInputStream(stored));
+        }
+
+        log.info("Sending streaming OCR request to APIGEE - Model: {}, Document Type: {}",
+                request.getModel(), request.getDocument().getType());
+        UpstreamGuard.Permit permit = ocrUpstreamGuard.acquire(request.getModel());
+        LlmMetrics.Call call = llmMetrics.start(LlmMetrics.OCR, request.getModel());
+        ClientHttpResponse response = openOcr(request, call, permit);
+        return out -> relayOcr(response, out, call, permit);
+    }
+
+    private void offloadImages(OcrPage page) {
+        if (imageOffloader != null) {
+            imageOffloader.offload(page);
+        }
+    }
+
+    private ClientHttpResponse openOcr(OcrRequest request, LlmMetrics.Call call, UpstreamGuard.Permit permit) {
+        try (LlmMetrics.Scope ignored = call.bind()) {
+            // The response is left open; it is closed once relayed
+            return ocrRestClient.post()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(request)
+                    .exchange((req, res) -> {
+                        if (res.getStatusCode().isError()) {
+                            try (res) {
+                                String body = new String(res.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                                log.error("APIGEE OCR error response: {} - {}", res.getStatusCode(), body);
+                                throw new ApigeeException("APIGEE OCR request failed: " + body,
+                                        res.getStatusCode().value(), body);
+                            }
+                        }
+                        return res;
+                    }, false);
+
+        } catch (ApigeeException e) {
+            call.stop(LlmMetrics.UPSTREAM_ERROR);
+            permit.failed(e);
+            throw e;
+        } catch (Exception e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.failed(e);
+            log.error("Error calling APIGEE OCR: ", e);
+            throw new ApigeeException("Failed to communicate with APIGEE OCR", e);
+        }
+    }
+
+    /**
+     * Relays the upstream response and ends the permit once it has been read:
+     * a success when it was read whole, a failure when the upstream broke off,
+     * and no verdict when the client went away.
+     */
+    private void relayOcr(ClientHttpResponse response, OutputStream out, LlmMetrics.Call call,
+                          UpstreamGuard.Permit permit) throws IOException {
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, out, this::offloadImages);
+        try (response; LlmMetrics.Scope ignored = call.bind()) {
+            OcrResponse summary = streamer.relay(response.getBody());
+            log.info("Relayed OCR response from APIGEE - Model: {}, Pages: {}",
+                    summary.getModel(), streamer.getPages());
+            call.ocrUsage(summary.getUsageInfo());
+            call.stop(LlmMetrics.SUCCESS);
+            permit.success();
+        } catch (IOException e) {
+            if (streamer.isWriteFailed()) {
+                call.stop(LlmMetrics.CANCELLED);
+                permit.ignore();
+                log.debug("Client went away during streamed OCR response: {}", e.getMessage());
+                throw e;
+            }
+            call.stop(LlmMetrics.FAILURE);
+            permit.failed(e);
+            // Pages already sent cannot be taken back, so the failure is reported in the last line
+            log.error("Streamed OCR response from APIGEE broke off after {} pages: {}",
+                    streamer.getPages(), e.getMessage());
+            streamer.error(ErrorResponse.builder()
+                    .timestamp(LocalDateTime.now())
+                    .status(HttpStatus.BAD_GATEWAY.value())
+                    .error("APIGEE Error")
+                    .message("OCR response from APIGEE broke off after " + streamer.getPages() + " pages")
+                    .build());
+        } catch (RuntimeException e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.ignore();
+            throw e;
+        }
+    }
+
+    private OcrResponse callOcr(OcrRequest request) {
         log.info("Sending OCR request to APIGEE - Model: {}, Document Type: {}",
                 request.getModel(), request.getDocument().getType());
 
-        try {
+        UpstreamGuard.Permit permit = ocrUpstreamGuard.acquire(request.getModel());
+        LlmMetrics.Call call = llmMetrics.start(LlmMetrics.OCR, request.getModel());
+        try (LlmMetrics.Scope ignored = call.bind()) {
             OcrResponse response = ocrRestClient.post()
                     .contentType(MediaType.APPLICATION_JSON)
                     .body(request)
@@ -43,11 +275,20 @@ public class OcrService {
             log.info("Received OCR response from APIGEE - Model: {}, Pages: {}",
                     response != null ? response.getModel() : "null",
                     response != null && response.getPages() != null ? response.getPages().size() : 0);
+            if (response != null) {
+                call.ocrUsage(response.getUsageInfo());
+            }
+            call.stop(LlmMetrics.SUCCESS);
+            permit.success();
             return response;
 
         } catch (ApigeeException e) {
+            call.stop(LlmMetrics.UPSTREAM_ERROR);
+            permit.failed(e);
             throw e;
         } catch (Exception e) {
+            call.stop(LlmMetrics.FAILURE);
+            permit.failed(e);
             log.error("Error calling APIGEE OCR: ", e);
             throw new ApigeeException("Failed to communicate with APIGEE OCR", e);
         }
@@ -0,0 +1,252 @@
+package com.llm.passthrough.service;
+
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.OcrPage;
+import com.llm.passthrough.dto.OcrRequest;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.dto.OcrUsageInfo;
+import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.resilience.UpstreamGuard;
+import com.llm.passthrough.util.Threads;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Sends an OCR request as several requests over consecutive page ranges, at
+ * most {@code concurrency} at once, and merges their pages by index.
+ *
+ * <p>A chunk that fails with a 5xx, 429 or no response is retried on its own
+ * with exponential backoff, up to {@code maxAttempts}; once a chunk has
+ * failed for good no further chunks are started and its error is thrown.
+ */
+@Slf4j
+class OcrSplitter implements AutoCloseable {
+
+    // Beyond this the pages value is left for the upstream to judge
+    private static final int MAX_PAGES = 10_000;
+
+    private final ApigeeProperties.OcrSplit properties;
+    private final ThreadPoolExecutor executor;
+
+    OcrSplitter(ApigeeProperties.OcrSplit properties) {
+        this.properties = properties;
+        int maxThreads = Math.max(1, properties.getMaxThreads());
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Threads.daemon("llm-ocr-split"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The {@code pages} value of each chunk, or {@code null} when the request
+     * is not split: splitting is disabled, the pages are unknown or do not
+     * parse, or they fit in one chunk.
+     *
+     * @param pageCount pages in the document, used when the request names none
+     */
+    List<String> chunks(OcrRequest request, Integer pageCount) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        List<Integer> pages;
+        if (request.getPages() != null && !request.getPages().isBlank()) {
+            pages = parsePages(request.getPages());
+        } else if (pageCount != null && pageCount > 0 && pageCount <= MAX_PAGES) {
+            pages = new ArrayList<>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                pages.add(i);
+            }
+        } else {
+            pages = null;
+        }
+        int size = Math.max(1, properties.getPagesPerChunk());
+        if (pages == null || pages.size() <= size) {
+            return null;
+        }
+
+        List<String> chunks = new ArrayList<>();
+        for (int from = 0; from < pages.size(); from += size) {
+            chunks.add(formatPages(pages.subList(from, Math.min(pages.size(), from + size))));
+        }
+        return chunks;
+    }
+
+    /**
+     * Calls every chunk through {@code call} and merges the responses.
+     */
+    OcrResponse execute(OcrRequest request, List<String> chunks, Function<OcrRequest, OcrResponse> call) {
+        log.info("Splitting OCR request - Model: {}, Chunks: {}", request.getModel(), chunks.size());
+        OcrResponse[] responses = new OcrResponse[chunks.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            int index;
+            while (failure.get() == null && (index = next.getAndIncrement()) < chunks.size()) {
+                OcrRequest chunk = OcrRequest.builder()
+                        .model(request.getModel())
+                        .document(request.getDocument())
+                        .pages(chunks.get(index))
+                        .build();
+                try {
+                    responses[index] = callWithRetry(chunk, call);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        // The calling thread works too, so a request never waits on the pool alone
+        int workers = Math.min(Math.max(1, properties.getConcurrency()), chunks.size());
+        List<Future<?>> helpers = new ArrayList<>(workers - 1);
+        for (int i = 1; i < workers; i++) {
+            helpers.add(executor.submit(worker));
+        }
+        worker.run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new ApigeeException("Interrupted while waiting for OCR chunks", e));
+                helpers.forEach(future -> future.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, new ApigeeException("OCR chunk failed", e.getCause()));
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return merge(responses);
+    }
+
+    private OcrResponse callWithRetry(OcrRequest chunk, Function<OcrRequest, OcrResponse> call) {
+        int maxAttempts = Math.max(1, properties.getMaxAttempts());
+        long backoff = properties.getRetryBackoff().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.apply(chunk);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts || !UpstreamGuard.isOverload(e)) {
+                    throw e;
+                }
+                log.warn("Retrying OCR chunk - Pages: {}, Attempt: {}/{}, Error: {}",
+                        chunk.getPages(), attempt + 1, maxAttempts, e.getMessage());
+                try {
+                    Thread.sleep(backoff << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static OcrResponse merge(OcrResponse[] responses) {
+        List<OcrPage> pages = new ArrayList<>();
+        OcrResponse merged = new OcrResponse();
+        Integer pagesProcessed = null;
+        Long docSizeBytes = null;
+        for (OcrResponse response : responses) {
+            if (response == null) {
+                continue;
+            }
+            if (response.getPages() != null) {
+                pages.addAll(response.getPages());
+            }
+            if (merged.getModel() == null) {
+                merged.setModel(response.getModel());
+            }
+            if (merged.getDocumentAnnotation() == null) {
+                merged.setDocumentAnnotation(response.getDocumentAnnotation());
+            }
+            OcrUsageInfo usage = response.getUsageInfo();
+            if (usage != null) {
+                if (usage.getPagesProcessed() != null) {
+                    pagesProcessed = (pagesProcessed != null ? pagesProcessed : 0) + usage.getPagesProcessed();
+                }
+                // Every chunk reports the size of the whole document
+                if (usage.getDocSizeBytes() != null) {
+                    docSizeBytes = docSizeBytes != null ? Math.max(docSizeBytes, usage.getDocSizeBytes())
+                            : usage.getDocSizeBytes();
+                }
+            }
+        }
+        pages.sort(Comparator.comparing(OcrPage::getIndex, Comparator.nullsLast(Comparator.naturalOrder())));
+        merged.setPages(pages);
+        if (pagesProcessed != null || docSizeBytes != null) {
+            merged.setUsageInfo(new OcrUsageInfo(pagesProcessed, docSizeBytes));
+        }
+        return merged;
+    }
+
+    /**
+     * Parses a {@code pages} value such as {@code 0-4,7,9-10} into sorted
+     * distinct page indexes, or {@code null} if it does not parse or names
+     * more than {@value #MAX_PAGES} pages.
+     */
+    static List<Integer> parsePages(String value) {
+        TreeSet<Integer> pages = new TreeSet<>();
+        try {
+            for (String part : value.split(",")) {
+                String range = part.trim();
+                int dash = range.indexOf('-', 1);
+                int from = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+                int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+                if (from < 0 || to < from || to - from >= MAX_PAGES) {
+                    return null;
+                }
+                for (int page = from; page <= to; page++) {
+                    pages.add(page);
+                }
+                if (pages.size() > MAX_PAGES) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Formats sorted page indexes, collapsing runs into ranges.
+     */
+    static String formatPages(List<Integer> pages) {
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        while (i < pages.size()) {
+            int from = pages.get(i);
+            int to = from;
+            while (i + 1 < pages.size() && pages.get(i + 1) == to + 1) {
+                to = pages.get(++i);
+            }
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(from);
+            if (to > from) {
+                value.append('-').append(to);
+            }
+            i++;
+        }
+        return value.toString();
+    }
+}
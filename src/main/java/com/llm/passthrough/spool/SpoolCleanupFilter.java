@@ -0,0 +1,55 @@
+package com.llm.passthrough.spool;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Releases spooled request payloads once the request is done with them. For
+ * async requests (SSE streams) that is when the async processing completes,
+ * since the body is forwarded upstream after the handler has returned.
+ */
+public class SpoolCleanupFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener());
+            } else {
+                SpoolManager.releaseAll(request);
+            }
+        }
+    }
+
+    private static final class ReleaseListener implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            SpoolManager.releaseAll(event.getSuppliedRequest());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            SpoolManager.releaseAll(event.getSuppliedRequest());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
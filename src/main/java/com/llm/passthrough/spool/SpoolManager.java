@@ -0,0 +1,264 @@
+package com.llm.passthrough.spool;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.ServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves large JSON string values out of the Java heap while they are parsed.
+ *
+ * <p>Values of at least {@code threshold} chars are copied from Jackson's
+ * segmented text buffer straight into direct buffers, or into a temp file once
+ * the {@code maxOffHeapBytes} budget is used up. Direct buffers are fixed-size
+ * chunks that go back to a pool when their value is released and are reused
+ * from there, so direct memory never exceeds the budget and nothing waits on
+ * the garbage collector to free it. Spooled values created on a request thread
+ * are released when that request completes, see {@link SpoolCleanupFilter}.
+ */
+@Slf4j
+public class SpoolManager implements MeterBinder {
+
+    static final String REQUEST_ATTRIBUTE = SpoolManager.class.getName() + ".SPOOLED";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int FILE_BUFFER_SIZE = 256 * 1024;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final boolean offHeap;
+    private final long maxOffHeapBytes;
+    private final Path directory;
+    private final AtomicLong offHeapBytes = new AtomicLong();
+    private final AtomicLong offHeapBytesInUse = new AtomicLong();
+    private final Queue<ByteBuffer> pooledChunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger files = new AtomicInteger();
+
+    public SpoolManager(boolean enabled, int threshold, boolean offHeap, long maxOffHeapBytes, Path directory) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.offHeap = offHeap;
+        this.maxOffHeapBytes = maxOffHeapBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Read the current string token, spooling it when it is over the threshold.
+     */
+    public SpooledText spool(JsonParser parser) throws IOException {
+        // Completes the token in Jackson's segmented buffer without joining it
+        int chars = parser.getTextLength();
+        if (!enabled || chars < threshold) {
+            return SpooledText.of(parser.getText());
+        }
+
+        SpooledText text = offHeap ? spoolOffHeap(parser) : null;
+        if (text == null) {
+            text = spoolToFile(parser);
+        }
+        track(text);
+        return text;
+    }
+
+    /**
+     * Release every value spooled while handling the request.
+     */
+    public static void releaseAll(ServletRequest request) {
+        @SuppressWarnings("unchecked")
+        List<SpooledText> spooled = (List<SpooledText>) request.getAttribute(REQUEST_ATTRIBUTE);
+        if (spooled != null) {
+            request.removeAttribute(REQUEST_ATTRIBUTE);
+            spooled.forEach(SpooledText::close);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Direct memory allocated for spooling, whether in use or pooled for reuse.
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes.get();
+    }
+
+    public long getOffHeapBytesInUse() {
+        return offHeapBytesInUse.get();
+    }
+
+    public int getFileCount() {
+        return files.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("llm.spool.off.heap", this, SpoolManager::getOffHeapBytes)
+                .description("Direct memory allocated for spooled request payloads, in use or pooled")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("llm.spool.off.heap.used", this, SpoolManager::getOffHeapBytesInUse)
+                .description("Bytes of direct memory holding spooled request payloads")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("llm.spool.files", this, SpoolManager::getFileCount)
+                .description("Request payloads currently spooled to temp files")
+                .register(registry);
+    }
+
+    /**
+     * Spool into pooled direct buffers, or return null once the budget runs
+     * out so that the caller falls back to a file.
+     */
+    private SpooledText spoolOffHeap(JsonParser parser) throws IOException {
+        DirectOutputStream out = new DirectOutputStream();
+        try {
+            writeText(parser, out);
+        } catch (OffHeapExhaustedException e) {
+            recycle(out.chunks);
+            log.debug("Off-heap spool budget of {} bytes used up; spooling to a file", maxOffHeapBytes);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            recycle(out.chunks);
+            throw e;
+        }
+        out.finish();
+        log.debug("Spooled {} bytes off-heap", out.length);
+        return SpooledText.offHeap(out.chunks, out.length, this::recycle);
+    }
+
+    private ByteBuffer acquireChunk() {
+        ByteBuffer chunk = pooledChunks.poll();
+        if (chunk == null) {
+            long current;
+            do {
+                current = offHeapBytes.get();
+                if (current + CHUNK_SIZE > maxOffHeapBytes) {
+                    return null;
+                }
+            } while (!offHeapBytes.compareAndSet(current, current + CHUNK_SIZE));
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        offHeapBytesInUse.addAndGet(CHUNK_SIZE);
+        return chunk;
+    }
+
+    private void recycle(List<ByteBuffer> chunks) {
+        for (ByteBuffer chunk : chunks) {
+            chunk.clear();
+            offHeapBytesInUse.addAndGet(-CHUNK_SIZE);
+            pooledChunks.offer(chunk);
+        }
+    }
+
+    private SpooledText spoolToFile(JsonParser parser) throws IOException {
+        Path file = Files.createTempFile(directory, "inline-data-", ".spool");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), FILE_BUFFER_SIZE)) {
+            writeText(parser, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        files.incrementAndGet();
+        long length = Files.size(file);
+        log.debug("Spooled {} bytes to {}", length, file);
+        return SpooledText.tempFile(file, length, files::decrementAndGet);
+    }
+
+    private static void writeText(JsonParser parser, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        parser.getText(writer);
+        writer.flush();
+    }
+
+    private static void track(SpooledText text) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            // Not on a request thread; the caller owns the value
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<SpooledText> spooled = (List<SpooledText>) attributes.getAttribute(
+                REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (spooled == null) {
+            spooled = new ArrayList<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, spooled, RequestAttributes.SCOPE_REQUEST);
+        }
+        spooled.add(text);
+    }
+
+    /**
+     * Growable sequence of pooled direct buffers.
+     */
+    private final class DirectOutputStream extends OutputStream {
+
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current;
+        private long length;
+
+        @Override
+        public void write(int b) throws IOException {
+            next().put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ByteBuffer buffer = next();
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+                length += count;
+            }
+        }
+
+        private ByteBuffer next() throws IOException {
+            if (current == null || !current.hasRemaining()) {
+                if (current != null) {
+                    current.flip();
+                }
+                current = acquireChunk();
+                if (current == null) {
+                    throw new OffHeapExhaustedException();
+                }
+                chunks.add(current);
+            }
+            return current;
+        }
+
+        void finish() {
+            if (current != null) {
+                current.flip();
+            }
+        }
+    }
+
+    private static final class OffHeapExhaustedException extends IOException {
+
+        OffHeapExhaustedException() {
+            super("Off-heap spool budget exhausted");
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.llm.passthrough.spool;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A JSON string value that may be held outside the Java heap.
+ *
+ * <p>Small values are plain Strings. Values spooled by {@link SpoolManager}
+ * live in direct buffers or a temp file as UTF-8 and are streamed back out
+ * when serialized, so a multi-MB image never becomes one large char[] or
+ * byte[]. {@link #toString()} describes the value instead of materializing it;
+ * use {@link #asString()} when the content really is needed.
+ */
+@JsonSerialize(using = SpooledTextSerializer.class)
+public abstract class SpooledText implements Closeable {
+
+    @JsonCreator
+    public static SpooledText of(String value) {
+        return new InMemory(value);
+    }
+
+    /**
+     * Size of the value in UTF-8 bytes.
+     */
+    public abstract long length();
+
+    public abstract InputStream openStream() throws IOException;
+
+    public Reader openReader() throws IOException {
+        return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+    }
+
+    public String asString() throws IOException {
+        try (InputStream in = openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public boolean isSpooled() {
+        return false;
+    }
+
+    /**
+     * Free the off-heap memory or temp file backing this value. Idempotent.
+     * Direct buffers go back to the pool once streams still open on them are
+     * closed.
+     */
+    @Override
+    public void close() {
+    }
+
+    static SpooledText offHeap(List<ByteBuffer> chunks, long length, Consumer<List<ByteBuffer>> recycle) {
+        return new OffHeap(chunks, length, recycle);
+    }
+
+    static SpooledText tempFile(Path file, long length, Runnable onClose) {
+        return new TempFile(file, length, onClose);
+    }
+
+    private static final class InMemory extends SpooledText {
+
+        private final String value;
+
+        InMemory(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public long length() {
+            return value.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String asString() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InMemory other && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private abstract static class Spooled extends SpooledText {
+
+        private final long length;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Spooled(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public boolean isSpooled() {
+            return true;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            if (closed.get()) {
+                throw new IOException("Spooled text has already been released");
+            }
+            return doOpenStream();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        abstract InputStream doOpenStream() throws IOException;
+
+        abstract void release();
+    }
+
+    private static final class OffHeap extends Spooled {
+
+        private final List<ByteBuffer> chunks;
+        private final Consumer<List<ByteBuffer>> recycle;
+        // One reference for the value itself plus one per open stream
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        OffHeap(List<ByteBuffer> chunks, long length, Consumer<List<ByteBuffer>> recycle) {
+            super(length);
+            this.chunks = chunks;
+            this.recycle = recycle;
+        }
+
+        @Override
+        InputStream doOpenStream() throws IOException {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    throw new IOException("Spooled text has already been released");
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return new ByteBufferInputStream(chunks, this::unreference);
+        }
+
+        @Override
+        void release() {
+            unreference();
+        }
+
+        private void unreference() {
+            if (references.decrementAndGet() == 0) {
+                recycle.accept(chunks);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SpooledText[off-heap, " + length() + " bytes]";
+        }
+    }
+
+    private static final class TempFile extends Spooled {
+
+        private final Path file;
+        private final Runnable onClose;
+
+        TempFile(Path file, long length, Runnable onClose) {
+            super(length);
+            this.file = file;
+            this.onClose = onClose;
+        }
+
+        @Override
+        InputStream doOpenStream() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        void release() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+            onClose.run();
+        }
+
+        @Override
+        public String toString() {
+            return "SpooledText[file, " + length() + " bytes]";
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final List<ByteBuffer> chunks;
+        private final Runnable onClose;
+        private boolean closed;
+        private int index;
+        private ByteBuffer current;
+
+        ByteBufferInputStream(List<ByteBuffer> chunks, Runnable onClose) {
+            this.chunks = chunks;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                current = null;
+                index = chunks.size();
+                onClose.run();
+            }
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer buffer = next();
+            return buffer == null ? -1 : buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = next();
+            if (buffer == null) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        private ByteBuffer next() {
+            while (current == null || !current.hasRemaining()) {
+                if (index >= chunks.size()) {
+                    return null;
+                }
+                // Each stream reads through its own view of the shared chunks
+                current = chunks.get(index++).duplicate();
+            }
+            return current;
+        }
+    }
+}
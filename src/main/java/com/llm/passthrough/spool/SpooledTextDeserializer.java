@@ -0,0 +1,30 @@
+package com.llm.passthrough.spool;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a JSON string into a {@link SpooledText}, handing values over the
+ * threshold to the {@link SpoolManager} before they become a Java String.
+ */
+public class SpooledTextDeserializer extends StdDeserializer<SpooledText> {
+
+    private final SpoolManager spoolManager;
+
+    public SpooledTextDeserializer(SpoolManager spoolManager) {
+        super(SpooledText.class);
+        this.spoolManager = spoolManager;
+    }
+
+    @Override
+    public SpooledText deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() != JsonToken.VALUE_STRING) {
+            return (SpooledText) ctxt.handleUnexpectedToken(SpooledText.class, p);
+        }
+        return spoolManager.spool(p);
+    }
+}
@@ -0,0 +1,32 @@
+package com.llm.passthrough.spool;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Writes a {@link SpooledText} as a JSON string, streaming spooled values
+ * through the generator in chunks.
+ */
+public class SpooledTextSerializer extends StdSerializer<SpooledText> {
+
+    public SpooledTextSerializer() {
+        super(SpooledText.class);
+    }
+
+    @Override
+    public void serialize(SpooledText value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        // TokenBuffer (used by convertValue) cannot take a Reader
+        if (!value.isSpooled() || gen instanceof TokenBuffer) {
+            gen.writeString(value.asString());
+            return;
+        }
+        try (Reader reader = value.openReader()) {
+            gen.writeString(reader, -1);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.llm.passthrough.store;
+
+import com.llm.passthrough.util.Threads;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Local, content-addressed store of binary blobs: each blob is one file named
+ * by the SHA-256 of its content, so identical content is kept once.
+ *
+ * <p>New blobs are written to a temporary file, forced to disk and atomically
+ * renamed into place; writing a blob that already exists only refreshes its
+ * modification time. Blobs neither written nor rewritten for {@code ttl} are
+ * deleted by a background sweep, which holds a lock per shard while it
+ * checks and deletes a file so that a blob refreshed meanwhile survives.
+ */
+@Slf4j
+public class BlobStore implements MeterBinder, AutoCloseable {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern SHARD = Pattern.compile("[0-9a-f]{2}");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final Duration ttl;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final Object[] shardLocks = new Object[256];
+
+    public BlobStore(Path directory, Duration ttl, Duration sweepInterval) throws IOException {
+        this.directory = directory;
+        this.ttl = ttl;
+        Files.createDirectories(directory);
+        for (int i = 0; i < shardLocks.length; i++) {
+            shardLocks[i] = new Object();
+        }
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(Threads.daemon("blob-store-sweeper"));
+        long interval = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Blob store opened - Directory: {}", directory);
+    }
+
+    /**
+     * Stores the content unless a blob with the same hash exists.
+     *
+     * @return the lowercase hex SHA-256 of the content
+     */
+    public String put(byte[] content) throws IOException {
+        String hash = HexFormat.of().formatHex(sha256().digest(content));
+        Path path = path(hash);
+        // The sweep deletes under the same lock, so a refreshed blob is not deleted after the check
+        synchronized (shardLock(hash)) {
+            if (Files.exists(path) && touch(path)) {
+                deduplicated.incrementAndGet();
+                return hash;
+            }
+        }
+
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), hash, TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            // A concurrent writer of the same content may have got there first; the bytes are the same
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stored.incrementAndGet();
+            storedBytes.addAndGet(content.length);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return hash;
+    }
+
+    /**
+     * The file of the blob, or {@code null} if the hash is malformed or unknown.
+     */
+    public Path get(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            return null;
+        }
+        Path path = path(hash);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Deletes blobs not written for {@code ttl}, and temporary files left by
+     * a crash.
+     */
+    public void sweep() {
+        Instant cutoff = Instant.now().minus(ttl);
+        int deleted = 0;
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path shard : shards) {
+                String name = shard.getFileName().toString();
+                if (!SHARD.matcher(name).matches()) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                    for (Path file : files) {
+                        synchronized (shardLock(name)) {
+                            if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                                Files.deleteIfExists(file);
+                                deleted++;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to sweep blob store", e);
+        }
+        if (deleted > 0) {
+            log.info("Deleted expired blobs - Count: {}", deleted);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("llm.ocr.blobs.writes", stored, AtomicLong::get)
+                .tag("result", "stored")
+                .register(registry);
+        FunctionCounter.builder("llm.ocr.blobs.writes", deduplicated, AtomicLong::get)
+                .tag("result", "deduplicated")
+                .register(registry);
+        FunctionCounter.builder("llm.ocr.blobs.stored", storedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private Path path(String hash) {
+        // Two-character shards keep directories small
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * The lock of the shard a hash or shard name starts with.
+     */
+    private Object shardLock(String hash) {
+        return shardLocks[Integer.parseInt(hash, 0, 2, 16)];
+    }
+
+    /**
+     * Refreshes the blob's modification time, returning {@code false} if that
+     * failed and the blob should be written again.
+     */
+    private static boolean touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return true;
+        } catch (IOException e) {
+            log.debug("Failed to refresh blob {}, writing it again: {}", path.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
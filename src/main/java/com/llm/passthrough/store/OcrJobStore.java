@@ -0,0 +1,230 @@
+package com.llm.passthrough.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrJob;
+import com.llm.passthrough.dto.OcrRequest;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Local, disk-backed store of OCR jobs and their results that survives
+ * restarts.
+ *
+ * <p>Each job is one JSON file holding its request and state, and each result
+ * the response JSON as returned upstream. Files are written to a temporary
+ * name, forced to disk and atomically renamed over the old version, so a
+ * crash leaves either the old or the new file and never a torn one. Finished
+ * jobs and their results are deleted {@code ttl} after they ended.
+ */
+@Slf4j
+public class OcrJobStore implements AutoCloseable {
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final String SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path jobs;
+    private final Path results;
+    private final Duration ttl;
+    private final ObjectMapper objectMapper;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+
+    public OcrJobStore(Path directory, Duration ttl, ObjectMapper objectMapper) throws IOException {
+        this.jobs = directory.resolve("jobs");
+        this.results = directory.resolve("results");
+        this.ttl = ttl;
+        this.objectMapper = objectMapper;
+
+        Files.createDirectories(jobs);
+        Files.createDirectories(results);
+        this.lockChannel = FileChannel.open(directory.resolve("store.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.fileLock = tryLock(lockChannel);
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("OCR job store " + directory + " is in use by another process");
+        }
+        deleteTemporaryFiles(jobs);
+        deleteTemporaryFiles(results);
+        log.info("OCR job store opened - Directory: {}", directory);
+    }
+
+    public static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Writes the job, replacing any earlier version of it.
+     */
+    public void save(Job job) throws IOException {
+        write(jobs.resolve(job.getId() + SUFFIX), objectMapper.writeValueAsBytes(job));
+    }
+
+    /**
+     * The job, or {@code null} if the id is unknown, malformed or expired.
+     */
+    public Job get(String id) {
+        if (id == null || !ID.matcher(id).matches()) {
+            return null;
+        }
+        Job job = read(jobs.resolve(id + SUFFIX));
+        return job != null && !expired(job, Instant.now()) ? job : null;
+    }
+
+    public void saveResult(String id, byte[] json) throws IOException {
+        write(results.resolve(id + SUFFIX), json);
+    }
+
+    /**
+     * The result file of the job, or {@code null} if it has none.
+     */
+    public Path result(String id) {
+        if (id == null || !ID.matcher(id).matches()) {
+            return null;
+        }
+        Path path = results.resolve(id + SUFFIX);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Jobs that were queued or running when the store was last closed, oldest
+     * first.
+     */
+    public List<Job> unfinished() throws IOException {
+        List<Job> unfinished = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(jobs, "*" + SUFFIX)) {
+            for (Path file : files) {
+                Job job = read(file);
+                if (job != null && job.getStatus() != null && !job.getStatus().isDone()) {
+                    unfinished.add(job);
+                }
+            }
+        }
+        unfinished.sort(Comparator.comparing(Job::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return unfinished;
+    }
+
+    /**
+     * Deletes finished jobs, and their results, that ended more than
+     * {@code ttl} ago.
+     *
+     * @return the number of jobs deleted
+     */
+    public int sweep() {
+        Instant now = Instant.now();
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(jobs, "*" + SUFFIX)) {
+            for (Path file : files) {
+                Job job = read(file);
+                if (job == null || !expired(job, now)) {
+                    continue;
+                }
+                Files.deleteIfExists(results.resolve(job.getId() + SUFFIX));
+                Files.deleteIfExists(file);
+                deleted++;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to sweep OCR job store", e);
+        }
+        if (deleted > 0) {
+            log.info("Deleted expired OCR jobs - Count: {}", deleted);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileLock.release();
+        lockChannel.close();
+    }
+
+    private boolean expired(Job job, Instant now) {
+        return job.getStatus() != null && job.getStatus().isDone() && job.getUpdatedAt() != null
+                && job.getUpdatedAt().plus(ttl).isBefore(now);
+    }
+
+    private Job read(Path file) {
+        try {
+            return objectMapper.readValue(Files.readAllBytes(file), Job.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable OCR job file {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(Path path, byte[] bytes) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Data reaches the disk before the rename makes it visible
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another store in this JVM
+            return null;
+        }
+    }
+
+    private static void deleteTemporaryFiles(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * A job as kept on disk: its request and callback as well as its state.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Job {
+        private String id;
+        private OcrJob.Status status;
+        private OcrRequest request;
+        private String documentHash;
+        private Integer pageCount;
+        private String callbackUrl;
+        private Instant createdAt;
+        private Instant updatedAt;
+        private ErrorResponse error;
+    }
+}
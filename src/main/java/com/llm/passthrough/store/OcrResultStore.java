@@ -0,0 +1,705 @@
+package com.llm.passthrough.store;
+
+import com.llm.passthrough.util.Threads;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local, disk-backed store of OCR results that survives restarts.
+ *
+ * <p>Results are appended as CRC-checked records to a segment file and found
+ * through a memory-mapped open-addressing index of SHA-256 keys. Hits are
+ * returned as the stored JSON bytes, without binding them to DTOs. All
+ * mutations run on one background thread: appends never block the request
+ * that produced the result, and compaction, which drops expired, overwritten
+ * and (past {@code maxBytes}) oldest records into a new generation of files,
+ * runs between appends. Readers only hold a read lock, which is taken
+ * exclusively just to publish an index entry or swap generations.
+ *
+ * <p>After a crash, records appended after the last index flush are recovered
+ * by scanning the segment tail; a torn record ends the scan.
+ */
+@Slf4j
+public class OcrResultStore implements MeterBinder, AutoCloseable {
+
+    private static final int KEY_SIZE = 32;
+
+    private static final int RECORD_MAGIC = 0x4F435231;
+    // magic, key, written-at millis, payload length, payload CRC32
+    private static final int RECORD_HEADER = 4 + KEY_SIZE + 8 + 4 + 4;
+
+    private static final int INDEX_MAGIC = 0x4F435249;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER = 64;
+    // key, record offset, record length, written-at seconds
+    private static final int SLOT_SIZE = KEY_SIZE + 8 + 4 + 4;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path directory;
+    private final Duration ttl;
+    private final long maxBytes;
+    private final int minSlots;
+    private final double compactionDeadRatio;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService writer;
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private volatile Generation current;
+
+    public OcrResultStore(Path directory, Duration ttl, long maxBytes, int minSlots,
+                          Duration compactionInterval, double compactionDeadRatio) throws IOException {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+        this.minSlots = tableSize(minSlots);
+        this.compactionDeadRatio = compactionDeadRatio;
+
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve("store.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.fileLock = tryLock(lockChannel);
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("OCR result store " + directory + " is in use by another process");
+        }
+
+        this.current = open();
+        this.writer = Executors.newSingleThreadScheduledExecutor(Threads.daemon("ocr-store-writer"));
+        long interval = compactionInterval.toMillis();
+        writer.scheduleWithFixedDelay(this::maybeCompact, interval, interval, TimeUnit.MILLISECONDS);
+
+        log.info("OCR result store opened - Directory: {}, Entries: {}, Bytes: {}",
+                directory, current.index.count(), current.length);
+    }
+
+    /**
+     * Store key for a document: model, document URL, optional content hash
+     * supplied by the client, and page selection.
+     */
+    public static byte[] key(String model, String documentUrl, String contentHash, String pages) {
+        MessageDigest digest = sha256();
+        for (String part : new String[]{model, documentUrl, contentHash, pages}) {
+            if (part != null) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * The stored JSON for the key, or {@code null} if absent or expired.
+     */
+    public byte[] get(byte[] key) {
+        lock.readLock().lock();
+        try {
+            Generation generation = current;
+            int slot = generation.index.find(key);
+            if (slot < 0 || expired(generation.index.writtenAtMillis(slot))) {
+                misses.incrementAndGet();
+                return null;
+            }
+            byte[] payload = readRecord(generation.channel, generation.index.offset(slot),
+                    generation.index.length(slot), key);
+            if (payload == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return payload;
+        } catch (IOException e) {
+            log.warn("Failed to read OCR result from store", e);
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queue the result to be appended; returns immediately.
+     */
+    public void put(byte[] key, byte[] json) {
+        try {
+            writer.execute(() -> append(key, json));
+        } catch (RejectedExecutionException e) {
+            log.debug("OCR result store is closed, not storing result");
+        }
+    }
+
+    public int getEntryCount() {
+        return current.index.count();
+    }
+
+    public long getSizeBytes() {
+        return current.length;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("llm.ocr.store.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("llm.ocr.store.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("llm.ocr.store.compactions", compactions, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("llm.ocr.store.entries", this, OcrResultStore::getEntryCount)
+                .register(registry);
+        Gauge.builder("llm.ocr.store.size", this, OcrResultStore::getSizeBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            current.index.map.force();
+            current.channel.close();
+            fileLock.release();
+            lockChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // -- writer thread --
+
+    private void append(byte[] key, byte[] json) {
+        Generation generation = current;
+        long offset = generation.length;
+        int recordLength = RECORD_HEADER + json.length;
+        long now = System.currentTimeMillis();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(recordLength);
+            record.putInt(RECORD_MAGIC).put(key).putLong(now).putInt(json.length).putInt(crc(json)).put(json);
+            record.flip();
+            writeFully(generation.channel, record, offset);
+            // Data reaches the disk before the index points at it
+            generation.channel.force(false);
+        } catch (IOException e) {
+            log.warn("Failed to append OCR result to store", e);
+            return;
+        }
+
+        Index grown = null;
+        if (generation.index.load() >= MAX_LOAD) {
+            try {
+                grown = generation.index.resize(indexPath(generation.number), generation.number,
+                        generation.index.capacity * 2);
+            } catch (IOException e) {
+                log.warn("Failed to grow OCR result store index", e);
+                return;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (grown != null) {
+                generation.index = grown;
+            }
+            generation.index.put(key, offset, recordLength, now);
+            generation.length = offset + recordLength;
+            generation.index.setSegmentLength(generation.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (generation.length > maxBytes) {
+            requestCompaction();
+        }
+    }
+
+    private void requestCompaction() {
+        if (compactionQueued.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                compactionQueued.set(false);
+                compact();
+            });
+        }
+    }
+
+    private void maybeCompact() {
+        Generation generation = current;
+        generation.index.map.force();
+        if (generation.length == 0) {
+            return;
+        }
+        long live = 0;
+        for (int slot = 0; slot < generation.index.capacity; slot++) {
+            if (generation.index.isUsed(slot) && !expired(generation.index.writtenAtMillis(slot))) {
+                live += generation.index.length(slot);
+            }
+        }
+        double dead = 1.0 - (double) live / generation.length;
+        if (dead >= compactionDeadRatio || generation.length > maxBytes) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        Generation old = current;
+        long started = System.nanoTime();
+        try {
+            List<long[]> live = new ArrayList<>();
+            for (int slot = 0; slot < old.index.capacity; slot++) {
+                if (old.index.isUsed(slot) && !expired(old.index.writtenAtMillis(slot))) {
+                    live.add(new long[]{old.index.offset(slot), old.index.length(slot), slot});
+                }
+            }
+            // Oldest records first; past the size bound those are the ones dropped
+            live.sort(Comparator.comparingLong(entry -> entry[0]));
+            long total = live.stream().mapToLong(entry -> entry[1]).sum();
+            int first = 0;
+            long target = (long) (maxBytes * 0.9);
+            while (total > target && first < live.size()) {
+                total -= live.get(first++)[1];
+            }
+
+            long number = old.number + 1;
+            int capacity = tableSize(Math.max(minSlots, (live.size() - first) * 2));
+            Generation next = create(number, capacity);
+            long offset = 0;
+            for (long[] entry : live.subList(first, live.size())) {
+                int slot = (int) entry[2];
+                transferFully(old.channel, entry[0], entry[1], next.channel, offset);
+                next.index.put(old.index.key(slot), offset, (int) entry[1], old.index.writtenAtMillis(slot));
+                offset += entry[1];
+            }
+            next.length = offset;
+            next.channel.force(false);
+            next.index.setSegmentLength(offset);
+            next.index.map.force();
+
+            lock.writeLock().lock();
+            try {
+                current = next;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            old.channel.close();
+            Files.deleteIfExists(segmentPath(old.number));
+            Files.deleteIfExists(indexPath(old.number));
+            compactions.incrementAndGet();
+            log.info("Compacted OCR result store - Entries: {}, Bytes: {} -> {}, Took: {} ms",
+                    next.index.count(), old.length, next.length,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            log.warn("OCR result store compaction failed", e);
+        }
+    }
+
+    // -- opening and recovery --
+
+    private Generation open() throws IOException {
+        long number = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long generation = generation(file, "segment-");
+                if (generation < 0 && file.getFileName().toString().startsWith("segment-")) {
+                    log.warn("Ignoring unexpected file {} in OCR result store {}", file.getFileName(), directory);
+                }
+                number = Math.max(number, generation);
+            }
+        }
+        if (number < 0) {
+            return create(0, minSlots);
+        }
+        deleteOtherGenerations(number);
+
+        FileChannel channel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Index index = Index.open(indexPath(number), number);
+        if (index == null || index.segmentLength() > channel.size()) {
+            log.warn("OCR result store index missing or inconsistent, rebuilding from segment");
+            index = Index.create(indexPath(number), number, minSlots);
+            index.setSegmentLength(0);
+        }
+        Generation generation = new Generation(number, channel, index);
+        generation.length = index.segmentLength();
+        recoverTail(generation);
+        return generation;
+    }
+
+    private void recoverTail(Generation generation) throws IOException {
+        long size = generation.channel.size();
+        long offset = generation.length;
+        int recovered = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (offset + RECORD_HEADER <= size) {
+            header.clear();
+            readFully(generation.channel, header, offset);
+            header.flip();
+            int magic = header.getInt();
+            byte[] key = new byte[KEY_SIZE];
+            header.get(key);
+            long writtenAt = header.getLong();
+            int length = header.getInt();
+            if (magic != RECORD_MAGIC || length < 0 || offset + RECORD_HEADER + length > size
+                    || readRecord(generation.channel, offset, RECORD_HEADER + length, key) == null) {
+                break;
+            }
+            if (generation.index.load() >= MAX_LOAD) {
+                generation.index = generation.index.resize(indexPath(generation.number), generation.number,
+                        generation.index.capacity * 2);
+            }
+            generation.index.put(key, offset, RECORD_HEADER + length, writtenAt);
+            offset += RECORD_HEADER + length;
+            recovered++;
+        }
+        if (offset < size) {
+            log.warn("Truncating {} bytes of incomplete OCR result store records", size - offset);
+            generation.channel.truncate(offset);
+        }
+        generation.length = offset;
+        generation.index.setSegmentLength(offset);
+        if (recovered > 0) {
+            log.info("Recovered {} OCR results appended after the last index flush", recovered);
+        }
+    }
+
+    private Generation create(long number, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Generation(number, channel, Index.create(indexPath(number), number, capacity));
+    }
+
+    private void deleteOtherGenerations(long keep) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long number = Math.max(generation(file, "segment-"), generation(file, "index-"));
+                if (number >= 0 && number != keep) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * The generation a segment or index file belongs to, or -1 for any other
+     * file, which is left alone.
+     */
+    private static long generation(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(".dat")) {
+            return -1;
+        }
+        try {
+            long number = Long.parseLong(name.substring(prefix.length(), name.length() - 4));
+            // Only the names this store writes, so that e.g. segment-+1.dat is not taken for segment-1.dat
+            return number >= 0 && name.equals(prefix + number + ".dat") ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve("segment-" + number + ".dat");
+    }
+
+    private Path indexPath(long number) {
+        return directory.resolve("index-" + number + ".dat");
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another store in this JVM
+            return null;
+        }
+    }
+
+    // -- records --
+
+    private static byte[] readRecord(FileChannel channel, long offset, int length, byte[] key) throws IOException {
+        if (length < RECORD_HEADER) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(channel, record, offset);
+        record.flip();
+        byte[] storedKey = new byte[KEY_SIZE];
+        if (record.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        record.get(storedKey);
+        record.getLong();
+        int payloadLength = record.getInt();
+        int crc = record.getInt();
+        if (!Arrays.equals(storedKey, key) || payloadLength != length - RECORD_HEADER) {
+            return null;
+        }
+        byte[] payload = new byte[payloadLength];
+        record.get(payload);
+        return crc(payload) == crc ? payload : null;
+    }
+
+    private boolean expired(long writtenAtMillis) {
+        return !ttl.isZero() && System.currentTimeMillis() - writtenAtMillis > ttl.toMillis();
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of OCR result store segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void transferFully(FileChannel from, long position, long count,
+                                      FileChannel to, long target) throws IOException {
+        to.position(target);
+        long done = 0;
+        while (done < count) {
+            done += from.transferTo(position + done, count - done, to);
+        }
+    }
+
+    private static int tableSize(int slots) {
+        int size = Integer.highestOneBit(Math.max(16, slots - 1)) << 1;
+        return Math.max(16, size);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Generation {
+
+        final long number;
+        final FileChannel channel;
+        volatile Index index;
+        volatile long length;
+
+        Generation(long number, FileChannel channel, Index index) {
+            this.number = number;
+            this.channel = channel;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Memory-mapped, linearly probed hash table from key to record location.
+     * Keys are SHA-256 digests, so their leading bytes are used as the hash.
+     */
+    private static final class Index {
+
+        final MappedByteBuffer map;
+        final int capacity;
+
+        private Index(MappedByteBuffer map, int capacity) {
+            this.map = map;
+            this.capacity = capacity;
+        }
+
+        static Index create(Path path, long generation, int capacity) throws IOException {
+            Files.deleteIfExists(path);
+            Index index = map(path, capacity);
+            index.map.putInt(0, INDEX_MAGIC);
+            index.map.putInt(4, INDEX_VERSION);
+            index.map.putInt(8, capacity);
+            index.map.putInt(12, 0);
+            index.map.putLong(16, generation);
+            index.map.putLong(24, 0);
+            return index;
+        }
+
+        /**
+         * Copy into a larger table, replacing the file at {@code path}.
+         */
+        Index resize(Path path, long generation, int newCapacity) throws IOException {
+            Path resized = path.resolveSibling(path.getFileName() + ".tmp");
+            Index index = create(resized, generation, newCapacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                if (isUsed(slot)) {
+                    index.put(key(slot), offset(slot), length(slot), writtenAtMillis(slot));
+                }
+            }
+            index.setSegmentLength(segmentLength());
+            Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return index;
+        }
+
+        static Index open(Path path, long generation) throws IOException {
+            if (!Files.exists(path) || Files.size(path) < INDEX_HEADER) {
+                return null;
+            }
+            int capacity;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+                readFully(channel, header, 0);
+                header.flip();
+                if (header.getInt(0) != INDEX_MAGIC || header.getInt(4) != INDEX_VERSION
+                        || header.getLong(16) != generation) {
+                    return null;
+                }
+                capacity = header.getInt(8);
+                if (Integer.bitCount(capacity) != 1
+                        || channel.size() != INDEX_HEADER + (long) capacity * SLOT_SIZE) {
+                    return null;
+                }
+            }
+            return map(path, capacity);
+        }
+
+        private static Index map(Path path, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        INDEX_HEADER + (long) capacity * SLOT_SIZE);
+                return new Index(map, capacity);
+            }
+        }
+
+        int count() {
+            return map.getInt(12);
+        }
+
+        double load() {
+            return (double) count() / capacity;
+        }
+
+        long segmentLength() {
+            return map.getLong(24);
+        }
+
+        void setSegmentLength(long length) {
+            map.putLong(24, length);
+        }
+
+        int find(byte[] key) {
+            int mask = capacity - 1;
+            for (int i = 0, slot = hash(key) & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+                if (!isUsed(slot)) {
+                    return -1;
+                }
+                if (keyEquals(slot, key)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void put(byte[] key, long offset, int length, long writtenAtMillis) {
+            int mask = capacity - 1;
+            int slot = hash(key) & mask;
+            for (int probes = 0; isUsed(slot) && !keyEquals(slot, key); probes++) {
+                if (probes == capacity) {
+                    throw new IllegalStateException("OCR result store index is full");
+                }
+                slot = (slot + 1) & mask;
+            }
+            int base = base(slot);
+            if (!isUsed(slot)) {
+                map.put(base, key);
+                map.putInt(12, count() + 1);
+            }
+            map.putLong(base + KEY_SIZE, offset);
+            map.putInt(base + KEY_SIZE + 12, (int) (writtenAtMillis / 1000));
+            // Length last: a non-zero length marks the slot as used
+            map.putInt(base + KEY_SIZE + 8, length);
+        }
+
+        boolean isUsed(int slot) {
+            return length(slot) != 0;
+        }
+
+        byte[] key(int slot) {
+            byte[] key = new byte[KEY_SIZE];
+            map.get(base(slot), key);
+            return key;
+        }
+
+        long offset(int slot) {
+            return map.getLong(base(slot) + KEY_SIZE);
+        }
+
+        int length(int slot) {
+            return map.getInt(base(slot) + KEY_SIZE + 8);
+        }
+
+        long writtenAtMillis(int slot) {
+            return (map.getInt(base(slot) + KEY_SIZE + 12) & 0xffffffffL) * 1000;
+        }
+
+        private boolean keyEquals(int slot, byte[] key) {
+            int base = base(slot);
+            for (int i = 0; i < KEY_SIZE; i++) {
+                if (map.get(base + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(byte[] key) {
+            return (key[0] & 0xff) << 24 | (key[1] & 0xff) << 16 | (key[2] & 0xff) << 8 | (key[3] & 0xff);
+        }
+
+        private static int base(int slot) {
+            return INDEX_HEADER + slot * SLOT_SIZE;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.llm.passthrough.stream;
+
+import com.llm.passthrough.dto.Usage;
+import lombok.Data;
+
+import java.io.IOException;
+
+/**
+ * The few fields of a chat completion kept for logging and metrics when the
+ * response body itself is passed through untouched.
+ */
+@Data
+public class CompletionSummary {
+
+    private String id;
+    private String model;
+    private Usage usage;
+    private long bytes;
+
+    /**
+     * Whether the body was read to its end; if not, it was closed early,
+     * e.g. because the client went away.
+     */
+    private boolean complete;
+
+    /**
+     * The error reading the upstream body, if any.
+     */
+    private IOException failure;
+}
@@ -0,0 +1,248 @@
+package com.llm.passthrough.stream;
+
+import com.llm.passthrough.dto.Usage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Pass-through stream over an upstream chat completion body that picks out
+ * {@code id}, {@code model} and {@code usage} as the bytes are read. Only the
+ * structure of the JSON is followed: string values other than {@code id} and
+ * {@code model} are skipped byte by byte without being buffered, so large
+ * content strings cost no more than their length. Nothing else is bound or
+ * retained; the summary is handed to the callback once the body is fully
+ * read or closed.
+ */
+@Slf4j
+public class CompletionSummaryInputStream extends FilterInputStream {
+
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_CAPTURE = 256;
+
+    private final Consumer<CompletionSummary> onComplete;
+    private final CompletionSummary summary = new CompletionSummary();
+
+    // Scanner state, carried across reads
+    private int depth;
+    private long objects;
+    private boolean expectKey;
+    private boolean inString;
+    private boolean escaped;
+    private boolean inNumber;
+    private boolean integral;
+    private long number;
+    private byte[] capture;
+    private int captured;
+    private boolean captureKey;
+    private String field;
+    private Usage usage;
+    private boolean scanning = true;
+    private boolean reported;
+
+    public CompletionSummaryInputStream(InputStream in, Consumer<CompletionSummary> onComplete) {
+        super(in);
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = readUpstream(() -> super.read());
+        if (b < 0) {
+            summary.setComplete(true);
+            report();
+        } else {
+            scan(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = readUpstream(() -> super.read(b, off, len));
+        if (read < 0) {
+            summary.setComplete(true);
+            report();
+        } else if (read > 0) {
+            scan(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * Reports the summary; if the body has not been read to its end by now,
+     * it is reported as incomplete.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            report();
+        } finally {
+            super.close();
+        }
+    }
+
+    private int readUpstream(Read read) throws IOException {
+        try {
+            return read.read();
+        } catch (IOException e) {
+            summary.setFailure(e);
+            throw e;
+        }
+    }
+
+    private void scan(byte[] b, int off, int len) {
+        summary.setBytes(summary.getBytes() + len);
+        int end = off + len;
+        for (int i = off; i < end && scanning; i++) {
+            byte c = b[i];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                    append(c);
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    endString();
+                } else {
+                    append(c);
+                }
+                continue;
+            }
+            if (inNumber) {
+                if (c >= '0' && c <= '9') {
+                    number = Math.min(number * 10 + (c - '0'), Integer.MAX_VALUE + 1L);
+                    continue;
+                }
+                if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    integral = false;
+                    continue;
+                }
+                inNumber = false;
+                endNumber();
+            }
+            switch (c) {
+                case '{' -> open(true);
+                case '[' -> open(false);
+                case '}', ']' -> close(c);
+                case ',' -> expectKey = inObject();
+                case ':' -> expectKey = false;
+                case '"' -> startString();
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        inNumber = true;
+                        integral = c != '-';
+                        number = c == '-' ? 0 : c - '0';
+                    }
+                }
+            }
+        }
+    }
+
+    private void open(boolean object) {
+        if (object && depth == 1 && "usage".equals(field)) {
+            usage = new Usage();
+        }
+        if (depth == MAX_DEPTH) {
+            log.debug("Stopped scanning completion body: nested deeper than {}", MAX_DEPTH);
+            scanning = false;
+            return;
+        }
+        objects = object ? objects | 1L << depth : objects & ~(1L << depth);
+        depth++;
+        expectKey = object;
+    }
+
+    private void close(byte c) {
+        if (depth == 0 || (c == '}') != inObject()) {
+            log.debug("Stopped scanning completion body: unbalanced '{}'", (char) c);
+            scanning = false;
+            return;
+        }
+        if (depth == 2 && usage != null) {
+            summary.setUsage(usage);
+            usage = null;
+        }
+        depth--;
+        expectKey = false;
+    }
+
+    private boolean inObject() {
+        return depth > 0 && (objects >>> (depth - 1) & 1) == 1;
+    }
+
+    private void startString() {
+        inString = true;
+        captureKey = expectKey;
+        boolean keep = expectKey
+                ? depth <= 2
+                : depth == 1 && ("id".equals(field) || "model".equals(field));
+        if (keep) {
+            if (capture == null) {
+                capture = new byte[MAX_CAPTURE];
+            }
+            captured = 0;
+        } else {
+            captured = -1;
+        }
+    }
+
+    private void append(byte c) {
+        if (captured < 0) {
+            return;
+        }
+        if (captured == MAX_CAPTURE) {
+            // Too long to be a field or an id worth keeping
+            captured = -1;
+            return;
+        }
+        capture[captured++] = c;
+    }
+
+    private void endString() {
+        String value = captured >= 0 ? new String(capture, 0, captured, StandardCharsets.UTF_8) : null;
+        if (captureKey) {
+            field = value;
+        } else if (value != null && "id".equals(field)) {
+            summary.setId(value);
+        } else if (value != null && "model".equals(field)) {
+            summary.setModel(value);
+        }
+    }
+
+    private void endNumber() {
+        if (depth == 2 && usage != null && integral && number <= Integer.MAX_VALUE && field != null) {
+            setUsageField(field, (int) number);
+        }
+    }
+
+    private void setUsageField(String name, int value) {
+        switch (name) {
+            case "prompt_tokens" -> usage.setPromptTokens(value);
+            case "completion_tokens" -> usage.setCompletionTokens(value);
+            case "total_tokens" -> usage.setTotalTokens(value);
+            case "cache_creation_input_tokens" -> usage.setCacheCreationInputTokens(value);
+            case "cache_read_input_tokens" -> usage.setCacheReadInputTokens(value);
+            default -> {
+            }
+        }
+    }
+
+    private void report() {
+        if (reported) {
+            return;
+        }
+        reported = true;
+        onComplete.accept(summary);
+    }
+
+    @FunctionalInterface
+    private interface Read {
+        int read() throws IOException;
+    }
+}
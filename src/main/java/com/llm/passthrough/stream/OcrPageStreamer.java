@@ -0,0 +1,109 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrPage;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.dto.OcrStreamEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Relays an OCR response as NDJSON while it is read. Each element of its
+ * {@code pages} array is bound to an {@link OcrPage} and written as a line
+ * of its own as soon as it has been parsed, so at most one page is held at a
+ * time; the other fields follow in a last line. Each page can be changed
+ * by a callback before it is written.
+ */
+public class OcrPageStreamer {
+
+    private static final byte NEWLINE = '\n';
+
+    private final ObjectMapper objectMapper;
+    private final OutputStream out;
+    private final Consumer<OcrPage> onPage;
+    private int pages;
+    private boolean writeFailed;
+
+    public OcrPageStreamer(ObjectMapper objectMapper, OutputStream out) {
+        this(objectMapper, out, page -> { });
+    }
+
+    /**
+     * @param onPage called with each page before it is written
+     */
+    public OcrPageStreamer(ObjectMapper objectMapper, OutputStream out, Consumer<OcrPage> onPage) {
+        this.objectMapper = objectMapper;
+        this.out = out;
+        this.onPage = onPage;
+    }
+
+    /**
+     * Reads the response to its end, writing every line.
+     *
+     * @return the response without its pages
+     */
+    public OcrResponse relay(InputStream in) throws IOException {
+        ObjectNode fields = objectMapper.createObjectNode();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "OCR response is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "pages".equals(field)) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        OcrPage page = objectMapper.readValue(parser, OcrPage.class);
+                        if (page != null) {
+                            onPage.accept(page);
+                            write(OcrStreamEvent.builder().page(page).build());
+                            pages++;
+                        }
+                    }
+                } else {
+                    fields.set(field, objectMapper.readTree(parser));
+                }
+            }
+        }
+        OcrResponse response = objectMapper.treeToValue(fields, OcrResponse.class);
+        write(OcrStreamEvent.builder().response(response).build());
+        return response;
+    }
+
+    /**
+     * Writes an error as the last line, in place of the response.
+     */
+    public void error(ErrorResponse error) throws IOException {
+        write(OcrStreamEvent.builder().error(error).build());
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Whether a line could not be written, i.e. the client has gone.
+     */
+    public boolean isWriteFailed() {
+        return writeFailed;
+    }
+
+    private void write(OcrStreamEvent event) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(event);
+        try {
+            out.write(json);
+            out.write(NEWLINE);
+            out.flush();
+        } catch (IOException e) {
+            writeFailed = true;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.llm.passthrough.exception.InvalidRequestException;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A chat request forwarded upstream as the client's original bytes.
+ *
+ * <p>Only {@code model} and {@code messages} are checked, by a structural
+ * scan that skips string contents, so multi-MB {@code inline_data} strings
+ * are never held in memory. Up to {@code headBufferSize} bytes are read ahead
+ * so that the common case is fully validated before anything goes upstream;
+ * the rest is piped through one pooled buffer. If the required fields are only
+ * settled past the read-ahead, validation completes while forwarding and a
+ * failure aborts the upstream request.
+ *
+ * <p>The scan also counts the messages, the characters of their text and
+ * their non-text parts, for a prompt estimate that does not charge an
+ * attachment's base64 as text.
+ *
+ * <p>The top-level {@code stream} flag is the one exception to "unchanged": a
+ * client value that does not match the endpoint is replaced in place, and if
+ * the client sent none while the endpoint streams, {@code ,"stream":true} is
+ * spliced in before the closing brace. The last few bytes read are held back
+ * until the scanner has seen past them, so a value can be replaced even when
+ * it straddles two reads.
+ */
+public class RawChatRequest implements StreamingHttpOutputMessage.Body {
+
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM_TRUE = ",\"stream\":true".getBytes(StandardCharsets.US_ASCII);
+
+    // The longest value replaced, "false"; the scanner reports it one byte past its end
+    private static final int HOLD_BACK = FALSE.length;
+    private static final int MAX_HELD = 2 * HOLD_BACK;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InputStream in;
+    private final boolean stream;
+    private final RelayBufferPool bufferPool;
+    private final Validator validator;
+    private final Deque<Edit> edits = new ArrayDeque<>();
+    private final byte[] held = new byte[MAX_HELD];
+    private int heldLength;
+    private long received;
+    private byte[] head;
+    private int headLength;
+    private boolean eof;
+    private boolean forwarded;
+
+    private RawChatRequest(InputStream in, boolean stream, JsonFactory jsonFactory,
+                           RelayBufferPool bufferPool) {
+        this.in = in;
+        this.stream = stream;
+        this.bufferPool = bufferPool;
+        this.validator = new Validator(jsonFactory, stream, edits);
+    }
+
+    /**
+     * Read ahead and validate as much of the body as fits in the head buffer.
+     *
+     * @throws InvalidRequestException if the body is already known to be invalid
+     */
+    public static RawChatRequest read(InputStream in, boolean stream, JsonFactory jsonFactory,
+                                      RelayBufferPool bufferPool, int headBufferSize) throws IOException {
+        RawChatRequest request = new RawChatRequest(in, stream, jsonFactory, bufferPool);
+        request.readHead(headBufferSize);
+        return request;
+    }
+
+    public String getModel() {
+        return validator.model;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Messages seen so far: in the read-ahead until the body has been forwarded.
+     */
+    public int getMessageCount() {
+        return validator.messageCount;
+    }
+
+    /**
+     * UTF-16 characters of message text seen so far: string contents and the
+     * {@code text} of content parts, with escapes counted as what they stand for.
+     */
+    public long getTextLength() {
+        return validator.textLength;
+    }
+
+    /**
+     * Content parts seen so far that carry {@code inline_data}, or no text.
+     */
+    public int getImageParts() {
+        return validator.imageParts;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (forwarded) {
+            throw new IllegalStateException("Raw chat request can only be forwarded once");
+        }
+        forwarded = true;
+
+        forward(out, head, headLength);
+        head = null;
+        if (!eof) {
+            RelayChunk chunk = bufferPool.borrow();
+            try {
+                byte[] buffer = chunk.buffer();
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    validator.feed(buffer, 0, read);
+                    forward(out, buffer, read);
+                }
+            } finally {
+                chunk.release();
+            }
+            validator.finish();
+        }
+        // Everything has been seen; write what was held back
+        emit(out, received - heldLength, received, EMPTY);
+        heldLength = 0;
+    }
+
+    /**
+     * Buffer the whole body, for clients that cannot stream a request body.
+     */
+    public byte[] readAllBytes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(headLength);
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    private void readHead(int headBufferSize) throws IOException {
+        head = new byte[headBufferSize];
+        while (headLength < head.length) {
+            int read = in.read(head, headLength, head.length - headLength);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            validator.feed(head, headLength, read);
+            headLength += read;
+        }
+        if (eof) {
+            validator.finish();
+        }
+    }
+
+    /**
+     * Write bytes already fed to the validator, holding back the last few
+     * until the bytes after them have been seen.
+     */
+    private void forward(OutputStream out, byte[] buffer, int length) throws IOException {
+        long start = received - heldLength;
+        long end = received + length;
+        long stop = Math.max(start, end - HOLD_BACK);
+        for (Edit edit : edits) {
+            if (edit.offset >= stop) {
+                break;
+            }
+            if (edit.offset + edit.length > stop) {
+                // Not fully seen yet; hold back from its start
+                stop = edit.offset;
+                break;
+            }
+        }
+        emit(out, start, stop, buffer);
+
+        // Keep [stop, end) for the next call
+        int fromHeld = (int) Math.max(0, received - stop);
+        System.arraycopy(held, heldLength - fromHeld, held, 0, fromHeld);
+        int fromBuffer = (int) (end - Math.max(stop, received));
+        System.arraycopy(buffer, length - fromBuffer, held, fromHeld, fromBuffer);
+        heldLength = fromHeld + fromBuffer;
+        received = end;
+    }
+
+    /**
+     * Write input bytes {@code [from, to)}, applying the edits that start in
+     * that range. Bytes before {@code received} are taken from the held
+     * bytes, later ones from {@code buffer}, which starts at {@code received}.
+     */
+    private void emit(OutputStream out, long from, long to, byte[] buffer) throws IOException {
+        long position = from;
+        Edit edit;
+        while ((edit = edits.peek()) != null && edit.offset < to) {
+            copy(out, position, edit.offset, buffer);
+            out.write(edit.replacement);
+            position = edit.offset + edit.length;
+            edits.poll();
+        }
+        copy(out, position, to, buffer);
+    }
+
+    private void copy(OutputStream out, long from, long to, byte[] buffer) throws IOException {
+        long heldStart = received - heldLength;
+        if (from < received) {
+            long end = Math.min(to, received);
+            out.write(held, (int) (from - heldStart), (int) (end - from));
+            from = end;
+        }
+        if (from < to) {
+            out.write(buffer, (int) (from - received), (int) (to - from));
+        }
+    }
+
+    /**
+     * Bytes {@code [offset, offset + length)} of the input to be written as
+     * {@code replacement}.
+     */
+    private record Edit(long offset, int length, byte[] replacement) {
+    }
+
+    /**
+     * Incremental check of the fields {@code ChatRequest} declares as required.
+     *
+     * <p>Only the structure of the JSON is followed, byte by byte, like
+     * {@link CompletionSummaryInputStream}: string values are skipped without
+     * being buffered, so an attachment of any size costs no heap, and only
+     * short keys and the model are captured. Number syntax and string escapes
+     * are left for the upstream to judge.
+     *
+     * <p>Depth is counted in containers: top-level keys are at depth 1,
+     * message keys at 3 and content part keys at 5.
+     */
+    private static final class Validator {
+
+        private static final int MAX_DEPTH = 1000;
+        private static final int MAX_CAPTURE = 256;
+        private static final int MAX_LITERAL = 5;
+
+        private enum Expect {
+            VALUE, VALUE_OR_END, KEY, KEY_OR_END, COLON, COMMA_OR_END, NOTHING
+        }
+
+        private enum Kind {
+            OBJECT, ARRAY, STRING, NUMBER, LITERAL
+        }
+
+        private final JsonFactory jsonFactory;
+        private final boolean stream;
+        private final Deque<Edit> edits;
+        private final BitSet objects = new BitSet();
+        private final byte[] capture = new byte[MAX_CAPTURE];
+        private final byte[] literal = new byte[MAX_LITERAL];
+
+        // Scanner state, carried across reads
+        private long position;
+        private int depth;
+        private Expect expect = Expect.VALUE;
+        private boolean inString;
+        private boolean escaped;
+        private boolean counting;
+        private int unicodeDigits;
+        private boolean key;
+        private int captured;
+        private boolean captureEscaped;
+        private boolean inNumber;
+        private boolean inLiteral;
+        private long literalOffset;
+        private int literalLength;
+
+        private String field;
+        private boolean inMessages;
+        private String messageField;
+        private boolean inContent;
+        private String partField;
+        private boolean partImage;
+        private boolean partText;
+        private int messageCount;
+        private long textLength;
+        private int imageParts;
+        private String model;
+        private boolean hasStream;
+        private long endOffset = -1;
+
+        Validator(JsonFactory jsonFactory, boolean stream, Deque<Edit> edits) {
+            this.jsonFactory = jsonFactory;
+            this.stream = stream;
+            this.edits = edits;
+        }
+
+        void feed(byte[] buffer, int offset, int length) {
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                scan(buffer[i], position + i - offset);
+            }
+            position += length;
+        }
+
+        void finish() {
+            List<String> errors = new ArrayList<>();
+            if (endOffset < 0) {
+                throw malformed("unexpected end of body");
+            }
+            if (!StringUtils.hasText(model)) {
+                errors.add("model: Model is required");
+            }
+            if (messageCount == 0) {
+                errors.add("messages: Messages cannot be empty");
+            }
+            if (!errors.isEmpty()) {
+                throw new InvalidRequestException(String.join(", ", errors));
+            }
+        }
+
+        private void scan(byte c, long offset) {
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                    append(c);
+                    if (counting) {
+                        textLength++;
+                        unicodeDigits = c == 'u' ? 4 : 0;
+                    }
+                } else if (c == '\\') {
+                    escaped = true;
+                    captureEscaped = true;
+                    append(c);
+                } else if (c == '"') {
+                    inString = false;
+                    endString();
+                } else {
+                    append(c);
+                    if (counting) {
+                        count(c);
+                    }
+                }
+                return;
+            }
+            if (inNumber) {
+                if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                    return;
+                }
+                inNumber = false;
+                afterValue();
+            }
+            if (inLiteral) {
+                if (c >= 'a' && c <= 'z') {
+                    if (literalLength == MAX_LITERAL) {
+                        throw malformed("unrecognized token");
+                    }
+                    literal[literalLength++] = c;
+                    return;
+                }
+                inLiteral = false;
+                endLiteral();
+            }
+            switch (c) {
+                case ' ', '\t', '\n', '\r' -> {
+                }
+                case '{' -> {
+                    startValue(Kind.OBJECT);
+                    open(true);
+                }
+                case '[' -> {
+                    startValue(Kind.ARRAY);
+                    open(false);
+                }
+                case '}', ']' -> close(c == '}', offset);
+                case ',' -> {
+                    if (expect != Expect.COMMA_OR_END) {
+                        throw malformed("unexpected ','");
+                    }
+                    expect = inObject() ? Expect.KEY : Expect.VALUE;
+                }
+                case ':' -> {
+                    if (expect != Expect.COLON) {
+                        throw malformed("unexpected ':'");
+                    }
+                    expect = Expect.VALUE;
+                }
+                case '"' -> startString();
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        startValue(Kind.NUMBER);
+                        inNumber = true;
+                    } else if (c >= 'a' && c <= 'z') {
+                        startValue(Kind.LITERAL);
+                        inLiteral = true;
+                        literalOffset = offset;
+                        literal[0] = c;
+                        literalLength = 1;
+                    } else {
+                        throw malformed("unexpected character '" + (char) (c & 0xff) + "'");
+                    }
+                }
+            }
+        }
+
+        private void startValue(Kind kind) {
+            if (expect == Expect.NOTHING) {
+                throw malformed("unexpected content after the JSON object");
+            }
+            if (expect != Expect.VALUE && expect != Expect.VALUE_OR_END) {
+                throw malformed("unexpected value");
+            }
+            if (depth == 0 && kind != Kind.OBJECT) {
+                throw malformed("expected a JSON object");
+            }
+            if (depth == 1 && "model".equals(field) && kind != Kind.STRING) {
+                throw new InvalidRequestException("model: Model is required");
+            }
+            if (depth == 1 && "stream".equals(field) && kind != Kind.LITERAL) {
+                throw new InvalidRequestException("stream: Must be a boolean");
+            }
+            if (depth == 2 && inMessages) {
+                messageCount++;
+            }
+        }
+
+        private void afterValue() {
+            expect = depth == 0 ? Expect.NOTHING : Expect.COMMA_OR_END;
+        }
+
+        private void open(boolean object) {
+            if (depth == MAX_DEPTH) {
+                throw malformed("nested deeper than " + MAX_DEPTH);
+            }
+            if (!object && depth == 1 && "messages".equals(field)) {
+                inMessages = true;
+            } else if (!object && depth == 3 && inMessages && "content".equals(messageField)) {
+                inContent = true;
+            } else if (object && depth == 4 && inContent) {
+                partField = null;
+                partImage = false;
+                partText = false;
+            }
+            objects.set(depth, object);
+            depth++;
+            expect = object ? Expect.KEY_OR_END : Expect.VALUE_OR_END;
+        }
+
+        private void close(boolean object, long offset) {
+            Expect empty = object ? Expect.KEY_OR_END : Expect.VALUE_OR_END;
+            if (depth == 0 || inObject() != object || (expect != Expect.COMMA_OR_END && expect != empty)) {
+                throw malformed("unexpected '" + (object ? '}' : ']') + "'");
+            }
+            depth--;
+            if (depth == 4 && object && inContent) {
+                if (partImage || !partText) {
+                    imageParts++;
+                }
+            } else if (depth == 3) {
+                inContent = false;
+            } else if (depth == 2) {
+                messageField = null;
+            } else if (depth == 1) {
+                inMessages = false;
+            } else if (depth == 0) {
+                endOffset = offset;
+                if (!hasStream && stream) {
+                    edits.add(new Edit(endOffset, 0, STREAM_TRUE));
+                }
+            }
+            afterValue();
+        }
+
+        private boolean inObject() {
+            return depth > 0 && objects.get(depth - 1);
+        }
+
+        private void startString() {
+            key = expect == Expect.KEY || expect == Expect.KEY_OR_END;
+            if (!key) {
+                startValue(Kind.STRING);
+            }
+            inString = true;
+            captureEscaped = false;
+            // Keys are kept for the levels followed, the value only for the model
+            boolean followed = depth == 1 || (depth == 3 && inMessages) || (depth == 5 && inContent);
+            captured = (key && followed) || (!key && depth == 1 && "model".equals(field)) ? 0 : -1;
+            counting = !key && ((depth == 3 && inMessages && "content".equals(messageField))
+                    || (depth == 5 && inContent && "text".equals(partField)));
+            if (counting && depth == 5) {
+                partText = true;
+            }
+            unicodeDigits = 0;
+        }
+
+        private void append(byte c) {
+            if (captured < 0) {
+                return;
+            }
+            if (captured == MAX_CAPTURE) {
+                if (!key) {
+                    throw new InvalidRequestException("model: Model is too long");
+                }
+                // Too long to be a field that is checked
+                captured = -1;
+                return;
+            }
+            capture[captured++] = c;
+        }
+
+        private void endString() {
+            if (key) {
+                String name = captured >= 0 ? captured() : null;
+                if (depth == 1) {
+                    field = name;
+                } else if (depth == 3 && inMessages) {
+                    messageField = name;
+                } else if (depth == 5 && inContent) {
+                    partField = name;
+                    partImage |= "inline_data".equals(name);
+                }
+                expect = Expect.COLON;
+                return;
+            }
+            if (captured >= 0) {
+                model = captured();
+                if (!StringUtils.hasText(model)) {
+                    throw new InvalidRequestException("model: Model is required");
+                }
+            }
+            afterValue();
+        }
+
+        /**
+         * Counts one byte of text as UTF-16 characters: none for UTF-8
+         * continuation bytes and the hex digits of unicode escapes, two for
+         * the lead byte of a character outside the Basic Multilingual Plane.
+         */
+        private void count(byte c) {
+            if (unicodeDigits > 0) {
+                unicodeDigits--;
+            } else if ((c & 0xf8) == 0xf0) {
+                textLength += 2;
+            } else if ((c & 0xc0) != 0x80) {
+                textLength++;
+            }
+        }
+
+        private void endLiteral() {
+            String value = new String(literal, 0, literalLength, StandardCharsets.US_ASCII);
+            if (!value.equals("true") && !value.equals("false") && !value.equals("null")) {
+                throw malformed("unrecognized token '" + value + "'");
+            }
+            if (depth == 1 && "stream".equals(field)) {
+                onStream(value);
+            }
+            afterValue();
+        }
+
+        /**
+         * Replace a value that does not match the endpoint, so the upstream
+         * never sees a second {@code stream} key.
+         */
+        private void onStream(String value) {
+            hasStream = true;
+            if (!value.equals(stream ? "true" : "false")) {
+                edits.add(new Edit(literalOffset, literalLength, stream ? TRUE : FALSE));
+            }
+        }
+
+        private String captured() {
+            if (!captureEscaped) {
+                return new String(capture, 0, captured, StandardCharsets.UTF_8);
+            }
+            // Rare enough to let Jackson unescape it
+            byte[] quoted = new byte[captured + 2];
+            quoted[0] = '"';
+            System.arraycopy(capture, 0, quoted, 1, captured);
+            quoted[captured + 1] = '"';
+            try (JsonParser parser = jsonFactory.createParser(quoted)) {
+                parser.nextToken();
+                return parser.getText();
+            } catch (IOException e) {
+                throw malformed("invalid string escape");
+            }
+        }
+
+        private static InvalidRequestException malformed(String reason) {
+            return new InvalidRequestException("Malformed JSON request: " + reason);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.llm.passthrough.stream;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed-size byte arrays used to relay upstream SSE bytes.
+ * Buffers that are not returned (e.g. dropped on a failed emitter) are simply
+ * garbage collected; the pool allocates a fresh one on the next borrow.
+ */
+public class RelayBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public RelayBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Relay buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = Math.max(0, maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public RelayChunk borrow() {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            pooled.decrementAndGet();
+        } else {
+            buffer = new byte[bufferSize];
+        }
+        return new RelayChunk(buffer, this);
+    }
+
+    void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
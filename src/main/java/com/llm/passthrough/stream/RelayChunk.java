@@ -0,0 +1,61 @@
+package com.llm.passthrough.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A pooled byte buffer holding raw SSE bytes on their way to the client.
+ * Written by {@link RelayChunkHttpMessageConverter}, which hands the buffer
+ * back to its pool once the bytes are on the wire.
+ */
+public final class RelayChunk {
+
+    private final byte[] buffer;
+    private final RelayBufferPool pool;
+    private int length;
+    private boolean released;
+
+    RelayChunk(byte[] buffer, RelayBufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void setLength(int length) {
+        this.length = length;
+    }
+
+    int remaining() {
+        return buffer.length - length;
+    }
+
+    void put(byte b) {
+        buffer[length++] = b;
+    }
+
+    void put(byte[] src, int offset, int count) {
+        System.arraycopy(src, offset, buffer, length, count);
+        length += count;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Return the buffer to its pool. Safe to call more than once.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            pool.release(buffer);
+        }
+    }
+}
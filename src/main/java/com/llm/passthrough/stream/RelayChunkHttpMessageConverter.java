@@ -0,0 +1,46 @@
+package com.llm.passthrough.stream;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes {@link RelayChunk} bytes straight to the response body, bypassing
+ * any encoding, and releases the chunk's buffer afterwards.
+ */
+public class RelayChunkHttpMessageConverter implements HttpMessageConverter<RelayChunk> {
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return RelayChunk.class == clazz;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return List.of(MediaType.TEXT_EVENT_STREAM);
+    }
+
+    @Override
+    public RelayChunk read(Class<? extends RelayChunk> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("RelayChunk is write-only", inputMessage);
+    }
+
+    @Override
+    public void write(RelayChunk chunk, MediaType contentType, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            chunk.writeTo(outputMessage.getBody());
+        } finally {
+            chunk.release();
+        }
+    }
+}
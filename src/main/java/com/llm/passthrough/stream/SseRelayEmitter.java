@@ -0,0 +1,303 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.Usage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Emitter that relays upstream {@code text/event-stream} bytes to the client
+ * without decoding them.
+ *
+ * <p>In {@link ApigeeProperties.StreamMode#RAW RAW} mode the upstream frames are
+ * copied as-is. In {@link ApigeeProperties.StreamMode#EVENTS EVENTS} mode every
+ * non-empty upstream line is re-wrapped as {@code data:<line>\n\n}, which is
+ * byte-for-byte what the previous {@code SseEmitter} based relay produced, but
+ * done on the raw bytes instead of per-line Strings.
+ */
+public class SseRelayEmitter extends ResponseBodyEmitter {
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT_END = {'\n', '\n'};
+
+    private final RelayBufferPool bufferPool;
+    private final boolean rewrap;
+
+    // EVENTS mode state, carried across reads
+    private RelayChunk pending;
+    private boolean inLine;
+    private boolean lastWasCr;
+
+    private volatile Future<?> upstream;
+    private volatile boolean cancelled;
+    private IntConsumer upstreamData = length -> { };
+    private SseUsageTail usageTail;
+
+    public SseRelayEmitter(Long timeout, RelayBufferPool bufferPool, ApigeeProperties.StreamMode mode) {
+        super(timeout);
+        this.bufferPool = bufferPool;
+        this.rewrap = mode == ApigeeProperties.StreamMode.EVENTS;
+    }
+
+    @Override
+    protected void extendResponse(ServerHttpResponse outputMessage) {
+        super.extendResponse(outputMessage);
+        HttpHeaders headers = outputMessage.getHeaders();
+        if (headers.getContentType() == null) {
+            headers.setContentType(MediaType.TEXT_EVENT_STREAM);
+        }
+    }
+
+    /**
+     * Copy the upstream body to the client until end of stream. Blocks the
+     * calling thread; each upstream read is flushed to the client as one write.
+     */
+    public void relay(InputStream in) throws IOException {
+        if (!rewrap) {
+            relayRaw(in);
+            return;
+        }
+        RelayChunk readBuffer = bufferPool.borrow();
+        try {
+            byte[] buffer = readBuffer.buffer();
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (read > 0) {
+                    upstreamData.accept(read);
+                    if (usageTail != null) {
+                        usageTail.accept(buffer, 0, read);
+                    }
+                    rewrap(buffer, 0, read);
+                    flushPending();
+                }
+            }
+            finish();
+        } finally {
+            readBuffer.release();
+            discardPending();
+        }
+    }
+
+    /**
+     * Relay bytes handed over by a non-blocking client. The bytes are copied
+     * into pooled buffers as the source buffer is owned by the client. Call
+     * {@link #finish()} once the upstream body has ended.
+     */
+    public void relay(ByteBuffer src) throws IOException {
+        if (src.hasRemaining()) {
+            upstreamData.accept(src.remaining());
+            if (usageTail != null) {
+                usageTail.accept(src);
+            }
+        }
+        if (!rewrap) {
+            while (src.hasRemaining()) {
+                RelayChunk chunk = bufferPool.borrow();
+                int count = Math.min(src.remaining(), chunk.remaining());
+                src.get(chunk.buffer(), 0, count);
+                chunk.setLength(count);
+                sendChunk(chunk);
+            }
+            return;
+        }
+        try {
+            if (src.hasArray()) {
+                rewrap(src.array(), src.arrayOffset() + src.position(), src.remaining());
+                src.position(src.limit());
+            } else {
+                RelayChunk copy = bufferPool.borrow();
+                try {
+                    while (src.hasRemaining()) {
+                        int count = Math.min(src.remaining(), copy.buffer().length);
+                        src.get(copy.buffer(), 0, count);
+                        rewrap(copy.buffer(), 0, count);
+                    }
+                } finally {
+                    copy.release();
+                }
+            }
+            flushPending();
+        } catch (IOException | RuntimeException e) {
+            discardPending();
+            throw e;
+        }
+    }
+
+    /**
+     * Terminate a partially relayed line (EVENTS mode) at end of stream.
+     */
+    public void finish() throws IOException {
+        if (inLine) {
+            write(EVENT_END, 0, EVENT_END.length);
+            inLine = false;
+        }
+        flushPending();
+    }
+
+    /**
+     * Register a callback run on the relaying thread with the length of every
+     * upstream read that returned data, before it is written to the client.
+     */
+    public void onUpstreamData(IntConsumer callback) {
+        this.upstreamData = callback;
+    }
+
+    /**
+     * Keep the tail of the upstream body, e.g. to read the usage of its final
+     * chunk once the stream has ended.
+     */
+    public void keepTail(int size) {
+        this.usageTail = new SseUsageTail(size);
+    }
+
+    /**
+     * The {@code usage} of the last event in the kept tail, or {@code null}.
+     * Call once the stream has ended.
+     */
+    public Usage tailUsage(ObjectMapper objectMapper) {
+        return usageTail != null ? usageTail.usage(objectMapper) : null;
+    }
+
+    /**
+     * Register the in-flight upstream exchange so it can be cancelled when the
+     * client goes away or the emitter times out.
+     */
+    public void bindUpstream(Future<?> upstream) {
+        this.upstream = upstream;
+        if (cancelled) {
+            upstream.cancel(true);
+        }
+    }
+
+    public void cancelUpstream() {
+        cancelled = true;
+        Future<?> current = upstream;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+
+    /**
+     * Send a single {@code data:} event, used for error payloads.
+     */
+    public void sendEvent(String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        write(DATA_PREFIX, 0, DATA_PREFIX.length);
+        write(bytes, 0, bytes.length);
+        write(EVENT_END, 0, EVENT_END.length);
+        flushPending();
+    }
+
+    private void relayRaw(InputStream in) throws IOException {
+        while (true) {
+            RelayChunk chunk = bufferPool.borrow();
+            int read;
+            try {
+                read = in.read(chunk.buffer());
+            } catch (IOException e) {
+                chunk.release();
+                throw e;
+            }
+            if (read < 0) {
+                chunk.release();
+                return;
+            }
+            if (read == 0) {
+                chunk.release();
+                continue;
+            }
+            upstreamData.accept(read);
+            if (usageTail != null) {
+                usageTail.accept(chunk.buffer(), 0, read);
+            }
+            chunk.setLength(read);
+            sendChunk(chunk);
+        }
+    }
+
+    /**
+     * Re-wrap lines the same way {@code BufferedReader.readLine()} splits them:
+     * {@code \n}, {@code \r} and {@code \r\n} all terminate a line.
+     */
+    private void rewrap(byte[] src, int offset, int length) throws IOException {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            byte b = src[i];
+            if (b == '\n' || b == '\r') {
+                if (!(b == '\n' && lastWasCr) && inLine) {
+                    write(EVENT_END, 0, EVENT_END.length);
+                    inLine = false;
+                }
+                lastWasCr = b == '\r';
+                i++;
+                continue;
+            }
+            lastWasCr = false;
+            if (!inLine) {
+                write(DATA_PREFIX, 0, DATA_PREFIX.length);
+                inLine = true;
+            }
+            int runEnd = i + 1;
+            while (runEnd < end && src[runEnd] != '\n' && src[runEnd] != '\r') {
+                runEnd++;
+            }
+            write(src, i, runEnd - i);
+            i = runEnd;
+        }
+    }
+
+    private void write(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (pending == null) {
+                pending = bufferPool.borrow();
+            } else if (pending.remaining() == 0) {
+                flushPending();
+                pending = bufferPool.borrow();
+            }
+            int count = Math.min(length, pending.remaining());
+            pending.put(src, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void flushPending() throws IOException {
+        RelayChunk chunk = pending;
+        pending = null;
+        if (chunk == null) {
+            return;
+        }
+        if (chunk.length() == 0) {
+            chunk.release();
+            return;
+        }
+        sendChunk(chunk);
+    }
+
+    private void discardPending() {
+        if (pending != null) {
+            pending.release();
+            pending = null;
+        }
+    }
+
+    private void sendChunk(RelayChunk chunk) throws IOException {
+        try {
+            send(chunk, MediaType.TEXT_EVENT_STREAM);
+        } catch (IOException | RuntimeException e) {
+            chunk.release();
+            throw e;
+        }
+    }
+}
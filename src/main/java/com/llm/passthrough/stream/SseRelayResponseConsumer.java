@@ -0,0 +1,196 @@
+package com.llm.passthrough.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async HttpClient response consumer that relays upstream SSE bytes into a
+ * {@link SseRelayEmitter} without doing servlet I/O on the I/O reactor.
+ *
+ * <p>Bytes handed over by the reactor are copied into pooled buffers and
+ * written to the client by tasks on the {@code writer} executor, one at a
+ * time and in order. Input capacity is only given back to the connection
+ * once a write has finished, so a slow client holds up its own upstream
+ * stream instead of the reactor and every other stream on it. The result
+ * callback, and with it the exchange's callback, runs as the last of these
+ * tasks; {@link #execute(Runnable)} queues other work behind the writes.
+ *
+ * <p>Error responses are buffered (up to {@value #MAX_ERROR_BODY} bytes) so
+ * the caller can report them.
+ */
+@Slf4j
+public class SseRelayResponseConsumer implements AsyncResponseConsumer<Integer> {
+
+    private static final int MAX_ERROR_BODY = 64 * 1024;
+
+    private final SseRelayEmitter emitter;
+    private final RelayBufferPool bufferPool;
+    private final Executor writer;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final AtomicInteger credit = new AtomicInteger();
+    private volatile CapacityChannel capacityChannel;
+    private volatile boolean writeFailed;
+    private volatile int status;
+    private FutureCallback<Integer> resultCallback;
+    private ByteArrayOutputStream errorBody;
+
+    /**
+     * @param writer runs the client writes; must not be an I/O reactor thread
+     */
+    public SseRelayResponseConsumer(SseRelayEmitter emitter, RelayBufferPool bufferPool, Executor writer) {
+        this.emitter = emitter;
+        this.bufferPool = bufferPool;
+        this.writer = writer;
+    }
+
+    @Override
+    public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                FutureCallback<Integer> resultCallback) {
+        this.status = response.getCode();
+        this.resultCallback = resultCallback;
+        if (isError()) {
+            errorBody = new ByteArrayOutputStream();
+        }
+        if (entityDetails == null) {
+            execute(this::complete);
+        }
+    }
+
+    @Override
+    public void informationResponse(HttpResponse response, HttpContext context) {
+    }
+
+    /**
+     * Called by the connection once the capacity it was given is used up;
+     * more is granted as queued writes finish.
+     */
+    @Override
+    public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+        this.capacityChannel = capacityChannel;
+        grant(0);
+    }
+
+    @Override
+    public void consume(ByteBuffer src) throws IOException {
+        if (errorBody != null) {
+            int length = src.remaining();
+            int count = Math.min(length, MAX_ERROR_BODY - errorBody.size());
+            byte[] bytes = new byte[count];
+            src.get(bytes);
+            errorBody.write(bytes);
+            src.position(src.limit());
+            grant(length);
+            return;
+        }
+        while (src.hasRemaining()) {
+            RelayChunk chunk = bufferPool.borrow();
+            int count = Math.min(src.remaining(), chunk.remaining());
+            src.get(chunk.buffer(), 0, count);
+            chunk.setLength(count);
+            execute(() -> write(chunk));
+        }
+    }
+
+    @Override
+    public void streamEnd(List<? extends Header> trailers) {
+        execute(this::complete);
+    }
+
+    @Override
+    public void failed(Exception cause) {
+    }
+
+    @Override
+    public void releaseResources() {
+    }
+
+    /**
+     * Run the task on the writer once the writes queued before it are done.
+     * Tasks never run concurrently, so they may touch the emitter.
+     */
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (scheduled.getAndIncrement() == 0) {
+            try {
+                writer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; finish the stream here rather than leave it hanging
+                drain();
+            }
+        }
+    }
+
+    public boolean isError() {
+        return status >= 400;
+    }
+
+    public String getErrorBody() {
+        return errorBody != null ? errorBody.toString(StandardCharsets.UTF_8) : "";
+    }
+
+    private void drain() {
+        do {
+            Runnable task = tasks.poll();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Error relaying upstream stream: ", e);
+            }
+        } while (scheduled.decrementAndGet() > 0);
+    }
+
+    private void write(RelayChunk chunk) {
+        int length = chunk.length();
+        try {
+            if (!writeFailed) {
+                emitter.relay(ByteBuffer.wrap(chunk.buffer(), 0, length));
+            }
+        } catch (IOException | RuntimeException e) {
+            // The client has gone; stop reading from upstream
+            writeFailed = true;
+            log.debug("Client write failed, cancelling upstream stream: {}", e.getMessage());
+            emitter.cancelUpstream();
+        } finally {
+            chunk.release();
+            grant(length);
+        }
+    }
+
+    private void complete() {
+        resultCallback.completed(status);
+    }
+
+    private void grant(int bytes) {
+        credit.addAndGet(bytes);
+        CapacityChannel channel = capacityChannel;
+        if (channel == null) {
+            return;
+        }
+        int increment = credit.getAndSet(0);
+        if (increment > 0) {
+            try {
+                channel.update(increment);
+            } catch (IOException e) {
+                log.debug("Failed to update upstream capacity: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.dto.Usage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps the last bytes of an upstream {@code text/event-stream} body so that
+ * the {@code usage} of its final chunk can be read once the stream ends.
+ *
+ * <p>Only a fixed-size tail is copied as bytes go by; nothing is parsed until
+ * {@link #usage(ObjectMapper)} is called. A final chunk larger than the tail
+ * is missed.
+ */
+@Slf4j
+class SseUsageTail {
+
+    private static final byte[] USAGE = "\"usage\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] tail;
+    private int next;
+    private boolean wrapped;
+
+    SseUsageTail(int size) {
+        this.tail = new byte[size];
+    }
+
+    void accept(byte[] src, int offset, int length) {
+        if (length >= tail.length) {
+            System.arraycopy(src, offset + length - tail.length, tail, 0, tail.length);
+            next = 0;
+            wrapped = true;
+            return;
+        }
+        int first = Math.min(length, tail.length - next);
+        System.arraycopy(src, offset, tail, next, first);
+        System.arraycopy(src, offset + first, tail, 0, length - first);
+        if (next + length >= tail.length) {
+            wrapped = true;
+        }
+        next = (next + length) % tail.length;
+    }
+
+    void accept(ByteBuffer src) {
+        ByteBuffer view = src.duplicate();
+        int skip = Math.max(0, view.remaining() - tail.length);
+        view.position(view.position() + skip);
+        while (view.hasRemaining()) {
+            int count = Math.min(view.remaining(), tail.length - next);
+            view.get(tail, next, count);
+            if (next + count == tail.length) {
+                wrapped = true;
+            }
+            next = (next + count) % tail.length;
+        }
+    }
+
+    /**
+     * The {@code usage} of the last event carrying one, or {@code null}.
+     */
+    Usage usage(ObjectMapper objectMapper) {
+        byte[] bytes = bytes();
+        int at = lastIndexOf(bytes, USAGE, bytes.length);
+        while (at >= 0) {
+            int lineStart = at;
+            while (lineStart > 0 && bytes[lineStart - 1] != '\n' && bytes[lineStart - 1] != '\r') {
+                lineStart--;
+            }
+            int lineEnd = at;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            Usage usage = parse(objectMapper, bytes, lineStart, lineEnd);
+            if (usage != null) {
+                return usage;
+            }
+            at = lastIndexOf(bytes, USAGE, lineStart);
+        }
+        return null;
+    }
+
+    private static Usage parse(ObjectMapper objectMapper, byte[] bytes, int start, int end) {
+        if (end - start >= DATA.length && startsWith(bytes, start, DATA)) {
+            start += DATA.length;
+        }
+        try {
+            JsonNode usage = objectMapper.readTree(bytes, start, end - start).get("usage");
+            return usage != null && usage.isObject() ? objectMapper.treeToValue(usage, Usage.class) : null;
+        } catch (IOException e) {
+            // A line cut off by the start of the tail, or not JSON at all
+            log.debug("Ignoring unreadable event in stream tail: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] bytes() {
+        if (!wrapped) {
+            byte[] bytes = new byte[next];
+            System.arraycopy(tail, 0, bytes, 0, next);
+            return bytes;
+        }
+        byte[] bytes = new byte[tail.length];
+        System.arraycopy(tail, next, bytes, 0, tail.length - next);
+        System.arraycopy(tail, 0, bytes, tail.length - next, next);
+        return bytes;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] target, int before) {
+        for (int i = Math.min(before, bytes.length) - target.length; i >= 0; i--) {
+            if (startsWith(bytes, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
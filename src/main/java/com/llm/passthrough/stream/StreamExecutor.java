@@ -0,0 +1,228 @@
+package com.llm.passthrough.stream;
+
+import com.llm.passthrough.util.Threads;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Executor for long-running SSE relay tasks with admission control.
+ *
+ * <p>At most {@code maxConcurrent} streams run at once and at most
+ * {@code maxQueued} more wait for a slot; anything beyond that is rejected
+ * immediately with a {@link RejectedExecutionException}. Tasks run on virtual
+ * threads when requested and the JVM supports them (Java 21+), otherwise on a
+ * platform thread pool capped at {@code maxConcurrent} threads.
+ *
+ * <p>Streams that do their own non-blocking I/O are admitted through
+ * {@link #executeAsync(Consumer)} and share the same slots without holding a
+ * thread while they wait or run. Their client writes go through
+ * {@link #writeExecutor()}, and streams waiting for a slot freed by one of
+ * them are started there too, so neither blocks an I/O reactor thread.
+ */
+@Slf4j
+public class StreamExecutor implements MeterBinder, AutoCloseable {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final Queue<Consumer<Runnable>> pendingAsync = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public StreamExecutor(int maxConcurrent, int maxQueued, boolean virtualThreads) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Max concurrent streams must be positive: " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.permits = new Semaphore(maxConcurrent);
+
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            log.info("Streaming on virtual threads - Max concurrent: {}, Max queued: {}",
+                    maxConcurrent, this.maxQueued);
+            this.delegate = virtual;
+        } else {
+            if (virtualThreads) {
+                log.warn("Virtual threads are not available on this JVM, falling back to platform threads");
+            }
+            log.info("Streaming on platform threads - Max concurrent: {}, Max queued: {}",
+                    maxConcurrent, this.maxQueued);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), Threads.daemon("llm-stream"));
+            pool.allowCoreThreadTimeOut(true);
+            this.delegate = pool;
+        }
+    }
+
+    /**
+     * Admit and run the task, or throw {@link RejectedExecutionException} if
+     * both the running and the waiting slots are taken.
+     */
+    public void execute(Runnable task) {
+        admit();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            admitted.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Admit a stream that performs non-blocking I/O. The task is started as soon
+     * as a slot is free, on the calling thread or a stream thread, and is handed
+     * a callback it must run once the stream has ended. Throws
+     * {@link RejectedExecutionException} like {@link #execute(Runnable)}.
+     */
+    public void executeAsync(Consumer<Runnable> task) {
+        admit();
+        queued.incrementAndGet();
+        pendingAsync.offer(task);
+        drainAsync();
+    }
+
+    private void admit() {
+        if (admitted.incrementAndGet() > maxConcurrent + maxQueued) {
+            admitted.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Stream capacity exhausted - Active: " + active.get()
+                    + ", Queued: " + queued.get());
+        }
+    }
+
+    private void drainAsync() {
+        while (!pendingAsync.isEmpty() && permits.tryAcquire()) {
+            Consumer<Runnable> task = pendingAsync.poll();
+            if (task == null) {
+                permits.release();
+                continue;
+            }
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            AtomicBoolean done = new AtomicBoolean();
+            Runnable onDone = () -> {
+                if (done.compareAndSet(false, true)) {
+                    active.decrementAndGet();
+                    permits.release();
+                    admitted.decrementAndGet();
+                    drainAsyncLater();
+                }
+            };
+            try {
+                task.accept(onDone);
+            } catch (RuntimeException e) {
+                log.error("Failed to start async stream: ", e);
+                onDone.run();
+            }
+        }
+    }
+
+    /**
+     * Start waiting streams on a stream thread; the slot may have been freed
+     * on an I/O reactor thread.
+     */
+    private void drainAsyncLater() {
+        if (pendingAsync.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.execute(this::drainAsync);
+        } catch (RejectedExecutionException e) {
+            drainAsync();
+        }
+    }
+
+    private void run(Runnable task) {
+        boolean acquired = false;
+        try {
+            permits.acquire();
+            acquired = true;
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            task.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (acquired) {
+                active.decrementAndGet();
+                permits.release();
+            } else {
+                queued.decrementAndGet();
+            }
+            admitted.decrementAndGet();
+            drainAsync();
+        }
+    }
+
+    /**
+     * Executor for the blocking client writes of async streams. Each stream
+     * keeps at most one task in it at a time, so with at most
+     * {@code maxConcurrent} streams active a write never waits for another
+     * stream's.
+     */
+    public Executor writeExecutor() {
+        return delegate;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("llm.stream.active", active, AtomicInteger::get)
+                .description("SSE streams currently relaying")
+                .register(registry);
+        Gauge.builder("llm.stream.queued", queued, AtomicInteger::get)
+                .description("SSE streams waiting for a free slot")
+                .register(registry);
+        Gauge.builder("llm.stream.rejected", rejected, AtomicLong::get)
+                .description("SSE streams rejected since startup")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        delegate.shutdownNow();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
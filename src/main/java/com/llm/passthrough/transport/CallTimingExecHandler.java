@@ -0,0 +1,48 @@
+package com.llm.passthrough.transport;
+
+import com.llm.passthrough.metrics.LlmMetrics;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reports transport phases to the {@link LlmMetrics#current() current} call.
+ *
+ * <p>Sits just before the main transport in the exec chain, where the
+ * connection has been leased and connected, and returns once the response
+ * headers have been read. The request entity is wrapped to see when its last
+ * byte has been written.
+ */
+public class CallTimingExecHandler implements ExecChainHandler {
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        LlmMetrics.Call call = LlmMetrics.current();
+        if (call == null) {
+            return chain.proceed(request, scope);
+        }
+
+        call.connected();
+        HttpEntity entity = request.getEntity();
+        if (entity != null) {
+            request.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public void writeTo(OutputStream outStream) throws IOException {
+                    super.writeTo(outStream);
+                    call.written();
+                }
+            });
+        }
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        call.firstByte(response.getCode());
+        return response;
+    }
+}
@@ -0,0 +1,164 @@
+package com.llm.passthrough.transport;
+
+import com.llm.passthrough.util.Threads;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opens upstream connections ahead of traffic so that the first requests
+ * after startup, or after a quiet period, skip the TCP and TLS handshakes.
+ *
+ * <p>As an {@link ApplicationRunner} it blocks startup, and with it the
+ * readiness state, until every route has {@code connections} connections or
+ * {@code deadline} has passed. Afterwards routes with nothing in flight are
+ * topped back up to {@code minIdle} every {@code interval}.
+ *
+ * <p>Connections are leased from the shared pool, connected, and released
+ * unused, so requests pick them up like any other pooled connection.
+ */
+@Slf4j
+public class ConnectionWarmer implements ApplicationRunner, AutoCloseable {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final List<HttpRoute> routes;
+    private final int connections;
+    private final int minIdle;
+    private final Duration deadline;
+    private final Duration interval;
+    private final Timeout leaseTimeout;
+    private final TimeValue keepAlive;
+    private final ExecutorService connectors;
+    private final ScheduledExecutorService scheduler;
+
+    public ConnectionWarmer(PoolingHttpClientConnectionManager connectionManager, List<String> urls,
+                            int connections, int minIdle, Duration deadline, Duration interval,
+                            Duration leaseTimeout, Duration keepAlive) {
+        this.connectionManager = connectionManager;
+        this.routes = routes(urls);
+        this.connections = connections;
+        this.minIdle = minIdle;
+        this.deadline = deadline;
+        this.interval = interval;
+        this.leaseTimeout = Timeout.ofMilliseconds(leaseTimeout.toMillis());
+        this.keepAlive = TimeValue.ofMilliseconds(keepAlive.toMillis());
+
+        this.connectors = Executors.newCachedThreadPool(Threads.daemon("pool-warmer"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Threads.daemon("pool-warmer-timer"));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        long started = System.nanoTime();
+        CompletableFuture<Void> warming = CompletableFuture.allOf(routes.stream()
+                .map(route -> CompletableFuture.runAsync(() -> warm(route, connections), connectors))
+                .toArray(CompletableFuture[]::new));
+        try {
+            warming.get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Warmed {} upstream connection(s) per route for {} in {} ms", connections, routes,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (TimeoutException e) {
+            log.warn("Upstream connection warm-up did not finish within {}, reporting ready anyway", deadline);
+        } catch (ExecutionException e) {
+            log.warn("Upstream connection warm-up failed, reporting ready anyway", e.getCause());
+        }
+
+        if (minIdle > 0) {
+            scheduler.scheduleWithFixedDelay(this::topUp, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        connectors.shutdownNow();
+    }
+
+    private void topUp() {
+        for (HttpRoute route : routes) {
+            PoolStats stats = connectionManager.getStats(route);
+            if (stats.getLeased() == 0 && stats.getPending() == 0 && stats.getAvailable() < minIdle) {
+                try {
+                    warm(route, minIdle);
+                } catch (RuntimeException e) {
+                    log.debug("Failed to top up idle connections for {}", route, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Leases {@code count} connections at once, so that each is a distinct pool
+     * entry, connects those that are not yet open, and returns them all.
+     */
+    private void warm(HttpRoute route, int count) {
+        List<ConnectionEndpoint> endpoints = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                endpoints.add(connectionManager.lease("warmup", route, leaseTimeout, null).get(leaseTimeout));
+            }
+
+            CompletableFuture.allOf(endpoints.stream()
+                    .filter(endpoint -> !endpoint.isConnected())
+                    .map(endpoint -> CompletableFuture.runAsync(() -> connect(endpoint), connectors))
+                    .toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted warming " + route, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("No pooled connection available to warm " + route, e);
+        } finally {
+            for (ConnectionEndpoint endpoint : endpoints) {
+                connectionManager.release(endpoint, null, endpoint.isConnected() ? keepAlive : TimeValue.ZERO_MILLISECONDS);
+            }
+        }
+    }
+
+    private void connect(ConnectionEndpoint endpoint) {
+        try {
+            // Runs the TLS handshake and certificate verification for secure routes
+            connectionManager.connect(endpoint, null, HttpClientContext.create());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open upstream connection", e);
+        }
+    }
+
+    /**
+     * Routes as the client's default route planner computes them, so that warm
+     * connections are matched to requests.
+     */
+    private static List<HttpRoute> routes(List<String> urls) {
+        Set<HttpRoute> routes = new LinkedHashSet<>();
+        for (String url : urls) {
+            HttpHost target = RoutingSupport.normalize(HttpHost.create(URI.create(url)), DefaultSchemePortResolver.INSTANCE);
+            routes.add(new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName())));
+        }
+        return List.copyOf(routes);
+    }
+}
@@ -0,0 +1,32 @@
+package com.llm.passthrough.transport;
+
+import com.llm.passthrough.resilience.RequestHedger;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+
+import java.io.IOException;
+
+/**
+ * Lets a hedged attempt that lost the race abort its exchange from another
+ * thread.
+ *
+ * <p>Cancelling the original request releases a pending connection lease or
+ * shuts the connection down, so a blocked read fails at once instead of
+ * waiting for the upstream to finish.
+ */
+public class HedgeCancellationExecHandler implements ExecChainHandler {
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        RequestHedger.Attempt attempt = RequestHedger.Attempt.current();
+        if (attempt != null && scope.originalRequest instanceof Cancellable cancellable) {
+            attempt.onCancel(cancellable::cancel);
+        }
+        return chain.proceed(request, scope);
+    }
+}
@@ -0,0 +1,370 @@
+package com.llm.passthrough.transport;
+
+import com.llm.passthrough.metrics.LlmMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends requests over a fixed number of HTTP/2 connections, each carrying at
+ * most {@code maxConcurrentStreams} requests at a time.
+ *
+ * <p>Every connection is a separate JDK {@link HttpClient}, which keeps a
+ * single multiplexed connection per host and negotiates h2 through ALPN. When
+ * the upstream does not select h2 the client falls back to HTTP/1.1 on its
+ * own, and the stream limit then caps the connections it opens instead.
+ *
+ * <p>A stream is held from {@code execute()} until the response is closed, so
+ * relayed SSE streams count for their whole duration. Callers wait up to
+ * {@code acquireTimeout} for a free stream. Until a connection has answered
+ * its first request it carries only that one, so that concurrent requests do
+ * not each open a connection of their own.
+ */
+@Slf4j
+public class MultiplexedClientHttpRequestFactory implements ClientHttpRequestFactory, MeterBinder {
+
+    private final int maxConcurrentStreams;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration acquireTimeout;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition streamFreed = lock.newCondition();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicInteger pendingStreams = new AtomicInteger();
+    // Guarded by lock
+    private Connection[] connections;
+    private int next;
+
+    public MultiplexedClientHttpRequestFactory(SSLContext sslContext, int connections, int maxConcurrentStreams,
+                                               Duration connectTimeout, Duration readTimeout,
+                                               Duration acquireTimeout) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.acquireTimeout = acquireTimeout;
+        this.connections = createConnections(sslContext, connections);
+    }
+
+    /**
+     * Opens new connections with the given context for subsequent requests.
+     * Requests in flight finish on the old connections, whose clients are
+     * closed once their last stream is released.
+     */
+    public void setSslContext(SSLContext sslContext) {
+        Connection[] created = createConnections(sslContext, maxConnections());
+        List<Connection> idle = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Connection connection : connections) {
+                connection.retired = true;
+                if (connection.active == 0) {
+                    idle.add(connection);
+                }
+            }
+            connections = created;
+            streamFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        idle.forEach(Connection::close);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new MultiplexedRequest(uri, httpMethod);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("llm.upstream.streams.active", activeStreams, AtomicInteger::get)
+                .description("Upstream HTTP/2 streams in use")
+                .register(registry);
+        Gauge.builder("llm.upstream.streams.pending", pendingStreams, AtomicInteger::get)
+                .description("Requests waiting for a free upstream HTTP/2 stream")
+                .register(registry);
+    }
+
+    private int maxConnections() {
+        lock.lock();
+        try {
+            return connections.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection[] createConnections(SSLContext sslContext, int count) {
+        Connection[] created = new Connection[count];
+        for (int i = 0; i < count; i++) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout);
+            if (sslContext != null) {
+                builder.sslContext(sslContext);
+            }
+            HttpClient client = builder.build();
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(client);
+            requestFactory.setReadTimeout(readTimeout);
+            created[i] = new Connection(client, requestFactory);
+        }
+        return created;
+    }
+
+    private Connection acquire() throws IOException {
+        long remaining = acquireTimeout.toNanos();
+        pendingStreams.incrementAndGet();
+        try {
+            lock.lockInterruptibly();
+            try {
+                while (true) {
+                    Connection connection = nextAvailable();
+                    if (connection != null) {
+                        connection.active++;
+                        activeStreams.incrementAndGet();
+                        return connection;
+                    }
+                    if (remaining <= 0) {
+                        throw new IOException("Timeout waiting for a free upstream HTTP/2 stream");
+                    }
+                    remaining = streamFreed.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a free upstream HTTP/2 stream");
+        } finally {
+            pendingStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * The next connection, round robin, with a free stream. Called with the lock held.
+     */
+    private Connection nextAvailable() {
+        for (int i = 0; i < connections.length; i++) {
+            int index = Math.floorMod(next + i, connections.length);
+            Connection connection = connections[index];
+            if (connection.active < (connection.established ? maxConcurrentStreams : 1)) {
+                next = index + 1;
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private void established(Connection connection) {
+        if (connection.established) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!connection.established) {
+                connection.established = true;
+                // The connection now takes more than its first stream
+                streamFreed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Connection connection, boolean broken) {
+        boolean close;
+        lock.lock();
+        try {
+            connection.active--;
+            activeStreams.decrementAndGet();
+            if (broken) {
+                connection.established = false;
+            }
+            close = connection.retired && connection.active == 0;
+            streamFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (close) {
+            connection.close();
+        }
+    }
+
+    private static final class Connection {
+
+        private final HttpClient client;
+        private final JdkClientHttpRequestFactory requestFactory;
+
+        // Guarded by the factory's lock
+        private int active;
+        private boolean retired;
+
+        /**
+         * Whether a request has completed on this client, so that its connection
+         * to the upstream is open and later requests can share it. Written
+         * under the factory's lock.
+         */
+        private volatile boolean established;
+
+        Connection(HttpClient client, JdkClientHttpRequestFactory requestFactory) {
+            this.client = client;
+            this.requestFactory = requestFactory;
+        }
+
+        /**
+         * HttpClient is only closeable from Java 21; before that it shuts down
+         * once it is no longer referenced.
+         */
+        void close() {
+            if (client instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.debug("Failed to close replaced upstream HTTP/2 client", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects headers and body, and only takes a stream once executed so that a
+     * request abandoned before sending never holds one.
+     */
+    private class MultiplexedRequest extends AbstractClientHttpRequest implements StreamingHttpOutputMessage {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private ByteArrayOutputStream bufferedBody;
+        private Body body;
+
+        MultiplexedRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public void setBody(Body body) {
+            assertNotExecuted();
+            this.body = body;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            if (bufferedBody == null) {
+                bufferedBody = new ByteArrayOutputStream(1024);
+            }
+            return bufferedBody;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            LlmMetrics.Call call = LlmMetrics.current();
+            Connection connection = acquire();
+            if (call != null) {
+                call.connected();
+            }
+            try {
+                ClientHttpResponse response = execute(connection, headers);
+                established(connection);
+                return response;
+            } catch (IOException | RuntimeException | Error e) {
+                release(connection, e instanceof IOException);
+                throw e;
+            }
+        }
+
+        private ClientHttpResponse execute(Connection connection, HttpHeaders headers) throws IOException {
+            ClientHttpRequest request = connection.requestFactory.createRequest(uri, method);
+            request.getHeaders().putAll(headers);
+            if (body != null) {
+                ((StreamingHttpOutputMessage) request).setBody(body);
+            } else if (bufferedBody != null) {
+                bufferedBody.writeTo(request.getBody());
+            }
+            ClientHttpResponse response = request.execute();
+            LlmMetrics.Call call = LlmMetrics.current();
+            if (call != null) {
+                call.firstByte(response.getStatusCode().value());
+            }
+            return new MultiplexedResponse(response, connection);
+        }
+    }
+
+    private class MultiplexedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final Connection connection;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        MultiplexedResponse(ClientHttpResponse delegate, Connection connection) {
+            this.delegate = delegate;
+            this.connection = connection;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    delegate.close();
+                } finally {
+                    release(connection, false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.llm.passthrough.transport;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The upstream {@link SSLContext}, rebuilt when its key, certificate or CA
+ * files change.
+ *
+ * <p>A background thread watches the directories holding the files, which also
+ * catches the symlink swap used by Kubernetes secret volumes. Once changes have
+ * settled for {@code delay} and the file contents actually differ, a new
+ * context is built and handed to the listeners, which swap it into their
+ * connection factories. Connections already open keep the context they were
+ * created with and drain normally. If the new material cannot be loaded the
+ * current context stays in use.
+ */
+@Slf4j
+public class ReloadableSslContext implements MeterBinder, AutoCloseable {
+
+    private final Callable<SSLContext> builder;
+    private final List<Path> files;
+    private final AtomicReference<SSLContext> current;
+    private final List<Consumer<SSLContext>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile byte[] fingerprint;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public ReloadableSslContext(Callable<SSLContext> builder, List<Path> files) throws Exception {
+        this.builder = builder;
+        this.files = List.copyOf(files);
+        this.fingerprint = fingerprint();
+        this.current = new AtomicReference<>(builder.call());
+    }
+
+    public SSLContext get() {
+        return current.get();
+    }
+
+    /**
+     * Registers a listener called with every reloaded context.
+     */
+    public void onReload(Consumer<SSLContext> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts watching the files; does nothing if there are none.
+     */
+    public synchronized void watch(Duration delay) throws IOException {
+        if (files.isEmpty() || watchService != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path file : files) {
+            directories.add(file.toAbsolutePath().getParent());
+        }
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        watcher = new Thread(() -> run(delay), "ssl-reloader");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for certificate changes", directories);
+    }
+
+    /**
+     * Rebuilds the context if the files changed since it was last built.
+     *
+     * @return whether a new context was installed
+     */
+    public boolean reload() {
+        try {
+            byte[] updated = fingerprint();
+            if (Arrays.equals(updated, fingerprint)) {
+                return false;
+            }
+
+            SSLContext sslContext = builder.call();
+            current.set(sslContext);
+            fingerprint = updated;
+            for (Consumer<SSLContext> listener : listeners) {
+                listener.accept(sslContext);
+            }
+            reloads.incrementAndGet();
+            log.info("Reloaded upstream SSL context");
+            return true;
+        } catch (Exception e) {
+            // Typically a rotation caught half-written; the next change event retries
+            failures.incrementAndGet();
+            log.error("Failed to reload upstream SSL context, keeping the current one", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("llm.ssl.reloads", reloads, AtomicLong::get)
+                .tag("result", "success")
+                .description("Upstream SSL context reloads")
+                .register(registry);
+        FunctionCounter.builder("llm.ssl.reloads", failures, AtomicLong::get)
+                .tag("result", "failure")
+                .description("Upstream SSL context reloads")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watcher.interrupt();
+        }
+    }
+
+    private void run(Duration delay) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                drain(key);
+                // Wait for the burst of events of one rotation to settle
+                while ((key = watchService.poll(delay.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private static void drain(WatchKey key) {
+        key.pollEvents();
+        key.reset();
+    }
+
+    private byte[] fingerprint() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Path file : files) {
+            if (Files.exists(file)) {
+                digest.update(Files.readAllBytes(file));
+            }
+        }
+        return digest.digest();
+    }
+}
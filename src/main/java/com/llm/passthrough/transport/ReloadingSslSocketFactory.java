@@ -0,0 +1,71 @@
+package com.llm.passthrough.transport;
+
+import org.apache.hc.client5.http.socket.LayeredConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+
+/**
+ * TLS socket factory for the classic connection pool that follows
+ * {@link ReloadableSslContext}; new connections use the latest context.
+ */
+public class ReloadingSslSocketFactory implements LayeredConnectionSocketFactory {
+
+    private volatile SSLConnectionSocketFactory delegate;
+
+    public ReloadingSslSocketFactory(ReloadableSslContext sslContext) {
+        this.delegate = create(sslContext.get());
+        sslContext.onReload(reloaded -> delegate = create(reloaded));
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return delegate.createSocket(context);
+    }
+
+    @Override
+    public Socket createSocket(Proxy proxy, HttpContext context) throws IOException {
+        return delegate.createSocket(proxy, context);
+    }
+
+    @Override
+    public Socket connectSocket(TimeValue connectTimeout, Socket socket, HttpHost host,
+                                InetSocketAddress remoteAddress, InetSocketAddress localAddress,
+                                HttpContext context) throws IOException {
+        return connectSocket(socket, host, remoteAddress, localAddress,
+                Timeout.of(connectTimeout.getDuration(), connectTimeout.getTimeUnit()), null, context);
+    }
+
+    @Override
+    public Socket connectSocket(Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                InetSocketAddress localAddress, Timeout connectTimeout, Object attachment,
+                                HttpContext context) throws IOException {
+        return delegate.connectSocket(socket, host, remoteAddress, localAddress, connectTimeout, attachment, context);
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        return delegate.createLayeredSocket(socket, target, port, context);
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, Object attachment,
+                                      HttpContext context) throws IOException {
+        return delegate.createLayeredSocket(socket, target, port, attachment, context);
+    }
+
+    private static SSLConnectionSocketFactory create(SSLContext sslContext) {
+        return SSLConnectionSocketFactoryBuilder.create()
+                .setSslContext(sslContext)
+                .build();
+    }
+}
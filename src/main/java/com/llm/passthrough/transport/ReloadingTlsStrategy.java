@@ -0,0 +1,45 @@
+package com.llm.passthrough.transport;
+
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ssl.TransportSecurityLayer;
+import org.apache.hc.core5.util.Timeout;
+
+import javax.net.ssl.SSLContext;
+import java.net.SocketAddress;
+
+/**
+ * TLS strategy for the async streaming client that follows
+ * {@link ReloadableSslContext}; new connections use the latest context.
+ */
+public class ReloadingTlsStrategy implements TlsStrategy {
+
+    private volatile TlsStrategy delegate;
+
+    public ReloadingTlsStrategy(ReloadableSslContext sslContext) {
+        this.delegate = create(sslContext.get());
+        sslContext.onReload(reloaded -> delegate = create(reloaded));
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean upgrade(TransportSecurityLayer sessionLayer, HttpHost host, SocketAddress localAddress,
+                           SocketAddress remoteAddress, Object attachment, Timeout handshakeTimeout) {
+        return delegate.upgrade(sessionLayer, host, localAddress, remoteAddress, attachment, handshakeTimeout);
+    }
+
+    @Override
+    public void upgrade(TransportSecurityLayer sessionLayer, NamedEndpoint endpoint, Object attachment,
+                        Timeout handshakeTimeout, FutureCallback<TransportSecurityLayer> callback) {
+        delegate.upgrade(sessionLayer, endpoint, attachment, handshakeTimeout, callback);
+    }
+
+    private static TlsStrategy create(SSLContext sslContext) {
+        return ClientTlsStrategyBuilder.create()
+                .setSslContext(sslContext)
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package com.llm.passthrough.util;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for the service's own pools.
+ */
+public final class Threads {
+
+    private Threads() {
+    }
+
+    /**
+     * Daemon threads named {@code prefix-1}, {@code prefix-2}, ..., so that a
+     * pool left running never holds up JVM shutdown.
+     */
+    public static ThreadFactory daemon(String prefix) {
+        CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix + "-");
+        factory.setDaemon(true);
+        return factory;
+    }
+}
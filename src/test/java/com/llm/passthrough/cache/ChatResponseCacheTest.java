@@ -0,0 +1,80 @@
+package com.llm.passthrough.cache;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.dto.ChatRequest;
+import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCacheTest {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final ChatResponseCache cache = new ChatResponseCache(true, 1 << 20, Duration.ofMinutes(1), true,
+            jsonMapper, new RequestFingerprint(jsonMapper));
+
+    @Test
+    void returnsAFreshCopyOfStoredResponses() {
+        String key = cache.key(request("hi", 0.0));
+        ChatResponse response = ChatResponse.builder().id("chatcmpl-1").model("m").build();
+        cache.put(key, response);
+
+        ChatResponse first = cache.get(key);
+        ChatResponse second = cache.get(key);
+
+        assertThat(first.getId()).isEqualTo("chatcmpl-1");
+        assertThat(first).isNotSameAs(response).isNotSameAs(second);
+    }
+
+    @Test
+    void keysOnlyOnTheFieldsThatShapeTheAnswer() {
+        ChatRequest request = request("hi", 0.0);
+        ChatRequest streaming = request("hi", 0.0);
+        streaming.setStream(true);
+
+        assertThat(cache.key(request)).isEqualTo(cache.key(streaming));
+        assertThat(cache.key(request)).isNotEqualTo(cache.key(request("bye", 0.0)));
+        assertThat(cache.key(request)).isNotEqualTo(cache.key(request("hi", 0.5)));
+    }
+
+    @Test
+    void missesUnknownKeys() {
+        assertThat(cache.get(cache.key(request("hi", 0.0)))).isNull();
+    }
+
+    @Test
+    void cachesOnlyDeterministicRequestsWhenConfigured() {
+        assertThat(cache.isCacheable(request("hi", 0.0), CacheDirective.DEFAULT)).isTrue();
+        assertThat(cache.isCacheable(request("hi", 0.7), CacheDirective.DEFAULT)).isFalse();
+        assertThat(cache.isCacheable(request("hi", null), CacheDirective.DEFAULT)).isFalse();
+        assertThat(cache.isCacheable(request("hi", 0.0), CacheDirective.NO_STORE)).isFalse();
+        assertThat(cache.isCacheable(request("hi", 0.0), CacheDirective.NO_CACHE)).isTrue();
+    }
+
+    @Test
+    void cachesNothingWhenDisabled() {
+        ChatResponseCache disabled = new ChatResponseCache(false, 1 << 20, Duration.ofMinutes(1), false,
+                jsonMapper, new RequestFingerprint(jsonMapper));
+
+        assertThat(disabled.isCacheable(request("hi", 0.0), CacheDirective.DEFAULT)).isFalse();
+    }
+
+    @Test
+    void parsesCacheControl() {
+        assertThat(CacheDirective.fromCacheControl(null)).isEqualTo(CacheDirective.DEFAULT);
+        assertThat(CacheDirective.fromCacheControl("max-age=0, No-Cache")).isEqualTo(CacheDirective.NO_CACHE);
+        assertThat(CacheDirective.fromCacheControl("no-cache, no-store")).isEqualTo(CacheDirective.NO_STORE);
+    }
+
+    private static ChatRequest request(String content, Double temperature) {
+        return ChatRequest.builder()
+                .model("m")
+                .messages(List.of(Message.builder().role("user").content(content).build()))
+                .temperature(temperature)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.llm.passthrough.cache;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.dto.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestFingerprintTest {
+
+    private final RequestFingerprint fingerprint = new RequestFingerprint(JsonMapper.builder()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .build());
+
+    @Test
+    void ignoresKeyOrder() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("model", "m");
+        first.put("temperature", 0.0);
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("temperature", 0.0);
+        second.put("model", "m");
+
+        assertThat(fingerprint.of(first)).isEqualTo(fingerprint.of(second));
+    }
+
+    @Test
+    void distinguishesDifferentValues() {
+        Message hi = Message.builder().role("user").content("hi").build();
+        Message bye = Message.builder().role("user").content("bye").build();
+
+        assertThat(fingerprint.of(Map.of("messages", List.of(hi))))
+                .isNotEqualTo(fingerprint.of(Map.of("messages", List.of(bye))));
+    }
+
+    @Test
+    void isAHexSha256() {
+        assertThat(fingerprint.of(Map.of("model", "m"))).hasSize(64).matches("[0-9a-f]+");
+    }
+
+    @Test
+    void leavesTheSourceMapperUnchanged() throws Exception {
+        JsonMapper jsonMapper = JsonMapper.builder().build();
+        new RequestFingerprint(jsonMapper);
+
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("b", 1);
+        value.put("a", 2);
+
+        assertThat(jsonMapper.writeValueAsString(value)).isEqualTo("{\"b\":1,\"a\":2}");
+    }
+}
@@ -0,0 +1,73 @@
+package com.llm.passthrough.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.llm.passthrough.store.BlobStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheConfigTest {
+
+    @TempDir
+    Path directory;
+
+    private ApplicationContextRunner contextRunner() {
+        return new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class))
+                .withUserConfiguration(Properties.class, CacheConfig.class)
+                .withPropertyValues(
+                        "apigee.url=http://127.0.0.1:1",
+                        "apigee.ocr-url=http://127.0.0.1:1",
+                        "apigee.client-id=id",
+                        "apigee.client-secret=secret",
+                        "apigee.ocr.blobs.enabled=true",
+                        "apigee.ocr.blobs.directory=" + directory.resolve("blobs"),
+                        "apigee.ocr.store.directory=" + directory.resolve("store"),
+                        "apigee.ocr.jobs.directory=" + directory.resolve("jobs"));
+    }
+
+    @Test
+    void opensTheBlobStoreWhenItOutlivesTheResultsLinkingToIt() {
+        contextRunner()
+                .withPropertyValues("apigee.ocr.store.enabled=true", "apigee.ocr.store.ttl=30d",
+                        "apigee.ocr.jobs.enabled=true", "apigee.ocr.jobs.ttl=7d", "apigee.ocr.blobs.ttl=30d")
+                .run(context -> assertThat(context).hasNotFailed().hasSingleBean(BlobStore.class));
+    }
+
+    @Test
+    void refusesABlobTtlShorterThanTheResultStoreTtl() {
+        contextRunner()
+                .withPropertyValues("apigee.ocr.store.enabled=true", "apigee.ocr.store.ttl=30d",
+                        "apigee.ocr.blobs.ttl=7d")
+                .run(context -> assertThat(context).getFailure()
+                        .hasRootCauseInstanceOf(IllegalStateException.class)
+                        .rootCause().hasMessageContaining("apigee.ocr.store.ttl"));
+    }
+
+    @Test
+    void refusesABlobTtlShorterThanTheJobTtl() {
+        contextRunner()
+                .withPropertyValues("apigee.ocr.jobs.enabled=true", "apigee.ocr.jobs.ttl=7d",
+                        "apigee.ocr.blobs.ttl=1d")
+                .run(context -> assertThat(context).getFailure()
+                        .rootCause().hasMessageContaining("apigee.ocr.jobs.ttl"));
+    }
+
+    @Test
+    void ignoresTheTtlOfStoresThatAreDisabled() {
+        contextRunner()
+                .withPropertyValues("apigee.ocr.store.ttl=30d", "apigee.ocr.blobs.ttl=1d")
+                .run(context -> assertThat(context).hasNotFailed().hasSingleBean(ObjectMapper.class));
+    }
+
+    @EnableConfigurationProperties(ApigeeProperties.class)
+    static class Properties {
+    }
+}
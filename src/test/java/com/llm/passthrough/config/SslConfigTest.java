@@ -0,0 +1,53 @@
+package com.llm.passthrough.config;
+
+import com.llm.passthrough.transport.ConnectionWarmer;
+import com.llm.passthrough.transport.MultiplexedClientHttpRequestFactory;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SslConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(Properties.class, SslConfig.class)
+            .withPropertyValues(
+                    "apigee.url=http://127.0.0.1:1",
+                    "apigee.ocr-url=http://127.0.0.1:1",
+                    "apigee.client-id=id",
+                    "apigee.client-secret=secret",
+                    "apigee.ssl.enabled=false");
+
+    @Test
+    void usesThePooledClientByDefault() {
+        contextRunner.run(context -> {
+            assertThat(context).hasSingleBean(PoolingHttpClientConnectionManager.class)
+                    .hasSingleBean(CloseableHttpClient.class)
+                    .doesNotHaveBean(MultiplexedClientHttpRequestFactory.class);
+            assertThat(context.getBean(PoolingHttpClientConnectionManager.class).getDefaultMaxPerRoute())
+                    .isEqualTo(20);
+        });
+    }
+
+    @Test
+    void buildsNoPoolOrWarmerWithHttp2() {
+        contextRunner
+                .withPropertyValues("apigee.http2.enabled=true", "apigee.pool.warmup.enabled=true")
+                .run(context -> assertThat(context)
+                        .hasSingleBean(MultiplexedClientHttpRequestFactory.class)
+                        .doesNotHaveBean(PoolingHttpClientConnectionManager.class)
+                        .doesNotHaveBean(CloseableHttpClient.class)
+                        .doesNotHaveBean(ConnectionWarmer.class)
+                        .hasBean("restClient")
+                        .hasBean("ocrRestClient")
+                        .getBeans(RestClient.class).hasSize(2));
+    }
+
+    @EnableConfigurationProperties(ApigeeProperties.class)
+    static class Properties {
+    }
+}
@@ -0,0 +1,58 @@
+package com.llm.passthrough.dto;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageContentDeserializerTest {
+
+    private static final String MESSAGE = "{\"role\":\"user\",\"content\":[{\"type\":\"text\",\"text\":\"hi\"},"
+            + "{\"type\":\"image_url\",\"image_url\":{\"url\":\"https://example.com/a.png\"}}]}";
+
+    @Test
+    void forwardsPartsUnchangedWithoutTheMixin() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        Message message = objectMapper.readValue(MESSAGE, Message.class);
+
+        assertThat(message.getContent()).isInstanceOf(List.class);
+        assertThat(((List<?>) message.getContent()).get(1)).isInstanceOf(Map.class);
+        assertThat(objectMapper.readTree(objectMapper.writeValueAsString(message)))
+                .isEqualTo(objectMapper.readTree(MESSAGE));
+    }
+
+    @Test
+    void bindsPartsToContentPartWithTheMixin() throws Exception {
+        ObjectMapper objectMapper = spooling();
+
+        Message message = objectMapper.readValue(MESSAGE, Message.class);
+
+        assertThat((List<?>) message.getContent()).hasOnlyElementsOfType(ContentPart.class);
+        assertThat(((ContentPart) ((List<?>) message.getContent()).get(0)).getText()).isEqualTo("hi");
+        assertThat(objectMapper.writeValueAsString(((List<?>) message.getContent()).get(1)))
+                .isEqualTo("{\"type\":\"image_url\"}");
+    }
+
+    @Test
+    void keepsTextContentAString() throws Exception {
+        ObjectMapper objectMapper = spooling();
+
+        Message message = objectMapper.readValue("{\"role\":\"user\",\"content\":\"hi\"}", Message.class);
+
+        assertThat(message.getContent()).isEqualTo("hi");
+    }
+
+    // Unknown properties are ignored as in the application's mapper
+    private static ObjectMapper spooling() {
+        return JsonMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .addMixIn(Message.class, MessageContentDeserializer.MessageMixin.class)
+                .build();
+    }
+}
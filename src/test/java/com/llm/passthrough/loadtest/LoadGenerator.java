@@ -0,0 +1,218 @@
+package com.llm.passthrough.loadtest;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Drives HTTP requests at a fixed arrival rate (open loop) or with a fixed
+ * number of callers (closed loop) and collects latency and time to first byte.
+ *
+ * <p>In open-loop runs latency is measured from each request's scheduled start,
+ * so queueing inside the client or the service under test counts against it
+ * instead of silently lowering the offered load. Requests started during the
+ * warm-up are not recorded.
+ */
+class LoadGenerator implements AutoCloseable {
+
+    private final HttpClient client;
+    private final ExecutorService callers;
+    private final ScheduledExecutorService arrivals;
+
+    LoadGenerator() {
+        AtomicInteger threads = new AtomicInteger();
+        this.callers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "load-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.arrivals = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "load-arrivals");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(callers)
+                .build();
+    }
+
+    /**
+     * Sends {@code rps} requests per second, regardless of how long they take.
+     */
+    Result openLoop(Supplier<HttpRequest> requests, int rps, Duration warmUp, Duration duration)
+            throws InterruptedException {
+        Samples samples = new Samples();
+        long started = System.nanoTime();
+        long recordFrom = started + warmUp.toNanos();
+        long end = recordFrom + duration.toNanos();
+        long interval = 1_000_000_000L / rps;
+        AtomicLong sequence = new AtomicLong();
+        AtomicInteger outstanding = new AtomicInteger();
+
+        arrivals.scheduleAtFixedRate(() -> {
+            long scheduled = started + sequence.getAndIncrement() * interval;
+            if (scheduled >= end) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            callers.execute(() -> {
+                try {
+                    call(requests.get(), scheduled, scheduled >= recordFrom ? samples : null);
+                } finally {
+                    outstanding.decrementAndGet();
+                }
+            });
+        }, 0, interval, TimeUnit.NANOSECONDS);
+
+        TimeUnit.NANOSECONDS.sleep(end - System.nanoTime());
+        arrivals.shutdownNow();
+        while (outstanding.get() > 0) {
+            Thread.sleep(10);
+        }
+        return samples.result(duration);
+    }
+
+    /**
+     * Keeps {@code concurrency} requests in flight, each caller sending the next
+     * as soon as the previous one completes.
+     */
+    Result closedLoop(Supplier<HttpRequest> requests, int concurrency, Duration warmUp, Duration duration)
+            throws InterruptedException {
+        Samples samples = new Samples();
+        long recordFrom = System.nanoTime() + warmUp.toNanos();
+        long end = recordFrom + duration.toNanos();
+
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Thread(() -> {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    call(requests.get(), now, now >= recordFrom ? samples : null);
+                }
+            }, "load-caller-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return samples.result(duration);
+    }
+
+    @Override
+    public void close() {
+        arrivals.shutdownNow();
+        callers.shutdownNow();
+    }
+
+    /**
+     * Sends one request and reads the whole body, noting when its first byte
+     * arrives.
+     */
+    private void call(HttpRequest request, long start, Samples samples) {
+        long firstByte = 0;
+        boolean ok;
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                if (body.read() >= 0) {
+                    firstByte = System.nanoTime();
+                }
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            ok = response.statusCode() < 400;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            ok = false;
+        }
+        if (samples != null) {
+            long end = System.nanoTime();
+            samples.add(end - start, firstByte != 0 ? firstByte - start : -1, ok);
+        }
+    }
+
+    /**
+     * Latencies and first-byte times in nanoseconds, as collected.
+     */
+    private static final class Samples {
+
+        private long[] latencies = new long[1024];
+        private long[] firstBytes = new long[1024];
+        private int count;
+        private int firstByteCount;
+        private int errors;
+
+        synchronized void add(long latency, long firstByte, boolean ok) {
+            if (!ok) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            if (firstByte >= 0) {
+                if (firstByteCount == firstBytes.length) {
+                    firstBytes = Arrays.copyOf(firstBytes, firstByteCount * 2);
+                }
+                firstBytes[firstByteCount++] = firstByte;
+            }
+        }
+
+        synchronized Result result(Duration duration) {
+            long[] latency = Arrays.copyOf(latencies, count);
+            long[] firstByte = Arrays.copyOf(firstBytes, firstByteCount);
+            Arrays.sort(latency);
+            Arrays.sort(firstByte);
+            return new Result(count, errors, count / (duration.toNanos() / 1e9),
+                    percentile(latency, 0.50), percentile(latency, 0.99), percentile(latency, 0.999),
+                    latency.length > 0 ? latency[latency.length - 1] / 1e6 : 0,
+                    percentile(firstByte, 0.50), percentile(firstByte, 0.99), percentile(firstByte, 0.999));
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+
+    /**
+     * Latencies and first-byte times in milliseconds.
+     */
+    record Result(int requests, int errors, double throughput,
+                  double p50, double p99, double p999, double max,
+                  double ttfbP50, double ttfbP99, double ttfbP999) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+
+        static String header() {
+            return String.format("%-14s %8s %7s %9s %9s %9s %9s %9s %10s %10s %10s",
+                    "scenario", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms",
+                    "ttfb p50", "ttfb p99", "ttfb p999");
+        }
+
+        String row(String scenario) {
+            return String.format("%-14s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %10.1f %10.1f %10.1f",
+                    scenario, requests, errors, throughput, p50, p99, p999, max, ttfbP50, ttfbP99, ttfbP999);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.llm.passthrough.loadtest;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test of the chat, chat stream and OCR endpoints against
+ * {@link StubApigee}, over loopback only.
+ *
+ * <p>Not part of the regular build; run with
+ * {@code mvn test -Dtest=LoadTest -Dloadtest=true}. Each scenario runs at
+ * {@code -Dloadtest.rps} requests per second, or with {@code -Dloadtest.concurrency}
+ * callers when set, for {@code -Dloadtest.durationSec} after
+ * {@code -Dloadtest.warmUpSec}. The stub answers after {@code -Dloadtest.latencyMs}
+ * and generates {@code -Dloadtest.tokens} tokens at {@code -Dloadtest.tokensPerSecond};
+ * OCR requests ask for {@code -Dloadtest.ocrPages} pages at
+ * {@code -Dloadtest.pageDelayMs} each.
+ *
+ * <p>As a gate, a scenario fails when its error rate exceeds
+ * {@code -Dloadtest.maxErrorRate} (default 0) or, when set, its p99 exceeds
+ * {@code -Dloadtest.maxP99Ms}.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        // Per-request logging would dominate the measurement; set here because
+        // dynamic properties arrive after logging is initialised
+        "logging.level.com.llm.passthrough=WARN",
+        "logging.level.org.apache.hc.client5=WARN"
+})
+class LoadTest {
+
+    private static final int RPS = Integer.getInteger("loadtest.rps", 20);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 0);
+    private static final Duration WARM_UP = Duration.ofSeconds(Integer.getInteger("loadtest.warmUpSec", 5));
+    private static final Duration DURATION = Duration.ofSeconds(Integer.getInteger("loadtest.durationSec", 20));
+    private static final int LATENCY_MS = Integer.getInteger("loadtest.latencyMs", 200);
+    private static final int TOKENS = Integer.getInteger("loadtest.tokens", 50);
+    private static final int TOKENS_PER_SECOND = Integer.getInteger("loadtest.tokensPerSecond", 100);
+    private static final int OCR_PAGES = Integer.getInteger("loadtest.ocrPages", 5);
+    private static final int PAGE_DELAY_MS = Integer.getInteger("loadtest.pageDelayMs", 50);
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0"));
+    private static final String MAX_P99_MS = System.getProperty("loadtest.maxP99Ms");
+
+    private static final String CHAT = "{\"model\":\"gemini-2.5-pro\",\"messages\":[{\"role\":\"user\","
+            + "\"content\":\"Summarise the quarterly report in three bullet points.\"}],\"temperature\":0.7}";
+    private static final String OCR = "{\"model\":\"mistral-ocr-latest\",\"document\":{\"type\":\"document_url\","
+            + "\"document_url\":\"https://example.com/report.pdf\"},\"pages\":\"0-" + (OCR_PAGES - 1) + "\"}";
+
+    private static StubApigee stub;
+
+    @LocalServerPort
+    private int port;
+
+    private LoadGenerator loadGenerator;
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        try {
+            stub = new StubApigee(Duration.ofMillis(LATENCY_MS), TOKENS, TOKENS_PER_SECOND, OCR_PAGES,
+                    Duration.ofMillis(PAGE_DELAY_MS));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("apigee.url", stub::chatUrl);
+        registry.add("apigee.ocr-url", stub::ocrUrl);
+        registry.add("apigee.ssl.enabled", () -> "false");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @BeforeEach
+    void startLoadGenerator(TestInfo testInfo) {
+        loadGenerator = new LoadGenerator();
+        System.out.printf("%n%s: %s, warm-up %ds, %ds, upstream %d ms + %d tokens at %d/s, %d OCR pages at %d ms%n",
+                testInfo.getDisplayName(),
+                CONCURRENCY > 0 ? CONCURRENCY + " callers" : RPS + " req/s",
+                WARM_UP.toSeconds(), DURATION.toSeconds(), LATENCY_MS, TOKENS, TOKENS_PER_SECOND,
+                OCR_PAGES, PAGE_DELAY_MS);
+    }
+
+    @AfterEach
+    void stopLoadGenerator() {
+        loadGenerator.close();
+    }
+
+    @Test
+    void chat() throws Exception {
+        run("chat", () -> post("/api/v1/chat/completions", CHAT));
+    }
+
+    @Test
+    void chatStream() throws Exception {
+        run("chat stream", () -> post("/api/v1/chat/completions/stream", CHAT));
+    }
+
+    @Test
+    void ocr() throws Exception {
+        run("ocr", () -> post("/api/v1/mistral/ocr", OCR));
+    }
+
+    private void run(String scenario, Supplier<HttpRequest> requests) throws InterruptedException {
+        long upstreamBefore = stub.requests();
+        stub.takeMaxInFlight();
+        LoadGenerator.Result result = CONCURRENCY > 0
+                ? loadGenerator.closedLoop(requests, CONCURRENCY, WARM_UP, DURATION)
+                : loadGenerator.openLoop(requests, RPS, WARM_UP, DURATION);
+
+        System.out.println(LoadGenerator.Result.header());
+        System.out.println(result.row(scenario));
+        System.out.printf("upstream requests %d, max in flight %d%n",
+                stub.requests() - upstreamBefore, stub.takeMaxInFlight());
+
+        assertTrue(result.requests() > 0, "No requests completed");
+        assertTrue(result.errorRate() <= MAX_ERROR_RATE,
+                () -> String.format("Error rate %.4f exceeds %.4f", result.errorRate(), MAX_ERROR_RATE));
+        if (MAX_P99_MS != null) {
+            double maxP99 = Double.parseDouble(MAX_P99_MS);
+            assertTrue(result.p99() <= maxP99,
+                    () -> String.format("p99 %.1f ms exceeds %.1f ms", result.p99(), maxP99));
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(2))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,201 @@
+package com.llm.passthrough.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in for the Apigee chat and OCR endpoints on a loopback port.
+ *
+ * <p>{@code POST /chat/completions} waits {@code latency}, the time to first
+ * token, then produces {@code tokens} tokens at {@code tokensPerSecond}: as SSE
+ * deltas when the request asks to stream, otherwise as one JSON completion sent
+ * once all tokens are "generated". {@code POST /mistral/ocr} answers after
+ * {@code latency} plus {@code pageDelay} per page, for the pages named in the
+ * request or {@code ocrPages}.
+ */
+class StubApigee implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration latency;
+    private final int tokens;
+    private final int tokensPerSecond;
+    private final int ocrPages;
+    private final Duration pageDelay;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    StubApigee(Duration latency, int tokens, int tokensPerSecond, int ocrPages, Duration pageDelay)
+            throws IOException {
+        this.latency = latency;
+        this.tokens = tokens;
+        this.tokensPerSecond = tokensPerSecond;
+        this.ocrPages = ocrPages;
+        this.pageDelay = pageDelay;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "stub-apigee-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        server.setExecutor(executor);
+        server.createContext("/chat/completions", exchange -> handle(exchange, this::chat));
+        server.createContext("/mistral/ocr", exchange -> handle(exchange, this::ocr));
+        server.start();
+    }
+
+    String chatUrl() {
+        return baseUrl() + "/chat/completions";
+    }
+
+    String ocrUrl() {
+        return baseUrl() + "/mistral/ocr";
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Most requests in flight at once since the previous call.
+     */
+    int takeMaxInFlight() {
+        return maxInFlight.getAndSet(inFlight.get());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            handler.handle(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void chat(HttpExchange exchange, String body) throws IOException, InterruptedException {
+        Thread.sleep(latency.toMillis());
+        long tokenInterval = 1_000_000_000L / Math.max(1, tokensPerSecond);
+
+        if (body.replace(" ", "").contains("\"stream\":true")) {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            long next = System.nanoTime();
+            for (int i = 0; i < tokens; i++) {
+                out.write(("data: {\"id\":\"chatcmpl-stub\",\"object\":\"chat.completion.chunk\",\"model\":\"stub\","
+                        + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"tok" + i + " \"}}]}\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                next += tokenInterval;
+                sleepUntil(next);
+            }
+            out.write(("data: {\"id\":\"chatcmpl-stub\",\"choices\":[],\"usage\":{\"prompt_tokens\":20,"
+                    + "\"completion_tokens\":" + tokens + ",\"total_tokens\":" + (20 + tokens) + "}}\n\n"
+                    + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        sleepUntil(System.nanoTime() + tokenInterval * tokens);
+        StringBuilder content = new StringBuilder(tokens * 6);
+        for (int i = 0; i < tokens; i++) {
+            content.append("tok").append(i).append(' ');
+        }
+        send(exchange, "{\"id\":\"chatcmpl-stub\",\"object\":\"chat.completion\",\"created\":1718000000,"
+                + "\"model\":\"stub\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\""
+                + content + "\"},\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":20,"
+                + "\"completion_tokens\":" + tokens + ",\"total_tokens\":" + (20 + tokens) + "}}");
+    }
+
+    private void ocr(HttpExchange exchange, String body) throws IOException, InterruptedException {
+        int pages = pageCount(body);
+        Thread.sleep(latency.toMillis() + pageDelay.toMillis() * pages);
+
+        StringBuilder json = new StringBuilder(pages * 512).append("{\"pages\":[");
+        for (int i = 0; i < pages; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":").append(i).append(",\"markdown\":\"# Page ").append(i)
+                    .append("\\n\\nLorem ipsum dolor sit amet.\",\"images\":[],")
+                    .append("\"dimensions\":{\"dpi\":200,\"height\":2200,\"width\":1700}}");
+        }
+        json.append("],\"model\":\"mistral-ocr-latest\",\"usage_info\":{\"pages_processed\":").append(pages)
+                .append(",\"doc_size_bytes\":").append(pages * 100_000L).append("}}");
+        send(exchange, json.toString());
+    }
+
+    /**
+     * Pages in a {@code "pages":"0-4,7"} style request field, or the default.
+     */
+    private int pageCount(String body) {
+        int start = body.indexOf("\"pages\"");
+        if (start < 0) {
+            return ocrPages;
+        }
+        int open = body.indexOf('"', body.indexOf(':', start) + 1);
+        int close = body.indexOf('"', open + 1);
+        if (open < 0 || close < 0) {
+            return ocrPages;
+        }
+        int count = 0;
+        for (String part : body.substring(open + 1, close).split(",")) {
+            String[] range = part.trim().split("-");
+            try {
+                count += range.length == 2
+                        ? Integer.parseInt(range[1].trim()) - Integer.parseInt(range[0].trim()) + 1 : 1;
+            } catch (NumberFormatException e) {
+                return ocrPages;
+            }
+        }
+        return Math.max(1, count);
+    }
+
+    private static void send(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+
+        void handle(HttpExchange exchange, String body) throws IOException, InterruptedException;
+    }
+}
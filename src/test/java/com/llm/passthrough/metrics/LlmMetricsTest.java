@@ -0,0 +1,123 @@
+package com.llm.passthrough.metrics;
+
+import com.llm.passthrough.dto.OcrUsageInfo;
+import com.llm.passthrough.dto.Usage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmMetricsTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final LlmMetrics metrics = new LlmMetrics(registry, false);
+
+    @Test
+    void tagsTheLatencyWithEndpointModelAndOutcome() {
+        metrics.start(LlmMetrics.CHAT, "gpt-4o").stop(LlmMetrics.SUCCESS);
+        metrics.start(LlmMetrics.OCR, " ").stop(LlmMetrics.UPSTREAM_ERROR);
+
+        assertThat(latency(LlmMetrics.CHAT, "gpt-4o", LlmMetrics.SUCCESS).count()).isEqualTo(1);
+        assertThat(latency(LlmMetrics.OCR, "unknown", LlmMetrics.UPSTREAM_ERROR).count()).isEqualTo(1);
+    }
+
+    @Test
+    void recordsTimeToFirstChunkThenTheGapsBetweenChunks() throws InterruptedException {
+        LlmMetrics.Call call = metrics.start(LlmMetrics.CHAT_STREAM, "gpt-4o");
+        Thread.sleep(20);
+
+        call.chunk(10);
+        call.chunk(10);
+        call.chunk(10);
+        call.stop(LlmMetrics.SUCCESS);
+
+        Timer ttft = registry.get("llm.stream.ttft").tag("model", "gpt-4o").timer();
+        Timer interChunk = registry.get("llm.stream.inter.chunk").tag("model", "gpt-4o").timer();
+        assertThat(ttft.count()).isEqualTo(1);
+        assertThat(ttft.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+        assertThat(interChunk.count()).isEqualTo(2);
+    }
+
+    @Test
+    void countsTokensFromUsageByType() {
+        LlmMetrics.Call call = metrics.start(LlmMetrics.CHAT, "gpt-4o");
+
+        call.usage(Usage.builder().promptTokens(120).completionTokens(30).cacheReadInputTokens(0).build());
+        call.usage(Usage.builder().promptTokens(5).cacheReadInputTokens(64).build());
+        call.usage(null);
+
+        assertThat(tokens("prompt")).isEqualTo(125);
+        assertThat(tokens("completion")).isEqualTo(30);
+        assertThat(tokens("cache_read")).isEqualTo(64);
+        assertThat(registry.get("llm.tokens.throughput").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    void recordsOcrUsage() {
+        metrics.start(LlmMetrics.OCR, "mistral-ocr").ocrUsage(new OcrUsageInfo(3, 2048L));
+
+        assertThat(registry.get("llm.ocr.pages").counter().count()).isEqualTo(3);
+        assertThat(registry.get("llm.ocr.document.size").summary().totalAmount()).isEqualTo(2048);
+    }
+
+    @Test
+    void countsOnlyTheFirstStop() {
+        LlmMetrics.Call call = metrics.start(LlmMetrics.CHAT, "gpt-4o");
+
+        call.stop(LlmMetrics.CANCELLED);
+        call.stop(LlmMetrics.FAILURE);
+
+        assertThat(latency(LlmMetrics.CHAT, "gpt-4o", LlmMetrics.CANCELLED).count()).isEqualTo(1);
+        assertThat(registry.find("llm.upstream.latency").tag("outcome", LlmMetrics.FAILURE).timer()).isNull();
+    }
+
+    @Test
+    void countsOneStopWhenStopsRaceTheRelay() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            LlmMetrics.Call call = metrics.start(LlmMetrics.CHAT_STREAM, "gpt-4o");
+            CountDownLatch start = new CountDownLatch(1);
+            Thread relay = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < 100; i++) {
+                    call.chunk(1);
+                }
+                call.stop(LlmMetrics.SUCCESS);
+            });
+            Thread canceller = new Thread(() -> {
+                await(start);
+                call.stop(LlmMetrics.CANCELLED);
+            });
+            relay.start();
+            canceller.start();
+            start.countDown();
+            relay.join();
+            canceller.join();
+        }
+
+        long stops = registry.find("llm.upstream.latency").timers().stream().mapToLong(Timer::count).sum();
+        assertThat(stops).isEqualTo(50);
+    }
+
+    private Timer latency(String endpoint, String model, String outcome) {
+        return registry.get("llm.upstream.latency")
+                .tags("endpoint", endpoint, "model", model, "outcome", outcome)
+                .timer();
+    }
+
+    private double tokens(String type) {
+        return registry.get("llm.tokens").tags("endpoint", LlmMetrics.CHAT, "type", type).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
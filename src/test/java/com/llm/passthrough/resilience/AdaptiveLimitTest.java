@@ -0,0 +1,93 @@
+package com.llm.passthrough.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveLimitTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void rejectsInvalidBounds() {
+        assertThatThrownBy(() -> new AdaptiveLimit(10, 0, 10, 1.5, 0.9, 0.2))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveLimit(10, 20, 10, 1.5, 0.9, 0.2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void clampsTheInitialLimitToItsBounds() {
+        assertThat(new AdaptiveLimit(500, 1, 100, 1.5, 0.9, 0.2).getLimit()).isEqualTo(100);
+        assertThat(new AdaptiveLimit(0, 5, 100, 1.5, 0.9, 0.2).getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void refusesRequestsOnceTheLimitIsReached() {
+        AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, 1.5, 0.9, 0.2);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(2);
+
+        limit.release();
+
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void backsOffOnADroppedRequestDownToTheMinimum() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 4, 100, 1.5, 0.5, 0.2);
+
+        complete(limit, 10 * MILLIS, 10, true);
+
+        assertThat(limit.getLimit()).isEqualTo(5);
+
+        complete(limit, 10 * MILLIS, 10, true);
+
+        assertThat(limit.getLimit()).isEqualTo(4);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    void growsWhileSaturatedAndLatencyIsSteady() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 100, 1, 0.9, 1);
+
+        complete(limit, 10 * MILLIS, 10, false);
+
+        assertThat(limit.getLimit()).isEqualTo(13);
+    }
+
+    @Test
+    void holdsStillWhileLessThanHalfIsInUse() {
+        AdaptiveLimit limit = new AdaptiveLimit(10, 1, 100, 1, 0.9, 1);
+
+        for (int i = 0; i < 20; i++) {
+            complete(limit, 10 * MILLIS, 4, false);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinksWhenLatencyRisesAboveTheBaseline() {
+        AdaptiveLimit limit = new AdaptiveLimit(100, 1, 100, 1, 0.9, 1);
+        for (int i = 0; i < 50; i++) {
+            complete(limit, 10 * MILLIS, 100, false);
+        }
+        assertThat(limit.getLimit()).isEqualTo(100);
+
+        for (int i = 0; i < 10; i++) {
+            complete(limit, 100 * MILLIS, limit.getLimit(), false);
+        }
+
+        assertThat(limit.getLimit()).isLessThan(50);
+    }
+
+    private static void complete(AdaptiveLimit limit, long latency, int inFlight, boolean dropped) {
+        assertThat(limit.tryAcquire()).isTrue();
+        limit.release(latency, inFlight, dropped);
+    }
+}
@@ -0,0 +1,130 @@
+package com.llm.passthrough.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    @Test
+    void rejectsAThresholdOutsideTheUnitInterval() {
+        assertThatThrownBy(() -> new CircuitBreaker("apigee", 0, 10, 5, Duration.ofSeconds(1), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CircuitBreaker("apigee", 1.5, 10, 5, Duration.ofSeconds(1), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void staysClosedUntilTheMinimumNumberOfCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("apigee", 0.5, 10, 4, Duration.ofMinutes(1), 1);
+
+        fail(breaker, 3);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail(breaker, 1);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(-1);
+        assertThat(breaker.retryAfterSeconds()).isBetween(1L, 60L);
+    }
+
+    @Test
+    void staysClosedBelowTheFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker("apigee", 0.5, 10, 4, Duration.ofMinutes(1), 1);
+
+        succeed(breaker, 6);
+        fail(breaker, 4);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void forgetsOutcomesThatLeaveTheWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("apigee", 0.5, 4, 4, Duration.ofMinutes(1), 1);
+
+        fail(breaker, 1);
+        succeed(breaker, 3);
+        fail(breaker, 1);
+
+        // The first failure has left the window: one failure in four
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail(breaker, 1);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void closesAgainOnceEveryProbeSucceeds() {
+        CircuitBreaker breaker = openBreaker(2);
+
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(-1);
+
+        breaker.onSuccess(first);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onSuccess(second);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void reopensOnAFailedProbe() {
+        CircuitBreaker breaker = openBreaker(2);
+
+        breaker.onFailure(breaker.tryAcquire());
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void givesBackTheProbeSlotOfAnIgnoredCall() {
+        CircuitBreaker breaker = openBreaker(1);
+
+        breaker.onIgnored(breaker.tryAcquire());
+
+        assertThat(breaker.tryAcquire()).isNotEqualTo(-1);
+    }
+
+    @Test
+    void ignoresOutcomesOfCallsAdmittedBeforeAStateChange() {
+        CircuitBreaker breaker = new CircuitBreaker("apigee", 0.5, 2, 2, Duration.ZERO, 1);
+        long stale = breaker.tryAcquire();
+        fail(breaker, 2);
+        long probe = breaker.tryAcquire();
+
+        breaker.onFailure(stale);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        breaker.onSuccess(probe);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private static CircuitBreaker openBreaker(int halfOpenCalls) {
+        CircuitBreaker breaker = new CircuitBreaker("apigee", 0.5, 2, 2, Duration.ZERO, halfOpenCalls);
+        fail(breaker, 2);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        return breaker;
+    }
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i++) {
+            breaker.onSuccess(breaker.tryAcquire());
+        }
+    }
+}
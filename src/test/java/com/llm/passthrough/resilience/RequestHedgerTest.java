@@ -0,0 +1,191 @@
+package com.llm.passthrough.resilience;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestHedgerTest {
+
+    private static final String MODEL = "gpt-4o";
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private RequestHedger hedger;
+
+    @AfterEach
+    void close() {
+        if (hedger != null) {
+            hedger.close();
+        }
+    }
+
+    @Test
+    void rejectsPercentilesOutsideTheUnitInterval() {
+        assertThatThrownBy(() -> new RequestHedger(true, 1.0, Duration.ZERO, Duration.ZERO, 1, 1, 0.1, 10, registry))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new RequestHedger(true, 0.9, Duration.ZERO, Duration.ZERO, 1, 1, -1, 10, registry))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void runsTheCallDirectlyWhenDisabled() {
+        hedger = new RequestHedger(false, 0.9, Duration.ZERO, Duration.ZERO, 1, 1, 1.0, 10, registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(hedger.execute(MODEL, () -> calls.incrementAndGet() + ":" + RequestHedger.Attempt.current()))
+                .isEqualTo("1:null");
+        assertThat(registry.find("llm.hedge.delay").gauge()).isNull();
+    }
+
+    @Test
+    void doesNotHedgeUntilEnoughLatenciesHaveBeenSeen() {
+        hedger = hedger(3, 1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        hedger.execute(MODEL, calls::incrementAndGet);
+        hedger.execute(MODEL, calls::incrementAndGet);
+
+        assertThat(calls).hasValue(2);
+        assertThat(delayMillis()).isZero();
+
+        hedger.execute(MODEL, calls::incrementAndGet);
+
+        assertThat(delayMillis()).isEqualTo(10);
+    }
+
+    @Test
+    void returnsTheHedgeAndCancelsTheOriginalThroughItsHook() {
+        hedger = primed(1.0);
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        String result = hedger.execute(MODEL, () -> {
+            if (isHedge()) {
+                return "hedge";
+            }
+            RequestHedger.Attempt.current().onCancel(cancelled::countDown);
+            await(cancelled);
+            return "original";
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(counter("llm.hedge.sent")).isEqualTo(1);
+        assertThat(counter("llm.hedge.wins")).isEqualTo(1);
+    }
+
+    @Test
+    void interruptsAnOriginalWithoutAHookAndClearsTheInterrupt() {
+        hedger = primed(1.0);
+
+        String result = hedger.execute(MODEL, () -> {
+            if (isHedge()) {
+                return "hedge";
+            }
+            try {
+                Thread.sleep(10_000);
+                return "original";
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    void waitsForTheHedgeWhenTheOriginalFails() {
+        hedger = primed(1.0);
+        CountDownLatch hedgeStarted = new CountDownLatch(1);
+
+        String result = hedger.execute(MODEL, () -> {
+            if (isHedge()) {
+                hedgeStarted.countDown();
+                sleep(50);
+                return "hedge";
+            }
+            await(hedgeStarted);
+            throw new IllegalStateException("original");
+        });
+
+        assertThat(result).isEqualTo("hedge");
+    }
+
+    @Test
+    void throwsTheFirstFailureWhenBothAttemptsFail() {
+        hedger = primed(1.0);
+        CountDownLatch hedgeStarted = new CountDownLatch(1);
+
+        assertThatThrownBy(() -> hedger.execute(MODEL, () -> {
+            if (isHedge()) {
+                hedgeStarted.countDown();
+                sleep(50);
+                throw new IllegalStateException("hedge");
+            }
+            await(hedgeStarted);
+            throw new IllegalStateException("original");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("original");
+    }
+
+    @Test
+    void doesNotHedgeOnceTheBudgetIsSpent() {
+        hedger = primed(0);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = hedger.execute(MODEL, () -> {
+            calls.incrementAndGet();
+            sleep(100);
+            return isHedge() ? "hedge" : "original";
+        });
+
+        assertThat(result).isEqualTo("original");
+        assertThat(calls).hasValue(1);
+        assertThat(counter("llm.hedge.throttled")).isEqualTo(1);
+    }
+
+    private RequestHedger primed(double budget) {
+        RequestHedger primed = hedger(1, budget);
+        primed.execute(MODEL, () -> "warm");
+        return primed;
+    }
+
+    private RequestHedger hedger(int minSamples, double budget) {
+        return new RequestHedger(true, 0.9, Duration.ofMillis(10), Duration.ofMillis(10), minSamples, 8, budget,
+                10, registry);
+    }
+
+    private double delayMillis() {
+        return registry.get("llm.hedge.delay").tag("model", MODEL).timeGauge().value(TimeUnit.MILLISECONDS);
+    }
+
+    private double counter(String name) {
+        return registry.get(name).tag("model", MODEL).counter().count();
+    }
+
+    private static boolean isHedge() {
+        return Thread.currentThread().getName().startsWith("llm-hedge-");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.llm.passthrough.resilience;
+
+import com.llm.passthrough.dto.Usage;
+import com.llm.passthrough.exception.RequestRejectedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenRateLimiterTest {
+
+    // 10 tokens a second, so the few milliseconds a test takes refill nothing that matters
+    private static final long TOKENS_PER_MINUTE = 600;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        TokenRateLimiter limiter = new TokenRateLimiter(false, "chat", 0, 0, Map.of(), 10, registry);
+
+        assertThat(limiter.admit("a", "gpt-4o", 1_000_000)).isSameAs(TokenRateLimiter.Debit.NONE);
+    }
+
+    @Test
+    void refusesACallerOverBudgetWith429AndRetryAfter() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 60);
+        limiter.admit("a", "gpt-4o", 40);
+
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 20))
+                .isInstanceOfSatisfying(RequestRejectedException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(429);
+                    assertThat(e.getRetryAfterSeconds()).isBetween(1L, 2L);
+                });
+        assertThat(registry.get("llm.ratelimit.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsABucketPerCallerAndModel() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 100);
+
+        limiter.admit("b", "gpt-4o", 100);
+        limiter.admit("a", "gemini-2.5-pro", 100);
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 10)).isInstanceOf(RequestRejectedException.class);
+        assertThat(registry.get("llm.ratelimit.buckets").gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void sizesBucketsFromTheModelRateWithoutABurst() {
+        TokenRateLimiter limiter = limiter(0, Map.of("small", 50L));
+
+        limiter.admit("a", "small", 50);
+        limiter.admit("a", "large", TOKENS_PER_MINUTE);
+
+        assertThatThrownBy(() -> limiter.admit("a", "small", 10)).isInstanceOf(RequestRejectedException.class);
+    }
+
+    @Test
+    void admitsACallLargerThanTheBucketOnceItIsFull() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 500);
+
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 1)).isInstanceOf(RequestRejectedException.class);
+    }
+
+    @Test
+    void givesTheEstimateBackOnRefund() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 100).refund();
+
+        limiter.admit("a", "gpt-4o", 100);
+    }
+
+    @Test
+    void settlesTheDifferenceToTheReportedUsageOnce() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+        TokenRateLimiter.Debit debit = limiter.admit("a", "gpt-4o", 80);
+
+        debit.settle(Usage.builder().totalTokens(20).build());
+        debit.settle(Usage.builder().totalTokens(100).build());
+        debit.refund();
+
+        limiter.admit("a", "gpt-4o", 80);
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 10)).isInstanceOf(RequestRejectedException.class);
+    }
+
+    @Test
+    void leavesACallerWhoSpentMoreThanEstimatedInDebt() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 50)
+                .settle(Usage.builder().promptTokens(100).completionTokens(50).build());
+
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 10))
+                .isInstanceOfSatisfying(RequestRejectedException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isBetween(6L, 7L));
+    }
+
+    @Test
+    void keepsTheEstimateWithoutAUsage() {
+        TokenRateLimiter limiter = limiter(100, Map.of());
+
+        limiter.admit("a", "gpt-4o", 100).settle(new Usage());
+
+        assertThatThrownBy(() -> limiter.admit("a", "gpt-4o", 10)).isInstanceOf(RequestRejectedException.class);
+    }
+
+    @Test
+    void sweepsFullBucketsOnceTooManyExist() {
+        TokenRateLimiter limiter = new TokenRateLimiter(true, "chat", TOKENS_PER_MINUTE, 100, Map.of(), 2,
+                registry);
+
+        limiter.admit("a", "gpt-4o", 10).refund();
+        limiter.admit("b", "gpt-4o", 10).refund();
+        limiter.admit("c", "gpt-4o", 10);
+
+        assertThat(registry.get("llm.ratelimit.buckets").gauge().value()).isEqualTo(1);
+    }
+
+    private TokenRateLimiter limiter(long burst, Map<String, Long> models) {
+        return new TokenRateLimiter(true, "chat", TOKENS_PER_MINUTE, burst, models, 100, registry);
+    }
+}
@@ -0,0 +1,256 @@
+package com.llm.passthrough.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.ChatBatchResult;
+import com.llm.passthrough.dto.ChatRequest;
+import com.llm.passthrough.dto.ChatResponse;
+import com.llm.passthrough.dto.Message;
+import com.llm.passthrough.exception.ApigeeException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class ChatBatchServiceTest {
+
+    private final ApigeeProperties properties = new ApigeeProperties();
+    private final ApigeeProperties.Batch batchProperties = properties.getChat().getBatch();
+    private final LlmService llmService = mock(LlmService.class);
+    private final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ChatBatchService service;
+
+    @AfterEach
+    void close() {
+        release.countDown();
+        if (service != null) {
+            service.close();
+        }
+        validatorFactory.close();
+    }
+
+    @Test
+    void answersEveryItemInRequestOrder() throws InterruptedException {
+        service = service(2, request -> {
+            if (request.getModel().equals("m0")) {
+                await(release);
+            }
+            return response(request);
+        });
+        DeferredResult<List<ChatBatchResult>> deferred = service.batch(requests("m0", "m1", "m2"), "/batch");
+
+        eventually(() -> countCalls() == 3);
+        assertThat(deferred.hasResult()).isFalse();
+        release.countDown();
+        eventually(deferred::hasResult);
+
+        List<ChatBatchResult> results = results(deferred);
+        assertThat(results).extracting(ChatBatchResult::getIndex).containsExactly(0, 1, 2);
+        assertThat(results).extracting(result -> result.getResponse().getModel()).containsExactly("m0", "m1", "m2");
+        assertThat(results).extracting(ChatBatchResult::getStatus).containsOnly(200);
+    }
+
+    @Test
+    void streamsEachResultAsItCompletes() throws Exception {
+        service = service(2, request -> {
+            if (request.getModel().equals("m0")) {
+                await(release);
+            }
+            return response(request);
+        });
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new StreamEndpoint(service, requests("m0", "m1", "m2")))
+                .build();
+
+        MvcResult result = mockMvc.perform(get("/batch")).andExpect(request().asyncStarted()).andReturn();
+        eventually(() -> lines(result).size() == 2);
+        release.countDown();
+        result.getAsyncResult(5000);
+        eventually(() -> lines(result).size() == 3);
+
+        List<JsonNode> lines = lines(result);
+        assertThat(lines.get(2).get("index").asInt()).isZero();
+        assertThat(lines).extracting(line -> line.at("/response/model").asText())
+                .containsExactlyInAnyOrder("m0", "m1", "m2");
+    }
+
+    @Test
+    void reportsFailedItemsWithoutFailingTheBatch() throws InterruptedException {
+        service = service(4, request -> switch (request.getModel()) {
+            case "overloaded" -> throw new RequestRejectedException("Too many requests", 429);
+            case "broken" -> throw new ApigeeException("Upstream failed", 502, "{}");
+            case "bug" -> throw new IllegalStateException("bug");
+            default -> response(request);
+        });
+        List<ChatRequest> requests = new ArrayList<>(requests("ok", "overloaded", "broken", "bug"));
+        requests.add(ChatRequest.builder().messages(List.of()).build());
+        requests.add(null);
+
+        DeferredResult<List<ChatBatchResult>> deferred = service.batch(requests, "/batch");
+        eventually(deferred::hasResult);
+
+        List<ChatBatchResult> results = results(deferred);
+        assertThat(results).extracting(ChatBatchResult::getStatus).containsExactly(200, 429, 502, 500, 400, 400);
+        assertThat(results.get(2).getError().getError()).isEqualTo("APIGEE Error");
+        assertThat(results.get(3).getError().getMessage()).isEqualTo("An unexpected error occurred");
+        assertThat(results.get(4).getError().getMessage())
+                .isEqualTo("messages: Messages cannot be empty, model: Model is required");
+        assertThat(results.get(4).getError().getPath()).isEqualTo("/batch");
+        assertThat(results.get(5).getError().getMessage()).isEqualTo("Batch item cannot be null");
+    }
+
+    @Test
+    void runsAtMostParallelismItemsAtOnce() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        service = service(2, request -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20);
+            running.decrementAndGet();
+            return response(request);
+        });
+
+        DeferredResult<List<ChatBatchResult>> deferred = service.batch(
+                requests("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7"), "/batch");
+        eventually(deferred::hasResult);
+
+        assertThat(results(deferred)).hasSize(8);
+        assertThat(peak).hasValueBetween(1, 2);
+    }
+
+    @Test
+    void reportsUnfinishedItemsAsTimedOut() throws InterruptedException {
+        batchProperties.setTimeout(Duration.ofMillis(100));
+        service = service(1, request -> {
+            if (request.getModel().equals("m1")) {
+                await(release);
+            }
+            return response(request);
+        });
+
+        DeferredResult<List<ChatBatchResult>> deferred = service.batch(requests("m0", "m1", "m2"), "/batch");
+        eventually(deferred::hasResult);
+
+        List<ChatBatchResult> results = results(deferred);
+        assertThat(results).extracting(ChatBatchResult::getStatus).containsExactly(200, 504, 504);
+        assertThat(results.get(2).getError().getMessage()).isEqualTo("Batch timed out before this item completed");
+
+        // The item still in flight finishes without changing the answer
+        release.countDown();
+        Thread.sleep(50);
+        assertThat(results(deferred).get(1).getStatus()).isEqualTo(504);
+    }
+
+    private ChatBatchService service(int parallelism, Function<ChatRequest, ChatResponse> answer) {
+        batchProperties.setParallelism(parallelism);
+        batchProperties.setMaxThreads(8);
+        when(llmService.chat(any(ChatRequest.class))).thenAnswer(invocation -> answer.apply(invocation.getArgument(0)));
+        return new ChatBatchService(llmService, validatorFactory.getValidator(), objectMapper, properties);
+    }
+
+    private long countCalls() {
+        return mockingDetails(llmService).getInvocations().size();
+    }
+
+    private static List<ChatRequest> requests(String... models) {
+        return Arrays.stream(models)
+                .map(model -> ChatRequest.builder()
+                        .model(model)
+                        .messages(List.of(Message.builder().role("user").content("hi").build()))
+                        .build())
+                .toList();
+    }
+
+    private static ChatResponse response(ChatRequest request) {
+        return ChatResponse.builder().model(request.getModel()).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ChatBatchResult> results(DeferredResult<List<ChatBatchResult>> deferred) {
+        return (List<ChatBatchResult>) deferred.getResult();
+    }
+
+    private List<JsonNode> lines(MvcResult result) {
+        List<JsonNode> lines = new ArrayList<>();
+        try {
+            for (String line : result.getResponse().getContentAsString().split("\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(objectMapper.readTree(line));
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return lines;
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @RestController
+    static class StreamEndpoint {
+
+        private final ChatBatchService service;
+        private final List<ChatRequest> requests;
+
+        StreamEndpoint(ChatBatchService service, List<ChatRequest> requests) {
+            this.service = service;
+            this.requests = requests;
+        }
+
+        @GetMapping("/batch")
+        ResponseBodyEmitter batch() {
+            return service.batchStream(requests, "/batch");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.llm.passthrough.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.cert.X509Certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LlmServiceTest {
+
+    @Test
+    void ignoresTheClientHeaderUnlessItIsTrusted() {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Client-Id", "someone-else");
+
+        assertThat(LlmService.caller(request, null)).isEqualTo("addr:10.0.0.7");
+        assertThat(LlmService.caller(request, "")).isEqualTo("addr:10.0.0.7");
+    }
+
+    @Test
+    void usesTheTrustedHeaderWhenConfigured() {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Client-Id", "team-a");
+
+        assertThat(LlmService.caller(request, "X-Client-Id")).isEqualTo("client:team-a");
+        assertThat(LlmService.caller(request(), "X-Client-Id")).isEqualTo("addr:10.0.0.7");
+    }
+
+    @Test
+    void prefersTheClientCertificateOverPrincipalAndHeader() {
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal("CN=team-a,O=Bank"));
+        MockHttpServletRequest request = request();
+        request.setAttribute("jakarta.servlet.request.X509Certificate", new X509Certificate[] {certificate});
+        request.setUserPrincipal(() -> "user-b");
+        request.addHeader("X-Client-Id", "team-c");
+
+        assertThat(LlmService.caller(request, "X-Client-Id")).isEqualTo("cert:CN=team-a,O=Bank");
+    }
+
+    @Test
+    void usesThePrincipalWithoutACertificate() {
+        MockHttpServletRequest request = request();
+        request.setUserPrincipal(() -> "user-b");
+        request.addHeader("X-Client-Id", "team-c");
+
+        assertThat(LlmService.caller(request, "X-Client-Id")).isEqualTo("user:user-b");
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/chat/completions");
+        request.setRemoteAddr("10.0.0.7");
+        return request;
+    }
+}
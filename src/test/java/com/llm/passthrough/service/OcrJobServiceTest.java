@@ -0,0 +1,188 @@
+package com.llm.passthrough.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.OcrJob;
+import com.llm.passthrough.dto.OcrRequest;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.exception.InvalidRequestException;
+import com.llm.passthrough.exception.RequestRejectedException;
+import com.llm.passthrough.store.OcrJobStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OcrJobServiceTest {
+
+    private static final OcrRequest REQUEST = OcrRequest.builder().model("mistral-ocr").build();
+    private static final OcrResponse RESPONSE = OcrResponse.builder().model("mistral-ocr").build();
+
+    private static final List<String> ALLOWED = List.of("93.184.216.34", "localhost", "127.0.0.1", "10.1.2.3",
+            "169.254.169.254", "[fd00::1]", "[::ffff:192.168.0.1]", "[2606:4700::1]");
+
+    private final ApigeeProperties properties = new ApigeeProperties();
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final OcrService ocrService = mock(OcrService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private OcrJobStore store;
+    private OcrJobService service;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void close() throws IOException {
+        release.countDown();
+        if (service != null) {
+            service.close();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void requeuesAJobRefusedByTheLocalLimits() throws Exception {
+        when(ocrService.processOcr(any(), any(), any()))
+                .thenThrow(new RequestRejectedException("Too many concurrent requests", 503))
+                .thenReturn(RESPONSE);
+        service = service(1, 10);
+
+        String id = service.submit(REQUEST, "hash", null, null).getId();
+
+        eventually(() -> gauge("llm.ocr.jobs.queued") == 1 && gauge("llm.ocr.jobs.running") == 0);
+        assertThat(service.find(id).getStatus()).isEqualTo(OcrJob.Status.QUEUED);
+        assertThat(service.find(id).getError()).isNull();
+        eventually(() -> service.find(id).getStatus() == OcrJob.Status.SUCCEEDED);
+        verify(ocrService, times(2)).processOcr(any(), any(), any());
+    }
+
+    @Test
+    void refusesJobsBeyondTheQueueLimit() throws Exception {
+        when(ocrService.processOcr(any(), any(), any())).thenAnswer(invocation -> {
+            assertThat(release.await(5, TimeUnit.SECONDS)).isTrue();
+            return RESPONSE;
+        });
+        service = service(1, 1);
+
+        String running = service.submit(REQUEST, "a", null, null).getId();
+        eventually(() -> gauge("llm.ocr.jobs.running") == 1);
+        String waiting = service.submit(REQUEST, "b", null, null).getId();
+
+        assertThatThrownBy(() -> service.submit(REQUEST, "c", null, null))
+                .isInstanceOf(RequestRejectedException.class)
+                .hasMessageContaining("Too many OCR jobs queued")
+                .extracting("statusCode").isEqualTo(503);
+        assertThat(gauge("llm.ocr.jobs.queued")).isEqualTo(1);
+
+        release.countDown();
+        eventually(() -> service.find(waiting).getStatus() == OcrJob.Status.SUCCEEDED);
+        assertThat(service.find(running).getStatus()).isEqualTo(OcrJob.Status.SUCCEEDED);
+        String next = service.submit(REQUEST, "d", null, null).getId();
+        eventually(() -> service.find(next).getStatus() == OcrJob.Status.SUCCEEDED);
+    }
+
+    @Test
+    void refusesJobsOnceShutDown() throws Exception {
+        service = service(1, 10);
+        service.close();
+
+        assertThatThrownBy(() -> service.submit(REQUEST, "hash", null, null))
+                .isInstanceOf(RequestRejectedException.class)
+                .hasMessage("OCR jobs are shutting down")
+                .extracting("statusCode").isEqualTo(503);
+        assertThat(gauge("llm.ocr.jobs.queued")).isZero();
+    }
+
+    @Test
+    void acceptsAnAllowedHostWithAPublicAddress() {
+        assertThatCode(() -> OcrJobService.checkCallbackUrl("https://93.184.216.34/hook", ALLOWED))
+                .doesNotThrowAnyException();
+        assertThatCode(() -> OcrJobService.checkCallbackUrl("http://[2606:4700::1]:8080/hook", ALLOWED))
+                .doesNotThrowAnyException();
+    }
+
+    @Test
+    void refusesUrlsThatAreNotHttp() {
+        assertRefused("ftp://93.184.216.34/hook", "absolute http");
+        assertRefused("/relative", "absolute http");
+        assertRefused("https://exa mple.com", "absolute http");
+    }
+
+    @Test
+    void refusesHostsThatAreNotAllowed() {
+        assertRefused("https://93.184.216.35/hook", "not allowed");
+        assertRefused("https://hooks.example.com.evil.test/hook", "not allowed");
+        assertThatThrownBy(() -> OcrJobService.checkCallbackUrl("https://93.184.216.34/hook", List.of()))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("not allowed");
+    }
+
+    @Test
+    void matchesSubdomainsOfDomainEntries() {
+        assertThatThrownBy(() -> OcrJobService.checkCallbackUrl("https://example.invalid/hook",
+                List.of(".example.invalid")))
+                .hasMessageContaining("not allowed");
+        assertThatThrownBy(() -> OcrJobService.checkCallbackUrl("https://hooks.EXAMPLE.invalid/hook",
+                List.of(".example.invalid")))
+                .hasMessageContaining("does not resolve");
+    }
+
+    @Test
+    void refusesAllowedHostsResolvingToPrivateAddresses() {
+        assertRefused("http://localhost:8080/actuator", "private address");
+        assertRefused("http://127.0.0.1/hook", "private address");
+        assertRefused("http://10.1.2.3/hook", "private address");
+        assertRefused("http://169.254.169.254/latest/meta-data", "private address");
+        assertRefused("http://[fd00::1]/hook", "private address");
+        assertRefused("http://[::ffff:192.168.0.1]/hook", "private address");
+    }
+
+    private OcrJobService service(int workers, int maxQueued) throws IOException {
+        ApigeeProperties.OcrJobs jobs = properties.getOcr().getJobs();
+        jobs.setWorkers(workers);
+        jobs.setMaxQueued(maxQueued);
+        store = new OcrJobStore(directory, jobs.getTtl(), objectMapper);
+        OcrJobService created = new OcrJobService(ocrService, store, objectMapper, properties, registry);
+        created.start();
+        return created;
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertRefused(String url, String reason) {
+        assertThatThrownBy(() -> OcrJobService.checkCallbackUrl(url, ALLOWED))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining(reason);
+    }
+}
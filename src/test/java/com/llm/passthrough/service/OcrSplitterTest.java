@@ -0,0 +1,173 @@
+package com.llm.passthrough.service;
+
+import com.llm.passthrough.config.ApigeeProperties;
+import com.llm.passthrough.dto.OcrPage;
+import com.llm.passthrough.dto.OcrRequest;
+import com.llm.passthrough.dto.OcrResponse;
+import com.llm.passthrough.dto.OcrUsageInfo;
+import com.llm.passthrough.exception.ApigeeException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OcrSplitterTest {
+
+    private final ApigeeProperties.OcrSplit properties = new ApigeeProperties.OcrSplit();
+    private OcrSplitter splitter;
+
+    @AfterEach
+    void close() {
+        if (splitter != null) {
+            splitter.close();
+        }
+    }
+
+    @Test
+    void parsesRangesIntoSortedDistinctPages() {
+        assertThat(OcrSplitter.parsePages(" 5 , 0-2,1-3")).containsExactly(0, 1, 2, 3, 5);
+        assertThat(OcrSplitter.parsePages("3-1")).isNull();
+        assertThat(OcrSplitter.parsePages("-1")).isNull();
+        assertThat(OcrSplitter.parsePages("first")).isNull();
+        assertThat(OcrSplitter.parsePages("0-10000")).isNull();
+    }
+
+    @Test
+    void formatsRunsAsRanges() {
+        assertThat(OcrSplitter.formatPages(List.of(0, 1, 2, 4, 6, 7))).isEqualTo("0-2,4,6-7");
+        assertThat(OcrSplitter.formatPages(List.of(3))).isEqualTo("3");
+    }
+
+    @Test
+    void doesNotSplitWhenDisabledUnknownOrSmall() {
+        properties.setPagesPerChunk(2);
+        splitter = new OcrSplitter(properties);
+
+        assertThat(splitter.chunks(request("0-9"), null)).isNull();
+
+        properties.setEnabled(true);
+
+        assertThat(splitter.chunks(request(null), null)).isNull();
+        assertThat(splitter.chunks(request("0,x"), 10)).isNull();
+        assertThat(splitter.chunks(request("4-5"), 10)).isNull();
+    }
+
+    @Test
+    void splitsTheNamedPagesIntoChunks() {
+        splitter = enabled(3, 1);
+
+        assertThat(splitter.chunks(request("0-4,7,9-10"), 100)).containsExactly("0-2", "3-4,7", "9-10");
+    }
+
+    @Test
+    void splitsEveryPageOfTheDocumentWhenNoneAreNamed() {
+        splitter = enabled(2, 1);
+
+        assertThat(splitter.chunks(request(""), 5)).containsExactly("0-1", "2-3", "4");
+    }
+
+    @Test
+    void mergesChunkResponsesInPageOrder() {
+        splitter = enabled(2, 3);
+        OcrRequest request = request("0-5");
+
+        OcrResponse response = splitter.execute(request, splitter.chunks(request, null), OcrSplitterTest::answer);
+
+        assertThat(response.getPages()).extracting(OcrPage::getIndex).containsExactly(0, 1, 2, 3, 4, 5);
+        assertThat(response.getModel()).isEqualTo("mistral-ocr");
+        assertThat(response.getUsageInfo()).isEqualTo(new OcrUsageInfo(6, 1000L));
+    }
+
+    @Test
+    void runsAtMostConcurrencyChunksAtOnce() {
+        splitter = enabled(1, 2);
+        OcrRequest request = request("0-7");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        splitter.execute(request, splitter.chunks(request, null), chunk -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            running.decrementAndGet();
+            return answer(chunk);
+        });
+
+        assertThat(peak).hasValueBetween(1, 2);
+    }
+
+    @Test
+    void retriesAChunkThatHitAnOverload() {
+        splitter = enabled(2, 1);
+        OcrRequest request = request("0-3");
+        AtomicInteger calls = new AtomicInteger();
+
+        OcrResponse response = splitter.execute(request, splitter.chunks(request, null), chunk -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new ApigeeException("Busy", 503, "{}");
+            }
+            return answer(chunk);
+        });
+
+        assertThat(calls).hasValue(3);
+        assertThat(response.getPages()).hasSize(4);
+    }
+
+    @Test
+    void stopsAfterAChunkFailsForGood() {
+        splitter = enabled(2, 1);
+        properties.setMaxAttempts(2);
+        OcrRequest request = request("0-5");
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> splitter.execute(request, splitter.chunks(request, null), chunk -> {
+            calls.incrementAndGet();
+            throw new ApigeeException("Overloaded", 429, "{}");
+        })).isInstanceOf(ApigeeException.class).hasMessage("Overloaded");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        splitter = enabled(2, 1);
+        OcrRequest request = request("0-3");
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> splitter.execute(request, splitter.chunks(request, null), chunk -> {
+            calls.incrementAndGet();
+            throw new ApigeeException("Bad pages", 400, "{}");
+        })).isInstanceOf(ApigeeException.class);
+        assertThat(calls).hasValue(1);
+    }
+
+    private OcrSplitter enabled(int pagesPerChunk, int concurrency) {
+        properties.setEnabled(true);
+        properties.setPagesPerChunk(pagesPerChunk);
+        properties.setConcurrency(concurrency);
+        properties.setRetryBackoff(Duration.ofMillis(1));
+        return new OcrSplitter(properties);
+    }
+
+    private static OcrRequest request(String pages) {
+        return OcrRequest.builder().model("mistral-ocr").pages(pages).build();
+    }
+
+    private static OcrResponse answer(OcrRequest chunk) {
+        List<OcrPage> pages = OcrSplitter.parsePages(chunk.getPages()).stream()
+                .map(index -> OcrPage.builder().index(index).markdown("page " + index).build())
+                .toList();
+        return OcrResponse.builder()
+                .model(chunk.getModel())
+                .pages(pages)
+                .usageInfo(new OcrUsageInfo(pages.size(), 1000L))
+                .build();
+    }
+}
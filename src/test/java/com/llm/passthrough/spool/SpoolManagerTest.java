@@ -0,0 +1,143 @@
+package com.llm.passthrough.spool;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpoolManagerTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsValuesBelowTheThresholdInMemory() throws IOException {
+        SpoolManager manager = manager(true, 1024);
+
+        SpooledText text = spool(manager, "small");
+
+        assertThat(text.isSpooled()).isFalse();
+        assertThat(text.asString()).isEqualTo("small");
+        assertThat(manager.getOffHeapBytes()).isZero();
+    }
+
+    @Test
+    void keepsEverythingInMemoryWhenDisabled() throws IOException {
+        SpoolManager manager = new SpoolManager(false, 16, true, 1L << 20, directory);
+
+        assertThat(spool(manager, "x".repeat(1000)).isSpooled()).isFalse();
+    }
+
+    @Test
+    void spoolsLargeValuesIntoPooledDirectBuffers() throws IOException {
+        SpoolManager manager = manager(true, 4 * CHUNK);
+        String value = "é".repeat(CHUNK);
+
+        SpooledText text = spool(manager, value);
+
+        assertThat(text.isSpooled()).isTrue();
+        assertThat(text.length()).isEqualTo(2L * CHUNK);
+        assertThat(text.asString()).isEqualTo(value);
+        assertThat(manager.getOffHeapBytes()).isEqualTo(2L * CHUNK);
+        assertThat(manager.getOffHeapBytesInUse()).isEqualTo(2L * CHUNK);
+
+        text.close();
+
+        assertThat(manager.getOffHeapBytesInUse()).isZero();
+        assertThat(manager.getOffHeapBytes()).isEqualTo(2L * CHUNK);
+        assertThatThrownBy(text::openStream).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void reusesReleasedBuffersInsteadOfAllocating() throws IOException {
+        SpoolManager manager = manager(true, 2 * CHUNK);
+        String first = "a".repeat(CHUNK + 1);
+        String second = "b".repeat(CHUNK + 1);
+
+        spool(manager, first).close();
+        SpooledText text = spool(manager, second);
+
+        assertThat(text.asString()).isEqualTo(second);
+        assertThat(manager.getOffHeapBytes()).isEqualTo(2L * CHUNK);
+    }
+
+    @Test
+    void fallsBackToAFileOnceTheBudgetIsAllocated() throws IOException {
+        SpoolManager manager = manager(true, CHUNK);
+        SpooledText held = spool(manager, "a".repeat(CHUNK));
+        String value = "b".repeat(CHUNK + 10);
+
+        SpooledText text = spool(manager, value);
+
+        assertThat(text.toString()).contains("file");
+        assertThat(text.asString()).isEqualTo(value);
+        assertThat(manager.getFileCount()).isEqualTo(1);
+        assertThat(manager.getOffHeapBytes()).isEqualTo(CHUNK);
+        assertThat(manager.getOffHeapBytesInUse()).isEqualTo(CHUNK);
+
+        text.close();
+        held.close();
+
+        assertThat(manager.getFileCount()).isZero();
+        assertThat(manager.getOffHeapBytesInUse()).isZero();
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void keepsBuffersUntilOpenStreamsAreClosed() throws IOException {
+        SpoolManager manager = manager(true, 2 * CHUNK);
+        String value = "c".repeat(CHUNK + 1);
+        SpooledText text = spool(manager, value);
+
+        InputStream in = text.openStream();
+        text.close();
+
+        assertThat(manager.getOffHeapBytesInUse()).isEqualTo(2L * CHUNK);
+        assertThat(new String(in.readAllBytes())).isEqualTo(value);
+
+        in.close();
+        in.close();
+
+        assertThat(manager.getOffHeapBytesInUse()).isZero();
+    }
+
+    @Test
+    void writesStraightToFilesWhenConfigured() throws IOException {
+        SpoolManager manager = new SpoolManager(true, 16, false, 1L << 20, directory);
+
+        SpooledText text = spool(manager, "z".repeat(100));
+
+        assertThat(text.toString()).contains("file");
+        assertThat(manager.getOffHeapBytes()).isZero();
+        text.close();
+        assertThat(manager.getFileCount()).isZero();
+    }
+
+    private SpoolManager manager(boolean enabled, long maxOffHeapBytes) {
+        return new SpoolManager(enabled, 16, true, maxOffHeapBytes, directory);
+    }
+
+    private SpooledText spool(SpoolManager manager, String value) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser("{\"data\":\"" + value + "\"}")) {
+            while (parser.nextToken() != JsonToken.VALUE_STRING) {
+                // Advance to the value
+            }
+            return manager.spool(parser);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.llm.passthrough.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobStoreTest {
+
+    private static final byte[] CONTENT = "image bytes".getBytes(StandardCharsets.UTF_8);
+    private static final String HASH = "b9ad2b3f7d5f8a5ae5cb08a7a6dfc5b0a2d8b0bb4f2eb09e35e3e67bd17e7bd5";
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private BlobStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void storesContentUnderItsHash() throws IOException {
+        store = open(Duration.ofDays(1));
+
+        String hash = store.put(CONTENT);
+
+        assertThat(hash).matches("[0-9a-f]{64}");
+        assertThat(store.get(hash)).isEqualTo(directory.resolve(hash.substring(0, 2)).resolve(hash));
+        assertThat(Files.readAllBytes(store.get(hash))).isEqualTo(CONTENT);
+        assertThat(registry.get("llm.ocr.blobs.stored").functionCounter().count()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    void keepsIdenticalContentOnce() throws IOException {
+        store = open(Duration.ofDays(1));
+
+        String first = store.put(CONTENT);
+        String second = store.put(CONTENT.clone());
+
+        assertThat(second).isEqualTo(first);
+        assertThat(writes("stored")).isEqualTo(1);
+        assertThat(writes("deduplicated")).isEqualTo(1);
+        try (var files = Files.list(store.get(first).getParent())) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    void ignoresMalformedAndUnknownHashes() throws IOException {
+        store = open(Duration.ofDays(1));
+
+        assertThat(store.get(null)).isNull();
+        assertThat(store.get("../" + HASH.substring(3))).isNull();
+        assertThat(store.get(HASH.toUpperCase())).isNull();
+        assertThat(store.get(HASH)).isNull();
+    }
+
+    @Test
+    void sweepsBlobsNotWrittenWithinTheTtl() throws IOException {
+        store = open(Duration.ofHours(1));
+        String expired = store.put(CONTENT);
+        String fresh = store.put("other".getBytes(StandardCharsets.UTF_8));
+        age(store.get(expired));
+
+        store.sweep();
+
+        assertThat(store.get(expired)).isNull();
+        assertThat(store.get(fresh)).isNotNull();
+    }
+
+    @Test
+    void keepsABlobWrittenAgainBeforeTheSweep() throws IOException {
+        store = open(Duration.ofHours(1));
+        String hash = store.put(CONTENT);
+        age(store.get(hash));
+
+        store.put(CONTENT);
+        store.sweep();
+
+        assertThat(store.get(hash)).isNotNull();
+    }
+
+    @Test
+    void writesABlobAgainOnceItWasDeleted() throws IOException {
+        store = open(Duration.ofHours(1));
+        String hash = store.put(CONTENT);
+        Files.delete(store.get(hash));
+
+        store.put(CONTENT);
+
+        assertThat(store.get(hash)).isNotNull();
+        assertThat(writes("stored")).isEqualTo(2);
+    }
+
+    @Test
+    void neverLosesABlobRefreshedDuringASweep() throws Exception {
+        store = open(Duration.ofHours(1));
+        String hash = store.put(CONTENT);
+
+        for (int i = 0; i < 200; i++) {
+            age(store.get(hash));
+            Thread sweeper = new Thread(store::sweep);
+            sweeper.start();
+            store.put(CONTENT);
+            sweeper.join();
+
+            assertThat(store.get(hash)).as("blob after iteration %d", i).isNotNull();
+        }
+    }
+
+    @Test
+    void removesTemporaryFilesLeftByACrash() throws IOException {
+        store = open(Duration.ofHours(1));
+        Path shard = Files.createDirectories(directory.resolve("ab"));
+        Path temp = Files.writeString(shard.resolve("ab12345.tmp"), "partial");
+        age(temp);
+
+        store.sweep();
+
+        assertThat(temp).doesNotExist();
+    }
+
+    private BlobStore open(Duration ttl) throws IOException {
+        BlobStore blobStore = new BlobStore(directory, ttl, Duration.ofHours(1));
+        blobStore.bindTo(registry);
+        return blobStore;
+    }
+
+    private double writes(String result) {
+        return registry.get("llm.ocr.blobs.writes").tag("result", result).functionCounter().count();
+    }
+
+    private static void age(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+    }
+}
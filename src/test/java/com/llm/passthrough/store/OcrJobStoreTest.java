@@ -0,0 +1,145 @@
+package com.llm.passthrough.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.dto.OcrJob;
+import com.llm.passthrough.dto.OcrRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OcrJobStoreTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @TempDir
+    Path directory;
+
+    private OcrJobStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void returnsTheLatestVersionOfAJob() throws IOException {
+        store = open(Duration.ofDays(1));
+        OcrJobStore.Job job = job(OcrJob.Status.QUEUED, Instant.now());
+
+        store.save(job);
+        job.setStatus(OcrJob.Status.RUNNING);
+        store.save(job);
+
+        OcrJobStore.Job stored = store.get(job.getId());
+        assertThat(stored.getStatus()).isEqualTo(OcrJob.Status.RUNNING);
+        assertThat(stored.getRequest().getModel()).isEqualTo("mistral-ocr");
+        assertThat(stored.getCallbackUrl()).isEqualTo("https://hooks.example.com/ocr");
+    }
+
+    @Test
+    void ignoresUnknownAndMalformedIds() throws IOException {
+        store = open(Duration.ofDays(1));
+
+        assertThat(store.get(OcrJobStore.newId())).isNull();
+        assertThat(store.get("../results/x")).isNull();
+        assertThat(store.get(null)).isNull();
+        assertThat(store.result("../jobs/x")).isNull();
+    }
+
+    @Test
+    void keepsResultsByJob() throws IOException {
+        store = open(Duration.ofDays(1));
+        String id = OcrJobStore.newId();
+
+        assertThat(store.result(id)).isNull();
+        store.saveResult(id, "{\"pages\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(Files.readString(store.result(id))).isEqualTo("{\"pages\":[]}");
+    }
+
+    @Test
+    void resumesUnfinishedJobsOldestFirstAfterARestart() throws IOException {
+        store = open(Duration.ofDays(1));
+        Instant now = Instant.now();
+        OcrJobStore.Job newer = job(OcrJob.Status.QUEUED, now);
+        OcrJobStore.Job older = job(OcrJob.Status.RUNNING, now.minusSeconds(60));
+        store.save(newer);
+        store.save(older);
+        store.save(job(OcrJob.Status.SUCCEEDED, now));
+        store.close();
+        Files.writeString(directory.resolve("jobs").resolve("torn.json.tmp"), "{\"id\":");
+
+        store = open(Duration.ofDays(1));
+
+        assertThat(store.unfinished()).extracting(OcrJobStore.Job::getId)
+                .containsExactly(older.getId(), newer.getId());
+        assertThat(directory.resolve("jobs").resolve("torn.json.tmp")).doesNotExist();
+    }
+
+    @Test
+    void sweepsFinishedJobsAndResultsOnceExpired() throws IOException {
+        store = open(Duration.ofHours(1));
+        Instant longAgo = Instant.now().minus(Duration.ofHours(2));
+        OcrJobStore.Job expired = job(OcrJob.Status.FAILED, longAgo);
+        OcrJobStore.Job finished = job(OcrJob.Status.SUCCEEDED, Instant.now());
+        OcrJobStore.Job stuck = job(OcrJob.Status.RUNNING, longAgo);
+        for (OcrJobStore.Job job : new OcrJobStore.Job[] {expired, finished, stuck}) {
+            store.save(job);
+            store.saveResult(job.getId(), "{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThat(store.get(expired.getId())).isNull();
+        assertThat(store.sweep()).isEqualTo(1);
+
+        assertThat(store.result(expired.getId())).isNull();
+        assertThat(store.get(finished.getId())).isNotNull();
+        assertThat(store.get(stuck.getId())).isNotNull();
+    }
+
+    @Test
+    void skipsUnreadableJobFiles() throws IOException {
+        store = open(Duration.ofDays(1));
+        store.save(job(OcrJob.Status.QUEUED, Instant.now()));
+        Files.writeString(directory.resolve("jobs").resolve(OcrJobStore.newId() + ".json"), "not json");
+
+        assertThat(store.unfinished()).hasSize(1);
+        assertThat(store.sweep()).isZero();
+    }
+
+    @Test
+    void refusesADirectoryAlreadyInUse() throws IOException {
+        store = open(Duration.ofDays(1));
+
+        assertThatThrownBy(() -> open(Duration.ofDays(1)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("in use");
+    }
+
+    private OcrJobStore open(Duration ttl) throws IOException {
+        return new OcrJobStore(directory, ttl, objectMapper);
+    }
+
+    private static OcrJobStore.Job job(OcrJob.Status status, Instant at) {
+        return OcrJobStore.Job.builder()
+                .id(OcrJobStore.newId())
+                .status(status)
+                .request(OcrRequest.builder().model("mistral-ocr").build())
+                .callbackUrl("https://hooks.example.com/ocr")
+                .createdAt(at)
+                .updatedAt(at)
+                .build();
+    }
+}
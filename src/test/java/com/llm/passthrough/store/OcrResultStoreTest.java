@@ -0,0 +1,177 @@
+package com.llm.passthrough.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OcrResultStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private OcrResultStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void returnsStoredResults() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+        byte[] key = key("a");
+
+        assertThat(store.get(key)).isNull();
+        store.put(key, json("first"));
+        eventually(() -> store.get(key) != null);
+
+        assertThat(store.get(key)).isEqualTo(json("first"));
+        assertThat(store.getEntryCount()).isEqualTo(1);
+    }
+
+    @Test
+    void returnsTheLatestResultForAKey() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+        byte[] key = key("a");
+
+        store.put(key, json("first"));
+        store.put(key, json("second"));
+        eventually(() -> store.get(key) != null && new String(store.get(key)).contains("second"));
+
+        assertThat(store.getEntryCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsResultsAcrossRestartsAndIndexGrowth() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 8);
+        for (int i = 0; i < 50; i++) {
+            store.put(key("doc-" + i), json("result-" + i));
+        }
+        eventually(() -> store.getEntryCount() == 50);
+        store.close();
+
+        store = open(Duration.ofHours(1), 1 << 20, 8);
+
+        assertThat(store.getEntryCount()).isEqualTo(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(store.get(key("doc-" + i))).isEqualTo(json("result-" + i));
+        }
+    }
+
+    @Test
+    void leavesStrayFilesAloneWhenOpening() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+        store.put(key("a"), json("first"));
+        eventually(() -> store.getEntryCount() == 1);
+        store.close();
+        store = null;
+        for (String name : new String[] {"segment-old.dat", "index-backup.dat", "segment-.dat", "segment--1.dat",
+                "segment-+7.dat", "index-07.dat"}) {
+            Files.writeString(directory.resolve(name), "not a store file");
+        }
+
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+
+        assertThat(store.get(key("a"))).isEqualTo(json("first"));
+        assertThat(directory.resolve("segment-old.dat")).exists();
+        assertThat(directory.resolve("index-backup.dat")).exists();
+    }
+
+    @Test
+    void rebuildsAMissingIndexAndDropsATornTail() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+        store.put(key("a"), json("first"));
+        store.put(key("b"), json("second"));
+        eventually(() -> store.getEntryCount() == 2);
+        long length = store.getSizeBytes();
+        store.close();
+        store = null;
+
+        Files.delete(directory.resolve("index-0.dat"));
+        Files.write(directory.resolve("segment-0.dat"), new byte[]{0x4F, 0x43, 0x52},
+                StandardOpenOption.APPEND);
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+
+        assertThat(store.get(key("a"))).isEqualTo(json("first"));
+        assertThat(store.get(key("b"))).isEqualTo(json("second"));
+        assertThat(store.getSizeBytes()).isEqualTo(length);
+    }
+
+    @Test
+    void missesExpiredResults() throws Exception {
+        store = open(Duration.ofMillis(1), 1 << 20, 16);
+        byte[] key = key("a");
+
+        store.put(key, json("first"));
+        eventually(() -> store.getEntryCount() == 1);
+        Thread.sleep(5);
+
+        assertThat(store.get(key)).isNull();
+    }
+
+    @Test
+    void dropsTheOldestResultsPastTheSizeBound() throws Exception {
+        // Each record is a 52 byte header plus 100 bytes of JSON
+        store = open(Duration.ofHours(1), 1000, 16);
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 10; i++) {
+            store.put(key("doc-" + i), payload);
+        }
+        eventually(() -> store.get(key("doc-9")) != null && store.getSizeBytes() <= 1000);
+
+        assertThat(store.get(key("doc-0"))).isNull();
+        assertThat(store.getEntryCount()).isLessThan(10);
+    }
+
+    @Test
+    void refusesADirectoryInUse() throws Exception {
+        store = open(Duration.ofHours(1), 1 << 20, 16);
+
+        assertThatThrownBy(() -> open(Duration.ofHours(1), 1 << 20, 16))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("in use");
+    }
+
+    @Test
+    void keysOnEveryPart() {
+        assertThat(OcrResultStore.key("m", "u", "h", "1-2"))
+                .isEqualTo(OcrResultStore.key("m", "u", "h", "1-2"))
+                .isNotEqualTo(OcrResultStore.key("m", "u", "h", "1-3"))
+                .isNotEqualTo(OcrResultStore.key("m", "u", "other", "1-2"))
+                .hasSize(32);
+    }
+
+    private OcrResultStore open(Duration ttl, long maxBytes, int minSlots) throws IOException {
+        return new OcrResultStore(directory, ttl, maxBytes, minSlots, Duration.ofHours(1), 0.5);
+    }
+
+    private static byte[] key(String document) {
+        return OcrResultStore.key("mistral-ocr", "https://example.com/" + document, null, null);
+    }
+
+    private static byte[] json(String text) {
+        return ("{\"text\":\"" + text + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within 5s").isLessThan(deadline);
+            Thread.sleep(2);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.llm.passthrough.stream;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompletionSummaryInputStreamTest {
+
+    private static final String BODY = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\","
+            + "\"model\":\"gemini-2.5-pro\",\"choices\":[{\"index\":0,\"id\":\"nested\",\"message\":"
+            + "{\"role\":\"assistant\",\"content\":\"say \\\"usage\\\": {\\\"total_tokens\\\": 1} \\\\\"}}],"
+            + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":34,\"total_tokens\":46,"
+            + "\"completion_tokens_details\":{\"reasoning_tokens\":7},\"cost\":0.5}}";
+
+    private final AtomicReference<CompletionSummary> reported = new AtomicReference<>();
+
+    @Test
+    void picksOutIdModelAndUsageWhilePassingBytesThrough() throws IOException {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        byte[] relayed;
+        try (InputStream in = summarize(new ByteArrayInputStream(body))) {
+            relayed = in.readAllBytes();
+        }
+
+        assertThat(relayed).isEqualTo(body);
+        CompletionSummary summary = reported.get();
+        assertThat(summary.getId()).isEqualTo("chatcmpl-1");
+        assertThat(summary.getModel()).isEqualTo("gemini-2.5-pro");
+        assertThat(summary.getUsage().getPromptTokens()).isEqualTo(12);
+        assertThat(summary.getUsage().getCompletionTokens()).isEqualTo(34);
+        assertThat(summary.getUsage().getTotalTokens()).isEqualTo(46);
+        assertThat(summary.getBytes()).isEqualTo(body.length);
+        assertThat(summary.isComplete()).isTrue();
+    }
+
+    @Test
+    void scansAcrossSingleByteReads() throws IOException {
+        try (InputStream in = summarize(new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)))) {
+            while (in.read() >= 0) {
+                // Drain one byte at a time
+            }
+        }
+
+        assertThat(reported.get().getId()).isEqualTo("chatcmpl-1");
+        assertThat(reported.get().getUsage().getTotalTokens()).isEqualTo(46);
+    }
+
+    @Test
+    void skipsLongStringsWithoutKeepingThem() throws IOException {
+        String body = "{\"choices\":[{\"message\":{\"content\":\"" + "x".repeat(1 << 20) + "\"}}],"
+                + "\"id\":\"" + "y".repeat(1000) + "\",\"model\":\"m\"}";
+        try (InputStream in = summarize(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)))) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        assertThat(reported.get().getId()).isNull();
+        assertThat(reported.get().getModel()).isEqualTo("m");
+    }
+
+    @Test
+    void reportsIncompleteWhenClosedBeforeTheEnd() throws IOException {
+        InputStream in = summarize(new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)));
+        in.read(new byte[10]);
+        in.close();
+
+        assertThat(reported.get().isComplete()).isFalse();
+        assertThat(reported.get().getFailure()).isNull();
+        assertThat(reported.get().getBytes()).isEqualTo(10);
+    }
+
+    @Test
+    void reportsUpstreamReadFailures() throws IOException {
+        IOException failure = new IOException("Connection reset");
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream("{\"id\":".getBytes()),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw failure;
+                    }
+                });
+        InputStream in = summarize(broken);
+
+        assertThatThrownBy(in::readAllBytes).isSameAs(failure);
+        in.close();
+
+        assertThat(reported.get().isComplete()).isFalse();
+        assertThat(reported.get().getFailure()).isSameAs(failure);
+    }
+
+    @Test
+    void reportsOnlyOnce() throws IOException {
+        int[] reports = {0};
+        InputStream in = new CompletionSummaryInputStream(new ByteArrayInputStream(new byte[0]), s -> reports[0]++);
+        in.readAllBytes();
+        in.close();
+
+        assertThat(reports[0]).isEqualTo(1);
+    }
+
+    @Test
+    void toleratesBodiesThatAreNotJson() throws IOException {
+        try (InputStream in = summarize(new ByteArrayInputStream("]]} not json {\"id\":\"x\"}".getBytes()))) {
+            in.readAllBytes();
+        }
+
+        assertThat(reported.get().isComplete()).isTrue();
+        assertThat(reported.get().getId()).isNull();
+    }
+
+    private InputStream summarize(InputStream in) {
+        return new CompletionSummaryInputStream(in, reported::set);
+    }
+}
@@ -0,0 +1,131 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.dto.ErrorResponse;
+import com.llm.passthrough.dto.OcrResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OcrPageStreamerTest {
+
+    private static final String RESPONSE = """
+            {"model":"mistral-ocr","pages":[{"index":0,"markdown":"first"},{"index":1,"markdown":"second"}],
+             "document_annotation":{"kind":"invoice"},"usage_info":{"pages_processed":2,"doc_size_bytes":1024}}""";
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Test
+    void writesEachPageThenTheOtherFields() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, out);
+
+        OcrResponse response = streamer.relay(input(RESPONSE));
+
+        List<JsonNode> lines = lines(out);
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0).at("/page/markdown").asText()).isEqualTo("first");
+        assertThat(lines.get(1).at("/page/index").asInt()).isEqualTo(1);
+        assertThat(lines.get(2).at("/response/model").asText()).isEqualTo("mistral-ocr");
+        assertThat(lines.get(2).at("/response/pages").isMissingNode()).isTrue();
+        assertThat(response.getUsageInfo().getPagesProcessed()).isEqualTo(2);
+        assertThat(response.getDocumentAnnotation()).isNotNull();
+        assertThat(streamer.getPages()).isEqualTo(2);
+    }
+
+    @Test
+    void writesEachPageBeforeReadingTheNext() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> linesSeen = new ArrayList<>();
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, out,
+                page -> linesSeen.add(out.toString(StandardCharsets.UTF_8).split("\n", -1).length - 1));
+
+        streamer.relay(input(RESPONSE));
+
+        assertThat(linesSeen).containsExactly(0, 1);
+    }
+
+    @Test
+    void letsTheCallbackChangePagesBeforeTheyAreWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new OcrPageStreamer(objectMapper, out, page -> page.setMarkdown(page.getMarkdown().toUpperCase()))
+                .relay(input(RESPONSE));
+
+        assertThat(lines(out).get(0).at("/page/markdown").asText()).isEqualTo("FIRST");
+    }
+
+    @Test
+    void acceptsFieldsInAnyOrderAndNoPages() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        OcrResponse response = new OcrPageStreamer(objectMapper, out)
+                .relay(input("{\"usage_info\":{\"pages_processed\":0},\"model\":\"mistral-ocr\"}"));
+
+        assertThat(lines(out)).hasSize(1);
+        assertThat(response.getModel()).isEqualTo("mistral-ocr");
+    }
+
+    @Test
+    void keepsThePagesAlreadyWrittenWhenTheResponseBreaksOff() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, out);
+
+        assertThatThrownBy(() -> streamer.relay(input(RESPONSE.substring(0, RESPONSE.indexOf("second") + 3))))
+                .isInstanceOf(IOException.class);
+        streamer.error(ErrorResponse.builder().status(502).message("broke off").build());
+
+        List<JsonNode> lines = lines(out);
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(1).at("/error/status").asInt()).isEqualTo(502);
+        assertThat(streamer.getPages()).isEqualTo(1);
+        assertThat(streamer.isWriteFailed()).isFalse();
+    }
+
+    @Test
+    void refusesAResponseThatIsNotAnObject() {
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, new ByteArrayOutputStream());
+
+        assertThatThrownBy(() -> streamer.relay(input("[]"))).isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    void reportsAWriteThatFailedAsTheClientGone() {
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        OcrPageStreamer streamer = new OcrPageStreamer(objectMapper, closed);
+
+        assertThatThrownBy(() -> streamer.relay(input(RESPONSE))).hasMessage("Broken pipe");
+        assertThat(streamer.isWriteFailed()).isTrue();
+        assertThat(streamer.getPages()).isZero();
+    }
+
+    private static InputStream input(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<JsonNode> lines(ByteArrayOutputStream out) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,242 @@
+package com.llm.passthrough.stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.llm.passthrough.exception.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RawChatRequestTest {
+
+    private static final String MESSAGES = "\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]";
+
+    // Duplicate keys fail the parse, so a second "stream" key would be caught
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION)
+            .build();
+    private final RelayBufferPool pool = new RelayBufferPool(16, 4);
+
+    @Test
+    void forwardsTheBodyUnchangedWhenTheFlagMatches() throws IOException {
+        String body = "{\"model\":\"gemini-2.5-pro\"," + MESSAGES + ",\"stream\":true}";
+
+        RawChatRequest request = read(body, true, 1024, Integer.MAX_VALUE);
+
+        assertThat(request.getModel()).isEqualTo("gemini-2.5-pro");
+        assertThat(new String(request.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(body);
+    }
+
+    @Test
+    void addsTheFlagWhenStreamingAndMissing() throws IOException {
+        String body = "{\"model\":\"m\"," + MESSAGES + "} ";
+
+        String forwarded = forward(body, true, 1024, Integer.MAX_VALUE);
+
+        assertThat(forwarded).isEqualTo("{\"model\":\"m\"," + MESSAGES + ",\"stream\":true} ");
+    }
+
+    @Test
+    void leavesAMissingFlagAloneWhenNotStreaming() throws IOException {
+        String body = "{\"model\":\"m\"," + MESSAGES + "}";
+
+        assertThat(forward(body, false, 1024, Integer.MAX_VALUE)).isEqualTo(body);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 7, 16})
+    void replacesAMismatchedFlagInPlaceAcrossReads(int readSize) throws IOException {
+        String body = "{\"stream\" : false,\"model\":\"m\"," + MESSAGES + ",\"temperature\":0.2}";
+
+        for (int head = 1; head < body.length(); head += 3) {
+            JsonNode forwarded = objectMapper.readTree(forward(body, true, head, readSize));
+
+            assertThat(forwarded.get("stream").asBoolean()).isTrue();
+            assertThat(forwarded.get("temperature").asDouble()).isEqualTo(0.2);
+            assertThat(forwarded.get("messages")).hasSize(1);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 16})
+    void replacesTheFlagAtTheEndOfTheBody(int readSize) throws IOException {
+        String body = "{\"model\":\"m\"," + MESSAGES + ",\"stream\":true}";
+
+        String forwarded = forward(body, false, 8, readSize);
+
+        assertThat(forwarded).isEqualTo("{\"model\":\"m\"," + MESSAGES + ",\"stream\":false}");
+    }
+
+    @Test
+    void replacesANullFlag() throws IOException {
+        String body = "{\"model\":\"m\"," + MESSAGES + ",\"stream\":null}";
+
+        assertThat(forward(body, true, 1024, Integer.MAX_VALUE))
+                .isEqualTo("{\"model\":\"m\"," + MESSAGES + ",\"stream\":true}");
+    }
+
+    @Test
+    void rejectsANonBooleanFlag() {
+        String body = "{\"model\":\"m\"," + MESSAGES + ",\"stream\":\"yes\"}";
+
+        assertThatThrownBy(() -> read(body, true, 1024, Integer.MAX_VALUE))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("stream");
+    }
+
+    @Test
+    void rejectsMissingFieldsWithinTheReadAhead() {
+        assertThatThrownBy(() -> read("{\"model\":\"m\",\"messages\":[]}", true, 1024, Integer.MAX_VALUE))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("messages");
+        assertThatThrownBy(() -> read("{\"model\":\"\"," + MESSAGES + "}", true, 1024, Integer.MAX_VALUE))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("model");
+    }
+
+    @Test
+    void rejectsBodiesThatBreakPastTheReadAhead() throws IOException {
+        String body = "{\"model\":\"m\"," + MESSAGES + ",\"temperature\":}";
+        RawChatRequest request = read(body, true, 32, Integer.MAX_VALUE);
+
+        assertThatThrownBy(request::readAllBytes)
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Malformed JSON");
+    }
+
+    @Test
+    void forwardsAttachmentsLargerThanJacksonsStringLimit() throws IOException {
+        int size = 21_000_000;
+        byte[] prefix = ("{\"model\":\"gemini-2.5-pro\",\"messages\":[{\"role\":\"user\",\"content\":["
+                + "{\"type\":\"inline_data\",\"inline_data\":{\"mime_type\":\"image/png\",\"data\":\"")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = "\"}}]}]}".getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[prefix.length + size + suffix.length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        Arrays.fill(body, prefix.length, prefix.length + size, (byte) 'A');
+        System.arraycopy(suffix, 0, body, prefix.length + size, suffix.length);
+        CountingOutputStream out = new CountingOutputStream();
+
+        RawChatRequest request = RawChatRequest.read(new ByteArrayInputStream(body), false,
+                objectMapper.getFactory(), pool, 1024);
+        request.writeTo(out);
+
+        assertThat(request.getModel()).isEqualTo("gemini-2.5-pro");
+        assertThat(out.count).isEqualTo(body.length);
+    }
+
+    @Test
+    void unescapesTheModel() throws IOException {
+        RawChatRequest request = read("{\"model\":\"gem\\u0069ni\"," + MESSAGES + "}", false, 1024,
+                Integer.MAX_VALUE);
+
+        assertThat(request.getModel()).isEqualTo("gemini");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[]",
+            "{\"model\":\"m\",\"messages\":[{}]} x",
+            "{\"model\":\"m\",\"messages\":[{},]}",
+            "{\"model\":\"m\" \"messages\":[{}]}",
+            "{\"model\":\"m\",\"messages\":[{}],\"n\":tru}",
+            "{\"model\":\"m\",\"messages\":[{}]]"
+    })
+    void rejectsMalformedStructure(String body) {
+        assertThatThrownBy(() -> read(body, false, 1024, Integer.MAX_VALUE).readAllBytes())
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Malformed JSON");
+    }
+
+    @Test
+    void ignoresFieldNamesInsideStringsAndNestedObjects() throws IOException {
+        String body = "{\"metadata\":{\"model\":1,\"stream\":\"x\"},\"model\":\"m\",\"user\":\"\\\"stream\\\":false\","
+                + MESSAGES + "}";
+
+        assertThat(forward(body, false, 1024, 3)).isEqualTo(body);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 1024})
+    void countsMessagesTextAndNonTextParts(int readSize) throws IOException {
+        String body = "{\"model\":\"m\",\"messages\":["
+                + "{\"role\":\"system\",\"content\":\"h\u00e9llo a\\nb \\u00e9 \uD83D\uDE00\"},"
+                + "{\"role\":\"user\",\"content\":[{\"type\":\"text\",\"text\":\"abcd\"},"
+                + "{\"type\":\"image\",\"inline_data\":{\"mime_type\":\"image/png\","
+                + "\"data\":\"" + "QUJD".repeat(64) + "\"}},"
+                + "{\"type\":\"image_url\",\"image_url\":{\"url\":\"https://example.com/a.png\",\"text\":\"x\"}}],"
+                + "\"tool_calls\":[{\"text\":\"not message text\"}]}]}";
+
+        RawChatRequest request = read(body, false, 1024, readSize);
+
+        assertThat(request.getMessageCount()).isEqualTo(2);
+        assertThat(request.getTextLength()).isEqualTo("h\u00e9llo a\nb \u00e9 \uD83D\uDE00".length() + "abcd".length());
+        assertThat(request.getImageParts()).isEqualTo(2);
+    }
+
+    @Test
+    void countsTheRestOfTheBodyWhileForwarding() throws IOException {
+        String body = "{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"" + "a".repeat(100)
+                + "\"},{\"role\":\"user\",\"content\":\"bb\"}]}";
+        RawChatRequest request = read(body, false, 64, Integer.MAX_VALUE);
+
+        assertThat(request.getMessageCount()).isEqualTo(1);
+
+        request.readAllBytes();
+
+        assertThat(request.getMessageCount()).isEqualTo(2);
+        assertThat(request.getTextLength()).isEqualTo(102);
+    }
+
+    @Test
+    void canOnlyBeForwardedOnce() throws IOException {
+        RawChatRequest request = read("{\"model\":\"m\"," + MESSAGES + "}", false, 1024, Integer.MAX_VALUE);
+        request.readAllBytes();
+
+        assertThatThrownBy(request::readAllBytes).isInstanceOf(IllegalStateException.class);
+    }
+
+    private String forward(String body, boolean stream, int headSize, int readSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        read(body, stream, headSize, readSize).writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private RawChatRequest read(String body, boolean stream, int headSize, int readSize) throws IOException {
+        InputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, readSize));
+            }
+        };
+        return RawChatRequest.read(in, stream, objectMapper.getFactory(), pool, headSize);
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
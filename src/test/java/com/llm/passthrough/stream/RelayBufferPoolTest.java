@@ -0,0 +1,51 @@
+package com.llm.passthrough.stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RelayBufferPoolTest {
+
+    @Test
+    void reusesReleasedBuffers() {
+        RelayBufferPool pool = new RelayBufferPool(16, 2);
+        RelayChunk chunk = pool.borrow();
+        byte[] buffer = chunk.buffer();
+        chunk.put((byte) 'x');
+        chunk.release();
+
+        RelayChunk next = pool.borrow();
+
+        assertThat(next.buffer()).isSameAs(buffer);
+        assertThat(next.length()).isZero();
+    }
+
+    @Test
+    void keepsAtMostMaxPooledBuffers() {
+        RelayBufferPool pool = new RelayBufferPool(16, 1);
+        RelayChunk first = pool.borrow();
+        RelayChunk second = pool.borrow();
+        first.release();
+        second.release();
+
+        assertThat(pool.borrow().buffer()).isSameAs(first.buffer());
+        assertThat(pool.borrow().buffer()).isNotSameAs(second.buffer());
+    }
+
+    @Test
+    void releasesOnlyOnce() {
+        RelayBufferPool pool = new RelayBufferPool(16, 4);
+        RelayChunk chunk = pool.borrow();
+        chunk.release();
+        chunk.release();
+
+        assertThat(pool.borrow().buffer()).isSameAs(chunk.buffer());
+        assertThat(pool.borrow().buffer()).isNotSameAs(chunk.buffer());
+    }
+
+    @Test
+    void rejectsNonPositiveBufferSize() {
+        assertThatThrownBy(() -> new RelayBufferPool(0, 4)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
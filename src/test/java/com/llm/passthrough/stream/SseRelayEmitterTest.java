@@ -0,0 +1,114 @@
+package com.llm.passthrough.stream;
+
+import com.llm.passthrough.config.ApigeeProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseRelayEmitterTest {
+
+    private static final String UPSTREAM = "data: {\"id\":1}\n\ndata: {\"id\":2}\r\n\r\n: keep-alive\rdata: [DONE]";
+
+    private final RelayBufferPool pool = new RelayBufferPool(8, 16);
+
+    @Test
+    void eventsModeRewrapsLinesLikeTheLineBasedRelay() throws IOException {
+        RecordingEmitter emitter = new RecordingEmitter(pool, ApigeeProperties.StreamMode.EVENTS);
+
+        emitter.relay(new ByteArrayInputStream(bytes(UPSTREAM)));
+
+        assertThat(emitter.written()).isEqualTo(lineBased(UPSTREAM));
+    }
+
+    @Test
+    void eventsModeCarriesLinesAcrossReads() throws IOException {
+        RecordingEmitter emitter = new RecordingEmitter(pool, ApigeeProperties.StreamMode.EVENTS);
+        byte[] upstream = bytes(UPSTREAM);
+
+        // One byte per read splits every line and every \r\n pair
+        for (byte b : upstream) {
+            emitter.relay(ByteBuffer.wrap(new byte[]{b}));
+        }
+        emitter.finish();
+
+        assertThat(emitter.written()).isEqualTo(lineBased(UPSTREAM));
+    }
+
+    @Test
+    void rawModeCopiesBytesUnchanged() throws IOException {
+        RecordingEmitter emitter = new RecordingEmitter(pool, ApigeeProperties.StreamMode.RAW);
+
+        emitter.relay(ByteBuffer.allocateDirect(UPSTREAM.length()).put(bytes(UPSTREAM)).flip());
+
+        assertThat(emitter.written()).isEqualTo(UPSTREAM);
+    }
+
+    @Test
+    void countsUpstreamBytesBeforeWriting() throws IOException {
+        RecordingEmitter emitter = new RecordingEmitter(pool, ApigeeProperties.StreamMode.RAW);
+        int[] upstreamBytes = {0};
+        emitter.onUpstreamData(length -> upstreamBytes[0] += length);
+
+        emitter.relay(new ByteArrayInputStream(bytes(UPSTREAM)));
+
+        assertThat(upstreamBytes[0]).isEqualTo(UPSTREAM.length());
+    }
+
+    @Test
+    void sendsErrorEvents() throws IOException {
+        RecordingEmitter emitter = new RecordingEmitter(pool, ApigeeProperties.StreamMode.EVENTS);
+
+        emitter.sendEvent("{\"error\": \"upstream failed\"}");
+
+        assertThat(emitter.written()).isEqualTo("data:{\"error\": \"upstream failed\"}\n\n");
+    }
+
+    /**
+     * What the {@code SseEmitter} relay produced: one {@code data:} event per
+     * non-empty line.
+     */
+    private static String lineBased(String upstream) throws IOException {
+        StringBuilder out = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new StringReader(upstream));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                out.append("data:").append(line).append("\n\n");
+            }
+        }
+        return out.toString();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingEmitter extends SseRelayEmitter {
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        RecordingEmitter(RelayBufferPool pool, ApigeeProperties.StreamMode mode) {
+            super(null, pool, mode);
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) throws IOException {
+            RelayChunk chunk = (RelayChunk) object;
+            chunk.writeTo(written);
+            chunk.release();
+        }
+
+        String written() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.llm.passthrough.stream;
+
+import com.llm.passthrough.config.ApigeeProperties;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.impl.BasicEntityDetails;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseRelayResponseConsumerTest {
+
+    private final RelayBufferPool pool = new RelayBufferPool(8, 16);
+    private final Queue<Runnable> writer = new ArrayDeque<>();
+    private final AtomicInteger granted = new AtomicInteger();
+    private final CompletableFuture<Integer> result = new CompletableFuture<>();
+    private RecordingEmitter emitter;
+    private SseRelayResponseConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        emitter = new RecordingEmitter(pool);
+        consumer = new SseRelayResponseConsumer(emitter, pool, writer::add);
+        consumer.updateCapacity(granted::addAndGet);
+    }
+
+    @Test
+    void writesOnlyOnTheWriterAndGrantsCapacityOnceWritten() throws Exception {
+        start(200);
+        consumer.consume(bytes("data: hello world\n\n"));
+
+        assertThat(emitter.written()).isEmpty();
+        assertThat(granted).hasValue(0);
+
+        runWriter();
+
+        assertThat(emitter.written()).isEqualTo("data: hello world\n\n");
+        assertThat(granted).hasValue(19);
+    }
+
+    @Test
+    void completesAfterQueuedWrites() throws Exception {
+        start(200);
+        consumer.consume(bytes("data: a\n\n"));
+        consumer.streamEnd(List.of());
+        consumer.execute(() -> emitter.written.writeBytes("after".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result).isNotDone();
+
+        runWriter();
+
+        assertThat(result).isCompletedWithValue(200);
+        assertThat(emitter.written()).isEqualTo("data: a\n\nafter");
+    }
+
+    @Test
+    void cancelsUpstreamWhenTheClientWriteFails() throws Exception {
+        CompletableFuture<Void> upstream = new CompletableFuture<>();
+        emitter.bindUpstream(upstream);
+        emitter.failure = new IOException("Broken pipe");
+        start(200);
+        consumer.consume(bytes("data: a\n\n"));
+        consumer.consume(bytes("data: b\n\n"));
+
+        runWriter();
+
+        assertThat(upstream).isCancelled();
+        assertThat(emitter.sends).hasValue(1);
+        assertThat(granted).hasValue(18);
+    }
+
+    @Test
+    void buffersErrorBodiesWithoutWriting() throws Exception {
+        start(429);
+        consumer.consume(bytes("{\"error\":\"slow down\"}"));
+
+        assertThat(granted).hasValue(21);
+        assertThat(writer).isEmpty();
+
+        consumer.streamEnd(List.of());
+        runWriter();
+
+        assertThat(result).isCompletedWithValue(429);
+        assertThat(consumer.isError()).isTrue();
+        assertThat(consumer.getErrorBody()).isEqualTo("{\"error\":\"slow down\"}");
+        assertThat(emitter.written()).isEmpty();
+    }
+
+    @Test
+    void grantsCapacityWrittenBeforeTheChannelWasKnown() throws Exception {
+        SseRelayResponseConsumer late = new SseRelayResponseConsumer(emitter, pool, writer::add);
+        late.consumeResponse(new BasicHttpResponse(200),
+                new BasicEntityDetails(-1, ContentType.TEXT_EVENT_STREAM), null, callback());
+        late.consume(bytes("data: a\n\n"));
+        runWriter();
+
+        late.updateCapacity(granted::addAndGet);
+
+        assertThat(granted).hasValue(9);
+    }
+
+    private void start(int status) {
+        consumer.consumeResponse(new BasicHttpResponse(status),
+                new BasicEntityDetails(-1, ContentType.TEXT_EVENT_STREAM), null, callback());
+    }
+
+    private FutureCallback<Integer> callback() {
+        return new FutureCallback<>() {
+            @Override
+            public void completed(Integer status) {
+                result.complete(status);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        };
+    }
+
+    private void runWriter() {
+        Runnable task;
+        while ((task = writer.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingEmitter extends SseRelayEmitter {
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final AtomicInteger sends = new AtomicInteger();
+        IOException failure;
+
+        RecordingEmitter(RelayBufferPool pool) {
+            super(null, pool, ApigeeProperties.StreamMode.RAW);
+        }
+
+        @Override
+        public void send(Object object, MediaType mediaType) throws IOException {
+            sends.incrementAndGet();
+            if (failure != null) {
+                throw failure;
+            }
+            RelayChunk chunk = (RelayChunk) object;
+            chunk.writeTo(written);
+            chunk.release();
+        }
+
+        String written() {
+            return written.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
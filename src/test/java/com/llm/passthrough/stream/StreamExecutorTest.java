@@ -0,0 +1,138 @@
+package com.llm.passthrough.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamExecutorTest {
+
+    private final StreamExecutor executor = new StreamExecutor(1, 1, false);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void runsBlockingStreamsOneSlotAtATime() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.execute(() -> second.complete(null));
+
+        assertThat(executor.getActiveCount()).isEqualTo(1);
+        assertThat(executor.getQueuedCount()).isEqualTo(1);
+        assertThatThrownBy(() -> executor.execute(() -> { }))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void startsWaitingAsyncStreamsWhenABlockingStreamEnds() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.executeAsync(done -> {
+            started.complete(null);
+            done.run();
+        });
+
+        assertThat(started).isNotDone();
+        release.countDown();
+        started.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void rejectsNonPositiveConcurrency() {
+        assertThatThrownBy(() -> new StreamExecutor(0, 1, false)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOnceRunningAndWaitingSlotsAreTaken() {
+        AtomicReference<Runnable> firstDone = new AtomicReference<>();
+        executor.executeAsync(firstDone::set);
+        executor.executeAsync(done -> { });
+
+        assertThat(executor.getActiveCount()).isEqualTo(1);
+        assertThat(executor.getQueuedCount()).isEqualTo(1);
+        assertThatThrownBy(() -> executor.executeAsync(done -> { }))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void startsWaitingAsyncStreamsOffTheThreadThatFreedTheSlot() throws Exception {
+        AtomicReference<Runnable> firstDone = new AtomicReference<>();
+        CompletableFuture<Thread> started = new CompletableFuture<>();
+        executor.executeAsync(firstDone::set);
+        executor.executeAsync(done -> {
+            started.complete(Thread.currentThread());
+            done.run();
+        });
+
+        assertThat(started).isNotDone();
+
+        firstDone.get().run();
+
+        Thread thread = started.get(5, TimeUnit.SECONDS);
+        assertThat(thread).isNotSameAs(Thread.currentThread());
+        assertThat(thread.getName()).startsWith("llm-stream-");
+    }
+
+    @Test
+    void releasesTheSlotOnlyOnceWhenDoneRunsTwice() throws Exception {
+        AtomicReference<Runnable> firstDone = new AtomicReference<>();
+        executor.executeAsync(firstDone::set);
+        firstDone.get().run();
+        firstDone.get().run();
+
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        executor.executeAsync(done -> { });
+        assertThat(executor.getActiveCount()).isEqualTo(1);
+        assertThat(executor.getQueuedCount()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    void writeExecutorRunsOnStreamThreads() throws Exception {
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        executor.writeExecutor().execute(() -> thread.complete(Thread.currentThread().getName()));
+
+        assertThat(thread.get(5, TimeUnit.SECONDS)).startsWith("llm-stream-");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
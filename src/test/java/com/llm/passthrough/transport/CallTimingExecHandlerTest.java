@@ -0,0 +1,121 @@
+package com.llm.passthrough.transport;
+
+import com.llm.passthrough.metrics.LlmMetrics;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CallTimingExecHandlerTest {
+
+    private static final byte[] BODY = "data: {\"choices\":[]}\n\n".repeat(64).getBytes(StandardCharsets.UTF_8);
+
+    private final LlmMetrics metrics = new LlmMetrics(new SimpleMeterRegistry(), false);
+    private HttpServer server;
+    private String url;
+    private CloseableHttpClient client;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+        client = HttpClients.custom()
+                .addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "call-timing",
+                        new CallTimingExecHandler())
+                .build();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void recordsEveryPhaseOfACallInTheFlightRecorderEvent() throws IOException {
+        Path dump = directory.resolve("call.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("llm.UpstreamCall").withoutThreshold();
+            recording.start();
+
+            LlmMetrics.Call call = metrics.start(LlmMetrics.CHAT_STREAM, "gpt-4o");
+            try (LlmMetrics.Scope scope = call.bind()) {
+                HttpPost post = new HttpPost(url);
+                post.setEntity(new StringEntity("{\"model\":\"gpt-4o\"}", ContentType.APPLICATION_JSON));
+                client.execute(post, response -> {
+                    try (InputStream in = response.getEntity().getContent()) {
+                        byte[] buffer = new byte[256];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            call.chunk(read);
+                        }
+                    }
+                    return null;
+                });
+            }
+            call.stop(LlmMetrics.SUCCESS);
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().equals("llm.UpstreamCall"))
+                .toList();
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("endpoint")).isEqualTo(LlmMetrics.CHAT_STREAM);
+        assertThat(event.getString("model")).isEqualTo("gpt-4o");
+        assertThat(event.getInt("status")).isEqualTo(200);
+        assertThat(event.getString("outcome")).isEqualTo(LlmMetrics.SUCCESS);
+        assertThat(event.getDuration("connectionWait")).isPositive();
+        assertThat(event.getDuration("requestWrite")).isPositive();
+        assertThat(event.getDuration("timeToFirstByte")).isPositive()
+                .isGreaterThan(event.getDuration("connectionWait"));
+        assertThat(event.getLong("bytes")).isEqualTo(BODY.length);
+        assertThat(event.getInt("chunks")).isBetween(1, BODY.length);
+    }
+
+    @Test
+    void leavesCallsWithoutATimedCallAlone() throws IOException {
+        int status = client.execute(new HttpPost(url), response -> {
+            response.getEntity().getContent().readAllBytes();
+            return response.getCode();
+        });
+
+        assertThat(status).isEqualTo(200);
+        assertThat(LlmMetrics.current()).isNull();
+    }
+}
@@ -0,0 +1,198 @@
+package com.llm.passthrough.transport;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionWarmerTest {
+
+    private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+    private final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    private ServerSocket server;
+    private String url;
+    private HttpRoute route;
+    private ConnectionWarmer warmer;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        connectionManager.setDefaultMaxPerRoute(10);
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        url = "http://127.0.0.1:" + server.getLocalPort();
+        route = new HttpRoute(new HttpHost("http", "127.0.0.1", server.getLocalPort()));
+        Thread acceptor = new Thread(this::accept, "warmer-test-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        if (warmer != null) {
+            warmer.close();
+        }
+        connectionManager.close();
+        server.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Test
+    void blocksUntilEveryRouteHasItsConnections() throws Exception {
+        warmer = warmer(List.of(url + "/v1/chat/completions", url + "/v1/ocr"), 3, 0, Duration.ofSeconds(5));
+
+        warmer.run(null);
+
+        assertThat(connectionManager.getRoutes()).containsExactly(route);
+        assertThat(connectionManager.getStats(route).getAvailable()).isEqualTo(3);
+        eventually(() -> accepted.get() == 3);
+    }
+
+    @Test
+    void returnsAtTheDeadlineWhenTheUpstreamDoesNotAnswer() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        sockets.add(silent.accept());
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }, "warmer-test-silent");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            // The TLS handshake waits for a server hello that never comes
+            warmer = warmer(List.of("https://127.0.0.1:" + silent.getLocalPort()), 1, 0, Duration.ofMillis(200));
+
+            long started = System.nanoTime();
+            warmer.run(null);
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isBetween(150L, 3000L);
+        }
+    }
+
+    @Test
+    void topsIdleRoutesBackUpToMinIdle() throws Exception {
+        warmer = warmer(List.of(url), 1, 2, Duration.ofSeconds(5));
+
+        warmer.run(null);
+
+        eventually(() -> connectionManager.getStats(route).getAvailable() == 2);
+        eventually(() -> accepted.get() == 2);
+    }
+
+    @Test
+    void leavesRoutesWithRequestsInFlightAlone() throws Exception {
+        ConnectionEndpoint busy = connectionManager.lease("test", route, Timeout.ofSeconds(5), null)
+                .get(Timeout.ofSeconds(5));
+        warmer = warmer(List.of(url), 0, 2, Duration.ofSeconds(5));
+
+        warmer.run(null);
+        Thread.sleep(200);
+
+        assertThat(connectionManager.getStats(route).getAvailable()).isZero();
+        assertThat(accepted).hasValue(0);
+        connectionManager.release(busy, null, null);
+    }
+
+    @Test
+    void requestsReuseTheWarmedConnections() throws Exception {
+        warmer = warmer(List.of(url + "/v1/chat/completions"), 2, 0, Duration.ofSeconds(5));
+        warmer.run(null);
+
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                int status = client.execute(new HttpGet(url + "/v1/chat/completions"), response -> {
+                    EntityUtils.consume(response.getEntity());
+                    return response.getCode();
+                });
+                assertThat(status).isEqualTo(200);
+            }
+        }
+
+        assertThat(accepted).hasValue(2);
+        assertThat(connectionManager.getRoutes()).containsExactly(route);
+    }
+
+    private ConnectionWarmer warmer(List<String> urls, int connections, int minIdle, Duration deadline) {
+        return new ConnectionWarmer(connectionManager, urls, connections, minIdle, deadline, Duration.ofMillis(20),
+                Duration.ofSeconds(1), Duration.ofMinutes(1));
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                sockets.add(socket);
+                accepted.incrementAndGet();
+                Thread handler = new Thread(() -> serve(socket), "warmer-test-connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException e) {
+            // closed by the test
+        }
+    }
+
+    /**
+     * Answers every request on the connection with a fixed response and keeps
+     * it open, so that a client can reuse it.
+     */
+    private static void serve(Socket socket) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.US_ASCII))) {
+            OutputStream out = socket.getOutputStream();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    out.write(RESPONSE);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // closed by the client or the test
+        }
+    }
+
+    private static void eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.llm.passthrough.transport;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiplexedClientHttpRequestFactoryTest {
+
+    private HttpServer server;
+    private URI uri;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void holdsAStreamUntilTheResponseIsClosed() throws Exception {
+        MultiplexedClientHttpRequestFactory requestFactory = factory(1, 1, Duration.ofMillis(200));
+
+        ClientHttpResponse first = requestFactory.createRequest(uri, HttpMethod.GET).execute();
+
+        assertThatThrownBy(() -> requestFactory.createRequest(uri, HttpMethod.GET).execute())
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Timeout");
+
+        first.close();
+        first.close();
+        try (ClientHttpResponse second = requestFactory.createRequest(uri, HttpMethod.GET).execute()) {
+            assertThat(second.getStatusCode().value()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void wakesAWaitingRequestWhenAStreamIsReleased() throws Exception {
+        MultiplexedClientHttpRequestFactory requestFactory = factory(1, 1, Duration.ofSeconds(5));
+        ClientHttpResponse first = requestFactory.createRequest(uri, HttpMethod.GET).execute();
+
+        CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> {
+            try (ClientHttpResponse response = requestFactory.createRequest(uri, HttpMethod.GET).execute()) {
+                return response.getStatusCode().value();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(waiting).isNotDone();
+
+        first.close();
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+    }
+
+    @Test
+    void sendsNewRequestsOnNewConnectionsAfterAContextChange() throws Exception {
+        MultiplexedClientHttpRequestFactory requestFactory = factory(1, 1, Duration.ofMillis(200));
+        ClientHttpResponse inFlight = requestFactory.createRequest(uri, HttpMethod.GET).execute();
+
+        requestFactory.setSslContext(null);
+
+        try (ClientHttpResponse response = requestFactory.createRequest(uri, HttpMethod.GET).execute()) {
+            assertThat(response.getStatusCode().value()).isEqualTo(200);
+        }
+        assertThat(new String(inFlight.getBody().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("ok");
+        inFlight.close();
+    }
+
+    @Test
+    void releasesTheStreamWhenTheRequestFails() throws Exception {
+        MultiplexedClientHttpRequestFactory requestFactory = factory(1, 1, Duration.ofMillis(200));
+        URI closed = URI.create("http://127.0.0.1:1/");
+
+        assertThatThrownBy(() -> requestFactory.createRequest(closed, HttpMethod.GET).execute())
+                .isInstanceOf(IOException.class);
+
+        try (ClientHttpResponse response = requestFactory.createRequest(uri, HttpMethod.GET).execute()) {
+            assertThat(response.getStatusCode().value()).isEqualTo(200);
+        }
+    }
+
+    private static MultiplexedClientHttpRequestFactory factory(int connections, int streams, Duration acquireTimeout) {
+        return new MultiplexedClientHttpRequestFactory(null, connections, streams, Duration.ofSeconds(2),
+                Duration.ofSeconds(5), acquireTimeout);
+    }
+}